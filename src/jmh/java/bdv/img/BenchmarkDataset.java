@@ -0,0 +1,209 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import bdv.export.ExportMipmapInfo;
+import bdv.export.WriteSequenceToHdf5;
+import bdv.export.n5.WriteSequenceToN5;
+import bdv.spimdata.SequenceDescriptionMinimal;
+import ch.systemsx.cisd.base.mdarray.MDShortArray;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
+import mpicbg.spim.data.generic.sequence.BasicImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicSetupImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import mpicbg.spim.data.sequence.TimePoint;
+import mpicbg.spim.data.sequence.TimePoints;
+import net.imglib2.FinalDimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import org.janelia.saalfeldlab.n5.Compression;
+
+/**
+ * A single-setup, single-timepoint {@code uint16} dataset for loading
+ * benchmarks, written to a temporary directory with {@link WriteSequenceToN5},
+ * {@link WriteSequenceToHdf5}, or in Imaris layout.
+ * <p>
+ * Note that the files are likely to stay in the OS page cache, so the
+ * benchmarks measure the read path of the loaders (library overhead,
+ * decompression, locking) rather than the storage device.
+ */
+public class BenchmarkDataset
+{
+	private final int size;
+
+	private final int cellSize;
+
+	private final short[] data;
+
+	private final Path directory;
+
+	private final CellGrid grid;
+
+	public BenchmarkDataset( final int size, final int cellSize ) throws IOException
+	{
+		this.size = size;
+		this.cellSize = cellSize;
+		data = new short[ size * size * size ];
+		final Random random = new Random( 0 );
+		int i = 0;
+		for ( int z = 0; z < size; ++z )
+			for ( int y = 0; y < size; ++y )
+				for ( int x = 0; x < size; ++x )
+					data[ i++ ] = ( short ) ( ( x + y + z ) * 16 + random.nextInt( 256 ) );
+		directory = Files.createTempDirectory( "bdv-benchmark" );
+		grid = new CellGrid( new long[] { size, size, size }, new int[] { cellSize, cellSize, cellSize } );
+	}
+
+	public CellGrid getGrid()
+	{
+		return grid;
+	}
+
+	public int getNumCells()
+	{
+		return ( int ) grid.getGridDimensions()[ 0 ] * ( int ) grid.getGridDimensions()[ 1 ] * ( int ) grid.getGridDimensions()[ 2 ];
+	}
+
+	/**
+	 * Get min and dimensions of cell {@code index} (modulo the number of
+	 * cells).
+	 */
+	public void getCell( final long index, final long[] min, final int[] dimensions )
+	{
+		grid.getCellDimensions( index % getNumCells(), min, dimensions );
+	}
+
+	/**
+	 * Get grid position of cell {@code index} (modulo the number of cells).
+	 */
+	public void getCellGridPosition( final long index, final long[] position )
+	{
+		grid.getCellGridPositionFlat( index % getNumCells(), position );
+	}
+
+	public SequenceDescriptionMinimal createSequenceDescription()
+	{
+		final HashMap< Integer, BasicViewSetup > setups = new HashMap<>();
+		setups.put( 0, new BasicViewSetup( 0, "setup 0", new FinalDimensions( size, size, size ), new FinalVoxelDimensions( "px", 1, 1, 1 ) ) );
+		final TimePoints timepoints = new TimePoints( Collections.singletonList( new TimePoint( 0 ) ) );
+		final BasicSetupImgLoader< UnsignedShortType > setupImgLoader = new BasicSetupImgLoader< UnsignedShortType >()
+		{
+			@Override
+			public RandomAccessibleInterval< UnsignedShortType > getImage( final int timepointId, final ImgLoaderHint... hints )
+			{
+				return ArrayImgs.unsignedShorts( data, size, size, size );
+			}
+
+			@Override
+			public UnsignedShortType getImageType()
+			{
+				return new UnsignedShortType();
+			}
+		};
+		final BasicImgLoader imgLoader = setupId -> setupImgLoader;
+		return new SequenceDescriptionMinimal( timepoints, setups, imgLoader, null );
+	}
+
+	private HashMap< Integer, ExportMipmapInfo > createMipmapInfo()
+	{
+		final HashMap< Integer, ExportMipmapInfo > perSetupMipmapInfo = new HashMap<>();
+		perSetupMipmapInfo.put( 0, new ExportMipmapInfo(
+				new int[][] { { 1, 1, 1 } },
+				new int[][] { { cellSize, cellSize, cellSize } } ) );
+		return perSetupMipmapInfo;
+	}
+
+	public File writeN5( final Compression compression ) throws IOException
+	{
+		final File file = directory.resolve( "dataset.n5" ).toFile();
+		WriteSequenceToN5.writeN5File( createSequenceDescription(), createMipmapInfo(), compression, file, null, null, 1, null );
+		return file;
+	}
+
+	public File writeHdf5( final boolean deflate )
+	{
+		final File file = directory.resolve( "dataset.h5" ).toFile();
+		WriteSequenceToHdf5.writeHdf5File( createSequenceDescription(), createMipmapInfo(), deflate, file, null, null, 1, null );
+		return file;
+	}
+
+	/**
+	 * Write level 0 of the dataset as an Imaris file (only the
+	 * {@code DataSet/ResolutionLevel 0/TimePoint 0/Channel 0/Data} dataset,
+	 * without metadata).
+	 */
+	public File writeImaris()
+	{
+		final File file = directory.resolve( "dataset.ims" ).toFile();
+		final String path = "DataSet/ResolutionLevel 0/TimePoint 0/Channel 0/Data";
+		final IHDF5Writer writer = HDF5Factory.open( file );
+		try
+		{
+			writer.int16().createMDArray( path, new long[] { size, size, size }, new int[] { cellSize, cellSize, cellSize } );
+			writer.int16().writeMDArrayBlockWithOffset( path, new MDShortArray( data, new int[] { size, size, size } ), new long[] { 0, 0, 0 } );
+		}
+		finally
+		{
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Delete the temporary directory with all files.
+	 */
+	public void delete() throws IOException
+	{
+		final List< Path > paths = new ArrayList<>();
+		try ( final Stream< Path > walk = Files.walk( directory ) )
+		{
+			walk.forEach( paths::add );
+		}
+		paths.sort( Comparator.reverseOrder() );
+		for ( final Path p : paths )
+			Files.delete( p );
+	}
+}
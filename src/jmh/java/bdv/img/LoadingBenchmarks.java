@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the cell loading and cache benchmarks ({@code N5LoadingBenchmark},
+ * {@code Hdf5LoadingBenchmark}, {@code ImarisLoadingBenchmark},
+ * {@code CacheLookupBenchmark}) with 1, 2, 4, ... up to the number of
+ * available processors threads, which play the role of fetcher threads.
+ * <p>
+ * Results are written to {@code target/jmh-loading-<threads>.json}. For each
+ * loader, they contain cells per millisecond ({@code Throughput}), bytes per
+ * millisecond (the {@code bytes} counter), and latency percentiles including
+ * p0.99 ({@code SampleTime}).
+ * <p>
+ * Usage:
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.main=bdv.img.LoadingBenchmarks -Djmh.args=},
+ * optionally with a regular expression selecting benchmarks in
+ * {@code jmh.args}.
+ */
+public class LoadingBenchmarks
+{
+	public static void main( final String[] args ) throws RunnerException
+	{
+		final String include = args.length > 0 ? args[ 0 ] : "(N5|Hdf5|Imaris)LoadingBenchmark|CacheLookupBenchmark";
+		new File( "target" ).mkdirs();
+		final int maxThreads = Runtime.getRuntime().availableProcessors();
+		for ( int threads = 1;; threads = Math.min( 2 * threads, maxThreads ) )
+		{
+			final Options options = new OptionsBuilder()
+					.include( include )
+					.threads( threads )
+					.resultFormat( ResultFormatType.JSON )
+					.result( "target/jmh-loading-" + threads + ".json" )
+					.build();
+			new Runner( options ).run();
+			if ( threads == maxThreads )
+				break;
+		}
+	}
+}
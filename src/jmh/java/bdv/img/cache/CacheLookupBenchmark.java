@@ -0,0 +1,135 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.img.BenchmarkDataset;
+import bdv.img.n5.BdvN5Format;
+import bdv.img.n5.N5ImageLoader;
+import net.imglib2.RandomAccess;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Cast;
+
+/**
+ * Looks up already loaded cells of an image created by
+ * {@link VolatileGlobalCellCache#createImg}, with the backing caches of
+ * {@link CacheOptions.Backend}. Run with different numbers of threads (JMH
+ * option {@code -t}) to measure contention, see
+ * {@code bdv.img.LoadingBenchmarks}.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class CacheLookupBenchmark
+{
+	@Param( { "SOFT_REF", "OFF_HEAP" } )
+	public CacheOptions.Backend backend;
+
+	private BenchmarkDataset dataset;
+
+	private VolatileCachedCellImg< UnsignedShortType, VolatileShortArray > img;
+
+	@State( Scope.Thread )
+	public static class ThreadState
+	{
+		RandomAccess< Cell< VolatileShortArray > > cells;
+
+		final Random random = new Random();
+
+		@Setup( Level.Trial )
+		public void setup( final CacheLookupBenchmark benchmark )
+		{
+			cells = benchmark.img.getCells().randomAccess();
+		}
+	}
+
+	@Setup( Level.Trial )
+	public void setup() throws IOException
+	{
+		dataset = new BenchmarkDataset( 256, 32 );
+		final String path = dataset.writeN5( new RawCompression() ).getAbsolutePath();
+		final SimpleCacheArrayLoader< VolatileShortArray > loader = Cast.unchecked(
+				N5ImageLoader.createCacheArrayLoader( new N5FSReader( path ), BdvN5Format.getPathName( 0, 0, 0 ) ) );
+		final VolatileGlobalCellCache cache = new VolatileGlobalCellCache( 1, 1,
+				CacheOptions.options().backend( backend ).createBackingCache() );
+		img = cache.createImg( dataset.getGrid(), 0, 0, 0,
+				new CacheHints( LoadingStrategy.BLOCKING, 0, false ), loader, new UnsignedShortType() );
+
+		// load all cells
+		final RandomAccess< Cell< VolatileShortArray > > cells = img.getCells().randomAccess();
+		final long[] position = new long[ 3 ];
+		for ( int i = 0; i < dataset.getNumCells(); ++i )
+		{
+			dataset.getCellGridPosition( i, position );
+			cells.setPosition( position );
+			cells.get();
+		}
+	}
+
+	@TearDown( Level.Trial )
+	public void teardown() throws IOException
+	{
+		dataset.delete();
+	}
+
+	@Benchmark
+	public Cell< VolatileShortArray > get( final ThreadState state )
+	{
+		final long[] position = new long[ 3 ];
+		dataset.getCellGridPosition( state.random.nextInt( dataset.getNumCells() ), position );
+		state.cells.setPosition( position );
+		return state.cells.get();
+	}
+}
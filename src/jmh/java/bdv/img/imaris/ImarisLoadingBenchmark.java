@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.imaris;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.img.BenchmarkDataset;
+import bdv.img.LoadCounters;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+
+/**
+ * Loads cells with {@link ImarisVolatileShortArrayLoader} from a file in
+ * Imaris layout. Run with different numbers of threads (JMH option
+ * {@code -t}) to simulate fetcher threads, see
+ * {@code bdv.img.LoadingBenchmarks}.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class ImarisLoadingBenchmark
+{
+	private BenchmarkDataset dataset;
+
+	private IHDF5Reader reader;
+
+	private ImarisVolatileShortArrayLoader loader;
+
+	private final AtomicLong nextCell = new AtomicLong();
+
+	@Setup( Level.Trial )
+	public void setup() throws Exception
+	{
+		dataset = new BenchmarkDataset( 256, 64 );
+		reader = HDF5Factory.openForReading( dataset.writeImaris() );
+		loader = new ImarisVolatileShortArrayLoader( new HDF5AccessHack( reader ) );
+	}
+
+	@TearDown( Level.Trial )
+	public void teardown() throws IOException
+	{
+		reader.close();
+		dataset.delete();
+	}
+
+	@Benchmark
+	public VolatileShortArray loadArray( final LoadCounters counters ) throws InterruptedException
+	{
+		final long[] min = new long[ 3 ];
+		final int[] dimensions = new int[ 3 ];
+		dataset.getCell( nextCell.getAndIncrement(), min, dimensions );
+		final VolatileShortArray array = loader.loadArray( 0, 0, 0, dimensions, min );
+		counters.add( dimensions, 2 );
+		return array;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.img.BenchmarkDataset;
+import bdv.img.LoadCounters;
+import bdv.img.cache.SimpleCacheArrayLoader;
+
+/**
+ * Loads cells with the {@link SimpleCacheArrayLoader} of
+ * {@link N5ImageLoader}. Run with different numbers of threads (JMH option
+ * {@code -t}) to simulate fetcher threads, see {@code bdv.img.LoadingBenchmarks}.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class N5LoadingBenchmark
+{
+	@Param( { "RAW", "GZIP" } )
+	public String compression;
+
+	private BenchmarkDataset dataset;
+
+	private SimpleCacheArrayLoader< ? > loader;
+
+	private final AtomicLong nextCell = new AtomicLong();
+
+	@Setup( Level.Trial )
+	public void setup() throws IOException
+	{
+		dataset = new BenchmarkDataset( 256, 64 );
+		final String path = dataset.writeN5( "GZIP".equals( compression ) ? new GzipCompression() : new RawCompression() ).getAbsolutePath();
+		loader = N5ImageLoader.createCacheArrayLoader( new N5FSReader( path ), BdvN5Format.getPathName( 0, 0, 0 ) );
+	}
+
+	@TearDown( Level.Trial )
+	public void teardown() throws IOException
+	{
+		dataset.delete();
+	}
+
+	@Benchmark
+	public Object loadArray( final LoadCounters counters ) throws IOException
+	{
+		final long index = nextCell.getAndIncrement();
+		final long[] min = new long[ 3 ];
+		final int[] dimensions = new int[ 3 ];
+		final long[] gridPosition = new long[ 3 ];
+		dataset.getCell( index, min, dimensions );
+		dataset.getCellGridPosition( index, gridPosition );
+		final Object array = loader.loadArray( gridPosition );
+		counters.add( dimensions, 2 );
+		return array;
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Accumulates pre-rendered source screen images with
+ * {@link AccumulateProjectorARGB#map(boolean)}. The source projectors are
+ * already valid, so this measures only the accumulation.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class AccumulateProjectorARGBBenchmark
+{
+	@Param( { "256", "1024" } )
+	public int screenSize;
+
+	@Param( { "2", "8" } )
+	public int numSources;
+
+	@Param( { "1", "4" } )
+	public int numThreads;
+
+	private ExecutorService executorService;
+
+	private AccumulateProjectorARGB projector;
+
+	/**
+	 * A source projector that has already rendered its screen image.
+	 */
+	private static class ValidProjector implements VolatileProjector
+	{
+		@Override
+		public boolean map( final boolean clearUntouchedTargetPixels )
+		{
+			return true;
+		}
+
+		@Override
+		public void cancel()
+		{}
+
+		@Override
+		public long getLastFrameRenderNanoTime()
+		{
+			return 0;
+		}
+
+		@Override
+		public boolean isValid()
+		{
+			return true;
+		}
+	}
+
+	@Setup
+	public void setup()
+	{
+		final Random random = new Random( 0 );
+		final List< VolatileProjector > sourceProjectors = new ArrayList<>();
+		final List< ArrayImg< ARGBType, IntArray > > sourceImages = new ArrayList<>();
+		for ( int i = 0; i < numSources; ++i )
+		{
+			final int[] data = new int[ screenSize * screenSize ];
+			for ( int j = 0; j < data.length; ++j )
+				data[ j ] = random.nextInt();
+			sourceImages.add( ArrayImgs.argbs( data, screenSize, screenSize ) );
+			sourceProjectors.add( new ValidProjector() );
+		}
+		executorService = Executors.newFixedThreadPool( numThreads );
+		projector = new AccumulateProjectorARGB(
+				sourceProjectors,
+				sourceImages,
+				ArrayImgs.argbs( screenSize, screenSize ),
+				numThreads,
+				executorService );
+	}
+
+	@TearDown
+	public void teardown()
+	{
+		executorService.shutdown();
+	}
+
+	@Benchmark
+	public boolean map()
+	{
+		return projector.map( true );
+	}
+}
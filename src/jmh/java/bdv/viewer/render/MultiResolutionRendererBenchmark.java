@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.cache.CacheControl;
+import bdv.viewer.BasicViewerState;
+import bdv.viewer.DisplayMode;
+import bdv.viewer.Interpolation;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.render.awt.BufferedImageOverlayRenderer;
+
+/**
+ * Renders full frames of several volatile sources in fused mode with
+ * {@link MultiResolutionRenderer#paint}, at full screen resolution.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class MultiResolutionRendererBenchmark
+{
+	@Param( { "256", "1024" } )
+	public int screenSize;
+
+	@Param( { "1", "4" } )
+	public int numSources;
+
+	@Param( { "NEARESTNEIGHBOR", "NLINEAR" } )
+	public Interpolation interpolation;
+
+	@Param( { "1", "4" } )
+	public int numThreads;
+
+	private ExecutorService executorService;
+
+	private BasicViewerState state;
+
+	private MultiResolutionRenderer renderer;
+
+	@Setup
+	public void setup()
+	{
+		final int size = 128;
+		state = new BasicViewerState();
+		for ( int i = 0; i < numSources; ++i )
+		{
+			final SourceAndConverter< ? > source = SyntheticSource.createSourceAndConverter( size, 3, i );
+			state.addSource( source );
+			state.setSourceActive( source, true );
+		}
+		state.setDisplayMode( DisplayMode.FUSED );
+		state.setInterpolation( interpolation );
+		state.setNumTimepoints( 1 );
+		state.setViewerTransform( SyntheticSource.viewerTransform( size, screenSize ) );
+
+		final BufferedImageOverlayRenderer display = new BufferedImageOverlayRenderer();
+		display.setCanvasSize( screenSize, screenSize );
+		executorService = Executors.newFixedThreadPool( numThreads );
+		renderer = new MultiResolutionRenderer(
+				display,
+				() -> {},
+				new double[] { 1 },
+				TimeUnit.SECONDS.toNanos( 1 ),
+				numThreads,
+				executorService,
+				true,
+				AccumulateProjectorARGB.factory,
+				new CacheControl.CacheControls() );
+	}
+
+	@TearDown
+	public void teardown()
+	{
+		executorService.shutdown();
+	}
+
+	@Benchmark
+	public boolean paint()
+	{
+		renderer.requestRepaint();
+		return renderer.paint( state );
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.util.Fraction;
+import net.imglib2.view.Views;
+
+/**
+ * In-memory multi-resolution {@link Source} with random data, for benchmarks.
+ * Level {@code l} is downsampled by {@code 2^l} in every dimension.
+ */
+public class SyntheticSource< T extends NumericType< T > > implements Source< T >
+{
+	private final List< RandomAccessibleInterval< T > > levels;
+
+	private final List< AffineTransform3D > transforms;
+
+	private final T type;
+
+	private final String name;
+
+	public SyntheticSource( final List< RandomAccessibleInterval< T > > levels, final T type, final String name )
+	{
+		this.levels = levels;
+		this.type = type;
+		this.name = name;
+		transforms = new ArrayList<>();
+		for ( int l = 0; l < levels.size(); ++l )
+		{
+			final double s = 1 << l;
+			final AffineTransform3D t = new AffineTransform3D();
+			t.set(
+					s, 0, 0, 0.5 * ( s - 1 ),
+					0, s, 0, 0.5 * ( s - 1 ),
+					0, 0, s, 0.5 * ( s - 1 ) );
+			transforms.add( t );
+		}
+	}
+
+	@Override
+	public boolean isPresent( final int t )
+	{
+		return t == 0;
+	}
+
+	@Override
+	public RandomAccessibleInterval< T > getSource( final int t, final int level )
+	{
+		return levels.get( level );
+	}
+
+	@Override
+	public RealRandomAccessible< T > getInterpolatedSource( final int t, final int level, final Interpolation method )
+	{
+		final RandomAccessible< T > extended = Views.extendZero( levels.get( level ) );
+		return method == Interpolation.NLINEAR
+				? Views.interpolate( extended, new NLinearInterpolatorFactory<>() )
+				: Views.interpolate( extended, new NearestNeighborInterpolatorFactory<>() );
+	}
+
+	@Override
+	public void getSourceTransform( final int t, final int level, final AffineTransform3D transform )
+	{
+		transform.set( transforms.get( level ) );
+	}
+
+	@Override
+	public T getType()
+	{
+		return type;
+	}
+
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public VoxelDimensions getVoxelDimensions()
+	{
+		return new FinalVoxelDimensions( "px", 1, 1, 1 );
+	}
+
+	@Override
+	public int getNumMipmapLevels()
+	{
+		return levels.size();
+	}
+
+	/**
+	 * Get level {@code level} transformed to screen coordinates with the given
+	 * {@code viewerTransform}, as the {@link MultiResolutionRenderer} does.
+	 */
+	public RandomAccessible< T > getScreenSource( final int level, final AffineTransform3D viewerTransform, final Interpolation method )
+	{
+		final AffineTransform3D t = viewerTransform.copy();
+		t.concatenate( transforms.get( level ) );
+		return RealViews.affine( getInterpolatedSource( 0, level, method ), t );
+	}
+
+	/**
+	 * Create random {@code short[]} data for {@code numLevels} levels of a
+	 * cube of the given {@code size}.
+	 */
+	public static List< short[] > createData( final int size, final int numLevels, final long seed )
+	{
+		final Random random = new Random( seed );
+		final List< short[] > data = new ArrayList<>();
+		for ( int l = 0; l < numLevels; ++l )
+		{
+			final int s = Math.max( 1, size >> l );
+			final short[] array = new short[ s * s * s ];
+			for ( int i = 0; i < array.length; ++i )
+				array[ i ] = ( short ) random.nextInt( 1 << 16 );
+			data.add( array );
+		}
+		return data;
+	}
+
+	public static SyntheticSource< UnsignedShortType > create( final List< short[] > data, final String name )
+	{
+		final List< RandomAccessibleInterval< UnsignedShortType > > levels = new ArrayList<>();
+		for ( final short[] array : data )
+		{
+			final long s = Math.round( Math.cbrt( array.length ) );
+			levels.add( ArrayImgs.unsignedShorts( array, s, s, s ) );
+		}
+		return new SyntheticSource<>( levels, new UnsignedShortType(), name );
+	}
+
+	/**
+	 * Create a volatile source, backed by valid {@link VolatileShortArray}s
+	 * like cached cells.
+	 */
+	public static SyntheticSource< VolatileUnsignedShortType > createVolatile( final List< short[] > data, final String name )
+	{
+		final List< RandomAccessibleInterval< VolatileUnsignedShortType > > levels = new ArrayList<>();
+		for ( final short[] array : data )
+		{
+			final long s = Math.round( Math.cbrt( array.length ) );
+			final ArrayImg< VolatileUnsignedShortType, VolatileShortArray > img = new ArrayImg<>( new VolatileShortArray( array, true ), new long[] { s, s, s }, new Fraction() );
+			img.setLinkedType( new VolatileUnsignedShortType( img ) );
+			levels.add( img );
+		}
+		return new SyntheticSource<>( levels, new VolatileUnsignedShortType(), name );
+	}
+
+	/**
+	 * Create a {@link SourceAndConverter} with volatile version, as
+	 * {@code BigDataViewer} does for image loaders.
+	 */
+	public static SourceAndConverter< UnsignedShortType > createSourceAndConverter( final int size, final int numLevels, final long seed )
+	{
+		final List< short[] > data = createData( size, numLevels, seed );
+		final SourceAndConverter< VolatileUnsignedShortType > vsac = new SourceAndConverter<>(
+				createVolatile( data, "source " + seed ),
+				RealARGBColorConverter.create( new VolatileUnsignedShortType(), 0, 65535 ) );
+		return new SourceAndConverter<>(
+				create( data, "source " + seed ),
+				RealARGBColorConverter.create( new UnsignedShortType(), 0, 65535 ),
+				vsac );
+	}
+
+	/**
+	 * A viewer transform that shows a slightly rotated slice through the
+	 * center of a cube of the given {@code size} on a square screen.
+	 */
+	public static AffineTransform3D viewerTransform( final int size, final int screenSize )
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.translate( -0.5 * size, -0.5 * size, -0.5 * size );
+		t.rotate( 2, 0.3 );
+		t.rotate( 0, 0.1 );
+		t.scale( ( double ) screenSize / size );
+		t.translate( 0.5 * screenSize, 0.5 * screenSize, 0 );
+		return t;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.viewer.Interpolation;
+import net.imglib2.RandomAccessible;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+/**
+ * Renders one frame of a volatile multi-resolution source with
+ * {@link VolatileHierarchyProjector#map(boolean)}. All data is valid, so this
+ * measures the pass that renders the full screen from level 0.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class VolatileHierarchyProjectorBenchmark
+{
+	@Param( { "256", "1024" } )
+	public int screenSize;
+
+	@Param( { "NEARESTNEIGHBOR", "NLINEAR" } )
+	public Interpolation interpolation;
+
+	@Param( { "1", "4" } )
+	public int numThreads;
+
+	private ExecutorService executorService;
+
+	private VolatileHierarchyProjector< VolatileUnsignedShortType, ARGBType > projector;
+
+	@Setup
+	public void setup()
+	{
+		final int size = 128;
+		final int numLevels = 3;
+		final SyntheticSource< VolatileUnsignedShortType > source = SyntheticSource.createVolatile( SyntheticSource.createData( size, numLevels, 0 ), "source" );
+		final AffineTransform3D viewerTransform = SyntheticSource.viewerTransform( size, screenSize );
+		final List< RandomAccessible< VolatileUnsignedShortType > > levels = new ArrayList<>();
+		for ( int l = 0; l < numLevels; ++l )
+			levels.add( source.getScreenSource( l, viewerTransform, interpolation ) );
+
+		final ArrayImg< ARGBType, IntArray > target = ArrayImgs.argbs( screenSize, screenSize );
+		executorService = Executors.newFixedThreadPool( numThreads );
+		projector = new VolatileHierarchyProjector<>(
+				levels,
+				RealARGBColorConverter.create( new VolatileUnsignedShortType(), 0, 65535 ),
+				target,
+				numThreads,
+				executorService );
+	}
+
+	@TearDown
+	public void teardown()
+	{
+		executorService.shutdown();
+	}
+
+	@Benchmark
+	public boolean map()
+	{
+		projector.clearMask();
+		return projector.map( true );
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.display;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+/**
+ * Per-pixel cost of {@code RealARGBColorConverter.Imp.convert()} for the pixel
+ * types that BigDataViewer renders most.
+ */
+@State( Scope.Thread )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Fork( 1 )
+public class RealARGBColorConverterBenchmark
+{
+	private static final int N = 1 << 16;
+
+	private final short[] values = new short[ N ];
+
+	private final UnsignedShortType unsignedShort = new UnsignedShortType();
+
+	private final VolatileUnsignedShortType volatileUnsignedShort = new VolatileUnsignedShortType();
+
+	private final FloatType floatType = new FloatType();
+
+	private final ARGBType argb = new ARGBType();
+
+	private RealARGBColorConverter< UnsignedShortType > unsignedShortConverter;
+
+	private RealARGBColorConverter< VolatileUnsignedShortType > volatileUnsignedShortConverter;
+
+	private RealARGBColorConverter< FloatType > floatConverter;
+
+	@Setup
+	public void setup()
+	{
+		final Random random = new Random( 0 );
+		for ( int i = 0; i < N; ++i )
+			values[ i ] = ( short ) random.nextInt( 1 << 16 );
+		unsignedShortConverter = RealARGBColorConverter.create( unsignedShort, 100, 40000 );
+		volatileUnsignedShortConverter = RealARGBColorConverter.create( volatileUnsignedShort, 100, 40000 );
+		floatConverter = RealARGBColorConverter.create( floatType, 100, 40000 );
+		final ARGBType color = new ARGBType( ARGBType.rgba( 255, 128, 0, 255 ) );
+		unsignedShortConverter.setColor( color );
+		volatileUnsignedShortConverter.setColor( color );
+		floatConverter.setColor( color );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( N )
+	public int convertUnsignedShort()
+	{
+		int sum = 0;
+		for ( int i = 0; i < N; ++i )
+		{
+			unsignedShort.setShort( values[ i ] );
+			unsignedShortConverter.convert( unsignedShort, argb );
+			sum += argb.get();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( N )
+	public int convertVolatileUnsignedShort()
+	{
+		volatileUnsignedShort.setValid( true );
+		int sum = 0;
+		for ( int i = 0; i < N; ++i )
+		{
+			volatileUnsignedShort.get().setShort( values[ i ] );
+			volatileUnsignedShortConverter.convert( volatileUnsignedShort, argb );
+			sum += argb.get();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( N )
+	public int convertFloat()
+	{
+		int sum = 0;
+		for ( int i = 0; i < N; ++i )
+		{
+			floatType.set( values[ i ] & 0xffff );
+			floatConverter.convert( floatType, argb );
+			sum += argb.get();
+		}
+		return sum;
+	}
+}
@@ -29,6 +29,7 @@
 package bdv;
 
 import bdv.cache.CacheControl;
+import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.export.ProgressWriter;
 import bdv.export.ProgressWriterConsole;
 import bdv.spimdata.SpimDataMinimal;
@@ -288,6 +289,8 @@ public class BigDataViewer {
         if (windowTitle != null)
             viewerFrame.setTitle(windowTitle);
         viewer = viewerFrame.getViewerPanel();
+        if (cache instanceof VolatileGlobalCellCache)
+            ((VolatileGlobalCellCache) cache).cellUpdateListeners().add(key -> viewer.requestRepaint());
 
         //		final ConverterSetup.SetupChangeListener requestRepaint = s -> viewer.requestRepaint();
         //		for ( final ConverterSetup cs : converterSetups )
@@ -490,6 +493,8 @@ public class BigDataViewer {
                                      final ViewerOptions options) throws SpimDataException {
         final XmlIoSpimDataMinimal xmlIoSpimDataMinimal = new XmlIoSpimDataMinimal();
         xmlIoSpimDataMinimal.setViewerCompressionOptions(options.values.getCompressionOptions());
+        xmlIoSpimDataMinimal.setCacheOptions(options.values.getCacheOptions());
+        xmlIoSpimDataMinimal.setRemoteOptions(options.values.getRemoteOptions());
 
         final SpimDataMinimal spimData = xmlIoSpimDataMinimal.load(xmlFilename);
         final BigDataViewer bdv = open(spimData, windowTitle, progressWriter, options);
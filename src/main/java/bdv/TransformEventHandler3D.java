@@ -35,6 +35,8 @@ import org.scijava.ui.behaviour.DragBehaviour;
 import org.scijava.ui.behaviour.ScrollBehaviour;
 import org.scijava.ui.behaviour.util.Behaviours;
 
+import bdv.metrics.JfrEvents;
+
 /**
  * A {@link TransformEventHandler} that changes an {@link AffineTransform3D}
  * through a set of {@link Behaviour}s.
@@ -288,6 +290,17 @@ public class TransformEventHandler3D implements TransformEventHandler
 		centerY = height / 2;
 	}
 
+	/**
+	 * Set the transform in response to user input. This also starts timing
+	 * the {@link JfrEvents#INPUT_LATENCY input latency} until the change is
+	 * rendered.
+	 */
+	private void inputTransform( final AffineTransform3D affine )
+	{
+		JfrEvents.inputReceived();
+		transform.set( affine );
+	}
+
 	/**
 	 * One step of rotation (radian).
 	 */
@@ -308,7 +321,7 @@ public class TransformEventHandler3D implements TransformEventHandler
 		affine.set( affine.get( 0, 3 ) + x, 0, 3 );
 		affine.set( affine.get( 1, 3 ) + y, 1, 3 );
 
-		transform.set( affine );
+		inputTransform( affine );
 	}
 
 	/**
@@ -330,7 +343,7 @@ public class TransformEventHandler3D implements TransformEventHandler
 		affine.set( affine.get( 0, 3 ) + centerX, 0, 3 );
 		affine.set( affine.get( 1, 3 ) + centerY, 1, 3 );
 
-		transform.set( affine );
+		inputTransform( affine );
 	}
 
 	private class Rotate implements DragBehaviour
@@ -370,7 +383,7 @@ public class TransformEventHandler3D implements TransformEventHandler
 			affineDragCurrent.set( affineDragCurrent.get( 0, 3 ) + oX, 0, 3 );
 			affineDragCurrent.set( affineDragCurrent.get( 1, 3 ) + oY, 1, 3 );
 
-			transform.set( affineDragCurrent );
+			inputTransform( affineDragCurrent );
 		}
 
 		@Override
@@ -398,7 +411,7 @@ public class TransformEventHandler3D implements TransformEventHandler
 			affineDragCurrent.set( affineDragCurrent.get( 0, 3 ) - dX, 0, 3 );
 			affineDragCurrent.set( affineDragCurrent.get( 1, 3 ) - dY, 1, 3 );
 
-			transform.set( affineDragCurrent );
+			inputTransform( affineDragCurrent );
 		}
 
 		@Override
@@ -424,7 +437,7 @@ public class TransformEventHandler3D implements TransformEventHandler
 			// TODO (optionally) correct for zoom
 			affine.set( affine.get( 2, 3 ) - dZ, 2, 3 );
 
-			transform.set( affine );
+			inputTransform( affine );
 		}
 	}
 
@@ -509,7 +522,7 @@ public class TransformEventHandler3D implements TransformEventHandler
 		{
 			final AffineTransform3D affine = transform.get();
 			affine.set( affine.get( 2, 3 ) + speed, 2, 3 );
-			transform.set( affine );
+			inputTransform( affine );
 		}
 	}
 }
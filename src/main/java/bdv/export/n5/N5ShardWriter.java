@@ -0,0 +1,218 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export.n5;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockWriter;
+
+import static bdv.img.n5.BdvN5Format.SHARD_INDEX_ENTRY_BYTES;
+import static bdv.img.n5.BdvN5Format.getShardPathName;
+
+/**
+ * Writes the blocks of one dataset into shard files (see
+ * {@code BDV N5 format.md}).
+ * <p>
+ * {@link #writeBlock(DataBlock)} may be called concurrently. Each block is
+ * encoded in the calling thread and appended to its shard with a positional
+ * write. When all blocks of a shard have been written, the shard index is
+ * written and the shard file is closed. {@link #close()} finishes shards that
+ * are still open, for example because some blocks were never written.
+ */
+public class N5ShardWriter
+{
+	private final File root;
+
+	private final String pathName;
+
+	private final DatasetAttributes attributes;
+
+	private final int[] shardSize;
+
+	private final long[] gridDimensions;
+
+	private final int numBlocksPerShard;
+
+	private final ConcurrentHashMap< String, Shard > openShards = new ConcurrentHashMap<>();
+
+	/**
+	 * @param root
+	 *            root directory of the N5 container.
+	 * @param pathName
+	 *            path of the dataset in the container.
+	 * @param attributes
+	 *            attributes of the dataset.
+	 * @param shardSize
+	 *            number of blocks per shard in each dimension.
+	 */
+	public N5ShardWriter( final File root, final String pathName, final DatasetAttributes attributes, final int[] shardSize )
+	{
+		this.root = root;
+		this.pathName = pathName;
+		this.attributes = attributes;
+		this.shardSize = shardSize;
+		final long[] dimensions = attributes.getDimensions();
+		final int[] blockSize = attributes.getBlockSize();
+		gridDimensions = new long[ dimensions.length ];
+		int n = 1;
+		for ( int d = 0; d < dimensions.length; ++d )
+		{
+			gridDimensions[ d ] = ( dimensions[ d ] + blockSize[ d ] - 1 ) / blockSize[ d ];
+			n *= shardSize[ d ];
+		}
+		numBlocksPerShard = n;
+	}
+
+	private class Shard
+	{
+		final Path path;
+
+		final FileChannel channel;
+
+		final AtomicLong end;
+
+		final long[] index;
+
+		int numMissingBlocks;
+
+		Shard( final long[] shardPosition ) throws IOException
+		{
+			path = new File( root, getShardPathName( pathName, shardPosition ) ).toPath();
+			Files.createDirectories( path.getParent() );
+			channel = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+			end = new AtomicLong( ( long ) numBlocksPerShard * SHARD_INDEX_ENTRY_BYTES );
+			index = new long[ 2 * numBlocksPerShard ];
+
+			// number of blocks of this shard that lie inside the dataset
+			int n = 1;
+			for ( int d = 0; d < shardPosition.length; ++d )
+			{
+				final long min = shardPosition[ d ] * shardSize[ d ];
+				n *= ( int ) ( Math.min( min + shardSize[ d ], gridDimensions[ d ] ) - min );
+			}
+			numMissingBlocks = n;
+		}
+
+		void write( final int indexInShard, final byte[] bytes ) throws IOException
+		{
+			final long offset = end.getAndAdd( bytes.length );
+			writeFully( ByteBuffer.wrap( bytes ), offset );
+			final boolean complete;
+			synchronized ( this )
+			{
+				index[ 2 * indexInShard ] = offset;
+				index[ 2 * indexInShard + 1 ] = bytes.length;
+				complete = --numMissingBlocks == 0;
+			}
+			if ( complete )
+				finish();
+		}
+
+		synchronized void finish() throws IOException
+		{
+			if ( !channel.isOpen() )
+				return;
+			final ByteBuffer buffer = ByteBuffer.allocate( numBlocksPerShard * SHARD_INDEX_ENTRY_BYTES );
+			buffer.asLongBuffer().put( index );
+			writeFully( buffer, 0 );
+			channel.close();
+		}
+
+		private void writeFully( final ByteBuffer buffer, final long position ) throws IOException
+		{
+			while ( buffer.hasRemaining() )
+				channel.write( buffer, position + buffer.position() );
+		}
+	}
+
+	/**
+	 * Encode {@code dataBlock} and write it to its shard.
+	 */
+	public void writeBlock( final DataBlock< ? > dataBlock ) throws IOException
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DefaultBlockWriter.writeBlock( out, attributes, dataBlock );
+		final byte[] bytes = out.toByteArray();
+
+		final long[] gridPosition = dataBlock.getGridPosition();
+		final int n = gridPosition.length;
+		final long[] shardPosition = new long[ n ];
+		int indexInShard = 0;
+		for ( int d = n - 1; d >= 0; --d )
+		{
+			shardPosition[ d ] = gridPosition[ d ] / shardSize[ d ];
+			indexInShard = indexInShard * shardSize[ d ] + ( int ) ( gridPosition[ d ] % shardSize[ d ] );
+		}
+
+		final String key = getShardPathName( pathName, shardPosition );
+		final Shard shard;
+		try
+		{
+			shard = openShards.computeIfAbsent( key, k -> {
+				try
+				{
+					return new Shard( shardPosition );
+				}
+				catch ( final IOException e )
+				{
+					throw new UncheckedIOException( e );
+				}
+			} );
+		}
+		catch ( final UncheckedIOException e )
+		{
+			throw e.getCause();
+		}
+		shard.write( indexInShard, bytes );
+		if ( !shard.channel.isOpen() )
+			openShards.remove( key, shard );
+	}
+
+	/**
+	 * Write the index of all shards that are still open, and close them.
+	 */
+	public void close() throws IOException
+	{
+		for ( final Shard shard : new ArrayList<>( openShards.values() ) )
+			shard.finish();
+		openShards.clear();
+	}
+}
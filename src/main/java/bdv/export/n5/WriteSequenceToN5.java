@@ -37,6 +37,7 @@ import bdv.export.ExportScalePyramid.AfterEachPlane;
 import bdv.export.ExportScalePyramid.LoopbackHeuristic;
 import bdv.img.cache.SimpleCacheArrayLoader;
 import bdv.img.n5.N5ImageLoader;
+import bdv.img.n5.N5ShardAccess;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -76,6 +77,7 @@ import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 
 import static bdv.img.n5.BdvN5Format.DATA_TYPE_KEY;
 import static bdv.img.n5.BdvN5Format.DOWNSAMPLING_FACTORS_KEY;
+import static bdv.img.n5.BdvN5Format.SHARD_SIZE_KEY;
 import static bdv.img.n5.BdvN5Format.getPathName;
 import static net.imglib2.cache.img.ReadOnlyCachedCellImgOptions.options;
 
@@ -131,6 +133,49 @@ public class WriteSequenceToN5
 			final LoopbackHeuristic loopbackHeuristic,
 			final AfterEachPlane afterEachPlane,
 			final int numCellCreatorThreads,
+			final ProgressWriter progressWriter ) throws IOException
+	{
+		writeN5File( seq, perSetupMipmapInfo, compression, null, n5File, loopbackHeuristic, afterEachPlane, numCellCreatorThreads, progressWriter );
+	}
+
+	/**
+	 * Create a n5 group containing image data from all views and all
+	 * timepoints in a chunked, mipmaped representation. Optionally, blocks are
+	 * grouped into shard files (see {@code BDV N5 format.md}).
+	 *
+	 * @param seq
+	 *            description of the sequence to be stored as n5.
+	 * @param perSetupMipmapInfo
+	 *            this maps from setup {@link BasicViewSetup#getId() id} to
+	 *            {@link ExportMipmapInfo} for that setup.
+	 * @param compression
+	 *            n5 compression scheme.
+	 * @param shardSize
+	 *            number of blocks per shard file in each dimension, or
+	 *            {@code null} to write one file per block.
+	 * @param n5File
+	 *            n5 root.
+	 * @param loopbackHeuristic
+	 *            heuristic to decide whether to create each resolution level by
+	 *            reading pixels from the original image or by reading back a
+	 *            finer resolution level already written. may be null.
+	 * @param afterEachPlane
+	 *            this is called after each "plane of chunks" is written.
+	 * @param numCellCreatorThreads
+	 *            The number of threads that will be instantiated to generate
+	 *            and write cell data. Must be at least 1.
+	 * @param progressWriter
+	 *            completion ratio and status output will be directed here.
+	 */
+	public static void writeN5File(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo,
+			final Compression compression,
+			final int[] shardSize,
+			final File n5File,
+			final LoopbackHeuristic loopbackHeuristic,
+			final AfterEachPlane afterEachPlane,
+			final int numCellCreatorThreads,
 			ProgressWriter progressWriter ) throws IOException
 	{
 		if ( progressWriter == null )
@@ -204,7 +249,7 @@ public class WriteSequenceToN5
 					final double endCompletionRatio = ( double ) numCompletedTasks / numTasks;
 					final ProgressWriter subProgressWriter = new SubTaskProgressWriter( progressWriter, startCompletionRatio, endCompletionRatio );
 					writeScalePyramid(
-							n5, compression,
+							n5, n5File, compression, shardSize,
 							imgLoader, setupId, timepointId, mipmapInfo,
 							executorService, numCellCreatorThreads,
 							loopbackHeuristic, afterEachPlane, subProgressWriter );
@@ -237,7 +282,9 @@ public class WriteSequenceToN5
 
 	static < T extends RealType< T > & NativeType< T > > void writeScalePyramid(
 			final N5Writer n5,
+			final File n5File,
 			final Compression compression,
+			final int[] shardSize,
 			final BasicImgLoader imgLoader,
 			final int setupId,
 			final int timepointId,
@@ -251,7 +298,7 @@ public class WriteSequenceToN5
 		final BasicSetupImgLoader< T > setupImgLoader = Cast.unchecked( imgLoader.getSetupImgLoader( setupId ) );
 		final RandomAccessibleInterval< T > img = setupImgLoader.getImage( timepointId );
 		final T type = setupImgLoader.getImageType();
-		final N5DatasetIO< T > io = new N5DatasetIO<>( n5, compression, setupId, timepointId, type );
+		final N5DatasetIO< T > io = new N5DatasetIO<>( n5, n5File, compression, shardSize, setupId, timepointId, type );
 		ExportScalePyramid.writeScalePyramid(
 				img, type, mipmapInfo, io,
 				executorService, numThreads,
@@ -262,28 +309,39 @@ public class WriteSequenceToN5
 	{
 		final String pathName;
 		final DatasetAttributes attributes;
+		final N5ShardWriter shardWriter;
 
-		public N5Dataset( final String pathName, final DatasetAttributes attributes )
+		public N5Dataset( final String pathName, final DatasetAttributes attributes, final N5ShardWriter shardWriter )
 		{
 			this.pathName = pathName;
 			this.attributes = attributes;
+			this.shardWriter = shardWriter;
 		}
 	}
 
 	static class N5DatasetIO< T extends RealType< T > & NativeType< T > > implements ExportScalePyramid.DatasetIO< N5Dataset, T >
 	{
 		private final N5Writer n5;
+		private final File n5File;
 		private final Compression compression;
+		private final int[] shardSize;
 		private final int setupId;
 		private final int timepointId;
 		private final DataType dataType;
 		private final T type;
 		private final Function< ExportScalePyramid.Block< T >, DataBlock< ? > > getDataBlock;
 
-		public N5DatasetIO( final N5Writer n5, final Compression compression, final int setupId, final int timepointId, final T type )
+		/**
+		 * @param shardSize
+		 *            number of blocks per shard in each dimension, or
+		 *            {@code null} to write one file per block.
+		 */
+		public N5DatasetIO( final N5Writer n5, final File n5File, final Compression compression, final int[] shardSize, final int setupId, final int timepointId, final T type )
 		{
 			this.n5 = n5;
+			this.n5File = n5File;
 			this.compression = compression;
+			this.shardSize = shardSize;
 			this.setupId = setupId;
 			this.timepointId = timepointId;
 			this.dataType = N5Utils.dataType( type );
@@ -332,18 +390,30 @@ public class WriteSequenceToN5
 			final String pathName = getPathName( setupId, timepointId, level );
 			n5.createDataset( pathName, dimensions, blockSize, dataType, compression );
 			final DatasetAttributes attributes = n5.getDatasetAttributes( pathName );
-			return new N5Dataset( pathName, attributes );
+			N5ShardWriter shardWriter = null;
+			if ( shardSize != null )
+			{
+				n5.setAttribute( pathName, SHARD_SIZE_KEY, shardSize );
+				shardWriter = new N5ShardWriter( n5File, pathName, attributes, shardSize );
+			}
+			return new N5Dataset( pathName, attributes, shardWriter );
 		}
 
 		@Override
 		public void writeBlock( final N5Dataset dataset, final ExportScalePyramid.Block< T > dataBlock ) throws IOException
 		{
-			n5.writeBlock( dataset.pathName, dataset.attributes, getDataBlock.apply( dataBlock ) );
+			if ( dataset.shardWriter != null )
+				dataset.shardWriter.writeBlock( getDataBlock.apply( dataBlock ) );
+			else
+				n5.writeBlock( dataset.pathName, dataset.attributes, getDataBlock.apply( dataBlock ) );
 		}
 
 		@Override
-		public void flush( final N5Dataset dataset )
-		{}
+		public void flush( final N5Dataset dataset ) throws IOException
+		{
+			if ( dataset.shardWriter != null )
+				dataset.shardWriter.close();
+		}
 
 		@Override
 		public RandomAccessibleInterval< T > getImage( final int level ) throws IOException
@@ -353,7 +423,7 @@ public class WriteSequenceToN5
 			final long[] dimensions = attributes.getDimensions();
 			final int[] cellDimensions = attributes.getBlockSize();
 			final CellGrid grid = new CellGrid( dimensions, cellDimensions );
-			final SimpleCacheArrayLoader< ? > cacheArrayLoader = N5ImageLoader.createCacheArrayLoader( n5, pathName );
+			final SimpleCacheArrayLoader< ? > cacheArrayLoader = N5ImageLoader.createCacheArrayLoader( n5, N5ShardAccess.local( n5File ), pathName );
 			return new ReadOnlyCachedCellImgFactory().createWithCacheLoader(
 					dimensions, type,
 					key -> {
@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs the background tasks of a {@link VolatileGlobalCellCache}, e.g.,
+ * refinement of loaded cells, on threads of their own. Tasks are started in
+ * the order they were added, and only while no cells of the cache are loading
+ * (other than by background tasks). So they are served after all cells
+ * requested for the current frame, but unlike requests in the fetch queue they
+ * are not discarded when the next frame is prepared.
+ * <p>
+ * Threads are started when tasks are added, and stop when no tasks were added
+ * for a while.
+ */
+class BackgroundTasks
+{
+	/**
+	 * How long to wait before checking again whether cells are loading.
+	 */
+	private static final long IDLE_POLL_MILLIS = 5;
+
+	private static final long KEEP_ALIVE_SECONDS = 10;
+
+	private final IntSupplier numActiveLoads;
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * @param numActiveLoads
+	 *            number of cells of the cache that are currently loading,
+	 *            not counting those loaded by background tasks.
+	 */
+	BackgroundTasks( final IntSupplier numActiveLoads )
+	{
+		this.numActiveLoads = numActiveLoads;
+		executor = new ThreadPoolExecutor( 1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			final Thread thread = new Thread( r, "VolatileGlobalCellCache-background" );
+			thread.setDaemon( true );
+			thread.setPriority( Thread.MIN_PRIORITY );
+			return thread;
+		} );
+		executor.allowCoreThreadTimeOut( true );
+	}
+
+	/**
+	 * Add a task. This is ignored after {@link #shutdown()}.
+	 */
+	void add( final Callable< ? > task )
+	{
+		try
+		{
+			executor.execute( () -> run( task ) );
+		}
+		catch ( final RejectedExecutionException e )
+		{
+			// shut down
+		}
+	}
+
+	private void run( final Callable< ? > task )
+	{
+		try
+		{
+			while ( numActiveLoads.getAsInt() > 0 )
+				Thread.sleep( IDLE_POLL_MILLIS );
+			task.call();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch ( final Exception e )
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Set how many tasks may run at the same time.
+	 */
+	void setNumThreads( final int numThreads )
+	{
+		final int n = Math.max( 1, numThreads );
+		if ( n > executor.getMaximumPoolSize() )
+		{
+			executor.setMaximumPoolSize( n );
+			executor.setCorePoolSize( n );
+		}
+		else
+		{
+			executor.setCorePoolSize( n );
+			executor.setMaximumPoolSize( n );
+		}
+	}
+
+	/**
+	 * Get the number of tasks that are waiting to be run.
+	 */
+	int size()
+	{
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Discard tasks that are waiting to be run.
+	 */
+	void clear()
+	{
+		executor.getQueue().clear();
+	}
+
+	/**
+	 * Discard tasks that are waiting to be run, and stop the thread.
+	 */
+	void shutdown()
+	{
+		executor.shutdownNow();
+	}
+}
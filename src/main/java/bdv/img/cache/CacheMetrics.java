@@ -0,0 +1,258 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+import bdv.img.cache.VolatileGlobalCellCache.Key;
+import bdv.metrics.Counter;
+import bdv.metrics.Histogram;
+import bdv.metrics.Metrics;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.Cell;
+
+/**
+ * The {@link Metrics} of one {@link VolatileGlobalCellCache}, registered
+ * under a unique prefix {@code p}:
+ * <ul>
+ * <li>{@code p.hits}, {@code p.misses}: cell lookups that found a valid or
+ * invalid cell. A cell that is looked up repeatedly is counted every
+ * time,</li>
+ * <li>{@code p.missRequests.priority<i>}: misses that requested loading with
+ * queue priority {@code i}, and {@code p.missRequests.background}: misses
+ * that requested loading in the background. Every such miss is counted, also
+ * if the cell was already queued or loading. These count requests, not the
+ * depth of the fetch queue,</li>
+ * <li>{@code p.loads}, {@code p.loadNanos}, {@code p.loadedBytes}: number,
+ * latency, and size of cell loads,</li>
+ * <li>{@code p.activeLoads}: number of cells that are currently being
+ * loaded,</li>
+ * <li>{@code p.bytes}, {@code p.evictions}, {@code p.pinnedBytes}: state of
+ * the backing cache, if it is an {@link OffHeapLoaderCache} or a
+ * {@link PinnedLoaderCache}. Pinned cells are included in {@code p.bytes}.
+ * For other backing caches (e.g., a {@code SoftRefLoaderCache}),
+ * {@code p.bytes} is the size of the loaded cells that were not
+ * garbage-collected yet.</li>
+ * </ul>
+ */
+class CacheMetrics
+{
+	private final Metrics metrics;
+
+	private final String prefix;
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	private final Counter loads;
+
+	private final Histogram loadNanos;
+
+	private final Counter loadedBytes;
+
+	private final AtomicInteger activeLoads = new AtomicInteger();
+
+	private final ConcurrentHashMap< Integer, Counter > missRequests = new ConcurrentHashMap<>();
+
+	/**
+	 * Size of the loaded cells that are still reachable, if the backing cache
+	 * does not report its size. Otherwise {@code null}.
+	 */
+	private final AtomicLong reachableBytes;
+
+	/**
+	 * References to the loaded cells counted in {@link #reachableBytes}. These
+	 * are enqueued in {@link #collected} when the cells are garbage-collected.
+	 */
+	private final Set< CellReference > reachableCells = ConcurrentHashMap.newKeySet();
+
+	private final ReferenceQueue< Cell< ? > > collected = new ReferenceQueue<>();
+
+	private static class CellReference extends WeakReference< Cell< ? > >
+	{
+		final long bytes;
+
+		CellReference( final Cell< ? > cell, final long bytes, final ReferenceQueue< Cell< ? > > queue )
+		{
+			super( cell, queue );
+			this.bytes = bytes;
+		}
+	}
+
+	CacheMetrics( final Metrics metrics, final String name, final LoaderCache< Key, Cell< ? > > backingCache )
+	{
+		this.metrics = metrics;
+		prefix = metrics.uniquePrefix( name );
+		hits = metrics.counter( prefix + ".hits" );
+		misses = metrics.counter( prefix + ".misses" );
+		loads = metrics.counter( prefix + ".loads" );
+		loadNanos = metrics.histogram( prefix + ".loadNanos" );
+		loadedBytes = metrics.counter( prefix + ".loadedBytes" );
+		metrics.gauge( prefix + ".activeLoads", activeLoads::get );
+
+		LoaderCache< Key, Cell< ? > > cache = backingCache;
+		if ( cache instanceof PinnedLoaderCache )
+		{
+			final PinnedLoaderCache pinned = ( PinnedLoaderCache ) cache;
+			gauge( ".pinnedBytes", pinned, PinnedLoaderCache::getCurrentBytes );
+			cache = pinned.getDelegate();
+		}
+		if ( cache instanceof OffHeapLoaderCache )
+		{
+			final OffHeapLoaderCache< ? > offHeap = ( OffHeapLoaderCache< ? > ) cache;
+			gauge( ".bytes", offHeap, OffHeapLoaderCache::getCurrentBytes );
+			gauge( ".evictions", offHeap, OffHeapLoaderCache::getEvictions );
+			reachableBytes = null;
+		}
+		else
+		{
+			reachableBytes = new AtomicLong();
+			metrics.gauge( prefix + ".bytes", this::getReachableBytes );
+		}
+	}
+
+	/**
+	 * Register a gauge that reads {@code value} from {@code cache}. The
+	 * registry only references the cache weakly, so that a cache that is never
+	 * closed can still be garbage-collected.
+	 */
+	private < C > void gauge( final String suffix, final C cache, final ToLongFunction< C > value )
+	{
+		final WeakReference< C > ref = new WeakReference<>( cache );
+		metrics.gauge( prefix + suffix, () -> {
+			final C c = ref.get();
+			return c == null ? Double.NaN : value.applyAsLong( c );
+		} );
+	}
+
+	String getPrefix()
+	{
+		return prefix;
+	}
+
+	/**
+	 * Record a lookup of {@code cell} with the given {@code hints}. This is
+	 * called for every lookup, so the same cell may be counted many times.
+	 */
+	void accessed( final Cell< ? > cell, final CacheHints hints )
+	{
+		final Object data = cell.getData();
+		if ( data instanceof VolatileAccess && !( ( VolatileAccess ) data ).isValid() )
+		{
+			misses.inc();
+			if ( hints.getLoadingStrategy() != LoadingStrategy.DONTLOAD )
+				missRequests.computeIfAbsent( hints.getQueuePriority(), this::missRequestsCounter ).inc();
+		}
+		else
+			hits.inc();
+	}
+
+	private Counter missRequestsCounter( final int priority )
+	{
+		return priority == VolatileGlobalCellCache.BACKGROUND_PRIORITY
+				? metrics.counter( prefix + ".missRequests.background" )
+				: metrics.counter( prefix + ".missRequests.priority" + priority );
+	}
+
+	/**
+	 * Record that loading a cell started. Must be followed by
+	 * {@link #loadFinished()}.
+	 */
+	void loadStarted()
+	{
+		activeLoads.incrementAndGet();
+	}
+
+	/**
+	 * Record that loading a cell finished, successfully or not.
+	 */
+	void loadFinished()
+	{
+		activeLoads.decrementAndGet();
+	}
+
+	/**
+	 * Get the number of cells that are currently being loaded.
+	 */
+	int getActiveLoads()
+	{
+		return activeLoads.get();
+	}
+
+	/**
+	 * Record that {@code cell} was loaded in {@code nanos} ns.
+	 */
+	void loaded( final Cell< ? > cell, final long nanos )
+	{
+		loads.inc();
+		loadNanos.record( nanos );
+		final long bytes = OffHeapLoaderCache.sizeInBytes( cell );
+		loadedBytes.add( bytes );
+		if ( reachableBytes != null )
+		{
+			pollCollected();
+			reachableCells.add( new CellReference( cell, bytes, collected ) );
+			reachableBytes.addAndGet( bytes );
+		}
+	}
+
+	private long getReachableBytes()
+	{
+		pollCollected();
+		return reachableBytes.get();
+	}
+
+	/**
+	 * Subtract the sizes of garbage-collected cells from
+	 * {@link #reachableBytes}.
+	 */
+	private void pollCollected()
+	{
+		Reference< ? extends Cell< ? > > ref;
+		while ( ( ref = collected.poll() ) != null )
+			if ( reachableCells.remove( ref ) )
+				reachableBytes.addAndGet( -( ( CellReference ) ref ).bytes );
+	}
+
+	void remove()
+	{
+		metrics.remove( prefix );
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.io.File;
+import java.util.Objects;
+
+import bdv.img.cache.OffHeapLoaderCache.EvictionPolicy;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.cache.ref.SoftRefLoaderCache;
+import net.imglib2.img.cell.Cell;
+
+/**
+ * Options for the {@link VolatileGlobalCellCache} created by image loaders.
+ */
+public class CacheOptions
+{
+	/**
+	 * Where loaded cells are kept.
+	 */
+	public enum Backend
+	{
+		/**
+		 * On the heap, referenced softly, so that cells are cleared by the
+		 * garbage collector under memory pressure.
+		 */
+		SOFT_REF,
+
+		/**
+		 * Off-heap, bounded by {@link #getMaxOffHeapBytes()}. See
+		 * {@link OffHeapLoaderCache}.
+		 */
+		OFF_HEAP
+	}
+
+	/**
+	 * Implemented by image loaders that accept {@link CacheOptions}.
+	 */
+	public interface Configurable
+	{
+		/**
+		 * Set the options used to create the cache. If the loader is already
+		 * open, the options take effect after it is re-opened.
+		 */
+		void setCacheOptions( CacheOptions options );
+	}
+
+	private Backend backend = Backend.SOFT_REF;
+
+	private long maxOffHeapBytes = 1024L * 1024L * 1024L;
+
+	private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+	private File diskCacheDirectory = null;
+
+	private long maxDiskCacheBytes = 10L * 1024L * 1024L * 1024L;
+
+	private boolean pinCoarsestLevels = false;
+
+	private long maxPinnedBytes = 256L * 1024L * 1024L;
+
+	private SharedCacheService sharedCache = null;
+
+	/**
+	 * Create default {@link CacheOptions}.
+	 *
+	 * @return default {@link CacheOptions}.
+	 */
+	public static CacheOptions options()
+	{
+		return new CacheOptions();
+	}
+
+	/**
+	 * Set where loaded cells are kept.
+	 */
+	public CacheOptions backend( final Backend b )
+	{
+		backend = b;
+		return this;
+	}
+
+	/**
+	 * Set the maximum size of the {@link Backend#OFF_HEAP off-heap} cache in
+	 * bytes.
+	 */
+	public CacheOptions maxOffHeapBytes( final long n )
+	{
+		maxOffHeapBytes = n;
+		return this;
+	}
+
+	/**
+	 * Set which cells to evict from the {@link Backend#OFF_HEAP off-heap} cache
+	 * when it is full.
+	 */
+	public CacheOptions evictionPolicy( final EvictionPolicy p )
+	{
+		evictionPolicy = p;
+		return this;
+	}
+
+	/**
+	 * Set the root directory of the persistent on-disk cache for remote cells
+	 * ({@code bdv.img.remote.DiskCellCache}). The disk cache is disabled if
+	 * this is {@code null} (the default).
+	 */
+	public CacheOptions diskCacheDirectory( final File dir )
+	{
+		diskCacheDirectory = dir;
+		return this;
+	}
+
+	/**
+	 * Set the maximum size of the on-disk cache per dataset in bytes.
+	 */
+	public CacheOptions maxDiskCacheBytes( final long n )
+	{
+		maxDiskCacheBytes = n;
+		return this;
+	}
+
+	/**
+	 * Set whether the coarsest mipmap level of every setup and timepoint
+	 * should be loaded in the background when the loader is opened, and kept
+	 * in memory regardless of the {@link Backend}. See
+	 * {@link CoarsestLevelPreloader}.
+	 */
+	public CacheOptions pinCoarsestLevels( final boolean b )
+	{
+		pinCoarsestLevels = b;
+		return this;
+	}
+
+	/**
+	 * Set the maximum size of {@link #pinCoarsestLevels(boolean) pinned}
+	 * cells in bytes.
+	 */
+	public CacheOptions maxPinnedBytes( final long n )
+	{
+		maxPinnedBytes = n;
+		return this;
+	}
+
+	/**
+	 * Set the {@link SharedCacheService} in which loaded cells are kept and
+	 * through which they are loaded, e.g.,
+	 * {@link SharedCacheService#getDefault()}. If this is {@code null} (the
+	 * default), each loader creates its own cache and fetcher threads. If it
+	 * is not {@code null}, the {@link #backend(Backend) backend} and
+	 * {@link #maxOffHeapBytes(long) off-heap} options are ignored.
+	 */
+	public CacheOptions sharedCache( final SharedCacheService service )
+	{
+		sharedCache = service;
+		return this;
+	}
+
+	public Backend getBackend()
+	{
+		return backend;
+	}
+
+	public long getMaxOffHeapBytes()
+	{
+		return maxOffHeapBytes;
+	}
+
+	public EvictionPolicy getEvictionPolicy()
+	{
+		return evictionPolicy;
+	}
+
+	public File getDiskCacheDirectory()
+	{
+		return diskCacheDirectory;
+	}
+
+	public long getMaxDiskCacheBytes()
+	{
+		return maxDiskCacheBytes;
+	}
+
+	public boolean isPinCoarsestLevels()
+	{
+		return pinCoarsestLevels;
+	}
+
+	public long getMaxPinnedBytes()
+	{
+		return maxPinnedBytes;
+	}
+
+	public SharedCacheService getSharedCache()
+	{
+		return sharedCache;
+	}
+
+	@Override
+	public boolean equals( final Object o )
+	{
+		if ( this == o )
+			return true;
+		if ( !( o instanceof CacheOptions ) )
+			return false;
+		final CacheOptions that = ( CacheOptions ) o;
+		return backend == that.backend
+				&& maxOffHeapBytes == that.maxOffHeapBytes
+				&& evictionPolicy == that.evictionPolicy
+				&& Objects.equals( diskCacheDirectory, that.diskCacheDirectory )
+				&& maxDiskCacheBytes == that.maxDiskCacheBytes
+				&& pinCoarsestLevels == that.pinCoarsestLevels
+				&& maxPinnedBytes == that.maxPinnedBytes
+				&& sharedCache == that.sharedCache;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int value = backend.hashCode();
+		value = 31 * value + Long.hashCode( maxOffHeapBytes );
+		value = 31 * value + evictionPolicy.hashCode();
+		value = 31 * value + Objects.hashCode( diskCacheDirectory );
+		value = 31 * value + Long.hashCode( maxDiskCacheBytes );
+		value = 31 * value + Boolean.hashCode( pinCoarsestLevels );
+		value = 31 * value + Long.hashCode( maxPinnedBytes );
+		value = 31 * value + Objects.hashCode( sharedCache );
+		return value;
+	}
+
+	/**
+	 * Create a new backing cache for a {@link VolatileGlobalCellCache}
+	 * according to these options. If {@link #isPinCoarsestLevels()}, this is
+	 * a {@link PinnedLoaderCache} in front of the {@link Backend} cache.
+	 *
+	 * @return a new backing cache.
+	 */
+	public LoaderCache< VolatileGlobalCellCache.Key, Cell< ? > > createBackingCache()
+	{
+		final LoaderCache< VolatileGlobalCellCache.Key, Cell< ? > > cache;
+		switch ( backend )
+		{
+		case OFF_HEAP:
+			cache = new OffHeapLoaderCache<>( maxOffHeapBytes, evictionPolicy );
+			break;
+		case SOFT_REF:
+		default:
+			cache = new SoftRefLoaderCache<>();
+			break;
+		}
+		return createBackingCache( cache );
+	}
+
+	/**
+	 * Create a new backing cache for a {@link VolatileGlobalCellCache} that
+	 * stores cells in the given {@code cache}, e.g., a
+	 * {@link SharedCacheService.Client}. If {@link #isPinCoarsestLevels()},
+	 * this is a {@link PinnedLoaderCache} in front of {@code cache}.
+	 *
+	 * @return a new backing cache, or {@code cache} itself.
+	 */
+	public LoaderCache< VolatileGlobalCellCache.Key, Cell< ? > > createBackingCache( final LoaderCache< VolatileGlobalCellCache.Key, Cell< ? > > cache )
+	{
+		return pinCoarsestLevels
+				? new PinnedLoaderCache( cache, maxPinnedBytes )
+				: cache;
+	}
+}
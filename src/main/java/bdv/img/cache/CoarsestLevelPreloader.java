@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import bdv.ViewerImgLoader;
+import bdv.ViewerSetupImgLoader;
+import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import mpicbg.spim.data.sequence.TimePoint;
+import mpicbg.spim.data.sequence.ViewId;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+
+/**
+ * Loads the coarsest mipmap level of a list of views in a background thread,
+ * into a {@link VolatileGlobalCellCache} backed by a {@link PinnedLoaderCache}
+ * (see {@link CacheOptions#pinCoarsestLevels(boolean)}).
+ * <p>
+ * The coarsest level of each setup is pinned, and all its cells are loaded,
+ * timepoint by timepoint, until all views are loaded or the
+ * {@link PinnedLoaderCache#getMaxBytes() limit} of pinned cells is reached.
+ * After that, a low-resolution image is available instantly for every
+ * timepoint and position.
+ */
+public class CoarsestLevelPreloader
+{
+	private final ViewerImgLoader imgLoader;
+
+	private final List< ViewId > views;
+
+	private final PinnedLoaderCache pinnedCache;
+
+	private final Thread thread;
+
+	private volatile boolean stopped = false;
+
+	private CoarsestLevelPreloader( final ViewerImgLoader imgLoader, final List< ViewId > views, final PinnedLoaderCache pinnedCache )
+	{
+		this.imgLoader = imgLoader;
+		this.views = views;
+		this.pinnedCache = pinnedCache;
+		thread = new Thread( this::run, "bdv-coarsest-level-preloader" );
+		thread.setDaemon( true );
+		thread.setPriority( Thread.MIN_PRIORITY );
+	}
+
+	/**
+	 * Start loading the coarsest level of the given {@code views} in the
+	 * background, if the backing cache of {@code cache} is a
+	 * {@link PinnedLoaderCache}.
+	 * <p>
+	 * This should be called at the end of opening {@code imgLoader}, when
+	 * {@link ViewerImgLoader#getSetupImgLoader(int)} can be called from
+	 * another thread.
+	 *
+	 * @param imgLoader
+	 *            provides the images to load.
+	 * @param views
+	 *            views to load, in order.
+	 * @param cache
+	 *            the cache of {@code imgLoader}.
+	 *
+	 * @return the started preloader, or {@code null} if cells cannot be
+	 *         pinned in {@code cache}.
+	 */
+	public static CoarsestLevelPreloader start( final ViewerImgLoader imgLoader, final List< ViewId > views, final VolatileGlobalCellCache cache )
+	{
+		if ( !( cache.getBackingCache() instanceof PinnedLoaderCache ) )
+			return null;
+		final CoarsestLevelPreloader preloader = new CoarsestLevelPreloader( imgLoader, views, ( PinnedLoaderCache ) cache.getBackingCache() );
+		preloader.thread.start();
+		return preloader;
+	}
+
+	/**
+	 * Get all views of {@code seq} that are not missing, ordered by
+	 * timepoint and then by setup.
+	 */
+	public static List< ViewId > getViews( final AbstractSequenceDescription< ?, ?, ? > seq )
+	{
+		final Set< ViewId > missing = seq.getMissingViews() == null
+				? null
+				: seq.getMissingViews().getMissingViews();
+		final List< ViewId > views = new ArrayList<>();
+		for ( final TimePoint timepoint : seq.getTimePoints().getTimePointsOrdered() )
+		{
+			for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
+			{
+				final ViewId view = new ViewId( timepoint.getId(), setup.getId() );
+				if ( missing == null || !missing.contains( view ) )
+					views.add( view );
+			}
+		}
+		return views;
+	}
+
+	/**
+	 * Stop loading, and wait for the background thread to finish.
+	 */
+	public void stop()
+	{
+		stopped = true;
+		thread.interrupt();
+		try
+		{
+			thread.join();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Whether loading is complete, stopped, or was cut short by the limit of
+	 * pinned cells.
+	 */
+	public boolean isDone()
+	{
+		return !thread.isAlive();
+	}
+
+	private void run()
+	{
+		final Map< Integer, Integer > levels = new HashMap<>();
+		for ( final ViewId view : views )
+		{
+			if ( stopped || pinnedCache.isFull() )
+				return;
+
+			final int setupId = view.getViewSetupId();
+			final ViewerSetupImgLoader< ?, ? > setupImgLoader = imgLoader.getSetupImgLoader( setupId );
+			final int level = levels.computeIfAbsent( setupId, s -> {
+				final int coarsest = setupImgLoader.numMipmapLevels() - 1;
+				pinnedCache.pinLevel( s, coarsest );
+				return coarsest;
+			} );
+
+			try
+			{
+				final RandomAccessibleInterval< ? > img = setupImgLoader.getVolatileImage( view.getTimePointId(), level );
+				if ( !( img instanceof VolatileCachedCellImg ) )
+					continue;
+				final VolatileCachedCellImg< ?, ? > cellImg = ( VolatileCachedCellImg< ?, ? > ) img;
+				final CacheHints hints = new CacheHints( LoadingStrategy.BLOCKING, cellImg.getDefaultCacheHints().getQueuePriority(), false );
+				final Cursor< ? > cells = cellImg.getCells( hints ).cursor();
+				while ( cells.hasNext() )
+				{
+					if ( stopped || pinnedCache.isFull() )
+						return;
+					cells.fwd();
+					cells.get();
+				}
+			}
+			catch ( final RuntimeException e )
+			{
+				if ( stopped )
+					return;
+				// the view cannot be loaded, continue with the next one
+			}
+		}
+	}
+}
@@ -0,0 +1,574 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import bdv.metrics.JfrEvent;
+import bdv.metrics.JfrEvents;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.cache.ref.SoftRefLoaderCache;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
+import net.imglib2.img.cell.Cell;
+
+/**
+ * A {@link LoaderCache} that keeps {@link Cell} data in off-heap memory
+ * (direct {@link ByteBuffer}s), bounded by a maximum number of bytes.
+ * <p>
+ * Cells are copied into a direct buffer when they are loaded, and a fresh heap
+ * copy is made whenever a cell is requested from the cache. This is intended
+ * to be used as the backing cache of {@link VolatileGlobalCellCache}, where a
+ * {@code WeakRefVolatileCache} in front of the backing cache makes sure that
+ * cells which are currently in use are shared and the copy is made only when
+ * the heap copy has been garbage-collected.
+ * <p>
+ * Cell data of all standard {@link VolatileArrayDataAccess} types
+ * ({@code VolatileByteArray}, {@code VolatileShortArray},
+ * {@code VolatileFloatArray}, etc., and their dirty variants) is stored
+ * off-heap. Cells with other access types, and cells with shared
+ * {@link UniformAccess uniform} data, are kept in an on-heap
+ * {@link SoftRefLoaderCache}.
+ * <p>
+ * When the total size of stored cells exceeds the maximum, cells are evicted
+ * according to the {@link EvictionPolicy}.
+ *
+ * @param <K>
+ *            key type
+ */
+public class OffHeapLoaderCache< K > implements LoaderCache< K, Cell< ? > >
+{
+	public enum EvictionPolicy
+	{
+		/**
+		 * Evict the least recently used cell.
+		 */
+		LRU,
+
+		/**
+		 * Evict the least frequently used cell among the
+		 * {@link #LFU_SAMPLE_SIZE} least recently used ones.
+		 */
+		LFU
+	}
+
+	/**
+	 * How many of the least recently used cells are considered as eviction
+	 * candidates for {@link EvictionPolicy#LFU}.
+	 */
+	public static final int LFU_SAMPLE_SIZE = 16;
+
+	private final long maxBytes;
+
+	private final EvictionPolicy evictionPolicy;
+
+	/**
+	 * Stored cells in access order. Guarded by {@code this}.
+	 */
+	private final LinkedHashMap< K, Entry > entries = new LinkedHashMap<>( 16, 0.75f, true );
+
+	/**
+	 * Guarded by {@code this}.
+	 */
+	private long currentBytes = 0;
+
+	/**
+	 * Keys that are currently being loaded, to make sure that each cell is
+	 * loaded only once.
+	 */
+	private final ConcurrentHashMap< K, CompletableFuture< Cell< ? > > > loading = new ConcurrentHashMap<>();
+
+	/**
+	 * Holds cells whose data cannot be stored off-heap.
+	 */
+	private final SoftRefLoaderCache< K, Cell< ? > > onHeap = new SoftRefLoaderCache<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Create a new off-heap cache.
+	 *
+	 * @param maxBytes
+	 *            maximum total size of stored cell data in bytes.
+	 * @param evictionPolicy
+	 *            which cells to evict when {@code maxBytes} is exceeded.
+	 */
+	public OffHeapLoaderCache( final long maxBytes, final EvictionPolicy evictionPolicy )
+	{
+		this.maxBytes = maxBytes;
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	@Override
+	public Cell< ? > getIfPresent( final K key )
+	{
+		final Entry entry;
+		synchronized ( this )
+		{
+			entry = entries.get( key );
+			if ( entry != null )
+				++entry.frequency;
+		}
+		if ( entry != null )
+		{
+			hits.incrementAndGet();
+			return entry.toCell();
+		}
+		final Cell< ? > cell = onHeap.getIfPresent( key );
+		if ( cell != null )
+			hits.incrementAndGet();
+		return cell;
+	}
+
+	@Override
+	public Cell< ? > get( final K key, final CacheLoader< ? super K, ? extends Cell< ? > > loader ) throws ExecutionException
+	{
+		Cell< ? > cell = getIfPresent( key );
+		if ( cell != null )
+			return cell;
+
+		/*
+		 * Threads that request a cell that is currently being loaded wait for
+		 * the loading thread's future instead of blocking on a monitor, so
+		 * that virtual fetcher threads do not pin their carrier thread while
+		 * waiting for a (slow) load.
+		 */
+		while ( true )
+		{
+			final CompletableFuture< Cell< ? > > future = new CompletableFuture<>();
+			final CompletableFuture< Cell< ? > > existing = loading.putIfAbsent( key, future );
+			if ( existing == null )
+				return load( key, loader, future );
+
+			try
+			{
+				return existing.get();
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				throw new ExecutionException( e );
+			}
+			catch ( final ExecutionException e )
+			{
+				// If the loading thread was interrupted, try to load the cell ourselves.
+				if ( !( e.getCause() instanceof InterruptedException ) )
+					throw e;
+			}
+		}
+	}
+
+	private Cell< ? > load( final K key, final CacheLoader< ? super K, ? extends Cell< ? > > loader, final CompletableFuture< Cell< ? > > future ) throws ExecutionException
+	{
+		try
+		{
+			Cell< ? > cell = getIfPresent( key );
+			if ( cell == null )
+			{
+				misses.incrementAndGet();
+				try
+				{
+					cell = loader.get( key );
+				}
+				catch ( final InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+					throw new ExecutionException( e );
+				}
+				catch ( final Exception e )
+				{
+					throw new ExecutionException( e );
+				}
+
+				final Entry entry = Entry.create( cell );
+				if ( entry != null )
+					put( key, entry );
+				else
+				{
+					final Cell< ? > loaded = cell;
+					onHeap.get( key, k -> loaded );
+				}
+			}
+			future.complete( cell );
+			return cell;
+		}
+		catch ( final ExecutionException e )
+		{
+			future.completeExceptionally( e.getCause() );
+			throw e;
+		}
+		catch ( final RuntimeException | Error e )
+		{
+			future.completeExceptionally( e );
+			throw e;
+		}
+		finally
+		{
+			loading.remove( key, future );
+		}
+	}
+
+	@Override
+	public synchronized void invalidate( final K key )
+	{
+		final Entry entry = entries.remove( key );
+		if ( entry != null )
+			currentBytes -= entry.sizeInBytes();
+		onHeap.invalidate( key );
+	}
+
+	@Override
+	public void invalidateIf( final long parallelismThreshold, final Predicate< K > condition )
+	{
+		synchronized ( this )
+		{
+			final Iterator< Map.Entry< K, Entry > > it = entries.entrySet().iterator();
+			while ( it.hasNext() )
+			{
+				final Map.Entry< K, Entry > e = it.next();
+				if ( condition.test( e.getKey() ) )
+				{
+					currentBytes -= e.getValue().sizeInBytes();
+					it.remove();
+				}
+			}
+		}
+		onHeap.invalidateIf( parallelismThreshold, condition );
+	}
+
+	@Override
+	public void invalidateAll( final long parallelismThreshold )
+	{
+		synchronized ( this )
+		{
+			entries.clear();
+			currentBytes = 0;
+		}
+		onHeap.invalidateAll( parallelismThreshold );
+	}
+
+	/**
+	 * Replace the stored copy of the cell with the given {@code key}, e.g.,
+	 * after its data was modified in place. Nothing happens if no copy of the
+	 * cell is stored off-heap.
+	 *
+	 * @param key
+	 *            key of the cell.
+	 * @param cell
+	 *            the new cell data.
+	 */
+	public void replaceIfPresent( final K key, final Cell< ? > cell )
+	{
+		final Entry entry = Entry.create( cell );
+		if ( entry == null )
+			return;
+		synchronized ( this )
+		{
+			final Entry previous = entries.get( key );
+			if ( previous == null )
+				return;
+			entry.frequency = previous.frequency;
+			put( key, entry );
+		}
+	}
+
+	/**
+	 * Get the maximum total size of stored cell data in bytes.
+	 *
+	 * @return maximum size in bytes
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Get the total size of cell data currently stored off-heap in bytes.
+	 *
+	 * @return current size in bytes
+	 */
+	public synchronized long getCurrentBytes()
+	{
+		return currentBytes;
+	}
+
+	/**
+	 * Get the number of cells currently stored off-heap.
+	 *
+	 * @return number of stored cells
+	 */
+	public synchronized int getNumCells()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Get the number of requests that were served from the cache.
+	 *
+	 * @return number of cache hits
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of requests that required loading a cell.
+	 *
+	 * @return number of cache misses
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Get the number of cells that were evicted to stay within
+	 * {@link #getMaxBytes()}.
+	 *
+	 * @return number of evicted cells
+	 */
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	/**
+	 * Get the size of the data of {@code cell} in bytes, or 0 if the cell
+	 * data is not a standard {@link VolatileArrayDataAccess}.
+	 */
+	static long sizeInBytes( final Cell< ? > cell )
+	{
+		final Object access = cell.getData();
+		if ( !( access instanceof VolatileArrayDataAccess ) )
+			return 0;
+		final VolatileArrayDataAccess< ? > a = ( VolatileArrayDataAccess< ? > ) access;
+		return ( long ) a.getArrayLength() * Entry.bytesPerEntity( a.getCurrentStorageArray() );
+	}
+
+	private synchronized void put( final K key, final Entry entry )
+	{
+		final Entry previous = entries.put( key, entry );
+		if ( previous != null )
+			currentBytes -= previous.sizeInBytes();
+		currentBytes += entry.sizeInBytes();
+		while ( currentBytes > maxBytes && entries.size() > 1 )
+			evictOne( key );
+	}
+
+	/**
+	 * Evict one entry, but never the one with key {@code keep} (the one that
+	 * was just added).
+	 */
+	private void evictOne( final K keep )
+	{
+		final Iterator< Map.Entry< K, Entry > > it = entries.entrySet().iterator();
+		K victim = null;
+		long minFrequency = Long.MAX_VALUE;
+		for ( int i = 0; it.hasNext() && ( i < LFU_SAMPLE_SIZE ); ++i )
+		{
+			final Map.Entry< K, Entry > e = it.next();
+			if ( e.getKey().equals( keep ) )
+				continue;
+			if ( evictionPolicy == EvictionPolicy.LRU )
+			{
+				victim = e.getKey();
+				break;
+			}
+			if ( e.getValue().frequency < minFrequency )
+			{
+				minFrequency = e.getValue().frequency;
+				victim = e.getKey();
+			}
+		}
+		if ( victim == null )
+			return;
+		final JfrEvent event = JfrEvents.CELL_EVICTION.begin();
+		final long size = entries.remove( victim ).sizeInBytes();
+		currentBytes -= size;
+		evictions.incrementAndGet();
+		if ( event.isEnabled() )
+		{
+			final int level = victim instanceof VolatileGlobalCellCache.Key
+					? ( ( VolatileGlobalCellCache.Key ) victim ).getLevel()
+					: -1;
+			event.set( 0, level ).set( 1, size ).set( 2, currentBytes ).commit();
+		}
+	}
+
+	/**
+	 * Cell data and geometry stored off-heap.
+	 */
+	private static class Entry
+	{
+		private final ByteBuffer data;
+
+		private final VolatileArrayDataAccess< ? > prototype;
+
+		private final int numEntities;
+
+		private final boolean valid;
+
+		private final int[] cellDims;
+
+		private final long[] cellMin;
+
+		/**
+		 * Number of hits, guarded by the cache.
+		 */
+		long frequency;
+
+		private Entry(
+				final ByteBuffer data,
+				final VolatileArrayDataAccess< ? > prototype,
+				final int numEntities,
+				final boolean valid,
+				final int[] cellDims,
+				final long[] cellMin )
+		{
+			this.data = data;
+			this.prototype = prototype;
+			this.numEntities = numEntities;
+			this.valid = valid;
+			this.cellDims = cellDims;
+			this.cellMin = cellMin;
+		}
+
+		long sizeInBytes()
+		{
+			return data.capacity();
+		}
+
+		/**
+		 * Copy {@code cell} into an off-heap {@link Entry}.
+		 *
+		 * @return new {@link Entry}, or {@code null} if the cell data cannot be
+		 *         stored off-heap or is {@link UniformAccess shared}.
+		 */
+		static Entry create( final Cell< ? > cell )
+		{
+			final Object access = cell.getData();
+			if ( !( access instanceof VolatileArrayDataAccess ) || access instanceof UniformAccess )
+				return null;
+			final VolatileArrayDataAccess< ? > a = ( VolatileArrayDataAccess< ? > ) access;
+			final Object array = a.getCurrentStorageArray();
+			final int n = a.getArrayLength();
+			final int bytesPerEntity = bytesPerEntity( array );
+			if ( bytesPerEntity == 0 )
+				return null;
+
+			final ByteBuffer buf = ByteBuffer.allocateDirect( n * bytesPerEntity ).order( ByteOrder.nativeOrder() );
+			if ( array instanceof byte[] )
+				buf.put( ( byte[] ) array, 0, n );
+			else if ( array instanceof short[] )
+				buf.asShortBuffer().put( ( short[] ) array, 0, n );
+			else if ( array instanceof char[] )
+				buf.asCharBuffer().put( ( char[] ) array, 0, n );
+			else if ( array instanceof int[] )
+				buf.asIntBuffer().put( ( int[] ) array, 0, n );
+			else if ( array instanceof long[] )
+				buf.asLongBuffer().put( ( long[] ) array, 0, n );
+			else if ( array instanceof float[] )
+				buf.asFloatBuffer().put( ( float[] ) array, 0, n );
+			else
+				buf.asDoubleBuffer().put( ( double[] ) array, 0, n );
+			buf.clear();
+
+			final int[] cellDims = new int[ cell.numDimensions() ];
+			final long[] cellMin = new long[ cell.numDimensions() ];
+			cell.dimensions( cellDims );
+			cell.min( cellMin );
+			return new Entry( buf, prototype( a ), n, a.isValid(), cellDims, cellMin );
+		}
+
+		/**
+		 * Make a new heap copy of the stored cell.
+		 */
+		Cell< ? > toCell()
+		{
+			final Object access = prototype.createArray( numEntities, valid );
+			final Object array = ( ( VolatileArrayDataAccess< ? > ) access ).getCurrentStorageArray();
+			final ByteBuffer buf = data.duplicate().order( ByteOrder.nativeOrder() );
+			if ( array instanceof byte[] )
+				buf.get( ( byte[] ) array, 0, numEntities );
+			else if ( array instanceof short[] )
+				buf.asShortBuffer().get( ( short[] ) array, 0, numEntities );
+			else if ( array instanceof char[] )
+				buf.asCharBuffer().get( ( char[] ) array, 0, numEntities );
+			else if ( array instanceof int[] )
+				buf.asIntBuffer().get( ( int[] ) array, 0, numEntities );
+			else if ( array instanceof long[] )
+				buf.asLongBuffer().get( ( long[] ) array, 0, numEntities );
+			else if ( array instanceof float[] )
+				buf.asFloatBuffer().get( ( float[] ) array, 0, numEntities );
+			else
+				buf.asDoubleBuffer().get( ( double[] ) array, 0, numEntities );
+			return new Cell<>( cellDims, cellMin, access );
+		}
+
+		/**
+		 * Get an empty access of the same class as {@code access}, which is
+		 * used to create heap copies. (We must not keep a reference to the
+		 * loaded access itself, because that would keep its data on the heap.)
+		 */
+		private static VolatileArrayDataAccess< ? > prototype( final VolatileArrayDataAccess< ? > access )
+		{
+			return prototypes.computeIfAbsent( access.getClass(), c -> ( VolatileArrayDataAccess< ? > ) access.createArray( 0, false ) );
+		}
+
+		private static final ConcurrentHashMap< Class< ? >, VolatileArrayDataAccess< ? > > prototypes = new ConcurrentHashMap<>();
+
+		private static int bytesPerEntity( final Object array )
+		{
+			if ( array instanceof byte[] )
+				return 1;
+			else if ( array instanceof short[] || array instanceof char[] )
+				return 2;
+			else if ( array instanceof int[] || array instanceof float[] )
+				return 4;
+			else if ( array instanceof long[] || array instanceof double[] )
+				return 8;
+			else
+				return 0;
+		}
+	}
+}
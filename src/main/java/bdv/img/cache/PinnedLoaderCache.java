@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+import bdv.img.cache.VolatileGlobalCellCache.Key;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.Cell;
+
+/**
+ * A {@link LoaderCache} that keeps cells of {@link #pinLevel(int, int) pinned
+ * mipmap levels} strongly referenced, so that they are never evicted, and
+ * delegates everything else to another {@link LoaderCache}.
+ * <p>
+ * Valid cells of pinned levels are kept when they pass through the cache, as
+ * long as the total size of pinned cells stays below {@link #getMaxBytes()}.
+ * Pinned cells are only dropped by {@code invalidate...()}. This is used to
+ * keep the coarsest mipmap levels, which the renderer falls back to, in
+ * memory (see {@link CoarsestLevelPreloader}).
+ */
+public class PinnedLoaderCache implements LoaderCache< Key, Cell< ? > >
+{
+	private final LoaderCache< Key, Cell< ? > > delegate;
+
+	private final long maxBytes;
+
+	/**
+	 * Maps setup id to pinned mipmap level.
+	 */
+	private final Map< Integer, Integer > pinnedLevels = new ConcurrentHashMap<>();
+
+	private final Map< Key, Cell< ? > > pinned = new ConcurrentHashMap<>();
+
+	private long currentBytes;
+
+	/**
+	 * @param delegate
+	 *            cache for cells that are not pinned.
+	 * @param maxBytes
+	 *            maximum total size of pinned cells.
+	 */
+	public PinnedLoaderCache( final LoaderCache< Key, Cell< ? > > delegate, final long maxBytes )
+	{
+		this.delegate = delegate;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Keep cells of the given {@code level} of the given {@code setup} from
+	 * now on.
+	 */
+	public void pinLevel( final int setup, final int level )
+	{
+		pinnedLevels.put( setup, level );
+	}
+
+	/**
+	 * Get the cache for cells that are not pinned.
+	 */
+	public LoaderCache< Key, Cell< ? > > getDelegate()
+	{
+		return delegate;
+	}
+
+	@Override
+	public Cell< ? > getIfPresent( final Key key )
+	{
+		final Cell< ? > cell = pinned.get( key );
+		if ( cell != null )
+			return cell;
+		return pin( key, delegate.getIfPresent( key ) );
+	}
+
+	@Override
+	public Cell< ? > get( final Key key, final CacheLoader< ? super Key, ? extends Cell< ? > > loader ) throws ExecutionException
+	{
+		final Cell< ? > cell = pinned.get( key );
+		if ( cell != null )
+			return cell;
+		return pin( key, delegate.get( key, loader ) );
+	}
+
+	/**
+	 * Replace the pinned cell with the given {@code key}, e.g., after its data
+	 * was modified in place. If the delegate is an {@link OffHeapLoaderCache}
+	 * or a {@link SharedCacheService.Client}, its copy is replaced too.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void replaceIfPresent( final Key key, final Cell< ? > cell )
+	{
+		pinned.replace( key, cell );
+		if ( delegate instanceof OffHeapLoaderCache )
+			( ( OffHeapLoaderCache< Key > ) delegate ).replaceIfPresent( key, cell );
+		else if ( delegate instanceof SharedCacheService.Client )
+			( ( SharedCacheService.Client ) delegate ).replaceIfPresent( key, cell );
+	}
+
+	@Override
+	public void invalidate( final Key key )
+	{
+		unpin( key );
+		delegate.invalidate( key );
+	}
+
+	@Override
+	public void invalidateIf( final long parallelismThreshold, final Predicate< Key > condition )
+	{
+		for ( final Key key : pinned.keySet() )
+			if ( condition.test( key ) )
+				unpin( key );
+		delegate.invalidateIf( parallelismThreshold, condition );
+	}
+
+	@Override
+	public void invalidateAll( final long parallelismThreshold )
+	{
+		synchronized ( this )
+		{
+			pinned.clear();
+			currentBytes = 0;
+		}
+		delegate.invalidateAll( parallelismThreshold );
+	}
+
+	/**
+	 * Get the maximum total size of pinned cells in bytes.
+	 *
+	 * @return maximum size in bytes
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Get the total size of pinned cells in bytes.
+	 *
+	 * @return current size in bytes
+	 */
+	public synchronized long getCurrentBytes()
+	{
+		return currentBytes;
+	}
+
+	/**
+	 * Get the number of pinned cells.
+	 *
+	 * @return number of pinned cells
+	 */
+	public int getNumCells()
+	{
+		return pinned.size();
+	}
+
+	/**
+	 * Whether no more cells can be pinned, because the pinned cells reached
+	 * {@link #getMaxBytes()}.
+	 */
+	public synchronized boolean isFull()
+	{
+		return currentBytes >= maxBytes;
+	}
+
+	private Cell< ? > pin( final Key key, final Cell< ? > cell )
+	{
+		if ( cell == null )
+			return null;
+		final Integer level = pinnedLevels.get( key.getSetup() );
+		if ( level == null || level != key.getLevel() )
+			return cell;
+		final Object data = cell.getData();
+		if ( data instanceof VolatileAccess && !( ( VolatileAccess ) data ).isValid() )
+			return cell;
+
+		// cells of unknown size are not pinned, so the limit always holds
+		final long bytes = OffHeapLoaderCache.sizeInBytes( cell );
+		if ( bytes == 0 )
+			return cell;
+		synchronized ( this )
+		{
+			if ( pinned.containsKey( key ) || currentBytes + bytes > maxBytes )
+				return cell;
+			pinned.put( key, cell );
+			currentBytes += bytes;
+		}
+		return cell;
+	}
+
+	private synchronized void unpin( final Key key )
+	{
+		final Cell< ? > cell = pinned.remove( key );
+		if ( cell != null )
+			currentBytes -= OffHeapLoaderCache.sizeInBytes( cell );
+	}
+}
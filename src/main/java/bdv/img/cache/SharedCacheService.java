@@ -0,0 +1,372 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import bdv.img.cache.OffHeapLoaderCache.EvictionPolicy;
+import bdv.img.cache.VolatileGlobalCellCache.Key;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.cache.queue.BlockingFetchQueues;
+import net.imglib2.cache.queue.FetcherThreads;
+import net.imglib2.img.cell.Cell;
+
+/**
+ * A cell cache and fetcher pool that is shared by all image loaders of the
+ * process that are configured to use it (see
+ * {@link CacheOptions#sharedCache(SharedCacheService)}).
+ * <p>
+ * Cells of all loaders are stored in one {@link OffHeapLoaderCache}, i.e.,
+ * they share one memory budget. Each loader {@link #register(int, int)
+ * registers} as a {@link Client}. Requests of all clients are loaded by one
+ * set of {@link #getNumFetcherThreads()} fetcher threads, so the number of
+ * threads loading data does not grow with the number of loaders.
+ * <p>
+ * Each client has a fetch queue of its own, which its
+ * {@link VolatileGlobalCellCache} uses like an unshared queue: moving pending
+ * requests to the prefetch queue or clearing it for a new frame affects only
+ * the requests of that client. A dispatcher thread of the client takes
+ * requests from its queue in priority order and hands them to the shared
+ * fetcher threads, so that at most {@code maxConcurrentLoads} requests of the
+ * client are handed over at the same time. Handed-over requests of all
+ * clients are loaded in the order they were handed over.
+ */
+public class SharedCacheService
+{
+	/**
+	 * Default number of priorities of the fetch queue of a {@link Client}.
+	 */
+	public static final int NUM_PRIORITIES = 16;
+
+	private static SharedCacheService defaultService;
+
+	/**
+	 * Get the default {@link SharedCacheService}, which is created on first
+	 * use with a budget of 1 GiB and one fetcher thread per available
+	 * processor.
+	 *
+	 * @return the default {@link SharedCacheService}
+	 */
+	public static synchronized SharedCacheService getDefault()
+	{
+		if ( defaultService == null )
+			defaultService = new SharedCacheService( 1024L * 1024L * 1024L, Runtime.getRuntime().availableProcessors() );
+		return defaultService;
+	}
+
+	private final OffHeapLoaderCache< ClientKey > cache;
+
+	private final int numFetcherThreads;
+
+	/**
+	 * Requests that clients handed over to the fetcher threads.
+	 */
+	private final BlockingFetchQueues< Callable< ? > > queue;
+
+	private final AtomicInteger nextClientId = new AtomicInteger();
+
+	private final AtomicInteger numClients = new AtomicInteger();
+
+	/**
+	 * @param maxBytes
+	 *            maximum total size of stored cell data of all clients in
+	 *            bytes.
+	 * @param numFetcherThreads
+	 *            number of fetcher threads, i.e., maximum number of cells that
+	 *            are loaded at the same time across all clients.
+	 */
+	public SharedCacheService( final long maxBytes, final int numFetcherThreads )
+	{
+		this.numFetcherThreads = Math.max( 1, numFetcherThreads );
+		cache = new OffHeapLoaderCache<>( maxBytes, EvictionPolicy.LRU );
+		queue = new BlockingFetchQueues<>( 1, this.numFetcherThreads );
+		new FetcherThreads( queue, this.numFetcherThreads );
+	}
+
+	/**
+	 * Register a new client with a fetch queue of {@link #NUM_PRIORITIES}
+	 * priorities. See {@link #register(int, int)}.
+	 */
+	public Client register( final int maxConcurrentLoads )
+	{
+		return register( NUM_PRIORITIES, maxConcurrentLoads );
+	}
+
+	/**
+	 * Register a new client, e.g., when an image loader is opened.
+	 *
+	 * @param numPriorities
+	 *            number of priorities of the client's fetch queue, usually the
+	 *            highest occurring mipmap level plus 1.
+	 * @param maxConcurrentLoads
+	 *            maximum number of cells the client loads at the same time.
+	 *            This is limited to {@link #getNumFetcherThreads()}.
+	 *
+	 * @return a new {@link Client}, which must be {@link Client#close()
+	 *         closed} when it is no longer used.
+	 */
+	public Client register( final int numPriorities, final int maxConcurrentLoads )
+	{
+		return new Client( nextClientId.getAndIncrement(), Math.max( 1, numPriorities ), Math.max( 1, Math.min( maxConcurrentLoads, numFetcherThreads ) ) );
+	}
+
+	/**
+	 * Get the cache that holds loaded cells of all clients. This can be used
+	 * to query statistics.
+	 *
+	 * @return the shared cache
+	 */
+	public OffHeapLoaderCache< ? > getCache()
+	{
+		return cache;
+	}
+
+	public int getNumFetcherThreads()
+	{
+		return numFetcherThreads;
+	}
+
+	/**
+	 * Get the number of clients that are currently registered.
+	 *
+	 * @return number of clients
+	 */
+	public int getNumClients()
+	{
+		return numClients.get();
+	}
+
+	/**
+	 * The view of one image loader on a {@link SharedCacheService}. A
+	 * {@code Client} is the backing cache for the loader's
+	 * {@link VolatileGlobalCellCache}, which must be created with the
+	 * {@link #getQueue() client's queue}.
+	 */
+	public class Client implements LoaderCache< Key, Cell< ? > >
+	{
+		private final int id;
+
+		private final int maxConcurrentLoads;
+
+		private final BlockingFetchQueues< Callable< ? > > clientQueue;
+
+		/**
+		 * Permits for requests that are handed over to the fetcher threads
+		 * and not yet completed.
+		 */
+		private final Semaphore permits;
+
+		private final Thread dispatcher;
+
+		private volatile boolean closed = false;
+
+		private Client( final int id, final int numPriorities, final int maxConcurrentLoads )
+		{
+			this.id = id;
+			this.maxConcurrentLoads = maxConcurrentLoads;
+			clientQueue = new BlockingFetchQueues<>( numPriorities, maxConcurrentLoads );
+			permits = new Semaphore( maxConcurrentLoads );
+			numClients.incrementAndGet();
+			dispatcher = new Thread( this::dispatch, "SharedCacheService-client-" + id );
+			dispatcher.setDaemon( true );
+			dispatcher.start();
+		}
+
+		/**
+		 * Get the queue to which asynchronous loading jobs of this client are
+		 * submitted.
+		 *
+		 * @return the client's fetch queue
+		 */
+		public BlockingFetchQueues< Callable< ? > > getQueue()
+		{
+			return clientQueue;
+		}
+
+		/**
+		 * Get the maximum number of cells this client loads at the same time.
+		 *
+		 * @return maximum number of concurrent loads
+		 */
+		public int getMaxConcurrentLoads()
+		{
+			return maxConcurrentLoads;
+		}
+
+		/**
+		 * Discard pending requests, and remove the cells of this client from
+		 * the shared cache. Requests that were already handed over to the
+		 * fetcher threads are skipped.
+		 */
+		public void close()
+		{
+			if ( closed )
+				return;
+			closed = true;
+			dispatcher.interrupt();
+			clientQueue.clear();
+			invalidateAll();
+			numClients.decrementAndGet();
+		}
+
+		/**
+		 * Hand requests over to the fetcher threads, one at a time, while
+		 * fewer than {@code maxConcurrentLoads} are handed over.
+		 */
+		private void dispatch()
+		{
+			try
+			{
+				while ( !closed )
+				{
+					permits.acquire();
+					final Callable< ? > task;
+					try
+					{
+						task = clientQueue.take();
+					}
+					catch ( final InterruptedException e )
+					{
+						permits.release();
+						throw e;
+					}
+					queue.put( new ClientTask( this, task ), 0, false );
+				}
+			}
+			catch ( final InterruptedException e )
+			{}
+		}
+
+		@Override
+		public Cell< ? > getIfPresent( final Key key )
+		{
+			return cache.getIfPresent( new ClientKey( id, key ) );
+		}
+
+		@Override
+		public Cell< ? > get( final Key key, final CacheLoader< ? super Key, ? extends Cell< ? > > loader ) throws ExecutionException
+		{
+			return cache.get( new ClientKey( id, key ), k -> loader.get( key ) );
+		}
+
+		/**
+		 * Replace the stored copy of the cell with the given {@code key},
+		 * e.g., after its data was modified in place.
+		 */
+		public void replaceIfPresent( final Key key, final Cell< ? > cell )
+		{
+			cache.replaceIfPresent( new ClientKey( id, key ), cell );
+		}
+
+		@Override
+		public void invalidate( final Key key )
+		{
+			cache.invalidate( new ClientKey( id, key ) );
+		}
+
+		@Override
+		public void invalidateIf( final long parallelismThreshold, final Predicate< Key > condition )
+		{
+			cache.invalidateIf( parallelismThreshold, k -> k.client == id && condition.test( k.key ) );
+		}
+
+		@Override
+		public void invalidateAll( final long parallelismThreshold )
+		{
+			cache.invalidateIf( parallelismThreshold, k -> k.client == id );
+		}
+	}
+
+	/**
+	 * A request that a {@link Client} handed over to the fetcher threads.
+	 */
+	private static final class ClientTask implements Callable< Object >
+	{
+		final Client client;
+
+		final Callable< ? > task;
+
+		ClientTask( final Client client, final Callable< ? > task )
+		{
+			this.client = client;
+			this.task = task;
+		}
+
+		@Override
+		public Object call() throws Exception
+		{
+			try
+			{
+				return client.closed ? null : task.call();
+			}
+			finally
+			{
+				client.permits.release();
+			}
+		}
+	}
+
+	private static final class ClientKey
+	{
+		final int client;
+
+		final Key key;
+
+		private final int hashcode;
+
+		ClientKey( final int client, final Key key )
+		{
+			this.client = client;
+			this.key = key;
+			hashcode = 31 * key.hashCode() + client;
+		}
+
+		@Override
+		public boolean equals( final Object other )
+		{
+			if ( this == other )
+				return true;
+			if ( !( other instanceof ClientKey ) )
+				return false;
+			final ClientKey that = ( ClientKey ) other;
+			return client == that.client && key.equals( that.key );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashcode;
+		}
+	}
+}
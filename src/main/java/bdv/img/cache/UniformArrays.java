@@ -0,0 +1,336 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileDoubleArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileLongArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+
+/**
+ * Canonical shared {@link UniformAccess uniform} cell data. There is at most
+ * one valid {@code Volatile*Array} per element type, length, and value, so
+ * that missing blocks and blocks which turn out to be constant when they are
+ * loaded do not each occupy a copy of the same data.
+ * <p>
+ * Shared arrays are held weakly, i.e., they are discarded when no cell
+ * references them anymore.
+ */
+public final class UniformArrays
+{
+	private UniformArrays()
+	{}
+
+	public static VolatileByteArray bytes( final int length, final byte value )
+	{
+		return get( new Key( byte.class, length, value ), () -> {
+			final byte[] data = new byte[ length ];
+			Arrays.fill( data, value );
+			return new UniformByteArray( data );
+		} );
+	}
+
+	public static VolatileShortArray shorts( final int length, final short value )
+	{
+		return get( new Key( short.class, length, value ), () -> {
+			final short[] data = new short[ length ];
+			Arrays.fill( data, value );
+			return new UniformShortArray( data );
+		} );
+	}
+
+	public static VolatileIntArray ints( final int length, final int value )
+	{
+		return get( new Key( int.class, length, value ), () -> {
+			final int[] data = new int[ length ];
+			Arrays.fill( data, value );
+			return new UniformIntArray( data );
+		} );
+	}
+
+	public static VolatileLongArray longs( final int length, final long value )
+	{
+		return get( new Key( long.class, length, value ), () -> {
+			final long[] data = new long[ length ];
+			Arrays.fill( data, value );
+			return new UniformLongArray( data );
+		} );
+	}
+
+	public static VolatileFloatArray floats( final int length, final float value )
+	{
+		return get( new Key( float.class, length, Float.floatToRawIntBits( value ) ), () -> {
+			final float[] data = new float[ length ];
+			Arrays.fill( data, value );
+			return new UniformFloatArray( data );
+		} );
+	}
+
+	public static VolatileDoubleArray doubles( final int length, final double value )
+	{
+		return get( new Key( double.class, length, Double.doubleToRawLongBits( value ) ), () -> {
+			final double[] data = new double[ length ];
+			Arrays.fill( data, value );
+			return new UniformDoubleArray( data );
+		} );
+	}
+
+	/**
+	 * If all elements of the primitive {@code array} have the same value, get
+	 * the shared access for that value, element type, and length. The access
+	 * is a {@code VolatileByteArray} for {@code byte[]}, a
+	 * {@code VolatileShortArray} for {@code short[]}, etc.
+	 *
+	 * @return the shared access, or {@code null} if {@code array} is not
+	 *         uniform, empty, or not a primitive array of a supported type.
+	 */
+	public static VolatileArrayDataAccess< ? > ifUniform( final Object array )
+	{
+		if ( array instanceof byte[] )
+		{
+			final byte[] a = ( byte[] ) array;
+			if ( a.length == 0 )
+				return null;
+			final byte v = a[ 0 ];
+			for ( int i = 1; i < a.length; ++i )
+				if ( a[ i ] != v )
+					return null;
+			return bytes( a.length, v );
+		}
+		else if ( array instanceof short[] )
+		{
+			final short[] a = ( short[] ) array;
+			if ( a.length == 0 )
+				return null;
+			final short v = a[ 0 ];
+			for ( int i = 1; i < a.length; ++i )
+				if ( a[ i ] != v )
+					return null;
+			return shorts( a.length, v );
+		}
+		else if ( array instanceof int[] )
+		{
+			final int[] a = ( int[] ) array;
+			if ( a.length == 0 )
+				return null;
+			final int v = a[ 0 ];
+			for ( int i = 1; i < a.length; ++i )
+				if ( a[ i ] != v )
+					return null;
+			return ints( a.length, v );
+		}
+		else if ( array instanceof long[] )
+		{
+			final long[] a = ( long[] ) array;
+			if ( a.length == 0 )
+				return null;
+			final long v = a[ 0 ];
+			for ( int i = 1; i < a.length; ++i )
+				if ( a[ i ] != v )
+					return null;
+			return longs( a.length, v );
+		}
+		else if ( array instanceof float[] )
+		{
+			final float[] a = ( float[] ) array;
+			if ( a.length == 0 )
+				return null;
+			final int v = Float.floatToRawIntBits( a[ 0 ] );
+			for ( int i = 1; i < a.length; ++i )
+				if ( Float.floatToRawIntBits( a[ i ] ) != v )
+					return null;
+			return floats( a.length, a[ 0 ] );
+		}
+		else if ( array instanceof double[] )
+		{
+			final double[] a = ( double[] ) array;
+			if ( a.length == 0 )
+				return null;
+			final long v = Double.doubleToRawLongBits( a[ 0 ] );
+			for ( int i = 1; i < a.length; ++i )
+				if ( Double.doubleToRawLongBits( a[ i ] ) != v )
+					return null;
+			return doubles( a.length, a[ 0 ] );
+		}
+		return null;
+	}
+
+	/**
+	 * Get the number of shared arrays that are currently alive.
+	 *
+	 * @return number of shared arrays
+	 */
+	public static int size()
+	{
+		purge();
+		return arrays.size();
+	}
+
+	private static final ConcurrentHashMap< Key, KeyedReference > arrays = new ConcurrentHashMap<>();
+
+	private static final ReferenceQueue< VolatileArrayDataAccess< ? > > queue = new ReferenceQueue<>();
+
+	@SuppressWarnings( "unchecked" )
+	private static < A extends VolatileArrayDataAccess< ? > > A get( final Key key, final Supplier< A > create )
+	{
+		purge();
+		final KeyedReference ref = arrays.get( key );
+		final VolatileArrayDataAccess< ? > existing = ref == null ? null : ref.get();
+		if ( existing != null )
+			return ( A ) existing;
+
+		synchronized ( arrays )
+		{
+			final KeyedReference ref2 = arrays.get( key );
+			final VolatileArrayDataAccess< ? > existing2 = ref2 == null ? null : ref2.get();
+			if ( existing2 != null )
+				return ( A ) existing2;
+			final A access = create.get();
+			arrays.put( key, new KeyedReference( key, access, queue ) );
+			return access;
+		}
+	}
+
+	private static void purge()
+	{
+		KeyedReference ref;
+		while ( ( ref = ( KeyedReference ) queue.poll() ) != null )
+			arrays.remove( ref.key, ref );
+	}
+
+	private static final class KeyedReference extends WeakReference< VolatileArrayDataAccess< ? > >
+	{
+		final Key key;
+
+		KeyedReference( final Key key, final VolatileArrayDataAccess< ? > access, final ReferenceQueue< VolatileArrayDataAccess< ? > > queue )
+		{
+			super( access, queue );
+			this.key = key;
+		}
+	}
+
+	private static final class Key
+	{
+		private final Class< ? > type;
+
+		private final int length;
+
+		/**
+		 * Raw bits of the value.
+		 */
+		private final long bits;
+
+		private final int hashcode;
+
+		Key( final Class< ? > type, final int length, final long bits )
+		{
+			this.type = type;
+			this.length = length;
+			this.bits = bits;
+			int value = type.hashCode();
+			value = 31 * value + length;
+			value = 31 * value + Long.hashCode( bits );
+			hashcode = value;
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( this == obj )
+				return true;
+			if ( !( obj instanceof Key ) )
+				return false;
+			final Key other = ( Key ) obj;
+			return type == other.type && length == other.length && bits == other.bits;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashcode;
+		}
+	}
+
+	private static final class UniformByteArray extends VolatileByteArray implements UniformAccess
+	{
+		UniformByteArray( final byte[] data )
+		{
+			super( data, true );
+		}
+	}
+
+	private static final class UniformShortArray extends VolatileShortArray implements UniformAccess
+	{
+		UniformShortArray( final short[] data )
+		{
+			super( data, true );
+		}
+	}
+
+	private static final class UniformIntArray extends VolatileIntArray implements UniformAccess
+	{
+		UniformIntArray( final int[] data )
+		{
+			super( data, true );
+		}
+	}
+
+	private static final class UniformLongArray extends VolatileLongArray implements UniformAccess
+	{
+		UniformLongArray( final long[] data )
+		{
+			super( data, true );
+		}
+	}
+
+	private static final class UniformFloatArray extends VolatileFloatArray implements UniformAccess
+	{
+		UniformFloatArray( final float[] data )
+		{
+			super( data, true );
+		}
+	}
+
+	private static final class UniformDoubleArray extends VolatileDoubleArray implements UniformAccess
+	{
+		UniformDoubleArray( final double[] data )
+		{
+			super( data, true );
+		}
+	}
+}
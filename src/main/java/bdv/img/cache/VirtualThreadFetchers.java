@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import net.imglib2.cache.queue.BlockingFetchQueues;
+import net.imglib2.cache.queue.FetcherThreads;
+
+/**
+ * Serves a {@link BlockingFetchQueues} with virtual threads, as an alternative
+ * to {@link FetcherThreads} for loaders that mostly wait for high-latency
+ * requests. A dispatcher thread takes one request at a time from the queue
+ * when fewer than {@code maxConcurrentFetches} requests are in flight, and
+ * runs it in a new virtual thread. Requests are therefore started in queue
+ * priority order, like with {@link FetcherThreads}.
+ * <p>
+ * Virtual threads are looked up by reflection, so that this compiles for
+ * Java 8. Use {@link #isSupported()} to check whether the running JVM
+ * supports them.
+ */
+public class VirtualThreadFetchers
+{
+	/**
+	 * Default maximum number of requests in flight.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_FETCHES = 256;
+
+	private static final ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+
+	private final BlockingFetchQueues< Callable< ? > > queue;
+
+	private final int maxConcurrentFetches;
+
+	private final Semaphore permits;
+
+	private final Thread dispatcher;
+
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Start serving {@code queue}.
+	 *
+	 * @param queue
+	 *            the queue to serve.
+	 * @param maxConcurrentFetches
+	 *            maximum number of requests in flight.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if the JVM does not support virtual threads.
+	 */
+	public VirtualThreadFetchers( final BlockingFetchQueues< Callable< ? > > queue, final int maxConcurrentFetches )
+	{
+		if ( !isSupported() )
+			throw new UnsupportedOperationException( "virtual threads are not supported by this JVM" );
+		this.queue = queue;
+		this.maxConcurrentFetches = Math.max( 1, maxConcurrentFetches );
+		permits = new Semaphore( this.maxConcurrentFetches );
+		dispatcher = new Thread( this::dispatch, "VirtualThreadFetchers-dispatcher" );
+		dispatcher.setDaemon( true );
+		dispatcher.start();
+	}
+
+	/**
+	 * Whether the running JVM supports virtual threads.
+	 */
+	public static boolean isSupported()
+	{
+		return virtualThreadFactory != null;
+	}
+
+	public int getMaxConcurrentFetches()
+	{
+		return maxConcurrentFetches;
+	}
+
+	/**
+	 * Get the number of requests that are currently in flight.
+	 *
+	 * @return number of running requests
+	 */
+	public int getNumInFlight()
+	{
+		return maxConcurrentFetches - permits.availablePermits();
+	}
+
+	/**
+	 * Stop taking requests from the queue. Requests that are in flight are
+	 * completed.
+	 */
+	public void shutdown()
+	{
+		shutdown = true;
+		dispatcher.interrupt();
+	}
+
+	private void dispatch()
+	{
+		try
+		{
+			while ( !shutdown )
+			{
+				permits.acquire();
+				final Callable< ? > task;
+				try
+				{
+					task = queue.take();
+				}
+				catch ( final InterruptedException e )
+				{
+					permits.release();
+					throw e;
+				}
+				virtualThreadFactory.newThread( () -> {
+					try
+					{
+						task.call();
+					}
+					catch ( final InterruptedException e )
+					{}
+					catch ( final Exception e )
+					{
+						e.printStackTrace();
+					}
+					finally
+					{
+						permits.release();
+					}
+				} ).start();
+			}
+		}
+		catch ( final InterruptedException e )
+		{}
+	}
+
+	/**
+	 * Get {@code Thread.ofVirtual().name( ... ).factory()}, or {@code null}
+	 * if the JVM does not support virtual threads.
+	 */
+	private static ThreadFactory createVirtualThreadFactory()
+	{
+		try
+		{
+			final Class< ? > builderClass = Class.forName( "java.lang.Thread$Builder" );
+			Object builder = Thread.class.getMethod( "ofVirtual" ).invoke( null );
+			builder = builderClass.getMethod( "name", String.class, long.class ).invoke( builder, "VirtualThreadFetcher-", 0L );
+			return ( ThreadFactory ) builderClass.getMethod( "factory" ).invoke( builder );
+		}
+		catch ( final ReflectiveOperationException | RuntimeException e )
+		{
+			return null;
+		}
+	}
+}
@@ -116,6 +116,8 @@ public class VolatileCachedCellImg< T extends NativeType< T >, A >
 	 * consecutive integers <em>0 ... n-1</em>, where 0 is the highest priority.
 	 * Requests with priority <em>i &lt; j</em> will be handled before requests
 	 * with priority <em>j</em>.
+	 * {@link VolatileGlobalCellCache#BACKGROUND_PRIORITY} requests loading in
+	 * the background, after the cells of all other priorities.
 	 * <p>
 	 * Finally, the {@link CacheHints#isEnqueuToFront() queue order} determines
 	 * whether the cell is enqueued to the front or to the back of the queue
@@ -139,6 +141,17 @@ public class VolatileCachedCellImg< T extends NativeType< T >, A >
 		return cells.defaultCacheHints;
 	}
 
+	/**
+	 * Get the cells of this image, accessed with the given {@link CacheHints}
+	 * instead of the ones set by {@link #setCacheHints(CacheHints)}. Accessing
+	 * the returned cells does not interfere with concurrent rendering from
+	 * this image.
+	 */
+	public VolatileCachedCells< Cell< A > > getCells( final CacheHints cacheHints )
+	{
+		return cells.withCacheHints( cacheHints );
+	}
+
 	@Override
 	public ImgFactory< T > factory()
 	{
@@ -167,6 +180,13 @@ public class VolatileCachedCellImg< T extends NativeType< T >, A >
 			this.cacheHints = cacheHints;
 		}
 
+		VolatileCachedCells< T > withCacheHints( final CacheHints cacheHints )
+		{
+			final long[] dimensions = new long[ numDimensions() ];
+			dimensions( dimensions );
+			return new VolatileCachedCells<>( dimensions, get, cacheHints );
+		}
+
 		@Override
 		protected T get( final long index )
 		{
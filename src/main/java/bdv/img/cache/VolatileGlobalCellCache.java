@@ -28,9 +28,17 @@
  */
 package bdv.img.cache;
 
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.scijava.listeners.Listeners;
 
 import bdv.cache.CacheControl;
+import bdv.metrics.JfrEvent;
+import bdv.metrics.JfrEvents;
+import bdv.metrics.Metrics;
 import net.imglib2.cache.Cache;
 import net.imglib2.cache.CacheLoader;
 import net.imglib2.cache.LoaderCache;
@@ -40,7 +48,9 @@ import net.imglib2.cache.ref.SoftRefLoaderCache;
 import net.imglib2.cache.ref.WeakRefVolatileCache;
 import net.imglib2.cache.util.KeyBimap;
 import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.cache.volatiles.UncheckedVolatileCache;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
 import net.imglib2.img.cell.Cell;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.type.NativeType;
@@ -89,6 +99,26 @@ public class VolatileGlobalCellCache implements CacheControl
 			hashcode = value;
 		}
 
+		public int getTimepoint()
+		{
+			return timepoint;
+		}
+
+		public int getSetup()
+		{
+			return setup;
+		}
+
+		public int getLevel()
+		{
+			return level;
+		}
+
+		public long getIndex()
+		{
+			return index;
+		}
+
 		@Override
 		public boolean equals( final Object other )
 		{
@@ -109,10 +139,57 @@ public class VolatileGlobalCellCache implements CacheControl
 		}
 	}
 
+	/**
+	 * Notified when the data of a loaded cell was updated in place, see
+	 * {@link VolatileGlobalCellCache#cellUpdated(Key, Cell)}.
+	 */
+	public interface CellUpdateListener
+	{
+		void cellUpdated( Key key );
+	}
+
+	/**
+	 * Queue priority of {@link CacheHints} that requests loading a cell in the
+	 * background, i.e., after all cells that are requested with other
+	 * priorities. Cells requested with this priority are loaded by
+	 * {@link #enqueueBackgroundTask(Callable) background tasks}, which are not
+	 * discarded by {@link #prepareNextFrame()}. This is meant for prefetching,
+	 * e.g., of upcoming timepoints.
+	 */
+	public static final int BACKGROUND_PRIORITY = Integer.MAX_VALUE;
+
+	private static final CacheHints DONTLOAD_HINTS = new CacheHints( LoadingStrategy.DONTLOAD, 0, false );
+
+	private static final CacheHints BLOCKING_HINTS = new CacheHints( LoadingStrategy.BLOCKING, 0, false );
+
 	private final BlockingFetchQueues< Callable< ? > > queue;
 
+	/**
+	 * Stops the fetchers that serve {@link #queue}, if this cache created
+	 * them.
+	 */
+	private final Runnable stopFetchers;
+
+	/**
+	 * Number of cells that are currently loaded by background tasks. These
+	 * do not keep other background tasks from running.
+	 */
+	private final AtomicInteger numBackgroundLoads = new AtomicInteger();
+
+	private final BackgroundTasks backgroundTasks = new BackgroundTasks( () -> this.metrics.getActiveLoads() - numBackgroundLoads.get() );
+
+	/**
+	 * Cells that were requested with {@link #BACKGROUND_PRIORITY} and are not
+	 * loaded yet.
+	 */
+	private final Set< Key > pendingBackgroundLoads = ConcurrentHashMap.newKeySet();
+
 	protected final LoaderCache< Key, Cell< ? > > backingCache;
 
+	private final Listeners.List< CellUpdateListener > cellUpdateListeners = new Listeners.SynchronizedList<>();
+
+	private volatile CacheMetrics metrics;
+
 	/**
 	 * Create a new global cache with a new fetch queue served by the specified
 	 * number of fetcher threads.
@@ -123,10 +200,31 @@ public class VolatileGlobalCellCache implements CacheControl
 	 *            how many threads should be created to load data.
 	 */
 	public VolatileGlobalCellCache( final int maxNumLevels, final int numFetcherThreads )
+	{
+		this( maxNumLevels, numFetcherThreads, new SoftRefLoaderCache<>() );
+	}
+
+	/**
+	 * Create a new global cache with a new fetch queue served by the specified
+	 * number of fetcher threads, storing loaded cells in the specified
+	 * {@code backingCache}.
+	 *
+	 * @param maxNumLevels
+	 *            the highest occurring mipmap level plus 1.
+	 * @param numFetcherThreads
+	 *            how many threads should be created to load data.
+	 * @param backingCache
+	 *            cache that holds loaded cells, e.g.,
+	 *            {@link SoftRefLoaderCache} or {@link OffHeapLoaderCache}.
+	 */
+	public VolatileGlobalCellCache( final int maxNumLevels, final int numFetcherThreads, final LoaderCache< Key, Cell< ? > > backingCache )
 	{
 		queue = new BlockingFetchQueues<>( maxNumLevels, numFetcherThreads );
-		new FetcherThreads( queue, numFetcherThreads );
-		backingCache = new SoftRefLoaderCache<>();
+		final FetcherThreads fetchers = new FetcherThreads( queue, numFetcherThreads );
+		stopFetchers = fetchers::shutdown;
+		this.backingCache = backingCache;
+		metrics = createUnregisteredMetrics( backingCache );
+		backgroundTasks.setNumThreads( numFetcherThreads );
 	}
 
 	/**
@@ -137,9 +235,243 @@ public class VolatileGlobalCellCache implements CacheControl
 	 *            queue to which asynchronous data loading jobs are submitted
 	 */
 	public VolatileGlobalCellCache( final BlockingFetchQueues< Callable< ? > > queue )
+	{
+		this( queue, new SoftRefLoaderCache<>() );
+	}
+
+	/**
+	 * Create a new global cache with the specified fetch queue, storing loaded
+	 * cells in the specified {@code backingCache}. (It is the callers
+	 * responsibility to create fetcher threads that serve the queue.)
+	 *
+	 * @param queue
+	 *            queue to which asynchronous data loading jobs are submitted
+	 * @param backingCache
+	 *            cache that holds loaded cells, e.g.,
+	 *            {@link SoftRefLoaderCache} or {@link OffHeapLoaderCache}.
+	 */
+	public VolatileGlobalCellCache( final BlockingFetchQueues< Callable< ? > > queue, final LoaderCache< Key, Cell< ? > > backingCache )
+	{
+		this( queue, backingCache, () -> {} );
+	}
+
+	private VolatileGlobalCellCache( final BlockingFetchQueues< Callable< ? > > queue, final LoaderCache< Key, Cell< ? > > backingCache, final Runnable stopFetchers )
 	{
 		this.queue = queue;
-		backingCache = new SoftRefLoaderCache<>();
+		this.backingCache = backingCache;
+		this.stopFetchers = stopFetchers;
+		metrics = createUnregisteredMetrics( backingCache );
+	}
+
+	/**
+	 * Create a new global cache for a loader that mostly waits for
+	 * high-latency requests, e.g., over the network. If the JVM supports
+	 * virtual threads, the fetch queue is served by
+	 * {@link VirtualThreadFetchers} with up to {@code maxConcurrentFetches}
+	 * requests in flight. Otherwise, or if {@code maxConcurrentFetches <= 0},
+	 * it is served by {@code numFetcherThreads} fetcher threads. Either way,
+	 * the loader must {@link #shutdown()} the cache when it is closed.
+	 *
+	 * @param maxNumLevels
+	 *            the highest occurring mipmap level plus 1.
+	 * @param numFetcherThreads
+	 *            how many threads should be created to load data, if virtual
+	 *            threads are not used.
+	 * @param maxConcurrentFetches
+	 *            maximum number of requests in flight, if virtual threads are
+	 *            used.
+	 * @param backingCache
+	 *            cache that holds loaded cells.
+	 */
+	public static VolatileGlobalCellCache createForHighLatency( final int maxNumLevels, final int numFetcherThreads, final int maxConcurrentFetches, final LoaderCache< Key, Cell< ? > > backingCache )
+	{
+		if ( maxConcurrentFetches <= 0 || !VirtualThreadFetchers.isSupported() )
+			return new VolatileGlobalCellCache( maxNumLevels, numFetcherThreads, backingCache );
+
+		final BlockingFetchQueues< Callable< ? > > queue = new BlockingFetchQueues<>( maxNumLevels, maxConcurrentFetches );
+		final VirtualThreadFetchers fetchers = new VirtualThreadFetchers( queue, maxConcurrentFetches );
+		final VolatileGlobalCellCache cache = new VolatileGlobalCellCache( queue, backingCache, fetchers::shutdown );
+		cache.setNumBackgroundThreads( numFetcherThreads );
+		return cache;
+	}
+
+	/**
+	 * Create a new global cache for a loader that mostly waits for
+	 * high-latency requests, storing loaded cells in a
+	 * {@link SoftRefLoaderCache}. See
+	 * {@link #createForHighLatency(int, int, int, LoaderCache)}.
+	 */
+	public static VolatileGlobalCellCache createForHighLatency( final int maxNumLevels, final int numFetcherThreads, final int maxConcurrentFetches )
+	{
+		return createForHighLatency( maxNumLevels, numFetcherThreads, maxConcurrentFetches, new SoftRefLoaderCache<>() );
+	}
+
+	/**
+	 * Until a {@link #setMetricsName(String) name} is set, metrics are
+	 * recorded in a registry of their own, so that caches without a name
+	 * neither collide in nor leak into {@link Metrics#getDefault()}.
+	 */
+	private static CacheMetrics createUnregisteredMetrics( final LoaderCache< Key, Cell< ? > > backingCache )
+	{
+		return new CacheMetrics( new Metrics(), "cache", backingCache );
+	}
+
+	/**
+	 * Register the {@link Metrics} of this cache in
+	 * {@link Metrics#getDefault()} under {@code "cache." + name}, e.g., the
+	 * dataset that is loaded into it. (If another cache already uses that
+	 * name, a suffix is appended, see {@link #getMetricsPrefix()}.) Metrics
+	 * recorded under the previous name are discarded.
+	 * <p>
+	 * Loaders that set a name must call {@link #removeMetrics()} when they
+	 * are closed.
+	 */
+	public void setMetricsName( final String name )
+	{
+		final CacheMetrics previous = metrics;
+		metrics = new CacheMetrics( Metrics.getDefault(), "cache." + name, backingCache );
+		previous.remove();
+	}
+
+	/**
+	 * Get the prefix under which the {@link Metrics} of this cache are
+	 * registered in {@link Metrics#getDefault()}, e.g., to look up
+	 * {@code prefix + ".loadNanos"}. This is only meaningful after
+	 * {@link #setMetricsName(String)}.
+	 *
+	 * @return the metrics prefix
+	 */
+	public String getMetricsPrefix()
+	{
+		return metrics.getPrefix();
+	}
+
+	/**
+	 * Remove the {@link Metrics} of this cache from
+	 * {@link Metrics#getDefault()}. This should be called when the cache is
+	 * no longer used.
+	 */
+	public void removeMetrics()
+	{
+		final CacheMetrics previous = metrics;
+		metrics = createUnregisteredMetrics( backingCache );
+		previous.remove();
+	}
+
+	/**
+	 * Get the cache that holds loaded cells. This can be used to query
+	 * statistics, e.g., of an {@link OffHeapLoaderCache}.
+	 *
+	 * @return the backing cache
+	 */
+	public LoaderCache< Key, Cell< ? > > getBackingCache()
+	{
+		return backingCache;
+	}
+
+	/**
+	 * Enqueue a task that is run when no cells of this cache are loading,
+	 * e.g., to refine already loaded cells. Background tasks are started in
+	 * the order they were enqueued, by threads of their own (see
+	 * {@link #setNumBackgroundThreads(int)}). They are not affected by
+	 * {@link #prepareNextFrame()}, but are discarded when the cache is
+	 * {@link #clearCache() cleared}.
+	 *
+	 * @param task
+	 *            the task to run.
+	 */
+	public void enqueueBackgroundTask( final Callable< ? > task )
+	{
+		backgroundTasks.add( task );
+	}
+
+	/**
+	 * Get the number of {@link #enqueueBackgroundTask(Callable) background
+	 * tasks} that are waiting to be run.
+	 *
+	 * @return number of pending background tasks
+	 */
+	public int getNumPendingBackgroundTasks()
+	{
+		return backgroundTasks.size();
+	}
+
+	/**
+	 * Set how many {@link #enqueueBackgroundTask(Callable) background tasks}
+	 * may run at the same time. This is 1 for caches created with an existing
+	 * fetch queue, and the number of fetcher threads otherwise.
+	 *
+	 * @param numThreads
+	 *            maximum number of concurrent background tasks.
+	 */
+	public void setNumBackgroundThreads( final int numThreads )
+	{
+		backgroundTasks.setNumThreads( numThreads );
+	}
+
+	/**
+	 * Enqueue a background task that loads the cell with the given
+	 * {@code key}, unless one is already pending.
+	 */
+	private void loadInBackground( final Key key, final Runnable load )
+	{
+		if ( !pendingBackgroundLoads.add( key ) )
+			return;
+		backgroundTasks.add( () -> {
+			pendingBackgroundLoads.remove( key );
+			numBackgroundLoads.incrementAndGet();
+			try
+			{
+				load.run();
+			}
+			finally
+			{
+				numBackgroundLoads.decrementAndGet();
+			}
+			return null;
+		} );
+	}
+
+	private static boolean isValid( final Cell< ? > cell )
+	{
+		final Object data = cell.getData();
+		return !( data instanceof VolatileAccess ) || ( ( VolatileAccess ) data ).isValid();
+	}
+
+	/**
+	 * Signal that the data of the loaded {@code cell} with the given
+	 * {@code key} was modified in place, e.g., replaced by a more accurate
+	 * version. If the backing cache keeps a copy of the cell (as the
+	 * {@link OffHeapLoaderCache}, {@link PinnedLoaderCache}, and
+	 * {@link SharedCacheService} do), the copy is updated.
+	 * {@link #cellUpdateListeners() Listeners} are notified, e.g., to repaint.
+	 *
+	 * @param key
+	 *            key of the updated cell.
+	 * @param cell
+	 *            the updated cell.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void cellUpdated( final Key key, final Cell< ? > cell )
+	{
+		if ( backingCache instanceof OffHeapLoaderCache )
+			( ( OffHeapLoaderCache< Key > ) backingCache ).replaceIfPresent( key, cell );
+		else if ( backingCache instanceof PinnedLoaderCache )
+			( ( PinnedLoaderCache ) backingCache ).replaceIfPresent( key, cell );
+		else if ( backingCache instanceof SharedCacheService.Client )
+			( ( SharedCacheService.Client ) backingCache ).replaceIfPresent( key, cell );
+		cellUpdateListeners.list.forEach( l -> l.cellUpdated( key ) );
+	}
+
+	/**
+	 * Listeners that are notified when a loaded cell was
+	 * {@link #cellUpdated(Key, Cell) updated}.
+	 *
+	 * @return listeners for cell updates.
+	 */
+	public Listeners< CellUpdateListener > cellUpdateListeners()
+	{
+		return cellUpdateListeners;
 	}
 
 	/**
@@ -161,9 +493,25 @@ public class VolatileGlobalCellCache implements CacheControl
 	{
 		backingCache.invalidateAll();
 		queue.clear();
+		backgroundTasks.clear();
+		pendingBackgroundLoads.clear();
 		backingCache.invalidateAll();
 	}
 
+	/**
+	 * Stop the fetcher threads that this cache created, and its background
+	 * thread. Pending requests and background tasks are discarded. This
+	 * should be called when the cache is no longer used. If the cache was
+	 * created with an existing fetch queue, the fetchers serving that queue
+	 * are not affected.
+	 */
+	public void shutdown()
+	{
+		queue.clear();
+		stopFetchers.run();
+		backgroundTasks.shutdown();
+	}
+
 	/**
 	 * <em>For internal use.</em>
 	 * <p>
@@ -264,9 +612,29 @@ public class VolatileGlobalCellCache implements CacheControl
 						? key.index
 						: null );
 
+		final CacheLoader< Long, Cell< ? > > timedLoader = index -> {
+			final CacheMetrics m = metrics;
+			m.loadStarted();
+			try
+			{
+				final JfrEvent event = JfrEvents.CELL_LOAD.begin();
+				final long t0 = System.nanoTime();
+				final Cell< ? > cell = loader.get( index );
+				m.loaded( cell, System.nanoTime() - t0 );
+				if ( event.isEnabled() )
+					event.set( 0, m.getPrefix() ).set( 1, timepoint ).set( 2, setup ).set( 3, level )
+							.set( 4, OffHeapLoaderCache.sizeInBytes( cell ) ).commit();
+				return cell;
+			}
+			finally
+			{
+				m.loadFinished();
+			}
+		};
+
 		final Cache< Long, Cell< ? > > cache = backingCache
 				.mapKeys( bimap )
-				.withLoader( loader );
+				.withLoader( timedLoader );
 
 		final CreateInvalidVolatileCell< ? > createInvalid = ( emptyArrayCreator == null )
 				? CreateInvalidVolatileCell.get( grid, type, false )
@@ -278,7 +646,19 @@ public class VolatileGlobalCellCache implements CacheControl
 
 		@SuppressWarnings( "unchecked" )
 		final VolatileCachedCellImg< T, A > img = new VolatileCachedCellImg<>( grid, type, cacheHints,
-				( i, h ) -> ( Cell< A > ) vcache.get( i, h ) );
+				( i, h ) -> {
+					final Cell< ? > cell;
+					if ( h.getQueuePriority() == BACKGROUND_PRIORITY && h.getLoadingStrategy() != LoadingStrategy.DONTLOAD )
+					{
+						cell = vcache.get( i, DONTLOAD_HINTS );
+						if ( !isValid( cell ) )
+							loadInBackground( new Key( timepoint, setup, level, i ), () -> vcache.get( i, BLOCKING_HINTS ) );
+					}
+					else
+						cell = vcache.get( i, h );
+					metrics.accessed( cell, h );
+					return ( Cell< A > ) cell;
+				} );
 
 		return img;
 	}
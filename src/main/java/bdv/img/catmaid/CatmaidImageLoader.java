@@ -31,8 +31,10 @@ package bdv.img.catmaid;
 import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.ViewerSetupImgLoader;
+import bdv.img.cache.VirtualThreadFetchers;
 import bdv.img.cache.VolatileCachedCellImg;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.http.HttpTransport;
 import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.cache.volatiles.CacheHints;
@@ -117,8 +119,10 @@ public class CatmaidImageLoader extends AbstractViewerSetupImgLoader< ARGBType,
 			mipmapTransforms[ l ] = mipmapTransform;
 		}
 
-		loader = new CatmaidVolatileIntArrayLoader( urlFormat, tileWidth, tileHeight, zScales );
-		cache = new VolatileGlobalCellCache( numScales, 10 );
+		final HttpTransport transport = HttpTransport.getDefault().withMaxConnectionsPerHost( VirtualThreadFetchers.DEFAULT_MAX_CONCURRENT_FETCHES );
+		loader = new CatmaidVolatileIntArrayLoader( urlFormat, tileWidth, tileHeight, zScales, transport );
+		cache = VolatileGlobalCellCache.createForHighLatency( numScales, 10, VirtualThreadFetchers.DEFAULT_MAX_CONCURRENT_FETCHES );
+		cache.setMetricsName( urlFormat );
 	}
 
 	public CatmaidImageLoader(
@@ -227,6 +231,17 @@ public class CatmaidImageLoader extends AbstractViewerSetupImgLoader< ARGBType,
 		return cache;
 	}
 
+	/**
+	 * Clear the cache, remove its metrics, and stop its fetchers. The loader
+	 * must not be used afterwards.
+	 */
+	public void close()
+	{
+		cache.clearCache();
+		cache.removeMetrics();
+		cache.shutdown();
+	}
+
 	@Override
 	public ViewerSetupImgLoader< ?, ? > getSetupImgLoader( final int setupId )
 	{
@@ -265,6 +280,8 @@ public class CatmaidImageLoader extends AbstractViewerSetupImgLoader< ARGBType,
 
 	public void setCache( final VolatileGlobalCellCache cache )
 	{
+		if ( this.cache != cache )
+			this.cache.removeMetrics();
 		this.cache = cache;
 	}
 }
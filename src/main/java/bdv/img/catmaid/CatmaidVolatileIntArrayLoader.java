@@ -31,12 +31,13 @@ package bdv.img.catmaid;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.PixelGrabber;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.URL;
 
 import javax.imageio.ImageIO;
 
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.http.HttpTransport;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
 
 public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< VolatileIntArray >
@@ -49,6 +50,8 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 
 	final private int[] zScales;
 
+	private final HttpTransport transport;
+
 	/**
 	 * <p>Create a {@link CacheArrayLoader} for a CATMAID source.  Tiles are
 	 * addressed, in this order, by their</p>
@@ -80,11 +83,23 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 	 * @param tileHeight
 	 */
 	public CatmaidVolatileIntArrayLoader( final String urlFormat, final int tileWidth, final int tileHeight, final int[] zScales )
+	{
+		this( urlFormat, tileWidth, tileHeight, zScales, HttpTransport.getDefault() );
+	}
+
+	/**
+	 * Create a {@link CacheArrayLoader} for a CATMAID source that fetches
+	 * tiles through {@code transport}.
+	 *
+	 * @see #CatmaidVolatileIntArrayLoader(String, int, int, int[])
+	 */
+	public CatmaidVolatileIntArrayLoader( final String urlFormat, final int tileWidth, final int tileHeight, final int[] zScales, final HttpTransport transport )
 	{
 		this.urlFormat = urlFormat;
 		this.tileWidth = tileWidth;
 		this.tileHeight = tileHeight;
 		this.zScales = zScales;
+		this.transport = transport;
 	}
 
 	@Override
@@ -124,8 +139,7 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 				{
 					final String urlString = String.format( urlFormat, level, scale, x, y, z, tileWidth, tileHeight, r, c );
 //					System.out.println( urlString );
-					final URL url = new URL( urlString );
-					final BufferedImage tile = ImageIO.read( url );
+					final BufferedImage tile = ImageIO.read( new ByteArrayInputStream( transport.get( urlString ) ) );
 					g2d.drawImage( tile, ( int )( x - min[ 0 ] ), ( int )( y - min[ 1 ] ), null );
 				}
 				catch (final IOException e)
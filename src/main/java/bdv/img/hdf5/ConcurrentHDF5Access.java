@@ -0,0 +1,196 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+
+import bdv.metrics.Counter;
+import bdv.metrics.Metrics;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+
+/**
+ * Reads cells through a {@link Hdf5ChunkReader} without taking any lock, so
+ * that several fetcher threads can load concurrently. Datasets that the
+ * {@link Hdf5ChunkReader} does not understand are read through the wrapped
+ * {@link IHDF5Access}.
+ * <p>
+ * The first read from each dataset is compared against the wrapped
+ * {@link IHDF5Access}. If they differ, or if reading directly fails, the
+ * dataset is read through the wrapped {@link IHDF5Access} from then on. How
+ * often that happens is recorded, see {@link #setMetrics(Metrics, String)}.
+ */
+class ConcurrentHDF5Access implements IHDF5Access
+{
+	private final IHDF5Access fallback;
+
+	private final Hdf5ChunkReader chunkReader;
+
+	private volatile Counter directReads = new Counter();
+
+	private volatile Counter fallbacks = new Counter();
+
+	private ConcurrentHDF5Access( final IHDF5Access fallback, final Hdf5ChunkReader chunkReader )
+	{
+		this.fallback = fallback;
+		this.chunkReader = chunkReader;
+	}
+
+	/**
+	 * Wrap {@code access} for concurrent reads, if the file underlying
+	 * {@code hdf5Reader} can be read directly.
+	 *
+	 * @return a {@link ConcurrentHDF5Access}, or {@code access} itself if the
+	 *         file cannot be read directly.
+	 */
+	static IHDF5Access wrap( final IHDF5Access access, final IHDF5Reader hdf5Reader )
+	{
+		try
+		{
+			final File file = hdf5Reader.file().getFile();
+			return new ConcurrentHDF5Access( access, new Hdf5ChunkReader( file ) );
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			return access;
+		}
+	}
+
+	/**
+	 * Record the number of cells read directly ({@code prefix.directReads})
+	 * and the number of datasets that fell back to the HDF5 library after a
+	 * failed or mismatching direct read ({@code prefix.fallbacks}) in
+	 * {@code metrics}.
+	 */
+	void setMetrics( final Metrics metrics, final String prefix )
+	{
+		directReads = metrics.counter( prefix + ".directReads" );
+		fallbacks = metrics.counter( prefix + ".fallbacks" );
+	}
+
+	/**
+	 * Get the number of datasets that fell back to the HDF5 library.
+	 */
+	long getNumFallbacks()
+	{
+		return fallbacks.get();
+	}
+
+	@Override
+	public DimsAndExistence getDimsAndExistence( final ViewLevelId id )
+	{
+		return fallback.getDimsAndExistence( id );
+	}
+
+	@Override
+	public short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final short[] dataBlock = new short[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+		return dataBlock;
+	}
+
+	@Override
+	public short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final short[] dataBlock ) throws InterruptedException
+	{
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+
+		final String path = Util.getCellsPath( timepoint, setup, level );
+		final Hdf5ChunkReader.Dataset dataset = chunkReader.getDataset( path );
+		if ( dataset == null )
+			return fallback.readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+
+		try
+		{
+			chunkReader.readShorts( dataset, Util.reorder( min ), Util.reorder( dimensions ), dataBlock );
+		}
+		catch ( final ClosedByInterruptException e )
+		{
+			throw new InterruptedException();
+		}
+		catch ( final IOException e )
+		{
+			dataset.disable();
+			fallbacks.inc();
+			return fallback.readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+		}
+
+		if ( !dataset.isVerified() )
+		{
+			final short[] expected = fallback.readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min );
+			for ( int i = 0; i < expected.length; ++i )
+			{
+				if ( expected[ i ] != dataBlock[ i ] )
+				{
+					dataset.disable();
+					fallbacks.inc();
+					System.arraycopy( expected, 0, dataBlock, 0, expected.length );
+					return dataBlock;
+				}
+			}
+			dataset.setVerified();
+		}
+
+		directReads.inc();
+		return dataBlock;
+	}
+
+	@Override
+	public float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final float[] dataBlock = new float[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		readShortMDArrayBlockWithOffsetAsFloat( timepoint, setup, level, dimensions, min, dataBlock );
+		return dataBlock;
+	}
+
+	@Override
+	public float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	{
+		final short[] shorts = readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min );
+		for ( int i = 0; i < shorts.length; ++i )
+			dataBlock[ i ] = shorts[ i ] & 0xffff;
+		return dataBlock;
+	}
+
+	@Override
+	public void closeAllDataSets()
+	{
+		chunkReader.clearDatasets();
+		fallback.closeAllDataSets();
+	}
+
+	@Override
+	public void close()
+	{
+		chunkReader.close();
+		fallback.close();
+	}
+}
@@ -0,0 +1,980 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads chunks of 3D {@code short} datasets directly from an HDF5 file,
+ * without going through the HDF5 library.
+ * <p>
+ * The HDF5 library (and jhdf5 on top of it) serializes all calls, so only one
+ * thread can read at a time. This class resolves the dataset path and builds
+ * the chunk index once, and then reads chunks by byte offset with positional
+ * {@link FileChannel} reads, decompressing in the calling thread. Therefore,
+ * any number of threads can read concurrently.
+ * <p>
+ * Only the subset of the format written by BigDataViewer is understood:
+ * superblock version 0 or 1, old-style (symbol table) groups, version 1
+ * object headers, version 3 chunked layout, 16-bit integer datatype, and the
+ * deflate, shuffle, fletcher32, and integer scale-offset filters. Everything
+ * else is reported by {@link #getDataset(String)} returning {@code null}, and
+ * must then be read through the HDF5 library instead.
+ */
+class Hdf5ChunkReader
+{
+	private static final byte[] SIGNATURE = { ( byte ) 0x89, 'H', 'D', 'F', '\r', '\n', 0x1a, '\n' };
+
+	private static final int MSG_DATASPACE = 0x0001;
+
+	private static final int MSG_DATATYPE = 0x0003;
+
+	private static final int MSG_LAYOUT = 0x0008;
+
+	private static final int MSG_FILTER_PIPELINE = 0x000B;
+
+	private static final int MSG_CONTINUATION = 0x0010;
+
+	private static final int MSG_SYMBOL_TABLE = 0x0011;
+
+	private static final int FILTER_DEFLATE = 1;
+
+	private static final int FILTER_SHUFFLE = 2;
+
+	private static final int FILTER_FLETCHER32 = 3;
+
+	private static final int FILTER_SCALEOFFSET = 6;
+
+	/**
+	 * Thrown while parsing, if the file uses a feature that is not supported.
+	 */
+	static class UnsupportedFormatException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedFormatException( final String message )
+		{
+			super( message );
+		}
+	}
+
+	private static class Chunk
+	{
+		final long address;
+
+		final int size;
+
+		final int filterMask;
+
+		Chunk( final long address, final int size, final int filterMask )
+		{
+			this.address = address;
+			this.size = size;
+			this.filterMask = filterMask;
+		}
+	}
+
+	private static class Filter
+	{
+		final int id;
+
+		final int[] clientData;
+
+		Filter( final int id, final int[] clientData )
+		{
+			this.id = id;
+			this.clientData = clientData;
+		}
+	}
+
+	/**
+	 * A 3D chunked {@code short} dataset. All dimensions are in HDF5 order,
+	 * i.e., slowest varying first.
+	 */
+	static class Dataset
+	{
+		private static final Dataset UNSUPPORTED = new Dataset();
+
+		final long[] dimensions;
+
+		final int[] chunkDimensions;
+
+		final long[] gridDimensions;
+
+		final ByteOrder byteOrder;
+
+		final Filter[] filters;
+
+		final Map< Long, Chunk > chunks;
+
+		private volatile boolean supported;
+
+		private volatile boolean verified;
+
+		private Dataset()
+		{
+			dimensions = null;
+			chunkDimensions = null;
+			gridDimensions = null;
+			byteOrder = null;
+			filters = null;
+			chunks = null;
+			supported = false;
+		}
+
+		Dataset( final long[] dimensions, final int[] chunkDimensions, final ByteOrder byteOrder, final Filter[] filters )
+		{
+			this.dimensions = dimensions;
+			this.chunkDimensions = chunkDimensions;
+			this.byteOrder = byteOrder;
+			this.filters = filters;
+			gridDimensions = new long[ dimensions.length ];
+			for ( int d = 0; d < dimensions.length; ++d )
+				gridDimensions[ d ] = ( dimensions[ d ] + chunkDimensions[ d ] - 1 ) / chunkDimensions[ d ];
+			chunks = new HashMap<>();
+			supported = true;
+		}
+
+		long chunkIndex( final long[] gridPosition )
+		{
+			long index = gridPosition[ 0 ];
+			for ( int d = 1; d < gridPosition.length; ++d )
+				index = index * gridDimensions[ d ] + gridPosition[ d ];
+			return index;
+		}
+
+		int numChunkElements()
+		{
+			int n = 1;
+			for ( final int c : chunkDimensions )
+				n *= c;
+			return n;
+		}
+
+		/**
+		 * Whether a read from this dataset has been checked against the HDF5
+		 * library.
+		 */
+		boolean isVerified()
+		{
+			return verified;
+		}
+
+		void setVerified()
+		{
+			verified = true;
+		}
+
+		/**
+		 * Stop reading this dataset directly.
+		 */
+		void disable()
+		{
+			supported = false;
+		}
+	}
+
+	private final File file;
+
+	private volatile FileChannel channel;
+
+	private volatile boolean closed;
+
+	private final long baseAddress;
+
+	private final int sizeOfOffsets;
+
+	private final int sizeOfLengths;
+
+	private final long rootObjectHeaderAddress;
+
+	private final ConcurrentHashMap< String, Dataset > datasets = new ConcurrentHashMap<>();
+
+	/**
+	 * Open {@code file} and read its superblock.
+	 *
+	 * @throws UnsupportedFormatException
+	 *             if the superblock version is not supported.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	Hdf5ChunkReader( final File file ) throws IOException
+	{
+		this.file = file;
+		channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+		try
+		{
+			final long fileSize = channel.size();
+			long superblockAddress = -1;
+			for ( long a = 0; a + 64 <= fileSize; a = ( a == 0 ) ? 512 : 2 * a )
+			{
+				final ByteBuffer b = readAbsolute( a, SIGNATURE.length );
+				final byte[] sig = new byte[ SIGNATURE.length ];
+				b.get( sig );
+				if ( Arrays.equals( sig, SIGNATURE ) )
+				{
+					superblockAddress = a;
+					break;
+				}
+			}
+			if ( superblockAddress < 0 )
+				throw new IOException( "not an HDF5 file: " + file );
+
+			final ByteBuffer sb = readAbsolute( superblockAddress, ( int ) Math.min( 128, fileSize - superblockAddress ) );
+			final int version = sb.get( 8 ) & 0xff;
+			if ( version > 1 )
+				throw new UnsupportedFormatException( "superblock version " + version );
+			sizeOfOffsets = sb.get( 13 ) & 0xff;
+			sizeOfLengths = sb.get( 14 ) & 0xff;
+			if ( !isSupportedSize( sizeOfOffsets ) || !isSupportedSize( sizeOfLengths ) )
+				throw new UnsupportedFormatException( "size of offsets " + sizeOfOffsets + ", size of lengths " + sizeOfLengths );
+
+			sb.position( version == 0 ? 24 : 28 );
+			baseAddress = getOffset( sb );
+			getOffset( sb ); // free-space info address
+			getOffset( sb ); // end of file address
+			getOffset( sb ); // driver information block address
+
+			// root group symbol table entry
+			getOffset( sb ); // link name offset
+			rootObjectHeaderAddress = getOffset( sb );
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the dataset at {@code path}. The dataset is parsed and its chunk
+	 * index is read on the first request.
+	 *
+	 * @return the dataset, or {@code null} if it does not exist, uses an
+	 *         unsupported feature, or was {@link Dataset#disable() disabled}.
+	 */
+	Dataset getDataset( final String path )
+	{
+		Dataset dataset = datasets.get( path );
+		if ( dataset == null )
+		{
+			synchronized ( datasets )
+			{
+				dataset = datasets.get( path );
+				if ( dataset == null )
+				{
+					try
+					{
+						dataset = openDataset( path );
+					}
+					catch ( final IOException | RuntimeException e )
+					{
+						dataset = null;
+					}
+					if ( dataset == null )
+						dataset = Dataset.UNSUPPORTED;
+					datasets.put( path, dataset );
+				}
+			}
+		}
+		return dataset.supported ? dataset : null;
+	}
+
+	/**
+	 * Forget all parsed datasets.
+	 */
+	void clearDatasets()
+	{
+		datasets.clear();
+	}
+
+	/**
+	 * Read a block of {@code dataset}. Parts of the block that are not covered
+	 * by any stored chunk are set to 0.
+	 *
+	 * @param min
+	 *            minimum of the block, in HDF5 order.
+	 * @param dimensions
+	 *            size of the block, in HDF5 order.
+	 * @param dataBlock
+	 *            receives the block, flattened in HDF5 order.
+	 */
+	void readShorts( final Dataset dataset, final long[] min, final int[] dimensions, final short[] dataBlock ) throws IOException
+	{
+		final int[] cd = dataset.chunkDimensions;
+		final long[] gridMin = new long[ 3 ];
+		final long[] gridMax = new long[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+		{
+			gridMin[ d ] = min[ d ] / cd[ d ];
+			gridMax[ d ] = ( min[ d ] + dimensions[ d ] - 1 ) / cd[ d ];
+		}
+
+		final short[] chunkData = new short[ dataset.numChunkElements() ];
+		final long[] gridPosition = new long[ 3 ];
+		for ( gridPosition[ 0 ] = gridMin[ 0 ]; gridPosition[ 0 ] <= gridMax[ 0 ]; ++gridPosition[ 0 ] )
+		{
+			for ( gridPosition[ 1 ] = gridMin[ 1 ]; gridPosition[ 1 ] <= gridMax[ 1 ]; ++gridPosition[ 1 ] )
+			{
+				for ( gridPosition[ 2 ] = gridMin[ 2 ]; gridPosition[ 2 ] <= gridMax[ 2 ]; ++gridPosition[ 2 ] )
+				{
+					final Chunk chunk = dataset.chunks.get( dataset.chunkIndex( gridPosition ) );
+					if ( chunk == null )
+						Arrays.fill( chunkData, ( short ) 0 );
+					else
+						readChunk( dataset, chunk, chunkData );
+					copyIntersection( chunkData, gridPosition, cd, dataBlock, min, dimensions );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close the file. Subsequent reads fail.
+	 */
+	void close()
+	{
+		closed = true;
+		try
+		{
+			channel.close();
+		}
+		catch ( final IOException e )
+		{}
+	}
+
+	private static void copyIntersection( final short[] chunkData, final long[] gridPosition, final int[] chunkDimensions, final short[] dataBlock, final long[] min, final int[] dimensions )
+	{
+		final int[] from = new int[ 3 ];
+		final int[] to = new int[ 3 ];
+		final int[] offsetInBlock = new int[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+		{
+			final long chunkMin = gridPosition[ d ] * chunkDimensions[ d ];
+			final long lo = Math.max( chunkMin, min[ d ] );
+			final long hi = Math.min( chunkMin + chunkDimensions[ d ], min[ d ] + dimensions[ d ] );
+			from[ d ] = ( int ) ( lo - chunkMin );
+			to[ d ] = ( int ) ( hi - chunkMin );
+			offsetInBlock[ d ] = ( int ) ( lo - min[ d ] );
+		}
+		final int length = to[ 2 ] - from[ 2 ];
+		for ( int z = from[ 0 ]; z < to[ 0 ]; ++z )
+		{
+			final int bz = z - from[ 0 ] + offsetInBlock[ 0 ];
+			for ( int y = from[ 1 ]; y < to[ 1 ]; ++y )
+			{
+				final int by = y - from[ 1 ] + offsetInBlock[ 1 ];
+				final int src = ( z * chunkDimensions[ 1 ] + y ) * chunkDimensions[ 2 ] + from[ 2 ];
+				final int dst = ( bz * dimensions[ 1 ] + by ) * dimensions[ 2 ] + offsetInBlock[ 2 ];
+				System.arraycopy( chunkData, src, dataBlock, dst, length );
+			}
+		}
+	}
+
+	private void readChunk( final Dataset dataset, final Chunk chunk, final short[] chunkData ) throws IOException
+	{
+		final ByteBuffer stored = read( chunk.address, chunk.size );
+		byte[] bytes = new byte[ chunk.size ];
+		stored.get( bytes );
+
+		final int numBytes = chunkData.length * 2;
+		final Filter[] filters = dataset.filters;
+		for ( int i = filters.length - 1; i >= 0; --i )
+		{
+			if ( ( chunk.filterMask & ( 1 << i ) ) != 0 )
+				continue;
+			final Filter filter = filters[ i ];
+			switch ( filter.id )
+			{
+			case FILTER_DEFLATE:
+				bytes = inflate( bytes, numBytes );
+				break;
+			case FILTER_SHUFFLE:
+				bytes = unshuffle( bytes, filter.clientData.length > 0 ? filter.clientData[ 0 ] : 2 );
+				break;
+			case FILTER_FLETCHER32:
+				bytes = Arrays.copyOf( bytes, bytes.length - 4 );
+				break;
+			case FILTER_SCALEOFFSET:
+				bytes = decodeScaleOffset( bytes, chunkData.length, filter.clientData, dataset.byteOrder );
+				break;
+			default:
+				throw new UnsupportedFormatException( "filter " + filter.id );
+			}
+		}
+		if ( bytes.length < numBytes )
+			throw new IOException( "chunk at " + chunk.address + " decodes to " + bytes.length + " bytes, expected " + numBytes );
+		ByteBuffer.wrap( bytes ).order( dataset.byteOrder ).asShortBuffer().get( chunkData );
+	}
+
+	private static byte[] inflate( final byte[] compressed, final int expectedSize ) throws IOException
+	{
+		final Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput( compressed );
+			byte[] out = new byte[ Math.max( expectedSize, 64 ) ];
+			int n = 0;
+			while ( !inflater.finished() )
+			{
+				if ( n == out.length )
+					out = Arrays.copyOf( out, 2 * out.length );
+				final int r = inflater.inflate( out, n, out.length - n );
+				if ( r == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) )
+					throw new IOException( "truncated deflate stream" );
+				n += r;
+			}
+			return n == out.length ? out : Arrays.copyOf( out, n );
+		}
+		catch ( final DataFormatException e )
+		{
+			throw new IOException( e );
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+	private static byte[] unshuffle( final byte[] in, final int elementSize )
+	{
+		if ( elementSize <= 1 )
+			return in;
+		final byte[] out = new byte[ in.length ];
+		final int n = in.length / elementSize;
+		for ( int j = 0; j < elementSize; ++j )
+			for ( int i = 0; i < n; ++i )
+				out[ i * elementSize + j ] = in[ j * n + i ];
+		final int tail = n * elementSize;
+		System.arraycopy( in, tail, out, tail, in.length - tail );
+		return out;
+	}
+
+	/**
+	 * Decode the integer variant of the HDF5 scale-offset filter for 16-bit
+	 * elements. The encoded chunk starts with a 21 byte header (number of
+	 * bits per element, size of the minimum value, minimum value), followed
+	 * by the element values minus the minimum, packed big-endian with
+	 * {@code minbits} bits each. If a fill value is defined, the all-ones
+	 * value marks elements that are set to the fill value. With
+	 * {@code minbits == 0}, no element values are stored: all elements are
+	 * the fill value if one is defined, and the minimum otherwise.
+	 */
+	static byte[] decodeScaleOffset( final byte[] in, final int numElements, final int[] clientData, final ByteOrder byteOrder ) throws IOException
+	{
+		final ByteBuffer header = ByteBuffer.wrap( in ).order( ByteOrder.LITTLE_ENDIAN );
+		final int minbits = header.getInt( 0 );
+		final int minvalSize = Math.min( 8, in[ 4 ] & 0xff );
+		long minval = 0;
+		for ( int i = 0; i < minvalSize; ++i )
+			minval |= ( in[ 5 + i ] & 0xffL ) << ( 8 * i );
+
+		final int headerSize = 21;
+		final ByteBuffer out = ByteBuffer.allocate( numElements * 2 ).order( byteOrder );
+		if ( minbits == 16 )
+		{
+			if ( in.length < headerSize + numElements * 2 )
+				throw new IOException( "truncated scale-offset chunk" );
+			final ByteBuffer data = ByteBuffer.wrap( in, headerSize, numElements * 2 ).order( byteOrder );
+			for ( int i = 0; i < numElements; ++i )
+				out.putShort( data.getShort() );
+			return out.array();
+		}
+		if ( minbits < 0 || minbits > 16 || in.length < headerSize + ( ( long ) numElements * minbits + 7 ) / 8 )
+			throw new IOException( "invalid scale-offset chunk" );
+
+		final boolean hasFillValue = clientData[ 7 ] != 0;
+		final int fillValue = hasFillValue ? clientData[ 8 ] : 0;
+		final int offset = ( int ) minval;
+		if ( minbits == 0 )
+		{
+			final short value = ( short ) ( hasFillValue ? fillValue : offset );
+			for ( int i = 0; i < numElements; ++i )
+				out.putShort( value );
+			return out.array();
+		}
+
+		final int marker = ( 1 << minbits ) - 1;
+
+		int pos = headerSize;
+		int bitBuffer = 0;
+		int bitCount = 0;
+		for ( int i = 0; i < numElements; ++i )
+		{
+			while ( bitCount < minbits )
+			{
+				bitBuffer = ( bitBuffer << 8 ) | ( in[ pos++ ] & 0xff );
+				bitCount += 8;
+			}
+			bitCount -= minbits;
+			final int v = ( bitBuffer >>> bitCount ) & marker;
+			bitBuffer &= ( 1 << bitCount ) - 1;
+			out.putShort( ( short ) ( hasFillValue && v == marker ? fillValue : v + offset ) );
+		}
+		return out.array();
+	}
+
+	private Dataset openDataset( final String path ) throws IOException
+	{
+		long address = rootObjectHeaderAddress;
+		for ( final String name : path.split( "/" ) )
+		{
+			if ( name.isEmpty() )
+				continue;
+			address = findChild( address, name );
+			if ( address < 0 )
+				return null;
+		}
+
+		long[] dimensions = null;
+		int[] chunkDimensions = null;
+		long chunkIndexAddress = -1;
+		ByteOrder byteOrder = null;
+		Filter[] filters = new Filter[ 0 ];
+		for ( final Message message : readObjectHeader( address ) )
+		{
+			final ByteBuffer b = message.data;
+			switch ( message.type )
+			{
+			case MSG_DATASPACE:
+			{
+				final int version = b.get( 0 ) & 0xff;
+				final int rank = b.get( 1 ) & 0xff;
+				b.position( version == 1 ? 8 : 4 );
+				dimensions = new long[ rank ];
+				for ( int d = 0; d < rank; ++d )
+					dimensions[ d ] = getLength( b );
+				break;
+			}
+			case MSG_DATATYPE:
+			{
+				final int typeClass = b.get( 0 ) & 0x0f;
+				final int bits = b.get( 1 ) & 0xff;
+				final int size = b.getInt( 4 );
+				if ( typeClass != 0 || size != 2 )
+					throw new UnsupportedFormatException( "datatype class " + typeClass + ", size " + size );
+				byteOrder = ( bits & 0x01 ) == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+				break;
+			}
+			case MSG_LAYOUT:
+			{
+				final int version = b.get( 0 ) & 0xff;
+				final int layoutClass = b.get( 1 ) & 0xff;
+				if ( version != 3 || layoutClass != 2 )
+					throw new UnsupportedFormatException( "layout version " + version + ", class " + layoutClass );
+				final int dimensionality = b.get( 2 ) & 0xff;
+				b.position( 3 );
+				chunkIndexAddress = getOffset( b );
+				// the last dimension is the element size
+				chunkDimensions = new int[ dimensionality - 1 ];
+				for ( int d = 0; d < dimensionality - 1; ++d )
+					chunkDimensions[ d ] = b.getInt();
+				break;
+			}
+			case MSG_FILTER_PIPELINE:
+				filters = parseFilters( b );
+				break;
+			default:
+				break;
+			}
+		}
+
+		if ( dimensions == null || chunkDimensions == null || byteOrder == null )
+			throw new UnsupportedFormatException( "not a chunked dataset: " + path );
+		if ( dimensions.length != 3 || chunkDimensions.length != 3 )
+			throw new UnsupportedFormatException( "dataset is not 3D: " + path );
+		for ( final Filter filter : filters )
+			if ( filter.id == FILTER_SCALEOFFSET && !isSupportedScaleOffset( filter.clientData, byteOrder ) )
+				throw new UnsupportedFormatException( "scale-offset parameters " + Arrays.toString( filter.clientData ) );
+
+		final Dataset dataset = new Dataset( dimensions, chunkDimensions, byteOrder, filters );
+		if ( !isUndefined( chunkIndexAddress ) )
+			readChunkIndex( chunkIndexAddress, dataset );
+		return dataset;
+	}
+
+	/**
+	 * Only integer scaling of 16-bit little-endian values is supported, with
+	 * parameter layout as written by the HDF5 library: scale type, scale
+	 * factor, number of elements, class, size, sign, byte order, fill value
+	 * available, fill value.
+	 */
+	private static boolean isSupportedScaleOffset( final int[] cd, final ByteOrder byteOrder )
+	{
+		return cd.length >= 9
+				&& cd[ 0 ] == 2 // H5Z_SO_INT
+				&& cd[ 3 ] == 0 // integer class
+				&& cd[ 4 ] == 2 // size
+				&& cd[ 6 ] == 0 // little-endian
+				&& byteOrder == ByteOrder.LITTLE_ENDIAN
+				&& ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+	}
+
+	private Filter[] parseFilters( final ByteBuffer b ) throws IOException
+	{
+		final int version = b.get( 0 ) & 0xff;
+		final int numFilters = b.get( 1 ) & 0xff;
+		if ( version != 1 && version != 2 )
+			throw new UnsupportedFormatException( "filter pipeline version " + version );
+		b.position( version == 1 ? 8 : 2 );
+		final Filter[] filters = new Filter[ numFilters ];
+		for ( int i = 0; i < numFilters; ++i )
+		{
+			final int id = b.getShort() & 0xffff;
+			final int nameLength = ( version == 1 || id >= 256 ) ? b.getShort() & 0xffff : 0;
+			b.getShort(); // flags
+			final int numValues = b.getShort() & 0xffff;
+			b.position( b.position() + ( version == 1 ? ( nameLength + 7 ) & ~7 : nameLength ) );
+			final int[] clientData = new int[ numValues ];
+			for ( int j = 0; j < numValues; ++j )
+				clientData[ j ] = b.getInt();
+			if ( version == 1 && numValues % 2 != 0 )
+				b.getInt();
+			switch ( id )
+			{
+			case FILTER_DEFLATE:
+			case FILTER_SHUFFLE:
+			case FILTER_FLETCHER32:
+			case FILTER_SCALEOFFSET:
+				break;
+			default:
+				throw new UnsupportedFormatException( "filter " + id );
+			}
+			filters[ i ] = new Filter( id, clientData );
+		}
+		return filters;
+	}
+
+	/**
+	 * Collect all chunks from the version 1 B-tree (node type 1) at
+	 * {@code address} into {@code dataset.chunks}.
+	 */
+	private void readChunkIndex( final long address, final Dataset dataset ) throws IOException
+	{
+		final int rank = dataset.dimensions.length;
+		final int keySize = 8 + 8 * ( rank + 1 );
+		final int[] cd = dataset.chunkDimensions;
+		final long[] gridPosition = new long[ rank ];
+
+		final ArrayDeque< Long > nodes = new ArrayDeque<>();
+		nodes.add( address );
+		while ( !nodes.isEmpty() )
+		{
+			final long nodeAddress = nodes.poll();
+			final int headerSize = 8 + 2 * sizeOfOffsets;
+			final ByteBuffer header = read( nodeAddress, headerSize );
+			checkSignature( header, "TREE" );
+			final int nodeType = header.get( 4 ) & 0xff;
+			final int level = header.get( 5 ) & 0xff;
+			final int numEntries = header.getShort( 6 ) & 0xffff;
+			if ( nodeType != 1 )
+				throw new UnsupportedFormatException( "expected chunk B-tree node, found type " + nodeType );
+
+			final ByteBuffer b = read( nodeAddress + headerSize, numEntries * ( keySize + sizeOfOffsets ) + keySize );
+			for ( int i = 0; i < numEntries; ++i )
+			{
+				final int size = b.getInt();
+				final int filterMask = b.getInt();
+				for ( int d = 0; d < rank; ++d )
+					gridPosition[ d ] = b.getLong() / cd[ d ];
+				b.getLong(); // offset in the element size dimension
+				final long child = getOffset( b );
+				if ( level > 0 )
+					nodes.add( child );
+				else
+					dataset.chunks.put( dataset.chunkIndex( gridPosition ), new Chunk( child, size, filterMask ) );
+			}
+		}
+	}
+
+	/**
+	 * Find {@code name} in the symbol table of the group with object header
+	 * at {@code groupAddress}.
+	 *
+	 * @return object header address of the child, or -1 if not found.
+	 */
+	private long findChild( final long groupAddress, final String name ) throws IOException
+	{
+		ByteBuffer symbolTable = null;
+		for ( final Message message : readObjectHeader( groupAddress ) )
+			if ( message.type == MSG_SYMBOL_TABLE )
+				symbolTable = message.data;
+		if ( symbolTable == null )
+			throw new UnsupportedFormatException( "group without symbol table" );
+		final long btreeAddress = getOffset( symbolTable );
+		final long heapAddress = getOffset( symbolTable );
+		final byte[] heap = readLocalHeap( heapAddress );
+
+		final ArrayDeque< Long > nodes = new ArrayDeque<>();
+		nodes.add( btreeAddress );
+		while ( !nodes.isEmpty() )
+		{
+			final long nodeAddress = nodes.poll();
+			final int headerSize = 8 + 2 * sizeOfOffsets;
+			final ByteBuffer header = read( nodeAddress, headerSize );
+			checkSignature( header, "TREE" );
+			final int nodeType = header.get( 4 ) & 0xff;
+			final int level = header.get( 5 ) & 0xff;
+			final int numEntries = header.getShort( 6 ) & 0xffff;
+			if ( nodeType != 0 )
+				throw new UnsupportedFormatException( "expected group B-tree node, found type " + nodeType );
+
+			final ByteBuffer b = read( nodeAddress + headerSize, numEntries * ( sizeOfLengths + sizeOfOffsets ) + sizeOfLengths );
+			for ( int i = 0; i < numEntries; ++i )
+			{
+				getLength( b ); // key
+				final long child = getOffset( b );
+				if ( level > 0 )
+					nodes.add( child );
+				else
+				{
+					final long found = findInSymbolTableNode( child, heap, name );
+					if ( found >= 0 )
+						return found;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private long findInSymbolTableNode( final long address, final byte[] heap, final String name ) throws IOException
+	{
+		final ByteBuffer header = read( address, 8 );
+		checkSignature( header, "SNOD" );
+		final int numSymbols = header.getShort( 6 ) & 0xffff;
+		final int entrySize = 2 * sizeOfOffsets + 24;
+		final ByteBuffer b = read( address + 8, numSymbols * entrySize );
+		for ( int i = 0; i < numSymbols; ++i )
+		{
+			b.position( i * entrySize );
+			final long nameOffset = getOffset( b );
+			final long objectHeaderAddress = getOffset( b );
+			final int cacheType = b.getInt();
+			if ( name.equals( heapString( heap, ( int ) nameOffset ) ) )
+			{
+				if ( cacheType == 2 )
+					throw new UnsupportedFormatException( "symbolic link " + name );
+				return objectHeaderAddress;
+			}
+		}
+		return -1;
+	}
+
+	private byte[] readLocalHeap( final long address ) throws IOException
+	{
+		final ByteBuffer b = read( address, 8 + 2 * sizeOfLengths + sizeOfOffsets );
+		checkSignature( b, "HEAP" );
+		b.position( 8 );
+		final long dataSegmentSize = getLength( b );
+		getLength( b ); // free list offset
+		final long dataSegmentAddress = getOffset( b );
+		final ByteBuffer data = read( dataSegmentAddress, ( int ) dataSegmentSize );
+		final byte[] heap = new byte[ ( int ) dataSegmentSize ];
+		data.get( heap );
+		return heap;
+	}
+
+	private static String heapString( final byte[] heap, final int offset )
+	{
+		int end = offset;
+		while ( end < heap.length && heap[ end ] != 0 )
+			++end;
+		return new String( heap, offset, end - offset, StandardCharsets.UTF_8 );
+	}
+
+	private static class Message
+	{
+		final int type;
+
+		final ByteBuffer data;
+
+		Message( final int type, final ByteBuffer data )
+		{
+			this.type = type;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Read all messages of the version 1 object header at {@code address},
+	 * following continuation messages.
+	 */
+	private List< Message > readObjectHeader( final long address ) throws IOException
+	{
+		final ByteBuffer prefix = read( address, 16 );
+		final int version = prefix.get( 0 ) & 0xff;
+		if ( version != 1 )
+			throw new UnsupportedFormatException( "object header version " + version );
+		final int numMessages = prefix.getShort( 2 ) & 0xffff;
+		final long headerSize = prefix.getInt( 8 ) & 0xffffffffL;
+
+		final List< Message > messages = new ArrayList<>();
+		final ArrayDeque< long[] > blocks = new ArrayDeque<>();
+		blocks.add( new long[] { address + 16, headerSize } );
+		int numRead = 0;
+		while ( !blocks.isEmpty() && numRead < numMessages )
+		{
+			final long[] block = blocks.poll();
+			final ByteBuffer b = read( block[ 0 ], ( int ) block[ 1 ] );
+			while ( b.remaining() >= 8 && numRead < numMessages )
+			{
+				final int type = b.getShort() & 0xffff;
+				final int size = b.getShort() & 0xffff;
+				final int flags = b.get() & 0xff;
+				b.position( b.position() + 3 );
+				if ( size > b.remaining() )
+					throw new IOException( "truncated object header message" );
+				final ByteBuffer data = b.slice().order( ByteOrder.LITTLE_ENDIAN );
+				data.limit( size );
+				b.position( b.position() + size );
+				++numRead;
+
+				if ( type == MSG_CONTINUATION )
+					blocks.add( new long[] { getOffset( data ), getLength( data ) } );
+				else
+				{
+					if ( ( flags & 0x02 ) != 0 && ( type == MSG_DATATYPE || type == MSG_FILTER_PIPELINE || type == MSG_LAYOUT ) )
+						throw new UnsupportedFormatException( "shared message " + type );
+					messages.add( new Message( type, data ) );
+				}
+			}
+		}
+		return messages;
+	}
+
+	private static void checkSignature( final ByteBuffer b, final String signature ) throws IOException
+	{
+		for ( int i = 0; i < 4; ++i )
+			if ( b.get( i ) != signature.charAt( i ) )
+				throw new IOException( "expected " + signature + " signature" );
+	}
+
+	private static boolean isSupportedSize( final int size )
+	{
+		return size == 2 || size == 4 || size == 8;
+	}
+
+	private long getOffset( final ByteBuffer b )
+	{
+		return getUnsigned( b, sizeOfOffsets );
+	}
+
+	private long getLength( final ByteBuffer b )
+	{
+		return getUnsigned( b, sizeOfLengths );
+	}
+
+	private static long getUnsigned( final ByteBuffer b, final int size )
+	{
+		switch ( size )
+		{
+		case 2:
+			return b.getShort() & 0xffffL;
+		case 4:
+			return b.getInt() & 0xffffffffL;
+		default:
+			return b.getLong();
+		}
+	}
+
+	private boolean isUndefined( final long address )
+	{
+		return sizeOfOffsets == 8
+				? address == -1L
+				: address == ( 1L << ( 8 * sizeOfOffsets ) ) - 1;
+	}
+
+	/**
+	 * Read {@code length} bytes at {@code address}, relative to the base
+	 * address of the file.
+	 */
+	private ByteBuffer read( final long address, final int length ) throws IOException
+	{
+		return readAbsolute( baseAddress + address, length );
+	}
+
+	/**
+	 * Read {@code length} bytes at absolute file {@code position}. If the
+	 * channel was closed because another reading thread was interrupted, it
+	 * is re-opened. If the calling thread is interrupted,
+	 * {@link ClosedByInterruptException} is thrown.
+	 */
+	private ByteBuffer readAbsolute( final long position, final int length ) throws IOException
+	{
+		final ByteBuffer buf = ByteBuffer.allocate( length ).order( ByteOrder.LITTLE_ENDIAN );
+		while ( true )
+		{
+			final FileChannel ch = channel;
+			try
+			{
+				while ( buf.hasRemaining() )
+					if ( ch.read( buf, position + buf.position() ) < 0 )
+						throw new EOFException( "read beyond end of " + file );
+				buf.flip();
+				return buf;
+			}
+			catch ( final ClosedByInterruptException e )
+			{
+				reopen( ch );
+				throw e;
+			}
+			catch ( final ClosedChannelException e )
+			{
+				if ( closed )
+					throw e;
+				reopen( ch );
+				buf.clear();
+			}
+		}
+	}
+
+	private synchronized void reopen( final FileChannel old ) throws IOException
+	{
+		if ( !closed && channel == old )
+			channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+	}
+}
@@ -40,7 +40,11 @@ import java.util.concurrent.Callable;
 
 import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
+import bdv.img.cache.CacheOptions;
+import bdv.img.cache.CoarsestLevelPreloader;
+import bdv.img.cache.SharedCacheService;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.metrics.Metrics;
 import bdv.util.ConstantRandomAccessible;
 import bdv.util.MipmapTransforms;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
@@ -80,7 +84,7 @@ import net.imglib2.type.volatiles.VolatileUnsignedShortType;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
-public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
+public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader, CacheOptions.Configurable
 {
 	protected File hdf5File;
 
@@ -100,6 +104,10 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 
 	protected FetcherThreads fetchers;
 
+	private SharedCacheService.Client sharedCacheClient;
+
+	private CoarsestLevelPreloader preloader;
+
 	protected Hdf5VolatileShortArrayLoader shortLoader;
 
 	/**
@@ -158,6 +166,23 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 			open();
 	}
 
+	private CacheOptions cacheOptions = CacheOptions.options();
+
+	/**
+	 * Set the options used to create the cache. If the options differ from the
+	 * current ones and the loader is already open, it is {@link #close()
+	 * closed}, and the options take effect when it is re-opened.
+	 */
+	@Override
+	public void setCacheOptions( final CacheOptions options )
+	{
+		if ( !options.equals( cacheOptions ) )
+		{
+			close();
+			cacheOptions = options;
+		}
+	}
+
 	private boolean isOpen = false;
 
 	private void open()
@@ -201,13 +226,34 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 					e.printStackTrace();
 					hdf5Access = new HDF5Access( hdf5Reader );
 				}
+				hdf5Access = ConcurrentHDF5Access.wrap( hdf5Access, hdf5Reader );
 				shortLoader = new Hdf5VolatileShortArrayLoader( hdf5Access );
 
-
-				final int numFetcherThreads = 1;
-				final BlockingFetchQueues< Callable< ? > > queue = new BlockingFetchQueues<>( maxNumLevels, numFetcherThreads );
-				fetchers = new FetcherThreads( queue, numFetcherThreads );
-				cache = new VolatileGlobalCellCache( queue );
+				// reads through the HDF5 library are serialized, so more than
+				// one fetcher thread only helps if chunks can be read directly
+				final int numFetcherThreads = hdf5Access instanceof ConcurrentHDF5Access
+						? Runtime.getRuntime().availableProcessors()
+						: 1;
+				final SharedCacheService sharedCache = cacheOptions.getSharedCache();
+				if ( sharedCache != null )
+				{
+					sharedCacheClient = sharedCache.register( maxNumLevels, numFetcherThreads );
+					cache = new VolatileGlobalCellCache( sharedCacheClient.getQueue(), cacheOptions.createBackingCache( sharedCacheClient ) );
+				}
+				else
+				{
+					final BlockingFetchQueues< Callable< ? > > queue = new BlockingFetchQueues<>( maxNumLevels, numFetcherThreads );
+					fetchers = new FetcherThreads( queue, numFetcherThreads );
+					cache = new VolatileGlobalCellCache( queue, cacheOptions.createBackingCache() );
+				}
+				cache.setNumBackgroundThreads( numFetcherThreads );
+				if ( hdf5File != null )
+				{
+					cache.setMetricsName( hdf5File.getName() );
+					if ( hdf5Access instanceof ConcurrentHDF5Access )
+						( ( ConcurrentHDF5Access ) hdf5Access ).setMetrics( Metrics.getDefault(), cache.getMetricsPrefix() + ".hdf5" );
+				}
+				preloader = CoarsestLevelPreloader.start( this, CoarsestLevelPreloader.getViews( sequenceDescription ), cache );
 			}
 		}
 	}
@@ -226,10 +272,25 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 			{
 				if ( !isOpen )
 					return;
+				if ( preloader != null )
+				{
+					preloader.stop();
+					preloader = null;
+				}
 				isOpen = false;
 
-				fetchers.shutdown();
+				if ( fetchers != null )
+				{
+					fetchers.shutdown();
+					fetchers = null;
+				}
+				if ( sharedCacheClient != null )
+				{
+					sharedCacheClient.close();
+					sharedCacheClient = null;
+				}
 				cache.clearCache();
+				cache.removeMetrics();
 				hdf5Access.closeAllDataSets();
 
 				// only close reader if we constructed it ourselves
@@ -0,0 +1,524 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bdv.util.MovingAverage;
+
+/**
+ * Shared HTTP transport for remote image loaders.
+ * <p>
+ * Requests are made through {@link HttpURLConnection}, which keeps idle
+ * connections alive and re-uses them for subsequent requests to the same host,
+ * provided that response bodies are read completely and closed. This class
+ * makes sure that happens (also for error responses), and adds connect and
+ * read timeouts, a limit on concurrent requests per host, and retries with
+ * exponential backoff for failed connections, server errors ({@code 5xx}) and
+ * {@code 429 Too Many Requests}.
+ * <p>
+ * The number of idle connections per host that {@link HttpURLConnection} keeps
+ * alive is a JVM-wide setting, the system property {@code http.maxConnections}
+ * (default 5). It is read once, when the first connection is kept alive, so it
+ * must be set at launch, e.g., {@code -Dhttp.maxConnections=32}. If it is lower
+ * than the {@link #getMaxConnectionsPerHost() number of concurrent requests},
+ * the surplus connections are closed after use instead of being re-used.
+ * <p>
+ * Request latency and received bytes are recorded and can be queried for
+ * statistics.
+ */
+public class HttpTransport
+{
+	/**
+	 * Thrown for responses with a status code that is not retried (e.g.,
+	 * {@code 404 Not Found}).
+	 */
+	public static class HttpStatusException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int statusCode;
+
+		public HttpStatusException( final URL url, final int statusCode )
+		{
+			super( "HTTP " + statusCode + " for " + url );
+			this.statusCode = statusCode;
+		}
+
+		public int getStatusCode()
+		{
+			return statusCode;
+		}
+	}
+
+	private static volatile HttpTransport defaultTransport;
+
+	/**
+	 * Get the transport shared by all remote image loaders. It is created with
+	 * default settings on first use, unless {@link #setDefault(HttpTransport)}
+	 * was called before.
+	 */
+	public static HttpTransport getDefault()
+	{
+		HttpTransport t = defaultTransport;
+		if ( t == null )
+		{
+			synchronized ( HttpTransport.class )
+			{
+				t = defaultTransport;
+				if ( t == null )
+				{
+					t = new HttpTransport();
+					defaultTransport = t;
+				}
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Set the transport shared by all remote image loaders. Loaders that are
+	 * already open keep using the previous one.
+	 */
+	public static void setDefault( final HttpTransport transport )
+	{
+		defaultTransport = transport;
+	}
+
+	private final int connectTimeoutMillis;
+
+	private final int readTimeoutMillis;
+
+	private final int maxConnectionsPerHost;
+
+	private final int maxRetries;
+
+	private final long initialBackoffMillis;
+
+	private final ConcurrentHashMap< String, Semaphore > hostPermits = new ConcurrentHashMap<>();
+
+	private final AtomicLong numRequests = new AtomicLong();
+
+	private final AtomicLong numRetries = new AtomicLong();
+
+	private final AtomicLong numFailures = new AtomicLong();
+
+	private final AtomicLong bytesReceived = new AtomicLong();
+
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+	private final MovingAverage recentLatencyMillis = new MovingAverage( 32 );
+
+	/**
+	 * Create a transport with default settings: 5 s connect timeout, 30 s read
+	 * timeout, 16 concurrent requests per host, and 3 retries starting with 100
+	 * ms backoff.
+	 */
+	public HttpTransport()
+	{
+		this( 5000, 30000, 16, 3, 100 );
+	}
+
+	/**
+	 * @param connectTimeoutMillis
+	 *            timeout for establishing a connection.
+	 * @param readTimeoutMillis
+	 *            timeout for reading from an established connection.
+	 * @param maxConnectionsPerHost
+	 *            maximum number of concurrent requests per host. Further
+	 *            requests block until one finishes.
+	 * @param maxRetries
+	 *            how often a failed request is retried.
+	 * @param initialBackoffMillis
+	 *            wait time before the first retry. It doubles for every
+	 *            further retry.
+	 */
+	public HttpTransport(
+			final int connectTimeoutMillis,
+			final int readTimeoutMillis,
+			final int maxConnectionsPerHost,
+			final int maxRetries,
+			final long initialBackoffMillis )
+	{
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.maxRetries = maxRetries;
+		this.initialBackoffMillis = initialBackoffMillis;
+		recentLatencyMillis.init( 0 );
+	}
+
+	/**
+	 * Get a transport with the same timeouts and retry settings as this one,
+	 * but allowing {@code maxConnectionsPerHost} concurrent requests per host.
+	 * Loaders that issue many requests in parallel (e.g., with
+	 * {@code VirtualThreadFetchers}) should use a transport whose per-host
+	 * limit matches their number of concurrent fetches. Otherwise, most
+	 * fetches just wait for a permit of the transport.
+	 * <p>
+	 * This does not change how many connections are kept alive for re-use,
+	 * see {@link #getMaxKeepAliveConnections()}.
+	 *
+	 * @return {@code this}, if it already has the requested limit, or a new
+	 *         transport.
+	 */
+	public HttpTransport withMaxConnectionsPerHost( final int maxConnectionsPerHost )
+	{
+		if ( maxConnectionsPerHost == this.maxConnectionsPerHost )
+			return this;
+		return new HttpTransport( connectTimeoutMillis, readTimeoutMillis, maxConnectionsPerHost, maxRetries, initialBackoffMillis );
+	}
+
+	public int getMaxConnectionsPerHost()
+	{
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Get the number of idle connections per host that
+	 * {@link HttpURLConnection} keeps alive, i.e., the system property
+	 * {@code http.maxConnections} (default 5). This is a JVM-wide setting that
+	 * takes effect only if set at launch.
+	 */
+	public static int getMaxKeepAliveConnections()
+	{
+		final int value = Integer.getInteger( "http.maxConnections", 5 );
+		return value > 0 ? value : 5;
+	}
+
+	/**
+	 * GET the resource at {@code url} and return the complete response body.
+	 *
+	 * @throws HttpStatusException
+	 *             if the server responds with a status code that is not
+	 *             retried, or retries are exhausted.
+	 * @throws IOException
+	 *             if the request failed after all retries.
+	 */
+	public byte[] get( final String url ) throws IOException
+	{
+		return get( new URL( url ) );
+	}
+
+	/**
+	 * GET the resource at {@code url} and return the complete response body.
+	 *
+	 * @throws HttpStatusException
+	 *             if the server responds with a status code that is not
+	 *             retried, or retries are exhausted.
+	 * @throws IOException
+	 *             if the request failed after all retries.
+	 */
+	public byte[] get( final URL url ) throws IOException
+	{
+		return request( url, 0, -1 ).bytes;
+	}
+
+	/**
+	 * Part of a resource, received in response to a range request.
+	 */
+	public static class Range
+	{
+		/**
+		 * The requested bytes. This may be shorter than requested, if the
+		 * range extends beyond the end of the resource.
+		 */
+		public final byte[] bytes;
+
+		/**
+		 * The size of the complete resource, or -1 if the server did not
+		 * report it.
+		 */
+		public final long totalLength;
+
+		Range( final byte[] bytes, final long totalLength )
+		{
+			this.bytes = bytes;
+			this.totalLength = totalLength;
+		}
+	}
+
+	/**
+	 * GET {@code length} bytes starting at {@code offset} of the resource at
+	 * {@code url}, using an HTTP range request. If the server ignores the
+	 * range and sends the complete resource, the requested part is cut out.
+	 *
+	 * @throws HttpStatusException
+	 *             if the server responds with a status code that is not
+	 *             retried, or retries are exhausted.
+	 * @throws IOException
+	 *             if the request failed after all retries.
+	 */
+	public Range getRange( final URL url, final long offset, final int length ) throws IOException
+	{
+		return request( url, offset, length );
+	}
+
+	private Range request( final URL url, final long offset, final int length ) throws IOException
+	{
+		final Semaphore permits = hostPermits.computeIfAbsent(
+				url.getHost() + ":" + url.getPort(),
+				k -> new Semaphore( maxConnectionsPerHost, true ) );
+		try
+		{
+			permits.acquire();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+
+		try
+		{
+			long backoff = initialBackoffMillis;
+			for ( int attempt = 0;; ++attempt )
+			{
+				try
+				{
+					return tryGet( url, offset, length );
+				}
+				catch ( final IOException e )
+				{
+					if ( attempt >= maxRetries || !isRetryable( e ) || Thread.currentThread().isInterrupted() )
+					{
+						numFailures.incrementAndGet();
+						throw e;
+					}
+				}
+				numRetries.incrementAndGet();
+				try
+				{
+					Thread.sleep( backoff );
+				}
+				catch ( final InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+				backoff *= 2;
+			}
+		}
+		finally
+		{
+			permits.release();
+		}
+	}
+
+	/**
+	 * @param length
+	 *            number of bytes to request starting at {@code offset}, or
+	 *            negative to request the complete resource.
+	 */
+	private Range tryGet( final URL url, final long offset, final int length ) throws IOException
+	{
+		final long t0 = System.nanoTime();
+		numRequests.incrementAndGet();
+		final HttpURLConnection connection = ( HttpURLConnection ) url.openConnection();
+		connection.setConnectTimeout( connectTimeoutMillis );
+		connection.setReadTimeout( readTimeoutMillis );
+		connection.setRequestMethod( "GET" );
+		final boolean isRangeRequest = length >= 0;
+		if ( isRangeRequest )
+			connection.setRequestProperty( "Range", "bytes=" + offset + "-" + ( offset + length - 1 ) );
+
+		final int status = connection.getResponseCode();
+		if ( status != HttpURLConnection.HTTP_OK && !( isRangeRequest && status == HttpURLConnection.HTTP_PARTIAL ) )
+		{
+			// consume the error body, so that the connection can be re-used
+			final InputStream err = connection.getErrorStream();
+			if ( err != null )
+			{
+				try
+				{
+					readFully( err, -1 );
+				}
+				finally
+				{
+					err.close();
+				}
+			}
+			throw new HttpStatusException( url, status );
+		}
+
+		byte[] bytes;
+		try (final InputStream in = connection.getInputStream())
+		{
+			bytes = readFully( in, connection.getContentLength() );
+		}
+
+		final long latency = System.nanoTime() - t0;
+		bytesReceived.addAndGet( bytes.length );
+		totalLatencyNanos.addAndGet( latency );
+		synchronized ( recentLatencyMillis )
+		{
+			recentLatencyMillis.add( latency / 1e6 );
+		}
+
+		long totalLength = bytes.length;
+		if ( status == HttpURLConnection.HTTP_PARTIAL )
+			totalLength = parseTotalLength( connection.getHeaderField( "Content-Range" ) );
+		else if ( isRangeRequest )
+		{
+			// the server ignored the range and sent everything
+			final int from = ( int ) Math.min( offset, bytes.length );
+			bytes = Arrays.copyOfRange( bytes, from, ( int ) Math.min( ( long ) from + length, bytes.length ) );
+		}
+		return new Range( bytes, totalLength );
+	}
+
+	/**
+	 * Parse the complete length from a {@code Content-Range} header of the form
+	 * {@code bytes <first>-<last>/<total>}.
+	 *
+	 * @return the complete length, or -1 if it is unknown.
+	 */
+	static long parseTotalLength( final String contentRange )
+	{
+		if ( contentRange == null )
+			return -1;
+		final int slash = contentRange.lastIndexOf( '/' );
+		if ( slash < 0 )
+			return -1;
+		try
+		{
+			return Long.parseLong( contentRange.substring( slash + 1 ).trim() );
+		}
+		catch ( final NumberFormatException e )
+		{
+			return -1;
+		}
+	}
+
+	private static boolean isRetryable( final IOException e )
+	{
+		if ( e instanceof HttpStatusException )
+		{
+			final int status = ( ( HttpStatusException ) e ).getStatusCode();
+			return status >= 500 || status == 429;
+		}
+		return true;
+	}
+
+	/**
+	 * Read {@code contentLength} bytes from {@code in}, or everything until the
+	 * end of the stream if {@code contentLength} is unknown (negative).
+	 */
+	public static byte[] readFully( final InputStream in, final int contentLength ) throws IOException
+	{
+		if ( contentLength >= 0 )
+		{
+			final byte[] buf = new byte[ contentLength ];
+			int i = 0;
+			for ( int l = in.read( buf, 0, buf.length ); l > 0; l = in.read( buf, i, buf.length - i ) )
+				i += l;
+			if ( i < contentLength )
+				throw new IOException( "Expected " + contentLength + " bytes, received " + i + "." );
+			return buf;
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buf = new byte[ 8192 ];
+		for ( int l = in.read( buf ); l >= 0; l = in.read( buf ) )
+			out.write( buf, 0, l );
+		return out.toByteArray();
+	}
+
+	/**
+	 * Get the number of requests made, including retries.
+	 */
+	public long getNumRequests()
+	{
+		return numRequests.get();
+	}
+
+	/**
+	 * Get the number of retried requests.
+	 */
+	public long getNumRetries()
+	{
+		return numRetries.get();
+	}
+
+	/**
+	 * Get the number of requests that failed after all retries.
+	 */
+	public long getNumFailures()
+	{
+		return numFailures.get();
+	}
+
+	/**
+	 * Get the total number of bytes received in response bodies.
+	 */
+	public long getBytesReceived()
+	{
+		return bytesReceived.get();
+	}
+
+	/**
+	 * Get the mean latency of successful requests (from sending the request to
+	 * receiving the complete response) in milliseconds.
+	 */
+	public double getMeanLatencyMillis()
+	{
+		final long n = numRequests.get() - numRetries.get() - numFailures.get();
+		return n <= 0 ? 0 : totalLatencyNanos.get() / 1e6 / n;
+	}
+
+	/**
+	 * Get the average latency of the last 32 successful requests in
+	 * milliseconds.
+	 */
+	public double getRecentLatencyMillis()
+	{
+		synchronized ( recentLatencyMillis )
+		{
+			return recentLatencyMillis.getAverage();
+		}
+	}
+
+	/**
+	 * Get the throughput of a single connection, i.e., received bytes divided
+	 * by the time spent in successful requests, in bytes per second.
+	 */
+	public double getThroughputBytesPerSecond()
+	{
+		final long nanos = totalLatencyNanos.get();
+		return nanos <= 0 ? 0 : bytesReceived.get() * 1e9 / nanos;
+	}
+}
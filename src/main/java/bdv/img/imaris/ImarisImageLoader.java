@@ -36,6 +36,9 @@ import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.cache.CacheControl;
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.CacheOptions;
+import bdv.img.cache.CoarsestLevelPreloader;
+import bdv.img.cache.SharedCacheService;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.img.hdf5.MipmapInfo;
 import bdv.img.hdf5.ViewLevelId;
@@ -59,10 +62,12 @@ import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.volatiles.VolatileUnsignedShortType;
 
-public class ImarisImageLoader< T extends NativeType< T >, V extends Volatile< T > & NativeType< V > , A extends VolatileAccess > implements ViewerImgLoader
+public class ImarisImageLoader< T extends NativeType< T >, V extends Volatile< T > & NativeType< V > , A extends VolatileAccess > implements ViewerImgLoader, CacheOptions.Configurable
 {
 	private final DataType< T, V, A > dataType;
 
+	private IHDF5Reader hdf5Reader;
+
 	private IHDF5Access hdf5Access;
 
 	private final MipmapInfo mipmapInfo;
@@ -75,6 +80,10 @@ public class ImarisImageLoader< T extends NativeType< T >, V extends Volatile< T
 
 	private VolatileGlobalCellCache cache;
 
+	private SharedCacheService.Client sharedCacheClient;
+
+	private CoarsestLevelPreloader preloader;
+
 	private CacheArrayLoader< A > loader;
 
 	private final HashMap< Integer, SetupImgLoader > setupImgLoaders;
@@ -94,6 +103,18 @@ public class ImarisImageLoader< T extends NativeType< T >, V extends Volatile< T
 		this.setupImgLoaders = new HashMap<>();
 	}
 
+	private CacheOptions cacheOptions = CacheOptions.options();
+
+	/**
+	 * Set the options used to create the cache. This must be called before
+	 * the loader is opened, i.e., before any images are requested.
+	 */
+	@Override
+	public void setCacheOptions( final CacheOptions options )
+	{
+		cacheOptions = options;
+	}
+
 	private boolean isOpen = false;
 
 	private void open()
@@ -106,7 +127,7 @@ public class ImarisImageLoader< T extends NativeType< T >, V extends Volatile< T
 					return;
 				isOpen = true;
 
-				final IHDF5Reader hdf5Reader = HDF5Factory.openForReading( hdf5File );
+				hdf5Reader = HDF5Factory.openForReading( hdf5File );
 
 				final List< ? extends BasicViewSetup > setups = sequenceDescription.getViewSetupsOrdered();
 
@@ -121,13 +142,55 @@ public class ImarisImageLoader< T extends NativeType< T >, V extends Volatile< T
 					throw new RuntimeException( e );
 				}
 				loader = dataType.createArrayLoader( hdf5Access );
-				cache = new VolatileGlobalCellCache( maxNumLevels, 1 );
+				final SharedCacheService sharedCache = cacheOptions.getSharedCache();
+				if ( sharedCache != null )
+				{
+					sharedCacheClient = sharedCache.register( maxNumLevels, 1 );
+					cache = new VolatileGlobalCellCache( sharedCacheClient.getQueue(), cacheOptions.createBackingCache( sharedCacheClient ) );
+				}
+				else
+					cache = new VolatileGlobalCellCache( maxNumLevels, 1, cacheOptions.createBackingCache() );
+				cache.setMetricsName( hdf5File.getName() );
 
 				for ( final BasicViewSetup setup : setups )
 				{
 					final int setupId = setup.getId();
 					setupImgLoaders.put( setupId, new SetupImgLoader( setupId ) );
 				}
+
+				preloader = CoarsestLevelPreloader.start( this, CoarsestLevelPreloader.getViews( sequenceDescription ), cache );
+			}
+		}
+	}
+
+	/**
+	 * Clear the cache and close the hdf5 file. Images that were obtained from
+	 * this loader before {@link #close()} will stop working. Requesting images
+	 * after {@link #close()} will cause the hdf5 file to be reopened (with a
+	 * new cache).
+	 */
+	public void close()
+	{
+		if ( isOpen )
+		{
+			synchronized ( this )
+			{
+				if ( !isOpen )
+					return;
+				if ( preloader != null )
+				{
+					preloader.stop();
+					preloader = null;
+				}
+				if ( sharedCacheClient != null )
+				{
+					sharedCacheClient.close();
+					sharedCacheClient = null;
+				}
+				cache.clearCache();
+				cache.removeMetrics();
+				hdf5Reader.close();
+				isOpen = false;
 			}
 		}
 	}
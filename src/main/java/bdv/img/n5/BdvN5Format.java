@@ -33,6 +33,17 @@ public class BdvN5Format
 	public static final String DOWNSAMPLING_FACTORS_KEY = "downsamplingFactors";
 	public static final String DATA_TYPE_KEY = "dataType";
 
+	/**
+	 * Dataset attribute of sharded datasets: number of blocks per shard in
+	 * each dimension.
+	 */
+	public static final String SHARD_SIZE_KEY = "shardSize";
+
+	/**
+	 * Size in bytes of one entry (offset and length) of a shard index.
+	 */
+	public static final int SHARD_INDEX_ENTRY_BYTES = 16;
+
 	public static String getPathName( final int setupId )
 	{
 		return String.format( "setup%d", setupId );
@@ -47,4 +58,16 @@ public class BdvN5Format
 	{
 		return String.format( "setup%d/timepoint%d/s%d", setupId, timepointId, level );
 	}
+
+	/**
+	 * Get the path of the shard file at {@code shardPosition} (in units of
+	 * shards) of the dataset at {@code datasetPathName}.
+	 */
+	public static String getShardPathName( final String datasetPathName, final long... shardPosition )
+	{
+		final StringBuilder sb = new StringBuilder( datasetPathName ).append( "/shards" );
+		for ( final long p : shardPosition )
+			sb.append( '/' ).append( p );
+		return sb.toString();
+	}
 }
@@ -0,0 +1,293 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import bdv.img.http.HttpTransport;
+import bdv.img.http.HttpTransport.HttpStatusException;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.janelia.saalfeldlab.n5.AbstractGsonReader;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockReader;
+import org.janelia.saalfeldlab.n5.GsonAttributesParser;
+
+/**
+ * {@link org.janelia.saalfeldlab.n5.N5Reader} for an N5 container served by a
+ * plain static HTTP file server, with the same layout as on the file system.
+ * <p>
+ * Blocks are fetched with HTTP range requests of at most
+ * {@link #getRangeSize()} bytes. If a block is larger, the remaining ranges
+ * are requested in parallel. Attributes are fetched once and cached, so
+ * changes on the server are not seen. Listing groups is not supported.
+ * <p>
+ * Blocks of sharded datasets are read with a single range request each.
+ */
+public class N5HttpReader extends AbstractGsonReader implements N5ShardAccess
+{
+	private static final String ATTRIBUTES_FILE = "attributes.json";
+
+	private static final int DEFAULT_RANGE_SIZE = 512 * 1024;
+
+	private static final ExecutorService rangeExecutor = Executors.newCachedThreadPool( new ThreadFactory() );
+
+	private final String baseUrl;
+
+	private final HttpTransport transport;
+
+	private final int rangeSize;
+
+	private final ConcurrentHashMap< String, HashMap< String, JsonElement > > attributesCache = new ConcurrentHashMap<>();
+
+	public N5HttpReader( final URI uri ) throws IOException
+	{
+		this( uri.toString(), HttpTransport.getDefault(), DEFAULT_RANGE_SIZE );
+	}
+
+	/**
+	 * @param baseUrl
+	 *            URL of the root of the N5 container.
+	 * @param transport
+	 *            used for all requests.
+	 * @param rangeSize
+	 *            maximum number of bytes requested at once.
+	 */
+	public N5HttpReader( final String baseUrl, final HttpTransport transport, final int rangeSize ) throws IOException
+	{
+		super( new GsonBuilder() );
+		this.baseUrl = baseUrl.endsWith( "/" ) ? baseUrl.substring( 0, baseUrl.length() - 1 ) : baseUrl;
+		this.transport = transport;
+		this.rangeSize = rangeSize;
+	}
+
+	public String getBaseUrl()
+	{
+		return baseUrl;
+	}
+
+	public int getRangeSize()
+	{
+		return rangeSize;
+	}
+
+	@Override
+	public HashMap< String, JsonElement > getAttributes( final String pathName ) throws IOException
+	{
+		final String key = normalize( pathName );
+		HashMap< String, JsonElement > attributes = attributesCache.get( key );
+		if ( attributes == null )
+		{
+			attributes = fetchAttributes( key );
+			attributesCache.put( key, attributes );
+		}
+		return new HashMap<>( attributes );
+	}
+
+	private HashMap< String, JsonElement > fetchAttributes( final String pathName ) throws IOException
+	{
+		final byte[] bytes;
+		try
+		{
+			bytes = transport.get( getUrl( pathName, ATTRIBUTES_FILE ) );
+		}
+		catch ( final HttpStatusException e )
+		{
+			if ( e.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND )
+				return new HashMap<>();
+			throw e;
+		}
+		try (final InputStreamReader reader = new InputStreamReader( new ByteArrayInputStream( bytes ), StandardCharsets.UTF_8 ))
+		{
+			final HashMap< String, JsonElement > attributes = GsonAttributesParser.readAttributes( reader, getGson() );
+			return attributes == null ? new HashMap<>() : attributes;
+		}
+	}
+
+	/**
+	 * A group or dataset exists if it has an {@code attributes.json} file.
+	 * (Static file servers cannot tell whether a directory exists.)
+	 */
+	@Override
+	public boolean exists( final String pathName )
+	{
+		try
+		{
+			return !getAttributes( pathName ).isEmpty();
+		}
+		catch ( final IOException e )
+		{
+			return false;
+		}
+	}
+
+	@Override
+	public String[] list( final String pathName ) throws IOException
+	{
+		throw new IOException( "Listing groups is not supported over HTTP: " + baseUrl );
+	}
+
+	@Override
+	public DataBlock< ? > readBlock( final String pathName, final DatasetAttributes datasetAttributes, final long... gridPosition ) throws IOException
+	{
+		final String[] components = new String[ gridPosition.length ];
+		for ( int d = 0; d < gridPosition.length; ++d )
+			components[ d ] = Long.toString( gridPosition[ d ] );
+		final URL url = getUrl( normalize( pathName ), components );
+
+		final HttpTransport.Range first;
+		try
+		{
+			first = transport.getRange( url, 0, rangeSize );
+		}
+		catch ( final HttpStatusException e )
+		{
+			if ( e.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND )
+				return null;
+			throw e;
+		}
+
+		final byte[] bytes = first.totalLength > first.bytes.length
+				? readRemainingRanges( url, first )
+				: first.bytes;
+		return DefaultBlockReader.readBlock( new ByteArrayInputStream( bytes ), datasetAttributes, gridPosition );
+	}
+
+	@Override
+	public byte[] read( final String pathName, final long offset, final int length ) throws IOException
+	{
+		try
+		{
+			return transport.getRange( getUrl( normalize( pathName ) ), offset, length ).bytes;
+		}
+		catch ( final HttpStatusException e )
+		{
+			if ( e.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND )
+				return null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Request the remainder of the resource at {@code url} after
+	 * {@code first} in parallel ranges, and concatenate everything.
+	 */
+	private byte[] readRemainingRanges( final URL url, final HttpTransport.Range first ) throws IOException
+	{
+		final long totalLength = first.totalLength;
+		if ( totalLength > Integer.MAX_VALUE )
+			throw new IOException( "Block too large: " + url );
+		final byte[] bytes = new byte[ ( int ) totalLength ];
+		System.arraycopy( first.bytes, 0, bytes, 0, first.bytes.length );
+
+		final List< Future< ? > > futures = new ArrayList<>();
+		for ( long offset = first.bytes.length; offset < totalLength; offset += rangeSize )
+		{
+			final int start = ( int ) offset;
+			final int length = ( int ) Math.min( rangeSize, totalLength - offset );
+			futures.add( rangeExecutor.submit( () -> {
+				final byte[] part = transport.getRange( url, start, length ).bytes;
+				if ( part.length != length )
+					throw new IOException( "Expected " + length + " bytes at offset " + start + ", received " + part.length + ": " + url );
+				System.arraycopy( part, 0, bytes, start, length );
+				return null;
+			} ) );
+		}
+
+		try
+		{
+			for ( final Future< ? > future : futures )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			futures.forEach( f -> f.cancel( true ) );
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch ( final ExecutionException e )
+		{
+			futures.forEach( f -> f.cancel( true ) );
+			final Throwable cause = e.getCause();
+			if ( cause instanceof IOException )
+				throw ( IOException ) cause;
+			throw new IOException( cause );
+		}
+		return bytes;
+	}
+
+	private URL getUrl( final String pathName, final String... components ) throws IOException
+	{
+		final StringBuilder sb = new StringBuilder( baseUrl );
+		if ( !pathName.isEmpty() )
+			sb.append( '/' ).append( pathName );
+		for ( final String component : components )
+			sb.append( '/' ).append( component );
+		return new URL( sb.toString() );
+	}
+
+	private static String normalize( final String pathName )
+	{
+		String p = pathName;
+		while ( p.startsWith( "/" ) )
+			p = p.substring( 1 );
+		while ( p.endsWith( "/" ) )
+			p = p.substring( 0, p.length() - 1 );
+		return p;
+	}
+
+	private static class ThreadFactory implements java.util.concurrent.ThreadFactory
+	{
+		private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+		@Override
+		public Thread newThread( final Runnable r )
+		{
+			final Thread t = new Thread( r, "n5-http-range-" + threadNumber.getAndIncrement() );
+			t.setDaemon( true );
+			return t;
+		}
+	}
+}
@@ -31,16 +31,22 @@ package bdv.img.n5;
 import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.cache.CacheControl;
+import bdv.img.cache.CacheOptions;
+import bdv.img.cache.CoarsestLevelPreloader;
+import bdv.img.cache.SharedCacheService;
 import bdv.img.cache.SimpleCacheArrayLoader;
+import bdv.img.cache.UniformArrays;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.util.ConstantRandomAccessible;
 import bdv.util.MipmapTransforms;
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
 import mpicbg.spim.data.generic.sequence.BasicViewSetup;
@@ -93,11 +99,12 @@ import org.janelia.saalfeldlab.n5.*;
 
 import static bdv.img.n5.BdvN5Format.DATA_TYPE_KEY;
 import static bdv.img.n5.BdvN5Format.DOWNSAMPLING_FACTORS_KEY;
+import static bdv.img.n5.BdvN5Format.SHARD_SIZE_KEY;
 import static bdv.img.n5.BdvN5Format.getPathName;
 
-public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
+public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader, CacheOptions.Configurable
 {
-	private final File n5File;
+	private final URI n5Uri;
 
 	// TODO: it would be good if this would not be needed
 	//       find available setups from the n5
@@ -110,19 +117,65 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 
 	public N5ImageLoader( final File n5File, final AbstractSequenceDescription< ?, ?, ? > sequenceDescription )
 	{
-		this.n5File = n5File;
+		this( n5File.toURI(), sequenceDescription );
+	}
+
+	/**
+	 * @param n5Uri
+	 *            location of the N5 container. The URI scheme selects the
+	 *            storage backend, see {@link N5Readers}.
+	 */
+	public N5ImageLoader( final URI n5Uri, final AbstractSequenceDescription< ?, ?, ? > sequenceDescription )
+	{
+		this.n5Uri = n5Uri;
 		this.seq = sequenceDescription;
 	}
 
+	/**
+	 * Get the local N5 directory, or {@code null} if the container is not read
+	 * with the default {@code file:} backend.
+	 */
 	public File getN5File()
 	{
-		return n5File;
+		return N5Readers.isFile( n5Uri ) ? new File( n5Uri.getPath() ) : null;
+	}
+
+	public URI getN5Uri()
+	{
+		return n5Uri;
+	}
+
+	private CacheOptions cacheOptions = CacheOptions.options();
+
+	/**
+	 * Set the options used to create the cache. If the options differ from the
+	 * current ones and the loader is already open, it is {@link #close()
+	 * closed}, and the options take effect when it is re-opened.
+	 */
+	@Override
+	public void setCacheOptions( final CacheOptions options )
+	{
+		if ( !options.equals( cacheOptions ) )
+		{
+			close();
+			cacheOptions = options;
+		}
 	}
 
 	private volatile boolean isOpen = false;
 	private FetcherThreads fetchers;
+	private SharedCacheService.Client sharedCacheClient;
+
+	private CoarsestLevelPreloader preloader;
 	private VolatileGlobalCellCache cache;
 	private N5Reader n5;
+	private N5ShardAccess shardAccess;
+
+	/**
+	 * Maps dataset path to loader, so that shard indices are read only once
+	 * per dataset.
+	 */
+	private final Map< String, SimpleCacheArrayLoader< ? > > cacheArrayLoaders = new ConcurrentHashMap<>();
 
 	private void open()
 	{
@@ -135,7 +188,8 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 
 				try
 				{
-					this.n5 = new N5FSReader( n5File.getAbsolutePath() );
+					this.n5 = N5Readers.open( n5Uri );
+					this.shardAccess = N5Readers.getShardAccess( n5Uri, n5 );
 
 					int maxNumLevels = 0;
 					final List< ? extends BasicViewSetup > setups = seq.getViewSetupsOrdered();
@@ -148,9 +202,21 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 					}
 
 					final int numFetcherThreads = Math.max( 1, Runtime.getRuntime().availableProcessors() );
-					final BlockingFetchQueues< Callable< ? > > queue = new BlockingFetchQueues<>( maxNumLevels, numFetcherThreads );
-					fetchers = new FetcherThreads( queue, numFetcherThreads );
-					cache = new VolatileGlobalCellCache( queue );
+					final SharedCacheService sharedCache = cacheOptions.getSharedCache();
+					if ( sharedCache != null )
+					{
+						sharedCacheClient = sharedCache.register( maxNumLevels, numFetcherThreads );
+						cache = new VolatileGlobalCellCache( sharedCacheClient.getQueue(), cacheOptions.createBackingCache( sharedCacheClient ) );
+					}
+					else
+					{
+						final BlockingFetchQueues< Callable< ? > > queue = new BlockingFetchQueues<>( maxNumLevels, numFetcherThreads );
+						fetchers = new FetcherThreads( queue, numFetcherThreads );
+						cache = new VolatileGlobalCellCache( queue, cacheOptions.createBackingCache() );
+					}
+					cache.setNumBackgroundThreads( numFetcherThreads );
+					cache.setMetricsName( n5Uri.toString() );
+					preloader = CoarsestLevelPreloader.start( this, CoarsestLevelPreloader.getViews( seq ), cache );
 				}
 				catch ( IOException e )
 				{
@@ -176,8 +242,24 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 			{
 				if ( !isOpen )
 					return;
-				fetchers.shutdown();
+				if ( preloader != null )
+				{
+					preloader.stop();
+					preloader = null;
+				}
+				if ( fetchers != null )
+				{
+					fetchers.shutdown();
+					fetchers = null;
+				}
+				if ( sharedCacheClient != null )
+				{
+					sharedCacheClient.close();
+					sharedCacheClient = null;
+				}
 				cache.clearCache();
+				cache.removeMetrics();
+				cacheArrayLoaders.clear();
 				isOpen = false;
 			}
 		}
@@ -315,7 +397,12 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 				final int priority = numMipmapLevels() - 1 - level;
 				final CacheHints cacheHints = new CacheHints( loadingStrategy, priority, false );
 
-				final SimpleCacheArrayLoader< ? > loader = createCacheArrayLoader( n5, pathName );
+				SimpleCacheArrayLoader< ? > loader = cacheArrayLoaders.get( pathName );
+				if ( loader == null )
+				{
+					loader = createCacheArrayLoader( n5, shardAccess, pathName );
+					cacheArrayLoaders.put( pathName, loader );
+				}
 				return cache.createImg( grid, timepointId, setupId, level, cacheHints, loader, type );
 			}
 			catch ( IOException e )
@@ -335,28 +422,41 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 		private final N5Reader n5;
 		private final String pathName;
 		private final DatasetAttributes attributes;
+		private final N5ShardReader shardReader;
 		private final Function< DataBlock< ? >, A > createArray;
 
-		N5CacheArrayLoader( final N5Reader n5, final String pathName, final DatasetAttributes attributes, final Function< DataBlock< ? >, A > createArray )
+		N5CacheArrayLoader( final N5Reader n5, final String pathName, final DatasetAttributes attributes, final N5ShardReader shardReader, final Function< DataBlock< ? >, A > createArray )
 		{
 			this.n5 = n5;
 			this.pathName = pathName;
 			this.attributes = attributes;
+			this.shardReader = shardReader;
 			this.createArray = createArray;
 		}
 
+		/**
+		 * Load the block at {@code gridPosition}. Missing blocks, and blocks
+		 * in which all elements have the same value, are represented by
+		 * shared {@link UniformArrays uniform} arrays.
+		 */
 		@Override
 		public A loadArray( final long[] gridPosition ) throws IOException
 		{
-			final DataBlock< ? > dataBlock = n5.readBlock( pathName, attributes, gridPosition );
+			final DataBlock< ? > dataBlock = shardReader != null
+					? shardReader.readBlock( gridPosition )
+					: n5.readBlock( pathName, attributes, gridPosition );
 
 			if ( dataBlock == null )
-				return createEmptyArray( gridPosition );
+				return createEmptyArray();
+
+			final Object uniform = UniformArrays.ifUniform( dataBlock.getData() );
+			if ( uniform != null )
+				return Cast.unchecked( uniform );
 			else
 				return createArray.apply( dataBlock );
 		}
 
-		private A createEmptyArray( long[] gridPosition )
+		private A createEmptyArray()
 		{
 			final int[] blockSize = attributes.getBlockSize();
 			final int n = blockSize[ 0 ] * blockSize[ 1 ] * blockSize[ 2 ];
@@ -364,20 +464,20 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 			{
 				case UINT8:
 				case INT8:
-					return createArray.apply( new ByteArrayDataBlock( blockSize, gridPosition, new byte[ n ] ) );
+					return Cast.unchecked( UniformArrays.bytes( n, ( byte ) 0 ) );
 				case UINT16:
 				case INT16:
-					return createArray.apply( new ShortArrayDataBlock( blockSize, gridPosition, new short[ n ] ) );
+					return Cast.unchecked( UniformArrays.shorts( n, ( short ) 0 ) );
 				case UINT32:
 				case INT32:
-					return createArray.apply( new IntArrayDataBlock( blockSize, gridPosition, new int[ n ] ) );
+					return Cast.unchecked( UniformArrays.ints( n, 0 ) );
 				case UINT64:
 				case INT64:
-					return createArray.apply( new LongArrayDataBlock( blockSize, gridPosition, new long[ n ] ) );
+					return Cast.unchecked( UniformArrays.longs( n, 0 ) );
 				case FLOAT32:
-					return createArray.apply( new FloatArrayDataBlock( blockSize, gridPosition, new float[ n ] ) );
+					return Cast.unchecked( UniformArrays.floats( n, 0 ) );
 				case FLOAT64:
-					return createArray.apply( new DoubleArrayDataBlock( blockSize, gridPosition, new double[ n ] ) );
+					return Cast.unchecked( UniformArrays.doubles( n, 0 ) );
 				default:
 					throw new UnsupportedOperationException("Data type not supported: " + attributes.getDataType());
 			}
@@ -385,31 +485,52 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 	}
 
 	public static SimpleCacheArrayLoader< ? > createCacheArrayLoader( final N5Reader n5, final String pathName ) throws IOException
+	{
+		return createCacheArrayLoader( n5, n5 instanceof N5ShardAccess ? ( N5ShardAccess ) n5 : null, pathName );
+	}
+
+	/**
+	 * Create a loader for the blocks of dataset {@code pathName}. If the
+	 * dataset is sharded, blocks are read through {@code shardAccess}.
+	 *
+	 * @throws IOException
+	 *             if the dataset is sharded and {@code shardAccess} is
+	 *             {@code null}.
+	 */
+	public static SimpleCacheArrayLoader< ? > createCacheArrayLoader( final N5Reader n5, final N5ShardAccess shardAccess, final String pathName ) throws IOException
 	{
 		final DatasetAttributes attributes = n5.getDatasetAttributes( pathName );
+		final int[] shardSize = n5.getAttribute( pathName, SHARD_SIZE_KEY, int[].class );
+		final N5ShardReader shardReader;
+		if ( shardSize == null )
+			shardReader = null;
+		else if ( shardAccess == null )
+			throw new IOException( "Sharded dataset " + pathName + " is not supported by " + n5.getClass().getSimpleName() );
+		else
+			shardReader = new N5ShardReader( shardAccess, pathName, attributes, shardSize );
 		switch ( attributes.getDataType() )
 		{
 		case UINT8:
 		case INT8:
-			return new N5CacheArrayLoader<>( n5, pathName, attributes,
+			return new N5CacheArrayLoader<>( n5, pathName, attributes, shardReader,
 					dataBlock -> new VolatileByteArray( Cast.unchecked( dataBlock.getData() ), true ) );
 		case UINT16:
 		case INT16:
-			return new N5CacheArrayLoader<>( n5, pathName, attributes,
+			return new N5CacheArrayLoader<>( n5, pathName, attributes, shardReader,
 					dataBlock -> new VolatileShortArray( Cast.unchecked( dataBlock.getData() ), true ) );
 		case UINT32:
 		case INT32:
-			return new N5CacheArrayLoader<>( n5, pathName, attributes,
+			return new N5CacheArrayLoader<>( n5, pathName, attributes, shardReader,
 					dataBlock -> new VolatileIntArray( Cast.unchecked( dataBlock.getData() ), true ) );
 		case UINT64:
 		case INT64:
-			return new N5CacheArrayLoader<>( n5, pathName, attributes,
+			return new N5CacheArrayLoader<>( n5, pathName, attributes, shardReader,
 					dataBlock -> new VolatileLongArray( Cast.unchecked( dataBlock.getData() ), true ) );
 		case FLOAT32:
-			return new N5CacheArrayLoader<>( n5, pathName, attributes,
+			return new N5CacheArrayLoader<>( n5, pathName, attributes, shardReader,
 					dataBlock -> new VolatileFloatArray( Cast.unchecked( dataBlock.getData() ), true ) );
 		case FLOAT64:
-			return new N5CacheArrayLoader<>( n5, pathName, attributes,
+			return new N5CacheArrayLoader<>( n5, pathName, attributes, shardReader,
 					dataBlock -> new VolatileDoubleArray( Cast.unchecked( dataBlock.getData() ), true ) );
 		default:
 			throw new IllegalArgumentException();
@@ -0,0 +1,166 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockReader;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.RawCompression;
+
+/**
+ * {@link N5FSReader} that reads blocks from memory-mapped files.
+ * <p>
+ * {@link N5FSReader} opens a stream and takes a file lock for every block.
+ * This reader maps the block file instead, parses the block header from the
+ * mapped buffer, and copies uncompressed data directly from the mapped buffer
+ * into the {@link DataBlock}. Compressed blocks are decompressed from the
+ * mapped buffer. Attributes are read like in {@link N5FSReader}.
+ */
+public class N5MappedReader extends N5FSReader
+{
+	private static final short MODE_DEFAULT = 0;
+
+	private static final short MODE_VARLENGTH = 1;
+
+	public N5MappedReader( final String basePath ) throws IOException
+	{
+		super( basePath );
+	}
+
+	@Override
+	public DataBlock< ? > readBlock( final String pathName, final DatasetAttributes datasetAttributes, final long... gridPosition ) throws IOException
+	{
+		final ByteBuffer buffer;
+		try
+		{
+			buffer = map( getBlockPath( pathName, gridPosition ) );
+		}
+		catch ( final NoSuchFileException e )
+		{
+			return null;
+		}
+
+		final short mode = buffer.getShort();
+		if ( mode != MODE_DEFAULT && mode != MODE_VARLENGTH )
+		{
+			buffer.rewind();
+			return DefaultBlockReader.readBlock( new ByteBufferInputStream( buffer ), datasetAttributes, gridPosition );
+		}
+
+		final int numDimensions = buffer.getShort();
+		final int[] blockSize = new int[ numDimensions ];
+		int numElements = 1;
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			blockSize[ d ] = buffer.getInt();
+			numElements *= blockSize[ d ];
+		}
+		if ( mode == MODE_VARLENGTH )
+			numElements = buffer.getInt();
+
+		final DataBlock< ? > dataBlock = datasetAttributes.getDataType().createDataBlock( blockSize, gridPosition, numElements );
+		if ( datasetAttributes.getCompression() instanceof RawCompression )
+			dataBlock.readData( buffer.slice() );
+		else
+			datasetAttributes.getCompression().getReader().read( dataBlock, new ByteBufferInputStream( buffer ) );
+		return dataBlock;
+	}
+
+	private Path getBlockPath( final String pathName, final long... gridPosition )
+	{
+		final String[] components = new String[ gridPosition.length + 1 ];
+		components[ 0 ] = pathName.startsWith( "/" ) ? pathName.substring( 1 ) : pathName;
+		for ( int d = 0; d < gridPosition.length; ++d )
+			components[ d + 1 ] = Long.toString( gridPosition[ d ] );
+		return Paths.get( getBasePath(), components );
+	}
+
+	private static ByteBuffer map( final Path path ) throws IOException
+	{
+		try (final FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ))
+		{
+			// the mapping stays valid after the channel is closed
+			return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+		}
+	}
+
+	/**
+	 * Reads from the remaining bytes of a {@link ByteBuffer}.
+	 */
+	private static class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream( final ByteBuffer buffer )
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read( final byte[] b, final int off, final int len )
+		{
+			if ( len == 0 )
+				return 0;
+			if ( !buffer.hasRemaining() )
+				return -1;
+			final int n = Math.min( len, buffer.remaining() );
+			buffer.get( b, off, n );
+			return n;
+		}
+
+		@Override
+		public int available()
+		{
+			return buffer.remaining();
+		}
+
+		@Override
+		public long skip( final long n )
+		{
+			final int k = ( int ) Math.max( 0, Math.min( n, buffer.remaining() ) );
+			buffer.position( buffer.position() + k );
+			return k;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5Reader;
+
+/**
+ * Opens {@link N5Reader}s for URIs. The storage backend is chosen by the URI
+ * scheme:
+ * <ul>
+ * <li>{@code file:} reads blocks with {@link N5FSReader},</li>
+ * <li>{@code mmap:} reads blocks from memory-mapped local files with
+ * {@link N5MappedReader} (for example {@code mmap:/data/dataset.n5}),</li>
+ * <li>{@code http:} and {@code https:} read from a static file server with
+ * {@link N5HttpReader}.</li>
+ * </ul>
+ * Further backends can be added with {@link #register(String, Backend)}.
+ */
+public class N5Readers
+{
+	/**
+	 * Creates an {@link N5Reader} for a URI.
+	 */
+	@FunctionalInterface
+	public interface Backend
+	{
+		N5Reader open( URI uri ) throws IOException;
+	}
+
+	private static final Map< String, Backend > backends = new ConcurrentHashMap<>();
+
+	static
+	{
+		register( "file", uri -> new N5FSReader( new File( uri ).getAbsolutePath() ) );
+		register( "mmap", uri -> new N5MappedReader( new File( uri.getSchemeSpecificPart() ).getAbsolutePath() ) );
+		register( "http", N5HttpReader::new );
+		register( "https", N5HttpReader::new );
+	}
+
+	/**
+	 * Use {@code backend} to open URIs with the given {@code scheme}. This
+	 * replaces any backend previously registered for {@code scheme}.
+	 */
+	public static void register( final String scheme, final Backend backend )
+	{
+		backends.put( scheme.toLowerCase( Locale.ROOT ), backend );
+	}
+
+	/**
+	 * Open an {@link N5Reader} for {@code uri}. URIs without scheme are
+	 * interpreted as local file paths.
+	 *
+	 * @throws IOException
+	 *             if no backend is registered for the scheme of {@code uri},
+	 *             or the backend fails to open it.
+	 */
+	public static N5Reader open( final URI uri ) throws IOException
+	{
+		final String scheme = uri.getScheme();
+		if ( scheme == null )
+			return backends.get( "file" ).open( new File( uri.getPath() ).toURI() );
+		final Backend backend = backends.get( scheme.toLowerCase( Locale.ROOT ) );
+		if ( backend == null )
+			throw new IOException( "No N5 backend for " + uri );
+		return backend.open( uri );
+	}
+
+	/**
+	 * Get {@link N5ShardAccess} for reading sharded datasets of the container
+	 * at {@code uri}, which was opened as {@code n5}.
+	 *
+	 * @return shard access, or {@code null} if the backend does not support
+	 *         sharded datasets.
+	 */
+	public static N5ShardAccess getShardAccess( final URI uri, final N5Reader n5 )
+	{
+		if ( n5 instanceof N5ShardAccess )
+			return ( N5ShardAccess ) n5;
+		if ( isFile( uri ) )
+			return N5ShardAccess.local( new File( uri.getPath() ) );
+		if ( "mmap".equalsIgnoreCase( uri.getScheme() ) )
+			return N5ShardAccess.local( new File( uri.getSchemeSpecificPart() ) );
+		return null;
+	}
+
+	/**
+	 * Whether {@code uri} refers to a local file that should be read with
+	 * the default {@code file:} backend.
+	 */
+	static boolean isFile( final URI uri )
+	{
+		return uri.getScheme() == null || "file".equalsIgnoreCase( uri.getScheme() );
+	}
+}
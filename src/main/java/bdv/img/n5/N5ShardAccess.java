@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads byte ranges of files in an N5 container, for reading blocks from
+ * shard files.
+ */
+@FunctionalInterface
+public interface N5ShardAccess
+{
+	/**
+	 * Read {@code length} bytes starting at {@code offset} from the file at
+	 * {@code pathName}, relative to the container root.
+	 *
+	 * @return the bytes read, which may be fewer than {@code length} if the
+	 *         file ends before, or {@code null} if the file does not exist.
+	 */
+	byte[] read( String pathName, long offset, int length ) throws IOException;
+
+	/**
+	 * Read shards with positional {@link FileChannel} reads from the container
+	 * at {@code root} on the local file system.
+	 */
+	static N5ShardAccess local( final File root )
+	{
+		return ( pathName, offset, length ) -> {
+			try (final FileChannel channel = FileChannel.open( new File( root, pathName ).toPath(), StandardOpenOption.READ ))
+			{
+				final ByteBuffer buffer = ByteBuffer.allocate( length );
+				while ( buffer.hasRemaining() )
+					if ( channel.read( buffer, offset + buffer.position() ) < 0 )
+						break;
+				final byte[] bytes = buffer.array();
+				return buffer.position() == length ? bytes : Arrays.copyOf( bytes, buffer.position() );
+			}
+			catch ( final NoSuchFileException e )
+			{
+				return null;
+			}
+		};
+	}
+}
@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockReader;
+
+import static bdv.img.n5.BdvN5Format.SHARD_INDEX_ENTRY_BYTES;
+import static bdv.img.n5.BdvN5Format.getShardPathName;
+
+/**
+ * Reads blocks of a sharded dataset (see {@code BDV N5 format.md}). The index
+ * of each shard is read once and cached, then blocks are read individually
+ * by offset and length.
+ */
+class N5ShardReader
+{
+	private static final long[] MISSING = new long[ 0 ];
+
+	private final N5ShardAccess access;
+
+	private final String pathName;
+
+	private final DatasetAttributes attributes;
+
+	private final int[] shardSize;
+
+	private final int numBlocksPerShard;
+
+	private final ConcurrentHashMap< String, long[] > indices = new ConcurrentHashMap<>();
+
+	N5ShardReader( final N5ShardAccess access, final String pathName, final DatasetAttributes attributes, final int[] shardSize )
+	{
+		this.access = access;
+		this.pathName = pathName;
+		this.attributes = attributes;
+		this.shardSize = shardSize;
+		int n = 1;
+		for ( final int s : shardSize )
+			n *= s;
+		numBlocksPerShard = n;
+	}
+
+	/**
+	 * Read the block at {@code gridPosition}.
+	 *
+	 * @return the block, or {@code null} if it was not written.
+	 */
+	DataBlock< ? > readBlock( final long... gridPosition ) throws IOException
+	{
+		final int n = gridPosition.length;
+		final long[] shardPosition = new long[ n ];
+		int indexInShard = 0;
+		for ( int d = n - 1; d >= 0; --d )
+		{
+			shardPosition[ d ] = gridPosition[ d ] / shardSize[ d ];
+			indexInShard = indexInShard * shardSize[ d ] + ( int ) ( gridPosition[ d ] % shardSize[ d ] );
+		}
+
+		final String shardPathName = getShardPathName( pathName, shardPosition );
+		long[] index = indices.get( shardPathName );
+		if ( index == null )
+		{
+			index = readIndex( shardPathName );
+			indices.put( shardPathName, index );
+		}
+		if ( index == MISSING )
+			return null;
+
+		final long offset = index[ 2 * indexInShard ];
+		final long length = index[ 2 * indexInShard + 1 ];
+		if ( length == 0 )
+			return null;
+		final byte[] bytes = access.read( shardPathName, offset, ( int ) length );
+		if ( bytes == null || bytes.length != length )
+			throw new IOException( "Truncated shard " + shardPathName );
+		return DefaultBlockReader.readBlock( new ByteArrayInputStream( bytes ), attributes, gridPosition );
+	}
+
+	private long[] readIndex( final String shardPathName ) throws IOException
+	{
+		final int indexBytes = numBlocksPerShard * SHARD_INDEX_ENTRY_BYTES;
+		final byte[] bytes = access.read( shardPathName, 0, indexBytes );
+		if ( bytes == null )
+			return MISSING;
+		if ( bytes.length != indexBytes )
+			throw new IOException( "Truncated shard index " + shardPathName );
+		final long[] index = new long[ 2 * numBlocksPerShard ];
+		ByteBuffer.wrap( bytes ).asLongBuffer().get( index );
+		return index;
+	}
+}
@@ -29,6 +29,7 @@
 package bdv.img.n5;
 
 import java.io.File;
+import java.net.URI;
 import mpicbg.spim.data.XmlHelpers;
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
 import mpicbg.spim.data.generic.sequence.ImgLoaderIo;
@@ -38,6 +39,12 @@ import org.jdom2.Element;
 import static mpicbg.spim.data.XmlHelpers.loadPath;
 import static mpicbg.spim.data.XmlKeys.IMGLOADER_FORMAT_ATTRIBUTE_NAME;
 
+/**
+ * Reads and writes {@link N5ImageLoader} XML. The N5 container is given either
+ * as a local path in an {@code <n5>} element, or as a URI in a {@code <uri>}
+ * element, in which case the URI scheme selects the storage backend (see
+ * {@link N5Readers}), e.g., {@code <uri>https://example.org/dataset.n5</uri>}.
+ */
 @ImgLoaderIo( format = "bdv.n5", type = N5ImageLoader.class )
 public class XmlIoN5ImageLoader implements XmlIoBasicImgLoader< N5ImageLoader >
 {
@@ -47,7 +54,11 @@ public class XmlIoN5ImageLoader implements XmlIoBasicImgLoader< N5ImageLoader >
 		final Element elem = new Element( "ImageLoader" );
 		elem.setAttribute( IMGLOADER_FORMAT_ATTRIBUTE_NAME, "bdv.n5" );
 		elem.setAttribute( "version", "1.0" );
-		elem.addContent( XmlHelpers.pathElement( "n5", imgLoader.getN5File(), basePath ) );
+		final File n5File = imgLoader.getN5File();
+		if ( n5File != null )
+			elem.addContent( XmlHelpers.pathElement( "n5", n5File, basePath ) );
+		else
+			elem.addContent( XmlHelpers.textElement( "uri", imgLoader.getN5Uri().toString() ) );
 		return elem;
 	}
 
@@ -55,6 +66,9 @@ public class XmlIoN5ImageLoader implements XmlIoBasicImgLoader< N5ImageLoader >
 	public N5ImageLoader fromXml( final Element elem, final File basePath, final AbstractSequenceDescription< ?, ?, ? > sequenceDescription )
 	{
 //		final String version = elem.getAttributeValue( "version" );
+		final String uri = elem.getChildText( "uri" );
+		if ( uri != null )
+			return new N5ImageLoader( URI.create( uri.trim() ), sequenceDescription );
 		final File path = loadPath( elem, "n5", basePath );
 		return new N5ImageLoader( path, sequenceDescription );
 	}
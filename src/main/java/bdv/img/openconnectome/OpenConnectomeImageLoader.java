@@ -40,8 +40,10 @@ import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.ViewerSetupImgLoader;
 import bdv.cache.CacheControl;
+import bdv.img.cache.VirtualThreadFetchers;
 import bdv.img.cache.VolatileCachedCellImg;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.http.HttpTransport;
 import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.cache.volatiles.CacheHints;
@@ -84,14 +86,16 @@ public class OpenConnectomeImageLoader extends AbstractViewerSetupImgLoader< Uns
 		blockDimensions = info.getLevelCellDimensions();
 		mipmapTransforms = info.getLevelTransforms( mode );
 
-		cache = new VolatileGlobalCellCache( numScales, 10 );
+		cache = VolatileGlobalCellCache.createForHighLatency( numScales, 10, VirtualThreadFetchers.DEFAULT_MAX_CONCURRENT_FETCHES );
+		cache.setMetricsName( baseUrl + "/" + token );
 		System.out.println( info.getOffsets( mode )[ 0 ][ 2 ] + " " + imageDimensions[ 0 ][ 2 ] );
 
 		loader = new OpenConnectomeVolatileArrayLoader(
 				baseUrl,
 				token,
 				mode,
-				Math.round( info.getOffsets( mode )[ 0 ][ 2 ] ) );
+				Math.round( info.getOffsets( mode )[ 0 ][ 2 ] ),
+				HttpTransport.getDefault().withMaxConnectionsPerHost( VirtualThreadFetchers.DEFAULT_MAX_CONCURRENT_FETCHES ) );
 	}
 
 	/**
@@ -260,6 +264,17 @@ public class OpenConnectomeImageLoader extends AbstractViewerSetupImgLoader< Uns
 		return cache;
 	}
 
+	/**
+	 * Clear the cache, remove its metrics, and stop its fetchers. The loader
+	 * must not be used afterwards.
+	 */
+	public void close()
+	{
+		cache.clearCache();
+		cache.removeMetrics();
+		cache.shutdown();
+	}
+
 	@Override
 	public ViewerSetupImgLoader< ?, ? > getSetupImgLoader( final int setupId )
 	{
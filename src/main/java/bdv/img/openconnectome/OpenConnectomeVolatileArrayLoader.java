@@ -28,14 +28,12 @@
  */
 package bdv.img.openconnectome;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.http.HttpTransport;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 
 public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< VolatileByteArray >
@@ -46,6 +44,8 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 
 	final private long zMin;
 
+	private final HttpTransport transport;
+
 	/**
 	 * <p>Create a {@link CacheArrayLoader} for a source provided by the
 	 * <a href="http://hssl.cs.jhu.edu/wiki/doku.php?id=randal:hssl:research:brain:data_set_description">Open
@@ -69,6 +69,24 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 			final String mode,
 			final long zMin )
 	{
+		this( baseUrl, token, mode, zMin, HttpTransport.getDefault() );
+	}
+
+	/**
+	 * Create a {@link CacheArrayLoader} for a source provided by the Open
+	 * Connectome Volume Cutout Service that fetches cells through
+	 * {@code transport}.
+	 *
+	 * @see #OpenConnectomeVolatileArrayLoader(String, String, String, long)
+	 */
+	public OpenConnectomeVolatileArrayLoader(
+			final String baseUrl,
+			final String token,
+			final String mode,
+			final long zMin,
+			final HttpTransport transport )
+	{
+		this.transport = transport;
 		this.tokenUrl = baseUrl + "/" + token + "/zip/";
 		this.mode = "/" + mode + ( mode == null || mode.equals( "" ) ? "" : "/" );
 		this.zMin = zMin;
@@ -129,20 +147,11 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 
 		try
 		{
-			final URL file = new URL( url.toString() );
-			final InputStream in = file.openStream();
-			final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-			final byte[] chunk = new byte[ 4096 ];
-			int l;
-			for ( l = in.read( chunk ); l > 0; l = in.read( chunk ) )
-			    byteStream.write( chunk, 0, l );
-
-			final byte[] zippedData = byteStream.toByteArray();
+			final byte[] zippedData = transport.get( url.toString() );
 			final Inflater inflater = new Inflater();
 			inflater.setInput( zippedData );
 			inflater.inflate( data );
 			inflater.end();
-			byteStream.close();
 		}
 		catch ( final IOException e )
 		{
@@ -0,0 +1,213 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.remote;
+
+import java.util.Arrays;
+
+/**
+ * Decides per mipmap level whether cells should be requested raw or QCMP
+ * compressed, based on measured network and decode performance.
+ * <p>
+ * Request time is modelled as {@code latency + bytes * nanosPerByte}. The
+ * slope is estimated from the (exponentially weighted) mean size and time of
+ * raw responses and of compressed responses. Because latency is paid for both
+ * raw and compressed cells, the choice depends only on the marginal transfer
+ * time per byte, the compressed size per voxel observed for the level, and the
+ * decode time per voxel:
+ * <ul>
+ * <li>raw: {@code 2 * nanosPerByte} per voxel</li>
+ * <li>compressed: {@code compressedBytesPerVoxel * nanosPerByte + decodeNanosPerVoxel} per voxel</li>
+ * </ul>
+ * A level switches only if the other option is estimated to be faster by at
+ * least {@link #HYSTERESIS}, to avoid flapping. Initially, all levels that the
+ * server offers compressed are requested compressed. While a level is
+ * compressed, every {@link #PROBE_INTERVAL}th cell is requested raw, so that
+ * the raw transfer time stays known. (Probing only ever improves the quality
+ * of the probed cell.)
+ */
+public class AdaptiveCompressionPolicy {
+    /**
+     * Relative improvement required to switch a level.
+     */
+    public static final double HYSTERESIS = 0.2;
+
+    /**
+     * While a level is compressed, every {@code PROBE_INTERVAL}th cell is
+     * requested raw.
+     */
+    public static final int PROBE_INTERVAL = 32;
+
+    /**
+     * Weight of a new sample in the exponentially weighted averages.
+     */
+    private static final double ALPHA = 0.1;
+
+    private static final int RAW_BYTES_PER_VOXEL = 2;
+
+    private final int compressFromMipmapLevel;
+
+    private final boolean[] useCompression;
+
+    private final int[] requestCount;
+
+    private final double[] compressedBytesPerVoxel;
+
+    private double rawBytes = Double.NaN;
+
+    private double rawNanos = Double.NaN;
+
+    private double compressedBytes = Double.NaN;
+
+    private double compressedNanos = Double.NaN;
+
+    private double decodeNanosPerVoxel = Double.NaN;
+
+    /**
+     * @param numLevels               number of mipmap levels.
+     * @param compressFromMipmapLevel first level for which the server offers compressed cells.
+     */
+    public AdaptiveCompressionPolicy(final int numLevels, final int compressFromMipmapLevel) {
+        this.compressFromMipmapLevel = compressFromMipmapLevel;
+        useCompression = new boolean[numLevels];
+        requestCount = new int[numLevels];
+        compressedBytesPerVoxel = new double[numLevels];
+        Arrays.fill(useCompression, Math.min(compressFromMipmapLevel, numLevels), numLevels, true);
+        Arrays.fill(compressedBytesPerVoxel, Double.NaN);
+    }
+
+    /**
+     * Whether the next cell of {@code level} should be requested compressed.
+     */
+    public synchronized boolean useCompression(final int level) {
+        if (level < compressFromMipmapLevel || level >= useCompression.length || !useCompression[level])
+            return false;
+        return ++requestCount[level] % PROBE_INTERVAL != 0;
+    }
+
+    /**
+     * Whether cells of {@code level} are currently requested compressed
+     * (disregarding probes).
+     */
+    public synchronized boolean isCompressed(final int level) {
+        return level >= compressFromMipmapLevel && level < useCompression.length && useCompression[level];
+    }
+
+    /**
+     * Record a cell received from the server.
+     *
+     * @param level      mipmap level of the cell.
+     * @param compressed whether the cell was QCMP compressed.
+     * @param numVoxels  number of voxels in the cell.
+     * @param numBytes   number of bytes received.
+     * @param nanos      time from sending the request until all bytes were received.
+     */
+    public synchronized void recordFetch(final int level,
+                                         final boolean compressed,
+                                         final int numVoxels,
+                                         final int numBytes,
+                                         final long nanos) {
+        if (compressed) {
+            compressedBytes = ewma(compressedBytes, numBytes);
+            compressedNanos = ewma(compressedNanos, nanos);
+            if (level < compressedBytesPerVoxel.length && numVoxels > 0)
+                compressedBytesPerVoxel[level] = ewma(compressedBytesPerVoxel[level], (double) numBytes / numVoxels);
+        } else {
+            rawBytes = ewma(rawBytes, numBytes);
+            rawNanos = ewma(rawNanos, nanos);
+        }
+        update(level);
+    }
+
+    /**
+     * Record the time it took to decode a compressed cell.
+     *
+     * @param level     mipmap level of the cell.
+     * @param numVoxels number of voxels in the cell.
+     * @param nanos     decode time.
+     */
+    public synchronized void recordDecode(final int level, final int numVoxels, final long nanos) {
+        if (numVoxels > 0)
+            decodeNanosPerVoxel = ewma(decodeNanosPerVoxel, (double) nanos / numVoxels);
+        update(level);
+    }
+
+    /**
+     * Get the estimated marginal transfer time per byte, or {@code NaN} if
+     * nothing was measured yet.
+     */
+    public synchronized double getNanosPerByte() {
+        if (!Double.isNaN(rawBytes) && !Double.isNaN(compressedBytes) && rawBytes > 1.1 * compressedBytes) {
+            final double slope = (rawNanos - compressedNanos) / (rawBytes - compressedBytes);
+            if (slope > 0)
+                return slope;
+        }
+        // The slope cannot be estimated. Fall back to the effective time per
+        // byte, which includes latency and therefore favours compression.
+        if (!Double.isNaN(rawBytes) && rawBytes > 0)
+            return rawNanos / rawBytes;
+        if (!Double.isNaN(compressedBytes) && compressedBytes > 0)
+            return compressedNanos / compressedBytes;
+        return Double.NaN;
+    }
+
+    /**
+     * Get the estimated bandwidth in bytes per second, or {@code NaN} if
+     * nothing was measured yet.
+     */
+    public synchronized double getBandwidthBytesPerSecond() {
+        return 1e9 / getNanosPerByte();
+    }
+
+    public synchronized double getDecodeNanosPerVoxel() {
+        return decodeNanosPerVoxel;
+    }
+
+    private void update(final int level) {
+        if (level < compressFromMipmapLevel || level >= useCompression.length)
+            return;
+        final double b = getNanosPerByte();
+        final double cbpv = compressedBytesPerVoxel[level];
+        if (Double.isNaN(b) || Double.isNaN(cbpv) || Double.isNaN(decodeNanosPerVoxel))
+            return;
+
+        final double rawCost = RAW_BYTES_PER_VOXEL * b;
+        final double compressedCost = cbpv * b + decodeNanosPerVoxel;
+        if (useCompression[level]) {
+            if (rawCost < (1 - HYSTERESIS) * compressedCost)
+                useCompression[level] = false;
+        } else {
+            if (compressedCost < (1 - HYSTERESIS) * rawCost)
+                useCompression[level] = true;
+        }
+    }
+
+    private static double ewma(final double average, final double value) {
+        return Double.isNaN(average) ? value : (1 - ALPHA) * average + ALPHA * value;
+    }
+}
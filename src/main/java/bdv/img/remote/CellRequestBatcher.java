@@ -0,0 +1,232 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.remote;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Merges concurrent cell requests for the same timepoint, setup and level into
+ * one batched request.
+ * <p>
+ * The first fetcher thread requesting a cell opens a batch and waits up to
+ * {@code batchWaitMillis} for other threads to add their cells (or until the
+ * batch is full). Then it sends one request for all cells in the batch, and
+ * hands each thread the bytes for its cell.
+ * <p>
+ * If the server does not support batched requests, the batcher is disabled and
+ * {@link #fetch} returns {@code null}, telling the caller to request the cell
+ * individually. If a batched request fails otherwise, or its response lacks
+ * some cells, only the affected cells are requested individually.
+ */
+public class CellRequestBatcher {
+    /**
+     * Sends a batched request for {@code cells}.
+     */
+    public interface BatchFetcher {
+        /**
+         * @return map from cell index to bytes for the cell, or {@code null}
+         * if the server does not support batched requests. Cells missing from
+         * the map are requested individually.
+         * @throws IOException if the batched request failed. The cells of the
+         *                     batch are then requested individually.
+         */
+        Map<Integer, byte[]> fetch(String baseParam, int timepoint, int setup, int level, List<CellRequest> cells) throws IOException;
+    }
+
+    /**
+     * One cell in a batch.
+     */
+    public static class CellRequest {
+        private final int index;
+
+        private final int[] dimensions;
+
+        private final long[] min;
+
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        CellRequest(final int index, final int[] dimensions, final long[] min) {
+            this.index = index;
+            this.dimensions = dimensions;
+            this.min = min;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int[] getDimensions() {
+            return dimensions;
+        }
+
+        public long[] getMin() {
+            return min;
+        }
+    }
+
+    private static class BatchKey {
+        private final String baseParam;
+
+        private final int timepoint;
+
+        private final int setup;
+
+        private final int level;
+
+        BatchKey(final String baseParam, final int timepoint, final int setup, final int level) {
+            this.baseParam = baseParam;
+            this.timepoint = timepoint;
+            this.setup = setup;
+            this.level = level;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof BatchKey))
+                return false;
+            final BatchKey that = (BatchKey) o;
+            return timepoint == that.timepoint && setup == that.setup && level == that.level && baseParam.equals(that.baseParam);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseParam, timepoint, setup, level);
+        }
+    }
+
+    private final BatchFetcher fetcher;
+
+    private final int maxCellsPerRequest;
+
+    private final long batchWaitMillis;
+
+    /**
+     * Batches that are still accepting cells. Guarded by {@code this}.
+     */
+    private final Map<BatchKey, List<CellRequest>> openBatches = new HashMap<>();
+
+    private volatile boolean supported = true;
+
+    public CellRequestBatcher(final BatchFetcher fetcher, final int maxCellsPerRequest, final long batchWaitMillis) {
+        this.fetcher = fetcher;
+        this.maxCellsPerRequest = maxCellsPerRequest;
+        this.batchWaitMillis = batchWaitMillis;
+    }
+
+    /**
+     * Whether the server supports batched requests (as far as we know yet).
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Get the bytes of the specified cell through a batched request. Blocks
+     * until the batch containing the cell has been received.
+     *
+     * @return bytes of the cell, or {@code null} if the cell must be requested
+     * individually, because the server does not support batched requests or
+     * did not include the cell in its response.
+     */
+    public byte[] fetch(final String baseParam,
+                        final int timepoint,
+                        final int setup,
+                        final int level,
+                        final int index,
+                        final int[] dimensions,
+                        final long[] min) throws IOException {
+        if (!supported)
+            return null;
+
+        final BatchKey key = new BatchKey(baseParam, timepoint, setup, level);
+        final CellRequest request = new CellRequest(index, dimensions, min);
+        List<CellRequest> batch = null;
+        synchronized (this) {
+            final List<CellRequest> open = openBatches.get(key);
+            if (open != null) {
+                open.add(request);
+                if (open.size() >= maxCellsPerRequest) {
+                    openBatches.remove(key);
+                    notifyAll();
+                }
+            } else {
+                batch = new ArrayList<>();
+                batch.add(request);
+                openBatches.put(key, batch);
+                final long deadline = System.currentTimeMillis() + batchWaitMillis;
+                try {
+                    for (long remaining = batchWaitMillis; openBatches.get(key) == batch && remaining > 0; remaining = deadline - System.currentTimeMillis())
+                        wait(remaining);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    openBatches.remove(key, batch);
+                }
+            }
+        }
+
+        if (batch != null)
+            send(key, batch);
+
+        try {
+            return request.result.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private void send(final BatchKey key, final List<CellRequest> batch) {
+        try {
+            final Map<Integer, byte[]> result = fetcher.fetch(key.baseParam, key.timepoint, key.setup, key.level, batch);
+            if (result == null)
+                supported = false;
+            for (final CellRequest request : batch)
+                request.result.complete(result == null ? null : result.get(request.index));
+        } catch (final InterruptedIOException e) {
+            for (final CellRequest request : batch)
+                request.result.completeExceptionally(e);
+        } catch (final Throwable t) {
+            // request the cells individually
+            for (final CellRequest request : batch)
+                request.result.complete(null);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.remote;
+
+import bdv.img.cache.VolatileGlobalCellCache;
+import cz.it4i.qcmp.utilities.ColorConsole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent on-disk cache for cell data received from a remote server. It is
+ * meant to sit between the {@link VolatileGlobalCellCache} and the HTTP
+ * requests in {@link RemoteVolatileShortArrayLoader}, so that cells which were
+ * fetched before (in this or a previous session) are read from disk instead of
+ * being requested again.
+ * <p>
+ * Cells are stored as the bytes received from the server, i.e., QCMP
+ * compressed cells are stored compressed. Each dataset URL gets its own
+ * sub-directory of the cache root directory. Within that, every cell is one
+ * file named by timepoint, setup, level, cell index, and payload type.
+ * <p>
+ * The total size of stored cells is bounded by {@code maxBytes}. When it is
+ * exceeded, the least recently used files are deleted.
+ */
+public class DiskCellCache {
+    /**
+     * Name of the file in the dataset directory containing the dataset URL.
+     */
+    static final String URL_FILE_NAME = "dataset.url";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * When evicting, delete files until the total size is below this fraction
+     * of {@code maxBytes}.
+     */
+    private static final double EVICT_TO_FRACTION = 0.9;
+
+    private final File directory;
+
+    private final long maxBytes;
+
+    private final AtomicLong currentBytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a disk cache for the dataset at {@code datasetUrl}, or re-open it
+     * if it exists from a previous session.
+     *
+     * @param rootDirectory root directory of the disk cache, shared by all datasets.
+     * @param datasetUrl    URL of the dataset.
+     * @param maxBytes      maximum total size of cells stored for this dataset.
+     * @throws IOException if the cache directory cannot be created.
+     */
+    public DiskCellCache(final File rootDirectory,
+                         final String datasetUrl,
+                         final long maxBytes) throws IOException {
+        this.directory = new File(rootDirectory, datasetDirectoryName(datasetUrl));
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create cache directory " + directory);
+
+        final File urlFile = new File(directory, URL_FILE_NAME);
+        if (!urlFile.exists())
+            Files.write(urlFile.toPath(), datasetUrl.getBytes(StandardCharsets.UTF_8));
+
+        long size = 0;
+        for (final File file : listFiles()) {
+            if (file.getName().endsWith(TMP_SUFFIX))
+                file.delete();
+            else
+                size += file.length();
+        }
+        currentBytes.set(size);
+    }
+
+    /**
+     * Get the bytes stored for the specified cell and payload type.
+     *
+     * @param key     the cell.
+     * @param payload payload type, e.g., {@code "cell"} for raw data.
+     * @return the stored bytes or {@code null} if the cell is not in the cache.
+     */
+    public byte[] get(final VolatileGlobalCellCache.Key key, final String payload) {
+        final File file = cellFile(key, payload);
+        if (!file.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            final byte[] data = Files.readAllBytes(file.toPath());
+            file.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return data;
+        } catch (final IOException e) {
+            // The file was evicted concurrently or is damaged.
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Store bytes for the specified cell and payload type. Errors are reported
+     * but otherwise ignored, because the cache is only an optimization.
+     * <p>
+     * The file is written outside of the lock. Replacing the cell file and
+     * updating the total size happen under the same lock as eviction, so that
+     * concurrent writes of the same cell are accounted for exactly once.
+     *
+     * @param key     the cell.
+     * @param payload payload type, e.g., {@code "cell"} for raw data.
+     * @param data    bytes to store.
+     */
+    public void put(final VolatileGlobalCellCache.Key key, final String payload, final byte[] data) {
+        final File file = cellFile(key, payload);
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("cell", TMP_SUFFIX, directory);
+            try (final OutputStream os = Files.newOutputStream(tmp.toPath())) {
+                os.write(data);
+            }
+            synchronized (this) {
+                final long previousLength = file.length();
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                tmp = null;
+                if (currentBytes.addAndGet(data.length - previousLength) > maxBytes)
+                    evict();
+            }
+        } catch (final IOException e) {
+            ColorConsole.fprintf(ColorConsole.Target.stderr, ColorConsole.Color.Red,
+                                 "Failed to write cell to disk cache %s: %s", file, e);
+        } finally {
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+    /**
+     * Remove all cells of this dataset from the cache.
+     */
+    public synchronized void clear() {
+        for (final File file : listFiles())
+            file.delete();
+        currentBytes.set(0);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getCurrentBytes() {
+        return currentBytes.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private synchronized void evict() {
+        if (currentBytes.get() <= maxBytes)
+            return;
+        final File[] files = listFiles();
+        final long[] lastModified = new long[files.length];
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastModified[i]));
+
+        final long target = (long) (maxBytes * EVICT_TO_FRACTION);
+        for (int i = 0; i < order.length && currentBytes.get() > target; i++) {
+            final File file = files[order[i]];
+            if (file.getName().endsWith(TMP_SUFFIX))
+                continue;
+            final long length = file.length();
+            if (file.delete()) {
+                currentBytes.addAndGet(-length);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private File cellFile(final VolatileGlobalCellCache.Key key, final String payload) {
+        return new File(directory, String.format("%d_%d_%d_%d.%s",
+                                                 key.getTimepoint(), key.getSetup(), key.getLevel(), key.getIndex(),
+                                                 payload));
+    }
+
+    /**
+     * List cell files (including temporary files) in the dataset directory.
+     */
+    private File[] listFiles() {
+        final File[] files = directory.listFiles((dir, name) -> !name.equals(URL_FILE_NAME));
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * Get a file-system safe directory name for a dataset URL.
+     */
+    static String datasetDirectoryName(final String datasetUrl) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(datasetUrl.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder sb = new StringBuilder();
+            for (final byte b : digest)
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            return String.format("%08x", datasetUrl.hashCode());
+        }
+    }
+}
@@ -30,11 +30,17 @@ package bdv.img.remote;
 
 import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
+import bdv.img.cache.CacheOptions;
+import bdv.img.cache.CoarsestLevelPreloader;
+import bdv.img.cache.SharedCacheService;
+import bdv.img.cache.VirtualThreadFetchers;
 import bdv.img.cache.VolatileCachedCellImg;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.img.hdf5.DimsAndExistence;
 import bdv.img.hdf5.MipmapInfo;
 import bdv.img.hdf5.ViewLevelId;
+import bdv.img.http.HttpTransport;
+import bdv.metrics.Metrics;
 import bdv.util.ConstantRandomAccessible;
 import bdv.viewer.ViewerOptions;
 import com.google.gson.GsonBuilder;
@@ -43,6 +49,7 @@ import cz.it4i.qcmp.cache.QuantizationCacheManager;
 import cz.it4i.qcmp.compression.ImageDecompressor;
 import cz.it4i.qcmp.utilities.ColorConsole;
 import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
+import mpicbg.spim.data.sequence.ViewId;
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.cache.volatiles.CacheHints;
@@ -55,15 +62,17 @@ import net.imglib2.type.volatiles.VolatileUnsignedShortType;
 import net.imglib2.util.IntervalIndexer;
 import net.imglib2.view.Views;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
-public class RemoteImageLoader implements ViewerImgLoader {
+public class RemoteImageLoader implements ViewerImgLoader, CacheOptions.Configurable {
     protected String baseUrl;
 
     protected RemoteImageLoaderMetaData metadata;
@@ -74,11 +83,21 @@ public class RemoteImageLoader implements ViewerImgLoader {
 
     protected RemoteVolatileShortArrayLoader shortLoader;
 
+    private HttpTransport transport;
+
+    private SharedCacheService.Client sharedCacheClient;
+
+    private CoarsestLevelPreloader preloader;
+
     /**
      * Flag whether we allow the server to send us compressed data.
      */
     private ViewerOptions.CompressionOptions viewerCompressionOptions;
 
+    private CacheOptions cacheOptions = CacheOptions.options();
+
+    private RemoteOptions remoteOptions = RemoteOptions.options();
+
 
     /**
      * TODO
@@ -112,14 +131,45 @@ public class RemoteImageLoader implements ViewerImgLoader {
                     return;
                 isOpen = true;
 
-                final URL url = new URL(baseUrl + "?p=init");
+                transport = HttpTransport.getDefault();
+                final int maxConcurrentFetches = remoteOptions.getMaxConcurrentFetches();
+                if (remoteOptions.isVirtualThreadFetchers() && maxConcurrentFetches > 0
+                        && VirtualThreadFetchers.isSupported() && cacheOptions.getSharedCache() == null)
+                    transport = transport.withMaxConnectionsPerHost(maxConcurrentFetches);
+                final byte[] init = transport.get(baseUrl + "?p=init");
                 final GsonBuilder gsonBuilder = new GsonBuilder();
                 gsonBuilder.registerTypeAdapter(AffineTransform3D.class, new AffineTransform3DJsonSerializer());
                 metadata = gsonBuilder.create().fromJson(
-                        new InputStreamReader(url.openStream()),
+                        new InputStreamReader(new ByteArrayInputStream(init), StandardCharsets.UTF_8),
                         RemoteImageLoaderMetaData.class);
                 shortLoader = new RemoteVolatileShortArrayLoader(this);
-                cache = new VolatileGlobalCellCache(metadata.maxNumLevels, 10);
+                if (cacheOptions.getDiskCacheDirectory() != null) {
+                    shortLoader.setDiskCache(new DiskCellCache(cacheOptions.getDiskCacheDirectory(),
+                                                               baseUrl,
+                                                               cacheOptions.getMaxDiskCacheBytes()));
+                }
+                shortLoader.setBatching(remoteOptions.getMaxCellsPerRequest(), remoteOptions.getBatchWaitMillis());
+                shortLoader.setAdaptiveCompression(remoteOptions.isAdaptiveCompression());
+                final SharedCacheService sharedCache = cacheOptions.getSharedCache();
+                if (sharedCache != null) {
+                    sharedCacheClient = sharedCache.register(metadata.maxNumLevels, remoteOptions.getNumFetcherThreads());
+                    cache = new VolatileGlobalCellCache(sharedCacheClient.getQueue(),
+                                                        cacheOptions.createBackingCache(sharedCacheClient));
+                    cache.setNumBackgroundThreads(remoteOptions.getNumFetcherThreads());
+                } else {
+                    cache = VolatileGlobalCellCache.createForHighLatency(metadata.maxNumLevels,
+                                                                         remoteOptions.getNumFetcherThreads(),
+                                                                         remoteOptions.isVirtualThreadFetchers()
+                                                                                 ? maxConcurrentFetches
+                                                                                 : 0,
+                                                                         cacheOptions.createBackingCache());
+                }
+                cache.setMetricsName(baseUrl);
+                registerMetrics(Metrics.getDefault(), cache.getMetricsPrefix());
+                if (remoteOptions.isProgressiveRefinement())
+                    shortLoader.setProgressiveRefinement(cache);
+                else if (remoteOptions.isAdaptiveCompression())
+                    shortLoader.setIdleUpgrade(cache);
                 cellsDimensions = metadata.createCellsDimensions();
                 for (final int setupId : metadata.perSetupMipmapInfo.keySet())
                     setupImgLoaders.put(setupId, new SetupImgLoader(setupId));
@@ -127,27 +177,105 @@ public class RemoteImageLoader implements ViewerImgLoader {
                 if (viewerCompressionOptions.isEnabled()) {
                     setupCompression();
                 }
+
+                preloader = CoarsestLevelPreloader.start(this, getCoarsestLevelViews(), cache);
+            }
+        }
+    }
+
+    /**
+     * Clear the cache, remove its metrics, and stop its fetchers. Images that were obtained from
+     * this loader before {@link #close()} will stop working. Requesting images
+     * after {@link #close()} will cause the loader to be reopened (with a new
+     * cache).
+     */
+    public void close() {
+        if (isOpen) {
+            synchronized (this) {
+                if (!isOpen)
+                    return;
+                if (preloader != null) {
+                    preloader.stop();
+                    preloader = null;
+                }
+                if (sharedCacheClient != null) {
+                    sharedCacheClient.close();
+                    sharedCacheClient = null;
+                }
+                cache.clearCache();
+                cache.removeMetrics();
+                cache.shutdown();
+                isOpen = false;
             }
         }
     }
 
+    /**
+     * Register the metrics of fetching and decoding cells under
+     * {@code prefix + ".remote"}. The transport gauges are process-wide, unless
+     * this loader uses its own transport for virtual-thread fetching.
+     */
+    private void registerMetrics(final Metrics metrics, final String prefix) {
+        final String remote = prefix + ".remote";
+        shortLoader.setMetrics(metrics, remote);
+        final HttpTransport transport = this.transport;
+        metrics.gauge(remote + ".http.requests", transport::getNumRequests);
+        metrics.gauge(remote + ".http.failures", transport::getNumFailures);
+        metrics.gauge(remote + ".http.meanLatencyMillis", transport::getMeanLatencyMillis);
+        metrics.gauge(remote + ".http.throughputBytesPerSecond", transport::getThroughputBytesPerSecond);
+    }
+
+    /**
+     * Get all views whose coarsest mipmap level exists, ordered by timepoint
+     * and then by setup.
+     */
+    private List<ViewId> getCoarsestLevelViews() {
+        final List<Integer> setupIds = new ArrayList<>(metadata.perSetupMipmapInfo.keySet());
+        Collections.sort(setupIds);
+        final List<ViewId> views = new ArrayList<>();
+        for (int timepointId = 0; timepointId < metadata.maxNumTimepoints; ++timepointId) {
+            for (final int setupId : setupIds) {
+                final int level = metadata.perSetupMipmapInfo.get(setupId).getNumLevels() - 1;
+                final DimsAndExistence dims = metadata.dimsAndExistence.get(new ViewLevelId(timepointId, setupId, level));
+                if (dims != null && dims.exists())
+                    views.add(new ViewId(timepointId, setupId));
+            }
+        }
+        return views;
+    }
+
     public void setViewerCompressionOptions(final ViewerOptions.CompressionOptions ops) {
         this.viewerCompressionOptions = ops;
     }
 
-    private void setupCompression() throws IOException {
-        final URL url = new URL(baseUrl + "?p=init_qcmp");
-        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.connect();
+    /**
+     * Set the options used to create the cache. This must be called before
+     * the loader is opened, i.e., before any images are requested.
+     */
+    @Override
+    public void setCacheOptions(final CacheOptions options) {
+        this.cacheOptions = options;
+    }
 
-        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+    /**
+     * Set the {@link RemoteOptions}. This must be called before the loader is
+     * opened, i.e., before any images are requested.
+     */
+    public void setRemoteOptions(final RemoteOptions options) {
+        this.remoteOptions = options;
+    }
+
+    private void setupCompression() throws IOException {
+        final byte[] initQcmp;
+        try {
+            initQcmp = transport.get(baseUrl + "?p=init_qcmp");
+        } catch (final HttpTransport.HttpStatusException e) {
             System.out.println("\u001b[33mRemoteImageLoader::setupCompression() - Server doesn't provide compressed data.\u001b[0m");
             return;
         }
         final ArrayList<ICacheFile> cacheFiles = new ArrayList<>();
         int compressFromMipmapLevel = 0;
-        try (final DataInputStream dis = new DataInputStream(connection.getInputStream())) {
+        try (final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(initQcmp))) {
             compressFromMipmapLevel = dis.readByte();
             final int codebookCount = dis.readByte();
             for (int cbIndex = 0; cbIndex < codebookCount; cbIndex++) {
@@ -174,6 +302,14 @@ public class RemoteImageLoader implements ViewerImgLoader {
     }
 
 
+    /**
+     * Get the {@link HttpTransport} through which all requests of this loader
+     * are made.
+     */
+    HttpTransport getTransport() {
+        return transport;
+    }
+
     private void tryopen() {
         try {
             open();
@@ -0,0 +1,168 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.remote;
+
+import bdv.img.cache.VirtualThreadFetchers;
+
+/**
+ * Options for {@link RemoteImageLoader}.
+ */
+public class RemoteOptions {
+    private int numFetcherThreads = 10;
+
+    private int maxCellsPerRequest = 1;
+
+    private long batchWaitMillis = 2;
+
+    private boolean adaptiveCompression = false;
+
+    private boolean progressiveRefinement = false;
+
+    private boolean virtualThreadFetchers = true;
+
+    private int maxConcurrentFetches = VirtualThreadFetchers.DEFAULT_MAX_CONCURRENT_FETCHES;
+
+    /**
+     * Create default {@link RemoteOptions}.
+     *
+     * @return default {@link RemoteOptions}.
+     */
+    public static RemoteOptions options() {
+        return new RemoteOptions();
+    }
+
+    /**
+     * Set how many fetcher threads load cells from the server.
+     */
+    public RemoteOptions numFetcherThreads(final int n) {
+        numFetcherThreads = n;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of cells that are requested from the server in
+     * one batched request. Values {@code <= 1} disable batching. When batching
+     * is enabled, requests of concurrently loading fetcher threads for the same
+     * timepoint, setup and level are merged, so it makes sense to increase
+     * {@link #numFetcherThreads(int)} accordingly.
+     *
+     * @see CellRequestBatcher
+     */
+    public RemoteOptions maxCellsPerRequest(final int n) {
+        maxCellsPerRequest = n;
+        return this;
+    }
+
+    /**
+     * Set how long a batch waits for more cell requests before it is sent.
+     */
+    public RemoteOptions batchWaitMillis(final long t) {
+        batchWaitMillis = t;
+        return this;
+    }
+
+    /**
+     * Set whether to choose per mipmap level between raw and QCMP compressed
+     * cells based on measured bandwidth and decode time, instead of always
+     * requesting compressed cells for the levels the server offers them.
+     * When a level is switched to raw cells, its compressed cells that are
+     * still cached are re-fetched raw in the background while no other cells
+     * are loading.
+     *
+     * @see AdaptiveCompressionPolicy
+     */
+    public RemoteOptions adaptiveCompression(final boolean b) {
+        adaptiveCompression = b;
+        return this;
+    }
+
+    /**
+     * Set whether QCMP compressed cells are refined progressively: the lossy
+     * cell is shown as soon as it is decoded, and a low-priority background
+     * request then fetches the raw cell and replaces the lossy data, so that a
+     * settled view ends up showing exact data.
+     */
+    public RemoteOptions progressiveRefinement(final boolean b) {
+        progressiveRefinement = b;
+        return this;
+    }
+
+    /**
+     * Set whether cells are loaded by virtual threads if the JVM supports
+     * them, instead of {@link #numFetcherThreads(int) fetcher threads}. This
+     * keeps up to {@link #maxConcurrentFetches(int)} requests in flight.
+     *
+     * @see VirtualThreadFetchers
+     */
+    public RemoteOptions virtualThreadFetchers(final boolean b) {
+        virtualThreadFetchers = b;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of requests in flight if
+     * {@link #virtualThreadFetchers(boolean) virtual threads} are used.
+     * <p>
+     * Connections are only re-used if the JVM keeps enough of them alive. Set
+     * {@code http.maxConnections} to at least {@code n} at launch (see
+     * {@link bdv.img.http.HttpTransport}).
+     */
+    public RemoteOptions maxConcurrentFetches(final int n) {
+        maxConcurrentFetches = n;
+        return this;
+    }
+
+    public int getNumFetcherThreads() {
+        return numFetcherThreads;
+    }
+
+    public int getMaxCellsPerRequest() {
+        return maxCellsPerRequest;
+    }
+
+    public long getBatchWaitMillis() {
+        return batchWaitMillis;
+    }
+
+    public boolean isAdaptiveCompression() {
+        return adaptiveCompression;
+    }
+
+    public boolean isProgressiveRefinement() {
+        return progressiveRefinement;
+    }
+
+    public boolean isVirtualThreadFetchers() {
+        return virtualThreadFetchers;
+    }
+
+    public int getMaxConcurrentFetches() {
+        return maxConcurrentFetches;
+    }
+}
@@ -29,27 +29,59 @@
 package bdv.img.remote;
 
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.http.HttpTransport;
+import bdv.metrics.Counter;
+import bdv.metrics.Histogram;
+import bdv.metrics.JfrEvent;
+import bdv.metrics.JfrEvents;
+import bdv.metrics.Metrics;
 import cz.it4i.qcmp.compression.CompressorDecompressorBase;
 import cz.it4i.qcmp.compression.ImageDecompressor;
 import cz.it4i.qcmp.utilities.ColorConsole;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
+import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RemoteVolatileShortArrayLoader implements CacheArrayLoader<VolatileShortArray> {
+    /**
+     * How often fetching the raw data for refining a QCMP cell is attempted.
+     */
+    static final int MAX_REFINEMENT_ATTEMPTS = 3;
+
     private final RemoteImageLoader imgLoader;
 
     private boolean requestCompressedData = false;
     private HashMap<Integer, ImageDecompressor> decompressors;
     private ImageDecompressor lowestResDecompressor;
     private int compressFromMipmapLevel = 0;
+    private boolean adaptiveCompression = false;
+    private volatile AdaptiveCompressionPolicy compressionPolicy;
+    private volatile VolatileGlobalCellCache refinementCache;
+    private volatile VolatileGlobalCellCache upgradeCache;
+    /**
+     * QCMP cells per mipmap level that are upgraded to raw data when the
+     * {@link AdaptiveCompressionPolicy} switches their level to raw cells.
+     */
+    private final Map<Integer, LossyCells> lossyCells = new HashMap<>();
+    private volatile DiskCellCache diskCache;
+    private volatile CellRequestBatcher batcher;
+    private final AtomicInteger numPendingFetches = new AtomicInteger();
+    private volatile Counter bytesReceived = new Counter();
+    private volatile Histogram decodeNanos = new Histogram();
 
 
     public RemoteVolatileShortArrayLoader(final RemoteImageLoader imgLoader) {
@@ -78,27 +110,13 @@ public class RemoteVolatileShortArrayLoader implements CacheArrayLoader<Volatile
                                         final int[] dimensions,
                                         final long[] min) {
 
-        if (requestCompressedData && level >= compressFromMipmapLevel) {
+        if (useCompression(level)) {
             return loadArrayFromCompressedDataStream(timepoint, setup, level, dimensions, min);
         }
 
         final short[] data = new short[dimensions[0] * dimensions[1] * dimensions[2]];
         try {
-            final URL url = new URL(constructRequestUrl("cell", timepoint, setup, level, dimensions, min));
-
-            final byte[] buf = new byte[data.length * 2];
-            final InputStream urlStream = url.openStream();
-
-            //noinspection StatementWithEmptyBody
-            for (int i = 0, l = urlStream.read(buf, 0, buf.length);
-                 l > 0;
-                 i += l, l = urlStream.read(buf, i, buf.length - i))
-                ;
-
-            for (int i = 0, j = 0; i < data.length; ++i, j += 2)
-                data[i] = (short) (((buf[j] & 0xff) << 8) | (buf[j + 1] & 0xff));
-
-            urlStream.close();
+            readRawCell(timepoint, setup, level, dimensions, min, data);
         } catch (final MalformedURLException e) {
             e.printStackTrace();
         } catch (final IOException e) {
@@ -115,23 +133,418 @@ public class RemoteVolatileShortArrayLoader implements CacheArrayLoader<Volatile
 
         short[] data = null;
         try {
-            final URL url = new URL(constructRequestUrl("cell_qcmp", timepoint, setup, mipmapLevel, dimensions, min));
+            final ImageDecompressor decompressor = getDecompressorForMipmapLevel(mipmapLevel);
+            // Compressed cells are only valid together with the codebook they were compressed with.
+            final String payload = "cell_qcmp" + decompressor.getBitsPerCodebookIndex();
+            final byte[] buf = fetchCellBytes("cell_qcmp", payload, timepoint, setup, mipmapLevel, dimensions, min);
+            final JfrEvent event = JfrEvents.QCMP_DECODE.begin();
+            final long t0 = System.nanoTime();
+            data = decompressor.decompressStream(new ByteArrayInputStream(buf), buf.length);
+            final long decodeTime = System.nanoTime() - t0;
+            if (event.isEnabled())
+                event.set(0, (long) buf.length).set(1, data.length).commit();
+            decodeNanos.record(decodeTime);
+            final AdaptiveCompressionPolicy policy = compressionPolicy;
+            if (policy != null) {
+                policy.recordDecode(mipmapLevel, data.length, decodeTime);
+                upgradeIfRaw(policy, mipmapLevel);
+            }
+        } catch (final Exception e) {
+            e.printStackTrace();
+        }
+
+        final VolatileGlobalCellCache refinementCache = this.refinementCache;
+        final VolatileGlobalCellCache upgradeCache = this.upgradeCache;
+        if (refinementCache != null && data != null)
+            enqueueRefinement(refinementCache, timepoint, setup, mipmapLevel, dimensions.clone(), min.clone(), data);
+        else if (upgradeCache != null && data != null)
+            addLossyCell(upgradeCache, timepoint, setup, mipmapLevel, dimensions.clone(), min.clone(), data);
 
-            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.connect();
+        return new VolatileShortArray(data, true);
+    }
 
-            final int contentLength = connection.getContentLength();
+    /**
+     * Fetch the raw cell and decode its big-endian shorts into {@code data}.
+     */
+    private void readRawCell(final int timepoint,
+                             final int setup,
+                             final int level,
+                             final int[] dimensions,
+                             final long[] min,
+                             final short[] data) throws IOException {
+        final byte[] buf = fetchCellBytes("cell", "cell", timepoint, setup, level, dimensions, min);
+        final int n = Math.min(data.length, buf.length / 2);
+        for (int i = 0, j = 0; i < n; ++i, j += 2)
+            data[i] = (short) (((buf[j] & 0xff) << 8) | (buf[j + 1] & 0xff));
+    }
 
-            final InputStream urlStream = connection.getInputStream();
-            data = getDecompressorForMipmapLevel(mipmapLevel).decompressStream(urlStream, contentLength);
+    /**
+     * Enqueue a background task that replaces the lossy {@code data} of a QCMP
+     * cell in place by the raw data. The data is only referenced weakly, so
+     * that cells which are evicted before the task runs are not refined. If
+     * fetching the raw cell fails, the task is enqueued again, up to
+     * {@link #MAX_REFINEMENT_ATTEMPTS} times.
+     */
+    private void enqueueRefinement(final VolatileGlobalCellCache cache,
+                                   final int timepoint,
+                                   final int setup,
+                                   final int level,
+                                   final int[] dimensions,
+                                   final long[] min,
+                                   final short[] data) {
+        enqueueRefinement(cache, timepoint, setup, level, dimensions, min, new WeakReference<>(data), data.length, 1);
+    }
 
-            urlStream.close();
-        } catch (final Exception e) {
-            e.printStackTrace();
+    private void enqueueRefinement(final VolatileGlobalCellCache cache,
+                                   final int timepoint,
+                                   final int setup,
+                                   final int level,
+                                   final int[] dimensions,
+                                   final long[] min,
+                                   final WeakReference<short[]> ref,
+                                   final int length,
+                                   final int attempt) {
+        cache.enqueueBackgroundTask(() -> {
+            if (ref.get() == null)
+                return null;
+            final short[] raw = new short[length];
+            try {
+                readRawCell(timepoint, setup, level, dimensions, min, raw);
+            } catch (final IOException e) {
+                if (attempt < MAX_REFINEMENT_ATTEMPTS)
+                    enqueueRefinement(cache, timepoint, setup, level, dimensions, min, ref, length, attempt + 1);
+                else
+                    e.printStackTrace();
+                return null;
+            }
+            final short[] target = ref.get();
+            if (target != null) {
+                System.arraycopy(raw, 0, target, 0, target.length);
+                final int index = imgLoader.getCellIndex(timepoint, setup, level, min);
+                cache.cellUpdated(new VolatileGlobalCellCache.Key(timepoint, setup, level, index),
+                                  new Cell<>(dimensions, min, new VolatileShortArray(target, true)));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Enable progressive refinement: QCMP cells are shown as soon as they are
+     * decoded, and a {@link VolatileGlobalCellCache#enqueueBackgroundTask
+     * background task} of {@code cache} then fetches the raw cell and
+     * replaces the lossy data in place, once no cells are loading.
+     *
+     * @param cache the cache of the image loader, or {@code null} to disable refinement.
+     */
+    public void setProgressiveRefinement(final VolatileGlobalCellCache cache) {
+        this.refinementCache = cache;
+    }
+
+    /**
+     * Enable idle upgrades: when the {@link AdaptiveCompressionPolicy}
+     * switches a mipmap level to raw cells, the QCMP cells of that level
+     * which are still cached are replaced in place by the raw data, using
+     * {@link VolatileGlobalCellCache#enqueueBackgroundTask background tasks}
+     * of {@code cache}, which run once no cells are loading. This has no
+     * effect with progressive refinement, which refines every QCMP cell.
+     *
+     * @param cache the cache of the image loader, or {@code null} to disable idle upgrades.
+     */
+    public void setIdleUpgrade(final VolatileGlobalCellCache cache) {
+        this.upgradeCache = cache;
+        if (cache == null) {
+            synchronized (lossyCells) {
+                lossyCells.clear();
+            }
         }
+    }
 
-        return new VolatileShortArray(data, true);
+    /**
+     * Remember the lossy {@code data} of a QCMP cell, to upgrade it when its
+     * level is switched to raw cells. If that already happened while the cell
+     * was loading, it is upgraded right away.
+     */
+    private void addLossyCell(final VolatileGlobalCellCache cache,
+                              final int timepoint,
+                              final int setup,
+                              final int level,
+                              final int[] dimensions,
+                              final long[] min,
+                              final short[] data) {
+        final AdaptiveCompressionPolicy policy = compressionPolicy;
+        if (policy == null)
+            return;
+        synchronized (lossyCells) {
+            if (policy.isCompressed(level)) {
+                lossyCells.computeIfAbsent(level, l -> new LossyCells())
+                          .add(new LossyCell(timepoint, setup, dimensions, min, data));
+                return;
+            }
+        }
+        enqueueRefinement(cache, timepoint, setup, level, dimensions, min, data);
+    }
+
+    /**
+     * If the {@code policy} requests raw cells for {@code level}, upgrade the
+     * remembered QCMP cells of that level.
+     */
+    private void upgradeIfRaw(final AdaptiveCompressionPolicy policy, final int level) {
+        final VolatileGlobalCellCache cache = upgradeCache;
+        if (cache == null)
+            return;
+        final LossyCells cells;
+        synchronized (lossyCells) {
+            if (policy.isCompressed(level))
+                return;
+            cells = lossyCells.remove(level);
+        }
+        if (cells == null)
+            return;
+        for (final LossyCell cell : cells.cells)
+            if (cell.data.get() != null)
+                enqueueRefinement(cache, cell.timepoint, cell.setup, level, cell.dimensions, cell.min,
+                                  cell.data, cell.length, 1);
+    }
+
+    /**
+     * A QCMP cell whose data is referenced weakly, so that remembering it
+     * does not keep it from being evicted.
+     */
+    private static class LossyCell {
+        final int timepoint;
+        final int setup;
+        final int[] dimensions;
+        final long[] min;
+        final WeakReference<short[]> data;
+        final int length;
+
+        LossyCell(final int timepoint, final int setup, final int[] dimensions, final long[] min, final short[] data) {
+            this.timepoint = timepoint;
+            this.setup = setup;
+            this.dimensions = dimensions;
+            this.min = min;
+            this.data = new WeakReference<>(data);
+            this.length = data.length;
+        }
+    }
+
+    /**
+     * The {@link LossyCell}s of one mipmap level. Cells that were evicted are
+     * dropped whenever the list has doubled in size.
+     */
+    private static class LossyCells {
+        final List<LossyCell> cells = new ArrayList<>();
+        int pruneSize = 64;
+
+        void add(final LossyCell cell) {
+            cells.add(cell);
+            if (cells.size() >= pruneSize) {
+                cells.removeIf(c -> c.data.get() == null);
+                pruneSize = Math.max(64, 2 * cells.size());
+            }
+        }
+    }
+
+    private boolean useCompression(final int level) {
+        if (!requestCompressedData || level < compressFromMipmapLevel)
+            return false;
+        final AdaptiveCompressionPolicy policy = compressionPolicy;
+        return policy == null || policy.useCompression(level);
+    }
+
+    /**
+     * Set whether to choose per mipmap level between raw and compressed cells
+     * using an {@link AdaptiveCompressionPolicy}. This must be called before
+     * {@link #setDataDecompressors}.
+     */
+    public void setAdaptiveCompression(final boolean adaptiveCompression) {
+        this.adaptiveCompression = adaptiveCompression;
+    }
+
+    /**
+     * Get the {@link AdaptiveCompressionPolicy}, or {@code null} if adaptive
+     * compression is disabled or the server doesn't provide compressed data.
+     */
+    public AdaptiveCompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    /**
+     * Set the {@link DiskCellCache} from which cells are read if possible, and
+     * to which fetched cells are written.
+     *
+     * @param diskCache the disk cache or {@code null} to disable it.
+     */
+    public void setDiskCache(final DiskCellCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    public DiskCellCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Record the number of bytes received from the server ({@code prefix.bytesReceived})
+     * and the time spent decoding QCMP cells ({@code prefix.decodeNanos}) in {@code metrics}.
+     */
+    public void setMetrics(final Metrics metrics, final String prefix) {
+        bytesReceived = metrics.counter(prefix + ".bytesReceived");
+        decodeNanos = metrics.histogram(prefix + ".decodeNanos");
+    }
+
+    /**
+     * Get the number of cells currently being fetched from the server.
+     */
+    public int getNumPendingFetches() {
+        return numPendingFetches.get();
+    }
+
+    /**
+     * Get the bytes of a cell, either from the {@link DiskCellCache} or, if
+     * it is not available there, by requesting it from the server.
+     *
+     * @param baseParam request type sent to the server.
+     * @param payload   payload type under which the cell is stored in the disk cache.
+     */
+    private byte[] fetchCellBytes(final String baseParam,
+                                  final String payload,
+                                  final int timepoint,
+                                  final int setup,
+                                  final int level,
+                                  final int[] dimensions,
+                                  final long[] min) throws IOException {
+        final DiskCellCache diskCache = this.diskCache;
+        final int index = imgLoader.getCellIndex(timepoint, setup, level, min);
+        VolatileGlobalCellCache.Key key = null;
+        if (diskCache != null) {
+            key = new VolatileGlobalCellCache.Key(timepoint, setup, level, index);
+            final byte[] cached = diskCache.get(key, payload);
+            if (cached != null)
+                return cached;
+        }
+
+        final CellRequestBatcher batcher = this.batcher;
+        byte[] bytes = null;
+        numPendingFetches.incrementAndGet();
+        try {
+            if (batcher != null)
+                bytes = batcher.fetch(baseParam, timepoint, setup, level, index, dimensions, min);
+
+            if (bytes == null) {
+                final long t0 = System.nanoTime();
+                bytes = imgLoader.getTransport().get(constructRequestUrl(baseParam, timepoint, setup, level, dimensions, min));
+                final AdaptiveCompressionPolicy policy = compressionPolicy;
+                if (policy != null) {
+                    policy.recordFetch(level, !"cell".equals(baseParam),
+                                       dimensions[0] * dimensions[1] * dimensions[2],
+                                       bytes.length, System.nanoTime() - t0);
+                    upgradeIfRaw(policy, level);
+                }
+            }
+        } finally {
+            numPendingFetches.decrementAndGet();
+        }
+        bytesReceived.add(bytes.length);
+
+        if (diskCache != null)
+            diskCache.put(key, payload, bytes);
+        return bytes;
+    }
+
+    /**
+     * Enable batched requests, merging up to {@code maxCellsPerRequest}
+     * concurrent cell requests for the same timepoint, setup and level.
+     *
+     * @param maxCellsPerRequest maximum number of cells per request. Values {@code <= 1} disable batching.
+     * @param batchWaitMillis    how long a batch waits for more cells before it is sent.
+     */
+    public void setBatching(final int maxCellsPerRequest, final long batchWaitMillis) {
+        batcher = maxCellsPerRequest > 1
+                  ? new CellRequestBatcher(this::fetchBatch, maxCellsPerRequest, batchWaitMillis)
+                  : null;
+    }
+
+    /**
+     * Request several cells of the same image in one request.
+     * <p>
+     * The request is {@code ?p=cells/timepoint/setup/level/n} (or
+     * {@code cells_qcmp/...} for compressed cells), followed by
+     * {@code /index/dx/dy/dz/minx/miny/minz} for each of the {@code n} cells.
+     * The response is a sequence of frames, one per cell, each consisting of
+     * the cell index (int), the number of bytes (int), and the bytes of the
+     * cell as they would be sent for a single-cell request. Integers are
+     * big-endian. If the response is truncated, the cells of the complete
+     * frames are returned.
+     * <p>
+     * The transfer time of the request is split among the received cells in
+     * proportion to their size, and recorded in the {@link AdaptiveCompressionPolicy}.
+     *
+     * @return map from cell index to bytes, or {@code null} if the server does not support batched requests.
+     * @throws IOException if the request failed for another reason.
+     */
+    private Map<Integer, byte[]> fetchBatch(final String baseParam,
+                                            final int timepoint,
+                                            final int setup,
+                                            final int level,
+                                            final List<CellRequestBatcher.CellRequest> cells) throws IOException {
+        final StringBuilder sb = new StringBuilder(String.format("%s?p=%s/%d/%d/%d/%d",
+                                                                 imgLoader.baseUrl, "cell".equals(baseParam) ? "cells" : "cells_qcmp",
+                                                                 timepoint, setup, level, cells.size()));
+        for (final CellRequestBatcher.CellRequest cell : cells) {
+            final int[] d = cell.getDimensions();
+            final long[] m = cell.getMin();
+            sb.append(String.format("/%d/%d/%d/%d/%d/%d/%d", cell.getIndex(), d[0], d[1], d[2], m[0], m[1], m[2]));
+        }
+
+        final long t0 = System.nanoTime();
+        final byte[] response;
+        try {
+            response = imgLoader.getTransport().get(sb.toString());
+        } catch (final HttpTransport.HttpStatusException e) {
+            if (!isBatchingUnsupported(e.getStatusCode()))
+                throw e;
+            ColorConsole.fprintf(ColorConsole.Target.stdout, ColorConsole.Color.Yellow,
+                                 "Server doesn't support batched cell requests. Falling back to single-cell requests.");
+            return null;
+        }
+        final long nanos = System.nanoTime() - t0;
+
+        final Map<Integer, byte[]> result = new HashMap<>(cells.size() * 2);
+        try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(response))) {
+            for (int i = 0; i < cells.size(); i++) {
+                final int index = in.readInt();
+                final int length = in.readInt();
+                if (length < 0 || length > in.available())
+                    break;
+                final byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                result.put(index, bytes);
+            }
+        } catch (final EOFException e) {
+            // truncated response, the missing cells are requested individually
+        }
+
+        final AdaptiveCompressionPolicy policy = compressionPolicy;
+        if (policy != null && response.length > 0) {
+            for (final CellRequestBatcher.CellRequest cell : cells) {
+                final byte[] bytes = result.get(cell.getIndex());
+                if (bytes == null)
+                    continue;
+                final int[] d = cell.getDimensions();
+                policy.recordFetch(level, !"cell".equals(baseParam), d[0] * d[1] * d[2],
+                                   bytes.length, nanos * bytes.length / response.length);
+            }
+            upgradeIfRaw(policy, level);
+        }
+        return result;
+    }
+
+    /**
+     * Whether a batched request that failed with HTTP {@code statusCode} means
+     * that the server does not support batched requests at all.
+     */
+    private static boolean isBatchingUnsupported(final int statusCode) {
+        return statusCode == 400 || statusCode == 404 || statusCode == 501;
     }
 
     @Override
@@ -169,5 +582,8 @@ public class RemoteVolatileShortArrayLoader implements CacheArrayLoader<Volatile
         }
         this.compressFromMipmapLevel = compressFromMipmapLevel;
         requestCompressedData = !decompressors.isEmpty();
+        compressionPolicy = requestCompressedData && adaptiveCompression
+                            ? new AdaptiveCompressionPolicy(levelCount, compressFromMipmapLevel)
+                            : null;
     }
 }
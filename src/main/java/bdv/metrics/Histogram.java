@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative values, e.g., latencies in nanoseconds, see
+ * {@link Metrics#histogram(String)}. Values are counted in power-of-two
+ * buckets, so percentiles are accurate to within a factor of 2.
+ */
+public class Histogram
+{
+	/**
+	 * Bucket {@code b > 0} counts values in {@code [2^(b-1), 2^b)}, bucket 0
+	 * counts zeros.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray( 64 );
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	public void record( final long value )
+	{
+		final long v = Math.max( 0, value );
+		buckets.incrementAndGet( 64 - Long.numberOfLeadingZeros( v ) );
+		count.increment();
+		sum.add( v );
+		max.accumulateAndGet( v, Math::max );
+	}
+
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	public double getMean()
+	{
+		final long n = count.sum();
+		return n == 0 ? 0 : ( double ) sum.sum() / n;
+	}
+
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Get an upper bound of the {@code q}-quantile, i.e., the upper end of the
+	 * bucket that contains it.
+	 *
+	 * @param q
+	 *            quantile in {@code [0, 1]}.
+	 */
+	public long getPercentile( final double q )
+	{
+		final long n = count.sum();
+		if ( n == 0 )
+			return 0;
+		final long rank = Math.max( 1, ( long ) Math.ceil( q * n ) );
+		long seen = 0;
+		for ( int b = 0; b < 64; ++b )
+		{
+			seen += buckets.get( b );
+			if ( seen >= rank )
+				return Math.min( b == 0 ? 0 : ( 1L << b ) - 1, max.get() );
+		}
+		return max.get();
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.metrics;
+
+/**
+ * An event of a {@link JfrEventType}, created by
+ * {@link JfrEventType#begin()}. Call {@link #commit()} to write it to the
+ * running recordings.
+ */
+public final class JfrEvent
+{
+	/**
+	 * The event returned if no recording records events of a type. All calls
+	 * are ignored.
+	 */
+	public static final JfrEvent DISABLED = new JfrEvent( null );
+
+	/**
+	 * {@code jdk.jfr.Event}, or {@code null} if disabled.
+	 */
+	private final Object event;
+
+	JfrEvent( final Object event )
+	{
+		this.event = event;
+	}
+
+	/**
+	 * Whether this event is recorded. This can be used to avoid computing
+	 * field values that are only needed for the event.
+	 *
+	 * @return {@code false} if this is {@link #DISABLED}.
+	 */
+	public boolean isEnabled()
+	{
+		return event != null;
+	}
+
+	/**
+	 * Set the value of the field with the given index (in the order the
+	 * fields were given to {@link JfrEventType#create}).
+	 *
+	 * @return this event
+	 */
+	public JfrEvent set( final int index, final Object value )
+	{
+		if ( event != null )
+		{
+			try
+			{
+				JfrEventType.SET.invokeExact( event, index, value );
+			}
+			catch ( final Throwable t )
+			{
+				// ignore, the field keeps its default value
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Stop timing the event. This is optional, {@link #commit()} stops timing
+	 * if the event was not ended.
+	 */
+	public void end()
+	{
+		if ( event != null )
+		{
+			try
+			{
+				JfrEventType.END.invokeExact( event );
+			}
+			catch ( final Throwable t )
+			{
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Write the event to the running recordings.
+	 */
+	public void commit()
+	{
+		if ( event != null )
+		{
+			try
+			{
+				JfrEventType.COMMIT.invokeExact( event );
+			}
+			catch ( final Throwable t )
+			{
+				// ignore
+			}
+		}
+	}
+}
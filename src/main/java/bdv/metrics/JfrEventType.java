@@ -0,0 +1,307 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.metrics;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Java Flight Recorder event type that is defined at runtime through
+ * {@code jdk.jfr.EventFactory}. This compiles for Java 8 and does nothing if
+ * the running JVM does not support JFR (or does not have
+ * {@code jdk.jfr.EventFactory}, which was added in Java 9).
+ * <p>
+ * Events are only created while a recording with this event type enabled is
+ * running, so instrumentation has negligible cost otherwise:
+ *
+ * <pre>
+ * final JfrEvent event = TYPE.begin();
+ * ...
+ * event.set( 0, level ).commit();
+ * </pre>
+ */
+public final class JfrEventType
+{
+	/**
+	 * A field of an event type.
+	 */
+	public static final class Field
+	{
+		private final Class< ? > type;
+
+		private final String name;
+
+		private final String label;
+
+		/**
+		 * Name of a JFR content type annotation, e.g., {@code "Timespan"},
+		 * and its value, or {@code null}.
+		 */
+		private final String contentType;
+
+		private final String contentValue;
+
+		private Field( final Class< ? > type, final String name, final String label, final String contentType, final String contentValue )
+		{
+			this.type = type;
+			this.name = name;
+			this.label = label;
+			this.contentType = contentType;
+			this.contentValue = contentValue;
+		}
+	}
+
+	/**
+	 * A field of primitive type, {@code String}, or {@code Thread}.
+	 */
+	public static Field field( final Class< ? > type, final String name, final String label )
+	{
+		return new Field( type, name, label, null, null );
+	}
+
+	/**
+	 * A {@code long} field holding a number of bytes.
+	 */
+	public static Field bytesField( final String name, final String label )
+	{
+		return new Field( long.class, name, label, "DataAmount", "BYTES" );
+	}
+
+	/**
+	 * A {@code long} field holding a duration in nano-seconds.
+	 */
+	public static Field nanosField( final String name, final String label )
+	{
+		return new Field( long.class, name, label, "Timespan", "NANOSECONDS" );
+	}
+
+	private static final boolean AVAILABLE;
+
+	private static final MethodHandle NEW_ANNOTATION; // new AnnotationElement( Class, Object )
+
+	private static final MethodHandle NEW_VALUE_DESCRIPTOR; // new ValueDescriptor( Class, String, List )
+
+	private static final MethodHandle CREATE_FACTORY; // EventFactory.create( List, List )
+
+	private static final MethodHandle NEW_EVENT; // EventFactory.newEvent()
+
+	private static final MethodHandle GET_EVENT_TYPE; // EventFactory.getEventType()
+
+	private static final MethodHandle IS_ENABLED; // EventType.isEnabled()
+
+	static final MethodHandle BEGIN; // Event.begin()
+
+	static final MethodHandle END; // Event.end()
+
+	static final MethodHandle COMMIT; // Event.commit()
+
+	static final MethodHandle SET; // Event.set( int, Object )
+
+	/*
+	 * The handles of instance methods are adapted to take and return Object,
+	 * so that they can be called with invokeExact() from code that cannot
+	 * refer to the jdk.jfr types.
+	 */
+	static
+	{
+		boolean available = false;
+		MethodHandle newAnnotation = null;
+		MethodHandle newValueDescriptor = null;
+		MethodHandle createFactory = null;
+		MethodHandle newEvent = null;
+		MethodHandle getEventType = null;
+		MethodHandle isEnabled = null;
+		MethodHandle begin = null;
+		MethodHandle end = null;
+		MethodHandle commit = null;
+		MethodHandle set = null;
+		try
+		{
+			final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			final Class< ? > annotationElement = Class.forName( "jdk.jfr.AnnotationElement" );
+			final Class< ? > valueDescriptor = Class.forName( "jdk.jfr.ValueDescriptor" );
+			final Class< ? > eventFactory = Class.forName( "jdk.jfr.EventFactory" );
+			final Class< ? > eventType = Class.forName( "jdk.jfr.EventType" );
+			final Class< ? > event = Class.forName( "jdk.jfr.Event" );
+			newAnnotation = lookup.findConstructor( annotationElement, MethodType.methodType( void.class, Class.class, Object.class ) );
+			newValueDescriptor = lookup.findConstructor( valueDescriptor, MethodType.methodType( void.class, Class.class, String.class, List.class ) );
+			createFactory = lookup.findStatic( eventFactory, "create", MethodType.methodType( eventFactory, List.class, List.class ) );
+			newEvent = lookup.findVirtual( eventFactory, "newEvent", MethodType.methodType( event ) ).asType( MethodType.methodType( Object.class, Object.class ) );
+			getEventType = lookup.findVirtual( eventFactory, "getEventType", MethodType.methodType( eventType ) );
+			isEnabled = lookup.findVirtual( eventType, "isEnabled", MethodType.methodType( boolean.class ) ).asType( MethodType.methodType( boolean.class, Object.class ) );
+			begin = lookup.findVirtual( event, "begin", MethodType.methodType( void.class ) ).asType( MethodType.methodType( void.class, Object.class ) );
+			end = lookup.findVirtual( event, "end", MethodType.methodType( void.class ) ).asType( MethodType.methodType( void.class, Object.class ) );
+			commit = lookup.findVirtual( event, "commit", MethodType.methodType( void.class ) ).asType( MethodType.methodType( void.class, Object.class ) );
+			set = lookup.findVirtual( event, "set", MethodType.methodType( void.class, int.class, Object.class ) ).asType( MethodType.methodType( void.class, Object.class, int.class, Object.class ) );
+			available = true;
+		}
+		catch ( final ReflectiveOperationException | LinkageError | SecurityException e )
+		{
+			// JFR is not available, all event types are disabled
+		}
+		AVAILABLE = available;
+		NEW_ANNOTATION = newAnnotation;
+		NEW_VALUE_DESCRIPTOR = newValueDescriptor;
+		CREATE_FACTORY = createFactory;
+		NEW_EVENT = newEvent;
+		GET_EVENT_TYPE = getEventType;
+		IS_ENABLED = isEnabled;
+		BEGIN = begin;
+		END = end;
+		COMMIT = commit;
+		SET = set;
+	}
+
+	/**
+	 * Whether the running JVM supports defining JFR events at runtime.
+	 *
+	 * @return {@code true} if JFR events can be recorded.
+	 */
+	public static boolean isAvailable()
+	{
+		return AVAILABLE;
+	}
+
+	/**
+	 * Define and register an event type. Values are assigned to the fields
+	 * by index with {@link JfrEvent#set(int, Object)}.
+	 *
+	 * @param name
+	 *            event name, e.g., {@code "bdv.CellLoad"}
+	 * @param label
+	 *            human-readable name
+	 * @param description
+	 *            one sentence describing the event
+	 * @param category
+	 *            category path in JFR viewers, e.g., {@code "BigDataViewer"}
+	 * @param fields
+	 *            fields of the event, in addition to start time, duration,
+	 *            and thread
+	 * @return the event type. If JFR is not available or the definition
+	 *         fails, a type that never records events.
+	 */
+	public static JfrEventType create( final String name, final String label, final String description, final String[] category, final Field... fields )
+	{
+		if ( !AVAILABLE )
+			return new JfrEventType( null, null );
+
+		try
+		{
+			final List< Object > annotations = new ArrayList<>();
+			annotations.add( annotation( "Name", name ) );
+			annotations.add( annotation( "Label", label ) );
+			annotations.add( annotation( "Description", description ) );
+			annotations.add( annotation( "Category", category ) );
+
+			final List< Object > descriptors = new ArrayList<>();
+			for ( final Field field : fields )
+			{
+				final List< Object > fieldAnnotations = new ArrayList<>();
+				fieldAnnotations.add( annotation( "Label", field.label ) );
+				if ( field.contentType != null )
+					fieldAnnotations.add( annotation( field.contentType, field.contentValue ) );
+				descriptors.add( NEW_VALUE_DESCRIPTOR.invoke( field.type, field.name, fieldAnnotations ) );
+			}
+
+			final Object factory = CREATE_FACTORY.invoke( annotations, descriptors );
+			return new JfrEventType( factory, GET_EVENT_TYPE.invoke( factory ) );
+		}
+		catch ( final Throwable t )
+		{
+			System.err.println( "Cannot define JFR event " + name + ": " + t );
+			return new JfrEventType( null, null );
+		}
+	}
+
+	private static Object annotation( final String type, final Object value ) throws Throwable
+	{
+		return NEW_ANNOTATION.invoke( Class.forName( "jdk.jfr." + type ), value );
+	}
+
+	/**
+	 * {@code jdk.jfr.EventFactory}, or {@code null} if disabled.
+	 */
+	private final Object factory;
+
+	/**
+	 * {@code jdk.jfr.EventType}, or {@code null} if disabled.
+	 */
+	private final Object eventType;
+
+	private JfrEventType( final Object factory, final Object eventType )
+	{
+		this.factory = factory;
+		this.eventType = eventType;
+	}
+
+	/**
+	 * Whether a running recording records events of this type.
+	 *
+	 * @return {@code true} if events of this type are recorded.
+	 */
+	public boolean isEnabled()
+	{
+		if ( eventType == null )
+			return false;
+		try
+		{
+			return ( boolean ) IS_ENABLED.invokeExact( eventType );
+		}
+		catch ( final Throwable t )
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Create a new event and start timing it. If no recording records events
+	 * of this type, this returns {@link JfrEvent#DISABLED}, which ignores all
+	 * calls.
+	 *
+	 * @return a new event, or {@link JfrEvent#DISABLED}.
+	 */
+	public JfrEvent begin()
+	{
+		if ( !isEnabled() )
+			return JfrEvent.DISABLED;
+		try
+		{
+			final Object event = ( Object ) NEW_EVENT.invokeExact( factory );
+			BEGIN.invokeExact( event );
+			return new JfrEvent( event );
+		}
+		catch ( final Throwable t )
+		{
+			return JfrEvent.DISABLED;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.metrics;
+
+import static bdv.metrics.JfrEventType.bytesField;
+import static bdv.metrics.JfrEventType.field;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The Java Flight Recorder events of BigDataViewer. They are recorded with,
+ * e.g., {@code -XX:StartFlightRecording=filename=bdv.jfr} or by starting a
+ * recording in JDK Mission Control, and show up in the category
+ * {@code BigDataViewer}.
+ */
+public final class JfrEvents
+{
+	private static final String[] CATEGORY = { "BigDataViewer" };
+
+	private static final String[] CATEGORY_CACHE = { "BigDataViewer", "Cache" };
+
+	/**
+	 * One {@code MultiResolutionRenderer} pass, i.e., one
+	 * {@code VolatileProjector.map()}.
+	 */
+	public static final JfrEventType RENDER_PASS = JfrEventType.create(
+			"bdv.RenderPass", "Render Pass",
+			"One rendering pass of the viewer at one screen scale.",
+			CATEGORY,
+			field( int.class, "screenScale", "Screen Scale Index" ),
+			field( int.class, "numSources", "Visible Sources" ),
+			field( boolean.class, "interval", "Interval Mode" ),
+			field( boolean.class, "cancelled", "Cancelled" ) );
+
+	/**
+	 * Rendering one resolution level in {@code VolatileHierarchyProjector}.
+	 */
+	public static final JfrEventType PROJECTOR_LEVEL = JfrEventType.create(
+			"bdv.ProjectorLevel", "Projector Level",
+			"Rendering the pixels that are not yet valid from one resolution level.",
+			CATEGORY,
+			field( int.class, "level", "Resolution Level" ),
+			field( int.class, "numInvalidPixels", "Invalid Pixels" ) );
+
+	/**
+	 * Loading one cell into a {@code VolatileGlobalCellCache}.
+	 */
+	public static final JfrEventType CELL_LOAD = JfrEventType.create(
+			"bdv.CellLoad", "Cell Load",
+			"Loading one cell of image data.",
+			CATEGORY_CACHE,
+			field( String.class, "loader", "Loader" ),
+			field( int.class, "timepoint", "Timepoint" ),
+			field( int.class, "setup", "Setup" ),
+			field( int.class, "level", "Level" ),
+			bytesField( "bytes", "Size" ) );
+
+	/**
+	 * Evicting one cell from an {@code OffHeapLoaderCache}.
+	 */
+	public static final JfrEventType CELL_EVICTION = JfrEventType.create(
+			"bdv.CellEviction", "Cell Eviction",
+			"Evicting one cell from the off-heap cache.",
+			CATEGORY_CACHE,
+			field( int.class, "level", "Level" ),
+			bytesField( "bytes", "Size" ),
+			bytesField( "cacheBytes", "Cache Size" ) );
+
+	/**
+	 * Decoding one QCMP-compressed cell.
+	 */
+	public static final JfrEventType QCMP_DECODE = JfrEventType.create(
+			"bdv.QcmpDecode", "QCMP Decode",
+			"Decompressing one QCMP-compressed cell.",
+			CATEGORY_CACHE,
+			bytesField( "compressedBytes", "Compressed Size" ),
+			field( int.class, "numVoxels", "Voxels" ) );
+
+	/**
+	 * From a user input that changes the viewer transform to the first frame
+	 * that shows the change.
+	 */
+	public static final JfrEventType INPUT_LATENCY = JfrEventType.create(
+			"bdv.InputLatency", "Input Latency",
+			"Time from a navigation input to the first frame rendered for it.",
+			CATEGORY,
+			field( int.class, "screenScale", "Screen Scale Index" ) );
+
+	/**
+	 * The {@link #INPUT_LATENCY} event of the earliest input that was not
+	 * rendered yet.
+	 */
+	private static final AtomicReference< JfrEvent > pendingInput = new AtomicReference<>();
+
+	/**
+	 * Start timing an {@link #INPUT_LATENCY} event, unless an earlier input
+	 * was not rendered yet.
+	 */
+	public static void inputReceived()
+	{
+		if ( pendingInput.get() == null && INPUT_LATENCY.isEnabled() )
+			pendingInput.compareAndSet( null, INPUT_LATENCY.begin() );
+	}
+
+	/**
+	 * Commit the pending {@link #INPUT_LATENCY} event, if any. Called when a
+	 * new frame was rendered.
+	 */
+	public static void frameRendered( final int screenScaleIndex )
+	{
+		final JfrEvent event = pendingInput.getAndSet( null );
+		if ( event != null )
+			event.set( 0, screenScaleIndex ).commit();
+	}
+
+	private JfrEvents()
+	{}
+}
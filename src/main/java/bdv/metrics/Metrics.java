@@ -0,0 +1,190 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.metrics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.stream.DoubleStream;
+
+/**
+ * A registry of named metrics: {@link Counter counters},
+ * {@link Histogram histograms}, and gauges, which are read from a
+ * {@link DoubleSupplier} on demand.
+ * <p>
+ * Names are dot-separated, e.g., {@code cache.dataset.hits}. Components that
+ * can exist more than once (e.g., one cache per image loader) register their
+ * metrics under a {@link #uniquePrefix(String) unique prefix} and
+ * {@link #remove(String) remove} them when they are closed.
+ * <p>
+ * The {@link #getDefault() default} registry is published over JMX as the
+ * attributes of the MBean {@value #OBJECT_NAME}.
+ */
+public class Metrics
+{
+	public static final String OBJECT_NAME = "bdv:type=Metrics";
+
+	private static Metrics defaultMetrics;
+
+	/**
+	 * Get the process-wide registry, which is published over JMX.
+	 *
+	 * @return the default {@link Metrics}
+	 */
+	public static synchronized Metrics getDefault()
+	{
+		if ( defaultMetrics == null )
+		{
+			defaultMetrics = new Metrics();
+			MetricsMBean.register( defaultMetrics, OBJECT_NAME );
+		}
+		return defaultMetrics;
+	}
+
+	/**
+	 * Maps name to {@link Counter}, {@link Histogram}, or
+	 * {@link DoubleSupplier}.
+	 */
+	private final ConcurrentSkipListMap< String, Object > metrics = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Prefixes handed out by {@link #uniquePrefix(String)}.
+	 */
+	private final Set< String > prefixes = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Get the {@link Counter} with the given name, creating it if necessary.
+	 */
+	public Counter counter( final String name )
+	{
+		return ( Counter ) metrics.computeIfAbsent( name, n -> new Counter() );
+	}
+
+	/**
+	 * Get the {@link Histogram} with the given name, creating it if
+	 * necessary.
+	 */
+	public Histogram histogram( final String name )
+	{
+		return ( Histogram ) metrics.computeIfAbsent( name, n -> new Histogram() );
+	}
+
+	/**
+	 * Register a gauge, replacing an existing metric with the given name.
+	 */
+	public void gauge( final String name, final DoubleSupplier value )
+	{
+		metrics.put( name, value );
+	}
+
+	/**
+	 * Remove the metric {@code prefix} and all metrics whose names start with
+	 * {@code prefix + "."}.
+	 */
+	public void remove( final String prefix )
+	{
+		prefixes.remove( prefix );
+		metrics.remove( prefix );
+		metrics.subMap( prefix + ".", prefix + "/" ).clear();
+	}
+
+	/**
+	 * Get a prefix that starts with {@code base} (with characters other than
+	 * letters, digits, {@code '-'}, {@code '_'}, and {@code '.'} replaced by
+	 * {@code '_'}), and that was not handed out before. It is available again
+	 * after it is {@link #remove(String) removed}.
+	 */
+	public synchronized String uniquePrefix( final String base )
+	{
+		final String sanitized = base.replaceAll( "[^A-Za-z0-9_\\-.]", "_" );
+		String prefix = sanitized;
+		for ( int i = 2; prefixes.contains( prefix ) || !metrics.subMap( prefix + ".", prefix + "/" ).isEmpty(); ++i )
+			prefix = sanitized + "-" + i;
+		prefixes.add( prefix );
+		return prefix;
+	}
+
+	/**
+	 * Get the current values of the counters and gauges whose names start
+	 * with {@code prefix} and end with {@code suffix}. Unlike
+	 * {@link #snapshot()}, no other metrics are evaluated.
+	 *
+	 * @return current values, in the order of the metric names.
+	 */
+	public DoubleStream values( final String prefix, final String suffix )
+	{
+		final DoubleStream.Builder values = DoubleStream.builder();
+		for ( final Map.Entry< String, Object > entry : metrics.subMap( prefix, prefix + Character.MAX_VALUE ).entrySet() )
+		{
+			final Object metric = entry.getValue();
+			if ( !entry.getKey().endsWith( suffix ) )
+				continue;
+			if ( metric instanceof Counter )
+				values.add( ( ( Counter ) metric ).get() );
+			else if ( metric instanceof DoubleSupplier )
+				values.add( ( ( DoubleSupplier ) metric ).getAsDouble() );
+		}
+		return values.build();
+	}
+
+	/**
+	 * Get the current values of all metrics. Histograms {@code h} are
+	 * reported as {@code h.count}, {@code h.mean}, {@code h.p50},
+	 * {@code h.p99}, and {@code h.max}.
+	 *
+	 * @return map from name to current value, sorted by name.
+	 */
+	public SortedMap< String, Double > snapshot()
+	{
+		final SortedMap< String, Double > values = new TreeMap<>();
+		for ( final Map.Entry< String, Object > entry : metrics.entrySet() )
+		{
+			final String name = entry.getKey();
+			final Object metric = entry.getValue();
+			if ( metric instanceof Counter )
+				values.put( name, ( double ) ( ( Counter ) metric ).get() );
+			else if ( metric instanceof Histogram )
+			{
+				final Histogram h = ( Histogram ) metric;
+				values.put( name + ".count", ( double ) h.getCount() );
+				values.put( name + ".mean", h.getMean() );
+				values.put( name + ".p50", ( double ) h.getPercentile( 0.5 ) );
+				values.put( name + ".p99", ( double ) h.getPercentile( 0.99 ) );
+				values.put( name + ".max", ( double ) h.getMax() );
+			}
+			else
+				values.put( name, ( ( DoubleSupplier ) metric ).getAsDouble() );
+		}
+		return values;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Publishes the current values of a {@link Metrics} registry as read-only
+ * {@code double} attributes of a dynamic MBean.
+ */
+class MetricsMBean implements DynamicMBean
+{
+	private final Metrics metrics;
+
+	MetricsMBean( final Metrics metrics )
+	{
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Register an MBean for {@code metrics} with the platform MBean server.
+	 * Failures (e.g., in a restricted environment) are reported but
+	 * otherwise ignored.
+	 */
+	static void register( final Metrics metrics, final String objectName )
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean( new MetricsMBean( metrics ), new ObjectName( objectName ) );
+		}
+		catch ( final JMException | SecurityException e )
+		{
+			System.err.println( "Could not publish metrics over JMX: " + e.getMessage() );
+		}
+	}
+
+	@Override
+	public Object getAttribute( final String attribute ) throws AttributeNotFoundException
+	{
+		final Double value = metrics.snapshot().get( attribute );
+		if ( value == null )
+			throw new AttributeNotFoundException( attribute );
+		return value;
+	}
+
+	@Override
+	public AttributeList getAttributes( final String[] attributes )
+	{
+		final SortedMap< String, Double > values = metrics.snapshot();
+		final AttributeList list = new AttributeList();
+		for ( final String attribute : attributes )
+		{
+			final Double value = values.get( attribute );
+			if ( value != null )
+				list.add( new Attribute( attribute, value ) );
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute( final Attribute attribute ) throws AttributeNotFoundException
+	{
+		throw new AttributeNotFoundException( "metrics are read-only" );
+	}
+
+	@Override
+	public AttributeList setAttributes( final AttributeList attributes )
+	{
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke( final String actionName, final Object[] params, final String[] signature ) throws ReflectionException
+	{
+		throw new ReflectionException( new NoSuchMethodException( actionName ) );
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo()
+	{
+		final SortedMap< String, Double > values = metrics.snapshot();
+		final MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[ values.size() ];
+		int i = 0;
+		for ( final Map.Entry< String, Double > entry : values.entrySet() )
+			attributes[ i++ ] = new MBeanAttributeInfo( entry.getKey(), "double", entry.getKey(), true, false, false );
+		return new MBeanInfo(
+				getClass().getName(),
+				"BigDataViewer metrics",
+				attributes,
+				null,
+				new MBeanOperationInfo[ 0 ],
+				new MBeanNotificationInfo[ 0 ] );
+	}
+}
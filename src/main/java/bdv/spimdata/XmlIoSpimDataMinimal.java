@@ -28,7 +28,9 @@
  */
 package bdv.spimdata;
 
+import bdv.img.cache.CacheOptions;
 import bdv.img.remote.RemoteImageLoader;
+import bdv.img.remote.RemoteOptions;
 import bdv.spimdata.legacy.XmlIoSpimDataMinimalLegacy;
 import bdv.viewer.ViewerOptions;
 import mpicbg.spim.data.SpimDataException;
@@ -51,6 +53,10 @@ import static mpicbg.spim.data.XmlKeys.SPIMDATA_TAG;
 public class XmlIoSpimDataMinimal extends XmlIoAbstractSpimData<SequenceDescriptionMinimal, SpimDataMinimal> {
     private ViewerOptions.CompressionOptions compressionOptions;
 
+    private CacheOptions cacheOptions;
+
+    private RemoteOptions remoteOptions;
+
     public XmlIoSpimDataMinimal() {
         super(SpimDataMinimal.class,
               new XmlIoAbstractSequenceDescription<>(
@@ -65,6 +71,14 @@ public class XmlIoSpimDataMinimal extends XmlIoAbstractSpimData<SequenceDescript
         this.compressionOptions = ops;
     }
 
+    public void setCacheOptions(final CacheOptions ops) {
+        this.cacheOptions = ops;
+    }
+
+    public void setRemoteOptions(final RemoteOptions ops) {
+        this.remoteOptions = ops;
+    }
+
     @Override
     public SpimDataMinimal load(final String xmlFilename) throws SpimDataException {
         final SAXBuilder sax = new SAXBuilder();
@@ -86,6 +100,11 @@ public class XmlIoSpimDataMinimal extends XmlIoAbstractSpimData<SequenceDescript
         if (spimDataMinimal.getSequenceDescription().getImgLoader() instanceof RemoteImageLoader) {
             final RemoteImageLoader remoteImageLoader = (RemoteImageLoader) spimDataMinimal.getSequenceDescription().getImgLoader();
             remoteImageLoader.setViewerCompressionOptions(compressionOptions);
+            if (remoteOptions != null)
+                remoteImageLoader.setRemoteOptions(remoteOptions);
+        }
+        if (cacheOptions != null && spimDataMinimal.getSequenceDescription().getImgLoader() instanceof CacheOptions.Configurable) {
+            ((CacheOptions.Configurable) spimDataMinimal.getSequenceDescription().getImgLoader()).setCacheOptions(cacheOptions);
         }
         return spimDataMinimal;
     }
@@ -51,6 +51,11 @@ public class Prefs
 		return getInstance().showTextOverlay;
 	}
 
+	public static boolean showPerformanceOverlay()
+	{
+		return getInstance().showPerformanceOverlay;
+	}
+
 	public static boolean showScaleBarInMovie()
 	{
 		return getInstance().showScaleBarInMovie;
@@ -81,6 +86,11 @@ public class Prefs
 		getInstance().showTextOverlay = show;
 	}
 
+	public static void showPerformanceOverlay( final boolean show )
+	{
+		getInstance().showPerformanceOverlay = show;
+	}
+
 	public static void showScaleBarInMovie( final boolean show )
 	{
 		getInstance().showScaleBarInMovie = show;
@@ -110,6 +120,7 @@ public class Prefs
 	private static final String SHOW_SCALE_BAR = "show-scale-bar";
 	private static final String SHOW_MULTIBOX_OVERLAY = "show-multibox-overlay";
 	private static final String SHOW_TEXT_OVERLAY = "show-text-overlay";
+	private static final String SHOW_PERFORMANCE_OVERLAY = "show-performance-overlay";
 	private static final String SHOW_SCALE_BAR_IN_MOVIE = "show-scale-bar-in-movie";
 	private static final String SCALE_BAR_COLOR = "scale-bar-color";
 	private static final String SCALE_BAR_BG_COLOR = "scale-bar-bg-color";
@@ -117,6 +128,7 @@ public class Prefs
 	private boolean showScaleBar;
 	private boolean showMultibox;
 	private boolean showTextOverlay;
+	private boolean showPerformanceOverlay;
 	private boolean showScaleBarInMovie;
 	private int scaleBarColor;
 	private int scaleBarBgColor;
@@ -126,6 +138,7 @@ public class Prefs
 		showScaleBar = getBoolean( p, SHOW_SCALE_BAR, false );
 		showMultibox = getBoolean( p, SHOW_MULTIBOX_OVERLAY, true );
 		showTextOverlay = getBoolean( p, SHOW_TEXT_OVERLAY, true );
+		showPerformanceOverlay = getBoolean( p, SHOW_PERFORMANCE_OVERLAY, false );
 		showScaleBarInMovie = getBoolean( p, SHOW_SCALE_BAR_IN_MOVIE, false );
 		scaleBarColor = getInt( p, SCALE_BAR_COLOR, 0xffffffff );
 		scaleBarBgColor = getInt( p, SCALE_BAR_BG_COLOR, 0x88000000 );
@@ -205,6 +218,7 @@ public class Prefs
 		properties.put( SHOW_SCALE_BAR, "" + prefs.showScaleBar );
 		properties.put( SHOW_MULTIBOX_OVERLAY, "" + prefs.showMultibox );
 		properties.put( SHOW_TEXT_OVERLAY, "" + prefs.showTextOverlay );
+		properties.put( SHOW_PERFORMANCE_OVERLAY, "" + prefs.showPerformanceOverlay );
 		properties.put( SHOW_SCALE_BAR_IN_MOVIE, "" + prefs.showScaleBarInMovie );
 		properties.put( SCALE_BAR_COLOR, "" + prefs.scaleBarColor );
 		properties.put( SCALE_BAR_BG_COLOR, "" + prefs.scaleBarBgColor );
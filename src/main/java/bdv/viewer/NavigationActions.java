@@ -44,11 +44,13 @@ public class NavigationActions extends Actions
 	public static final String TOGGLE_INTERPOLATION = "toggle interpolation";
 	public static final String TOGGLE_FUSED_MODE = "toggle fused mode";
 	public static final String TOGGLE_GROUPING = "toggle grouping";
+	public static final String TOGGLE_PERFORMANCE_OVERLAY = "toggle performance overlay";
 	public static final String SET_CURRENT_SOURCE = "set current source %d";
 	public static final String TOGGLE_SOURCE_VISIBILITY = "toggle source visibility %d";
 	public static final String ALIGN_PLANE = "align %s plane";
 	public static final String NEXT_TIMEPOINT = "next timepoint";
 	public static final String PREVIOUS_TIMEPOINT = "previous timepoint";
+	public static final String TOGGLE_PLAYBACK = "toggle playback";
 
 	/**
 	 * Create navigation actions and install them in the specified
@@ -107,6 +109,9 @@ public class NavigationActions extends Actions
 					state.setDisplayMode( mode.withGrouping( !mode.hasGrouping() ) );
 				},
 				TOGGLE_GROUPING, "G" );
+		runnableAction(
+				viewer::togglePerformanceOverlay,
+				TOGGLE_PERFORMANCE_OVERLAY, "F7" );
 	}
 
 	public void time( final ViewerPanel viewer )
@@ -117,6 +122,9 @@ public class NavigationActions extends Actions
 		runnableAction(
 				viewer::previousTimePoint,
 				PREVIOUS_TIMEPOINT, "OPEN_BRACKET", "N" );
+		runnableAction(
+				viewer::togglePlayback,
+				TOGGLE_PLAYBACK, "ctrl P" );
 	}
 
 	public void sources( final ViewerPanel viewer )
@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer;
+
+/**
+ * Chooses the mipmap level bias for {@link TimelapsePlayer time-lapse
+ * playback} from the sustained loading throughput.
+ * <p>
+ * Throughput (loaded cells per second) is only measured while the look-ahead
+ * buffer is not full, that is, while loading is the bottleneck. Playback
+ * switches to a coarser level if the frame being shown is incomplete and the
+ * throughput is lower than the cells per second needed at the current level.
+ * It switches to a finer level if the look-ahead buffer is full and the
+ * throughput is sufficient for the finer level (or not known). After each
+ * switch, the level is kept for at least {@link #holdNanos}.
+ */
+class PlaybackLevelController
+{
+	/**
+	 * The look-ahead buffer counts as full above this fill fraction.
+	 */
+	static final double FULL = 0.95;
+
+	/**
+	 * The frame being shown counts as incomplete below this fill fraction.
+	 */
+	static final double INCOMPLETE = 0.9;
+
+	/**
+	 * Only switch to a finer level if it needs at most this fraction of the
+	 * measured throughput.
+	 */
+	static final double HEADROOM = 0.8;
+
+	/**
+	 * Weight of the newest sample in the exponential moving average of the
+	 * throughput.
+	 */
+	private static final double ALPHA = 0.2;
+
+	private final int maxLevelBias;
+
+	private final long holdNanos;
+
+	private int levelBias;
+
+	private double cellsPerSecond = Double.NaN;
+
+	private long lastUpdateNanos = -1;
+
+	private long lastSwitchNanos;
+
+	/**
+	 * @param maxLevelBias
+	 *            the largest level bias to use (number of mipmap levels minus
+	 *            one).
+	 * @param holdNanos
+	 *            minimum time between level switches.
+	 * @param nowNanos
+	 *            current time.
+	 */
+	PlaybackLevelController( final int maxLevelBias, final long holdNanos, final long nowNanos )
+	{
+		this.maxLevelBias = Math.max( 0, maxLevelBias );
+		this.holdNanos = holdNanos;
+		lastSwitchNanos = nowNanos;
+	}
+
+	int getLevelBias()
+	{
+		return levelBias;
+	}
+
+	/**
+	 * @return the measured throughput in cells per second, or {@code NaN} if
+	 *         not measured yet.
+	 */
+	double getCellsPerSecond()
+	{
+		return cellsPerSecond;
+	}
+
+	/**
+	 * Update throughput and choose the level bias.
+	 *
+	 * @param nowNanos
+	 *            current time.
+	 * @param loadedCells
+	 *            number of cells that were loaded since the last update, or
+	 *            a negative number if that is unknown (because the level
+	 *            bias changed).
+	 * @param frameFill
+	 *            fraction of loaded cells of the frame being shown.
+	 * @param bufferFill
+	 *            fraction of loaded cells of the look-ahead timepoints.
+	 * @param cellsPerFrame
+	 *            number of cells needed per frame at the current level bias.
+	 * @param finerCellsPerFrame
+	 *            number of cells needed per frame at the next finer level
+	 *            bias (ignored if the current level bias is 0).
+	 * @param framesPerSecond
+	 *            playback frame rate.
+	 *
+	 * @return the new level bias.
+	 */
+	int update(
+			final long nowNanos,
+			final long loadedCells,
+			final double frameFill,
+			final double bufferFill,
+			final long cellsPerFrame,
+			final long finerCellsPerFrame,
+			final double framesPerSecond )
+	{
+		if ( lastUpdateNanos >= 0 && loadedCells >= 0 && bufferFill < FULL )
+		{
+			final double seconds = ( nowNanos - lastUpdateNanos ) * 1e-9;
+			if ( seconds > 0 )
+			{
+				final double sample = loadedCells / seconds;
+				cellsPerSecond = Double.isNaN( cellsPerSecond )
+						? sample
+						: ALPHA * sample + ( 1 - ALPHA ) * cellsPerSecond;
+			}
+		}
+		lastUpdateNanos = nowNanos;
+
+		if ( nowNanos - lastSwitchNanos < holdNanos )
+			return levelBias;
+
+		final boolean measured = !Double.isNaN( cellsPerSecond );
+		if ( levelBias < maxLevelBias
+				&& frameFill < INCOMPLETE
+				&& measured
+				&& cellsPerSecond < cellsPerFrame * framesPerSecond )
+		{
+			++levelBias;
+			lastSwitchNanos = nowNanos;
+		}
+		else if ( levelBias > 0
+				&& bufferFill >= FULL
+				&& ( !measured || finerCellsPerFrame * framesPerSecond <= HEADROOM * cellsPerSecond ) )
+		{
+			--levelBias;
+			lastSwitchNanos = nowNanos;
+		}
+		return levelBias;
+	}
+}
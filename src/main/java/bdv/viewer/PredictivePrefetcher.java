@@ -0,0 +1,296 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.FinalDimensions;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import bdv.viewer.render.LookAheadPrefetcher;
+
+/**
+ * Prefetches the cells that will enter the viewport of a {@link ViewerPanel}
+ * during continuous navigation.
+ * <p>
+ * Viewer transform changes are tracked by a {@link TransformPredictor}, which
+ * extrapolates where the view will be a short horizon ahead. The cells needed
+ * for the predicted viewport are loaded in the background, after the cells
+ * requested for the current frame (see {@link LookAheadPrefetcher}). When a
+ * prediction is due, it is compared to the actual viewport, and the horizon is
+ * tuned from the resulting {@link Statistics}.
+ * <p>
+ * Predictive prefetching is disabled by default. It runs on a thread of its
+ * own, which is started when it is first {@link #setEnabled(boolean)
+ * enabled}.
+ */
+public class PredictivePrefetcher implements TransformListener< AffineTransform3D >
+{
+	/**
+	 * Snapshot of prediction statistics.
+	 */
+	public static class Statistics
+	{
+		private final long numPredictions;
+
+		private final long numEvaluated;
+
+		private final double accuracy;
+
+		private final double hitRate;
+
+		private final long horizonNanos;
+
+		Statistics( final long numPredictions, final long numEvaluated, final double accuracy, final double hitRate, final long horizonNanos )
+		{
+			this.numPredictions = numPredictions;
+			this.numEvaluated = numEvaluated;
+			this.accuracy = accuracy;
+			this.hitRate = hitRate;
+			this.horizonNanos = horizonNanos;
+		}
+
+		/**
+		 * @return number of predicted viewports that were prefetched.
+		 */
+		public long getNumPredictions()
+		{
+			return numPredictions;
+		}
+
+		/**
+		 * @return number of predictions that were compared to the actual
+		 *         viewport.
+		 */
+		public long getNumEvaluated()
+		{
+			return numEvaluated;
+		}
+
+		/**
+		 * @return moving average of the fraction of the actual viewport that
+		 *         was covered by the predicted viewport, or {@code NaN} if
+		 *         nothing was evaluated yet.
+		 */
+		public double getAccuracy()
+		{
+			return accuracy;
+		}
+
+		/**
+		 * @return moving average of the fraction of cells of the actual
+		 *         viewport that were loaded when the prediction was due, or
+		 *         {@code NaN} if nothing was evaluated yet.
+		 */
+		public double getHitRate()
+		{
+			return hitRate;
+		}
+
+		/**
+		 * @return how far ahead the viewer transform is currently
+		 *         extrapolated.
+		 */
+		public long getHorizonMillis()
+		{
+			return TimeUnit.NANOSECONDS.toMillis( horizonNanos );
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "predictions = %d, evaluated = %d, accuracy = %.2f, hit rate = %.2f, horizon = %d ms",
+					numPredictions, numEvaluated, accuracy, hitRate, getHorizonMillis() );
+		}
+	}
+
+	/**
+	 * Minimum time between two predictions.
+	 */
+	private static final long MIN_INTERVAL_NANOS = 30_000_000L;
+
+	/**
+	 * Maximum number of predictions waiting to be evaluated.
+	 */
+	private static final int MAX_PENDING = 32;
+
+	private static class Prediction
+	{
+		final long dueNanos;
+
+		final AffineTransform3D transform;
+
+		Prediction( final long dueNanos, final AffineTransform3D transform )
+		{
+			this.dueNanos = dueNanos;
+			this.transform = transform;
+		}
+	}
+
+	private final ViewerPanel viewer;
+
+	private final TransformPredictor predictor = new TransformPredictor();
+
+	/**
+	 * Started when prefetching is first enabled. Guarded by {@code this}.
+	 */
+	private Thread thread;
+
+	/**
+	 * Whether the viewer was stopped. Guarded by {@code this}.
+	 */
+	private boolean stopped;
+
+	private volatile boolean enabled = false;
+
+	private volatile long numPredictions;
+
+	private boolean transformChanged;
+
+	PredictivePrefetcher( final ViewerPanel viewer )
+	{
+		this.viewer = viewer;
+	}
+
+	synchronized void stop()
+	{
+		stopped = true;
+		if ( thread != null )
+			thread.interrupt();
+	}
+
+	/**
+	 * Enable or disable predictive prefetching. It is disabled by default.
+	 */
+	public synchronized void setEnabled( final boolean enabled )
+	{
+		this.enabled = enabled;
+		if ( enabled && thread == null && !stopped )
+		{
+			thread = new Thread( viewer.threadGroup, this::run, "bdv-predictive-prefetcher" );
+			thread.setDaemon( true );
+			thread.start();
+		}
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public Statistics getStatistics()
+	{
+		return new Statistics(
+				numPredictions,
+				predictor.getNumEvaluated(),
+				predictor.getAccuracy(),
+				predictor.getHitRate(),
+				predictor.getHorizonNanos() );
+	}
+
+	@Override
+	public void transformChanged( final AffineTransform3D transform )
+	{
+		if ( !enabled )
+			return;
+		predictor.addSample( System.nanoTime(), transform );
+		synchronized ( this )
+		{
+			transformChanged = true;
+			notify();
+		}
+	}
+
+	private void run()
+	{
+		final ArrayDeque< Prediction > pending = new ArrayDeque<>();
+		final AffineTransform3D actual = new AffineTransform3D();
+		long lastPredictionNanos = 0;
+		try
+		{
+			while ( !Thread.interrupted() )
+			{
+				final boolean changed;
+				synchronized ( this )
+				{
+					while ( !transformChanged )
+					{
+						if ( pending.isEmpty() )
+							wait();
+						else
+						{
+							final long waitNanos = pending.peekFirst().dueNanos - System.nanoTime();
+							if ( waitNanos <= 0 )
+								break;
+							TimeUnit.NANOSECONDS.timedWait( this, waitNanos );
+						}
+					}
+					changed = transformChanged;
+					transformChanged = false;
+				}
+
+				final SynchronizedViewerState state = viewer.state();
+				final int width = viewer.getDisplay().getWidth();
+				final int height = viewer.getDisplay().getHeight();
+				final FinalDimensions screenInterval = new FinalDimensions( width, height );
+				final int timepoint = state.getCurrentTimepoint();
+				final int levelBias = viewer.imageRenderer.getMipmapLevelBias();
+
+				final long now = System.nanoTime();
+				while ( !pending.isEmpty() && pending.peekFirst().dueNanos <= now )
+				{
+					final Prediction prediction = pending.removeFirst();
+					state.getViewerTransform( actual );
+					final double accuracy = TransformPredictor.overlap( prediction.transform, actual, width, height );
+					final double hitRate = LookAheadPrefetcher.prefetch( state, actual, screenInterval, timepoint, levelBias, false ).getFill();
+					predictor.evaluate( accuracy, hitRate );
+				}
+
+				if ( changed && enabled && now - lastPredictionNanos >= MIN_INTERVAL_NANOS && width > 0 && height > 0 )
+				{
+					final AffineTransform3D predicted = predictor.predict( now );
+					if ( predicted != null )
+					{
+						LookAheadPrefetcher.prefetch( state, predicted, screenInterval, timepoint, levelBias, true );
+						if ( pending.size() >= MAX_PENDING )
+							pending.removeFirst();
+						pending.addLast( new Prediction( now + predictor.getHorizonNanos(), predicted ) );
+						lastPredictionNanos = now;
+						++numPredictions;
+					}
+				}
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			// stopped
+		}
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.FinalDimensions;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import bdv.viewer.render.LookAheadPrefetcher;
+import bdv.viewer.render.LookAheadPrefetcher.CellCount;
+
+/**
+ * Plays the timepoints of a {@link ViewerPanel} at a given frame rate.
+ * <p>
+ * While playing, the cells needed to render the next
+ * {@link #setNumLookAhead(int) look-ahead} timepoints at the current viewer
+ * transform are enqueued for loading, behind the cells of the frame being
+ * shown. Frames are shown when they are due, whether or not they are
+ * completely loaded, that is, frames are dropped instead of waiting for data.
+ * If the sustained loading throughput is too low for the frame rate, playback
+ * switches to coarser mipmap levels, and back to finer levels when the
+ * look-ahead buffer stays full (see {@link PlaybackLevelController}).
+ */
+public class TimelapsePlayer
+{
+	/**
+	 * Snapshot of the playback state, for display in an overlay.
+	 */
+	public static class Status
+	{
+		private final double framesPerSecond;
+
+		private final int mipmapLevelBias;
+
+		private final double[] lookAheadFill;
+
+		private final long framesShown;
+
+		private final long framesDropped;
+
+		private final double cellsPerSecond;
+
+		Status( final double framesPerSecond, final int mipmapLevelBias, final double[] lookAheadFill, final long framesShown, final long framesDropped, final double cellsPerSecond )
+		{
+			this.framesPerSecond = framesPerSecond;
+			this.mipmapLevelBias = mipmapLevelBias;
+			this.lookAheadFill = lookAheadFill;
+			this.framesShown = framesShown;
+			this.framesDropped = framesDropped;
+			this.cellsPerSecond = cellsPerSecond;
+		}
+
+		public double getFramesPerSecond()
+		{
+			return framesPerSecond;
+		}
+
+		/**
+		 * @return how many mipmap levels coarser than normal are rendered.
+		 */
+		public int getMipmapLevelBias()
+		{
+			return mipmapLevelBias;
+		}
+
+		/**
+		 * @return fraction of loaded cells for each look-ahead timepoint, in
+		 *         playback order.
+		 */
+		public double[] getLookAheadFill()
+		{
+			return lookAheadFill.clone();
+		}
+
+		/**
+		 * @return fraction of loaded cells over all look-ahead timepoints.
+		 */
+		public double getBufferFill()
+		{
+			if ( lookAheadFill.length == 0 )
+				return 1;
+			double sum = 0;
+			for ( final double fill : lookAheadFill )
+				sum += fill;
+			return sum / lookAheadFill.length;
+		}
+
+		public long getFramesShown()
+		{
+			return framesShown;
+		}
+
+		public long getFramesDropped()
+		{
+			return framesDropped;
+		}
+
+		/**
+		 * @return measured loading throughput in cells per second, or
+		 *         {@code NaN} if not measured yet.
+		 */
+		public double getCellsPerSecond()
+		{
+			return cellsPerSecond;
+		}
+	}
+
+	/**
+	 * Minimum time between mipmap level switches.
+	 */
+	private static final long LEVEL_HOLD_NANOS = TimeUnit.SECONDS.toNanos( 1 );
+
+	private final ViewerPanel viewer;
+
+	private volatile double framesPerSecond = 10;
+
+	private volatile int numLookAhead = 8;
+
+	private volatile Status status;
+
+	private Thread thread;
+
+	TimelapsePlayer( final ViewerPanel viewer )
+	{
+		this.viewer = viewer;
+	}
+
+	/**
+	 * Start playing at the given frame rate.
+	 */
+	public synchronized void start( final double framesPerSecond )
+	{
+		setFramesPerSecond( framesPerSecond );
+		start();
+	}
+
+	/**
+	 * Start playing at the current {@link #getFramesPerSecond() frame rate}.
+	 * Does nothing if already playing.
+	 */
+	public synchronized void start()
+	{
+		if ( isPlaying() || viewer.state().getNumTimepoints() < 2 )
+			return;
+		thread = new Thread( viewer.threadGroup, this::run, "bdv-timelapse-player" );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/**
+	 * Stop playing and wait for the playback thread to finish.
+	 */
+	public synchronized void stop()
+	{
+		if ( thread == null )
+			return;
+		thread.interrupt();
+		try
+		{
+			thread.join();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	public synchronized boolean isPlaying()
+	{
+		return thread != null && thread.isAlive();
+	}
+
+	/**
+	 * Set the playback frame rate. If already playing, the new rate takes
+	 * effect with the next frame.
+	 */
+	public void setFramesPerSecond( final double framesPerSecond )
+	{
+		if ( !( framesPerSecond > 0 ) )
+			throw new IllegalArgumentException( "frames per second must be positive" );
+		this.framesPerSecond = framesPerSecond;
+	}
+
+	public double getFramesPerSecond()
+	{
+		return framesPerSecond;
+	}
+
+	/**
+	 * Set how many timepoints after the current one are prefetched.
+	 */
+	public void setNumLookAhead( final int numLookAhead )
+	{
+		this.numLookAhead = Math.max( 0, numLookAhead );
+	}
+
+	public int getNumLookAhead()
+	{
+		return numLookAhead;
+	}
+
+	/**
+	 * @return the state of the current playback, or {@code null} if not
+	 *         playing.
+	 */
+	public Status getStatus()
+	{
+		return isPlaying() ? status : null;
+	}
+
+	private void run()
+	{
+		final SynchronizedViewerState state = viewer.state();
+
+		int maxLevelBias = 0;
+		for ( final SourceAndConverter< ? > source : state.getSources() )
+			maxLevelBias = Math.max( maxLevelBias, source.getSpimSource().getNumMipmapLevels() - 1 );
+		final PlaybackLevelController controller = new PlaybackLevelController( maxLevelBias, LEVEL_HOLD_NANOS, System.nanoTime() );
+		int levelBias = 0;
+
+		// loaded cells per timepoint in the last iteration, to measure throughput
+		Map< Integer, Long > previousValid = new HashMap<>();
+
+		double playingFramesPerSecond = 0;
+		long frameNanos = 0;
+		long startNanos = 0;
+		int startTimepoint = 0;
+		int timepoint = -1;
+		long frame = 0;
+		long framesShown = 0;
+		long framesDropped = 0;
+
+		final AffineTransform3D screenTransform = new AffineTransform3D();
+		try
+		{
+			while ( !Thread.interrupted() )
+			{
+				final int numTimepoints = state.getNumTimepoints();
+				if ( numTimepoints < 2 )
+					break;
+
+				if ( state.getCurrentTimepoint() != timepoint || framesPerSecond != playingFramesPerSecond )
+				{
+					// (re)start the clock when starting, when the timepoint
+					// was changed elsewhere, or when the frame rate changed
+					playingFramesPerSecond = framesPerSecond;
+					frameNanos = ( long ) ( 1e9 / playingFramesPerSecond );
+					startNanos = System.nanoTime();
+					startTimepoint = timepoint = state.getCurrentTimepoint();
+					frame = 0;
+				}
+
+				final long due = ( System.nanoTime() - startNanos ) / frameNanos;
+				if ( due > frame )
+				{
+					framesDropped += due - frame - 1;
+					++framesShown;
+					frame = due;
+					timepoint = ( int ) ( ( startTimepoint + frame ) % numTimepoints );
+					state.setCurrentTimepoint( timepoint );
+				}
+
+				// enqueue the look-ahead timepoints, nearest first
+				state.getViewerTransform( screenTransform );
+				final FinalDimensions screenInterval = new FinalDimensions( viewer.getDisplay().getWidth(), viewer.getDisplay().getHeight() );
+				final int n = Math.min( numLookAhead, numTimepoints - 1 );
+				final double[] lookAheadFill = new double[ n ];
+				final boolean measurable = !previousValid.isEmpty();
+				final Map< Integer, Long > valid = new HashMap<>();
+				long loadedCells = 0;
+				long cellsPerFrame = 0;
+				double frameFill = 1;
+				for ( int i = 0; i <= n; ++i )
+				{
+					final int t = ( timepoint + i ) % numTimepoints;
+					final CellCount count = LookAheadPrefetcher.prefetch( state, screenTransform, screenInterval, t, levelBias, true );
+					if ( i == 0 )
+						frameFill = count.getFill();
+					else
+						lookAheadFill[ i - 1 ] = count.getFill();
+					cellsPerFrame = Math.max( cellsPerFrame, count.getTotal() );
+					valid.put( t, count.getValid() );
+					loadedCells += Math.max( 0, count.getValid() - previousValid.getOrDefault( t, 0L ) );
+				}
+				previousValid = valid;
+
+				final long finerCellsPerFrame = levelBias > 0
+						? LookAheadPrefetcher.prefetch( state, screenTransform, screenInterval, timepoint, levelBias - 1, false ).getTotal()
+						: 0;
+				final Status s = new Status( playingFramesPerSecond, levelBias, lookAheadFill, framesShown, framesDropped, controller.getCellsPerSecond() );
+				final int newLevelBias = controller.update( System.nanoTime(), measurable ? loadedCells : -1, frameFill, s.getBufferFill(), cellsPerFrame, finerCellsPerFrame, playingFramesPerSecond );
+				if ( newLevelBias != levelBias )
+				{
+					levelBias = newLevelBias;
+					previousValid.clear();
+					viewer.imageRenderer.setMipmapLevelBias( levelBias );
+					viewer.requestRepaint();
+				}
+				status = s;
+				viewer.getDisplay().repaint();
+
+				final long sleepNanos = startNanos + ( frame + 1 ) * frameNanos - System.nanoTime();
+				if ( sleepNanos > 0 )
+					TimeUnit.NANOSECONDS.sleep( sleepNanos );
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			// stopped
+		}
+		finally
+		{
+			status = null;
+			viewer.imageRenderer.setMipmapLevelBias( 0 );
+			viewer.requestRepaint();
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer;
+
+import java.util.ArrayDeque;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Extrapolates the viewer transform from its recent trajectory, and tunes
+ * how far ahead to extrapolate from the outcome of earlier predictions.
+ * <p>
+ * Each element of the transform matrix is extrapolated linearly, with the
+ * velocity measured over the last {@link #WINDOW_NANOS}. This is exact for
+ * constant-speed panning and a close approximation for zooming and rotation
+ * over a few hundred milliseconds.
+ * <p>
+ * The horizon is shortened when predicted viewports miss the actual ones
+ * (the motion changed before the prediction was due), and lengthened when
+ * predictions were accurate but cells were still missing when the actual
+ * viewport was rendered (loading needs more lead time).
+ */
+class TransformPredictor
+{
+	/**
+	 * Velocity is measured over transforms from this time window.
+	 */
+	static final long WINDOW_NANOS = 150_000_000L;
+
+	static final long MIN_HORIZON_NANOS = 50_000_000L;
+
+	static final long MAX_HORIZON_NANOS = 1_000_000_000L;
+
+	/**
+	 * Predictions whose viewport overlap with the actual viewport is below
+	 * this are considered misses.
+	 */
+	static final double MIN_ACCURACY = 0.5;
+
+	/**
+	 * Accurate predictions with a lower fraction of loaded cells lengthen the
+	 * horizon.
+	 */
+	static final double MIN_HIT_RATE = 0.9;
+
+	private static final int MAX_SAMPLES = 16;
+
+	/**
+	 * Weight of the newest evaluation in the moving averages.
+	 */
+	private static final double ALPHA = 0.1;
+
+	private static class Sample
+	{
+		final long nanos;
+
+		final double[] matrix;
+
+		Sample( final long nanos, final AffineTransform3D transform )
+		{
+			this.nanos = nanos;
+			this.matrix = transform.getRowPackedCopy();
+		}
+	}
+
+	private final ArrayDeque< Sample > samples = new ArrayDeque<>();
+
+	private long horizonNanos = 300_000_000L;
+
+	private long numEvaluated;
+
+	private double accuracy = Double.NaN;
+
+	private double hitRate = Double.NaN;
+
+	/**
+	 * Record the viewer transform at the given time.
+	 */
+	synchronized void addSample( final long nanos, final AffineTransform3D transform )
+	{
+		samples.addLast( new Sample( nanos, transform ) );
+		while ( samples.size() > MAX_SAMPLES || nanos - samples.peekFirst().nanos > WINDOW_NANOS )
+			samples.removeFirst();
+	}
+
+	/**
+	 * Predict the viewer transform {@link #getHorizonNanos() horizon} after
+	 * {@code nowNanos}.
+	 *
+	 * @return the predicted transform, or {@code null} if the transform is
+	 *         not currently changing.
+	 */
+	synchronized AffineTransform3D predict( final long nowNanos )
+	{
+		if ( samples.size() < 2 )
+			return null;
+		final Sample first = samples.peekFirst();
+		final Sample last = samples.peekLast();
+		if ( nowNanos - last.nanos > WINDOW_NANOS || last.nanos == first.nanos )
+			return null;
+
+		final double scale = ( double ) ( nowNanos + horizonNanos - last.nanos ) / ( last.nanos - first.nanos );
+		final double[] predicted = new double[ 12 ];
+		boolean moving = false;
+		for ( int i = 0; i < 12; ++i )
+		{
+			final double delta = last.matrix[ i ] - first.matrix[ i ];
+			moving |= delta != 0;
+			predicted[ i ] = last.matrix[ i ] + scale * delta;
+		}
+		if ( !moving )
+			return null;
+
+		// don't extrapolate zooming through zero
+		if ( Math.signum( det( predicted ) ) != Math.signum( det( last.matrix ) ) )
+			return null;
+
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set( predicted );
+		return transform;
+	}
+
+	/**
+	 * Record the outcome of a prediction, and tune the horizon.
+	 *
+	 * @param predictionAccuracy
+	 *            fraction of the actual viewport covered by the predicted
+	 *            viewport.
+	 * @param predictionHitRate
+	 *            fraction of cells of the actual viewport that were loaded.
+	 */
+	synchronized void evaluate( final double predictionAccuracy, final double predictionHitRate )
+	{
+		++numEvaluated;
+		accuracy = Double.isNaN( accuracy ) ? predictionAccuracy : ALPHA * predictionAccuracy + ( 1 - ALPHA ) * accuracy;
+		hitRate = Double.isNaN( hitRate ) ? predictionHitRate : ALPHA * predictionHitRate + ( 1 - ALPHA ) * hitRate;
+
+		if ( predictionAccuracy < MIN_ACCURACY )
+			horizonNanos = Math.max( MIN_HORIZON_NANOS, horizonNanos * 4 / 5 );
+		else if ( predictionHitRate < MIN_HIT_RATE )
+			horizonNanos = Math.min( MAX_HORIZON_NANOS, horizonNanos * 6 / 5 );
+	}
+
+	synchronized long getHorizonNanos()
+	{
+		return horizonNanos;
+	}
+
+	synchronized void setHorizonNanos( final long horizonNanos )
+	{
+		this.horizonNanos = Math.max( MIN_HORIZON_NANOS, Math.min( MAX_HORIZON_NANOS, horizonNanos ) );
+	}
+
+	synchronized long getNumEvaluated()
+	{
+		return numEvaluated;
+	}
+
+	/**
+	 * @return moving average of the prediction accuracy, or {@code NaN} if
+	 *         nothing was evaluated yet.
+	 */
+	synchronized double getAccuracy()
+	{
+		return accuracy;
+	}
+
+	/**
+	 * @return moving average of the prediction hit rate, or {@code NaN} if
+	 *         nothing was evaluated yet.
+	 */
+	synchronized double getHitRate()
+	{
+		return hitRate;
+	}
+
+	/**
+	 * Compute the fraction of the screen {@code [0,width]x[0,height]} under
+	 * {@code actual} that is covered by the screen under {@code predicted}.
+	 * This is approximated by the bounding box of the predicted screen
+	 * corners, mapped to actual screen coordinates.
+	 */
+	static double overlap( final AffineTransform3D predicted, final AffineTransform3D actual, final double width, final double height )
+	{
+		if ( width <= 0 || height <= 0 )
+			return 0;
+		final AffineTransform3D predictedToActual = predicted.inverse().preConcatenate( actual );
+		final double[] corner = new double[ 3 ];
+		final double[] mapped = new double[ 3 ];
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i < 4; ++i )
+		{
+			corner[ 0 ] = ( i & 1 ) == 0 ? 0 : width;
+			corner[ 1 ] = ( i & 2 ) == 0 ? 0 : height;
+			predictedToActual.apply( corner, mapped );
+			minX = Math.min( minX, mapped[ 0 ] );
+			minY = Math.min( minY, mapped[ 1 ] );
+			maxX = Math.max( maxX, mapped[ 0 ] );
+			maxY = Math.max( maxY, mapped[ 1 ] );
+		}
+		final double w = Math.max( 0, Math.min( maxX, width ) - Math.max( minX, 0 ) );
+		final double h = Math.max( 0, Math.min( maxY, height ) - Math.max( minY, 0 ) );
+		return w * h / ( width * height );
+	}
+
+	private static double det( final double[] m )
+	{
+		return m[ 0 ] * ( m[ 5 ] * m[ 10 ] - m[ 6 ] * m[ 9 ] )
+				- m[ 1 ] * ( m[ 4 ] * m[ 10 ] - m[ 6 ] * m[ 8 ] )
+				+ m[ 2 ] * ( m[ 4 ] * m[ 9 ] - m[ 5 ] * m[ 8 ] );
+	}
+}
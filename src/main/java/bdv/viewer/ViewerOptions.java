@@ -30,6 +30,8 @@ package bdv.viewer;
 
 import bdv.TransformEventHandler3D;
 import bdv.TransformEventHandlerFactory;
+import bdv.img.cache.CacheOptions;
+import bdv.img.remote.RemoteOptions;
 import bdv.viewer.animate.MessageOverlayAnimator;
 import bdv.viewer.render.AccumulateProjector;
 import bdv.viewer.render.AccumulateProjectorARGB;
@@ -83,6 +85,27 @@ public class ViewerOptions {
         return this;
     }
 
+    /**
+     * Set the {@link CacheOptions} for image loaders that support them.
+     *
+     * @param cacheOptions options for the cell caches created by image loaders.
+     * @see CacheOptions.Configurable
+     */
+    public ViewerOptions cacheOptions(final CacheOptions cacheOptions) {
+        values.cacheOptions = cacheOptions;
+        return this;
+    }
+
+    /**
+     * Set the {@link RemoteOptions} for remote image loaders.
+     *
+     * @param remoteOptions options for loading from a BigDataServer.
+     */
+    public ViewerOptions remoteOptions(final RemoteOptions remoteOptions) {
+        values.remoteOptions = remoteOptions;
+        return this;
+    }
+
     /**
      * Set height of {@link ViewerPanel} canvas.
      */
@@ -231,6 +254,10 @@ public class ViewerOptions {
 
         private CompressionOptions compressionOptions = new CompressionOptions();
 
+        private CacheOptions cacheOptions = CacheOptions.options();
+
+        private RemoteOptions remoteOptions = RemoteOptions.options();
+
         public ViewerOptions optionsFromValues() {
             return new ViewerOptions().
                     width(width).
@@ -244,7 +271,9 @@ public class ViewerOptions {
                     transformEventHandlerFactory(transformEventHandlerFactory).
                     accumulateProjectorFactory(accumulateProjectorFactory).
                     inputTriggerConfig(inputTriggerConfig).
-                    compressionOptions(compressionOptions);
+                    compressionOptions(compressionOptions).
+                    cacheOptions(cacheOptions).
+                    remoteOptions(remoteOptions);
         }
 
         public int getWidth() {
@@ -298,5 +327,13 @@ public class ViewerOptions {
         public CompressionOptions getCompressionOptions() {
             return compressionOptions;
         }
+
+        public CacheOptions getCacheOptions() {
+            return cacheOptions;
+        }
+
+        public RemoteOptions getRemoteOptions() {
+            return remoteOptions;
+        }
     }
 }
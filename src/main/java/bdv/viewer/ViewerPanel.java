@@ -71,6 +71,8 @@ import bdv.viewer.animate.RotationAnimator;
 import bdv.viewer.animate.TextOverlayAnimator;
 import bdv.viewer.animate.TextOverlayAnimator.TextPosition;
 import bdv.viewer.overlay.MultiBoxOverlayRenderer;
+import bdv.viewer.overlay.PlaybackOverlayRenderer;
+import bdv.viewer.overlay.PerformanceOverlayRenderer;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
 import bdv.viewer.overlay.SourceInfoOverlayRenderer;
 import bdv.viewer.render.MultiResolutionRenderer;
@@ -133,6 +135,27 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 	 */
 	protected final ScaleBarOverlayRenderer scaleBarOverlayRenderer;
 
+	/**
+	 * Overlay time-lapse playback status.
+	 */
+	protected final PlaybackOverlayRenderer playbackOverlayRenderer;
+
+	/**
+	 * Overlay render performance statistics.
+	 */
+	protected final PerformanceOverlayRenderer performanceOverlayRenderer;
+
+	/**
+	 * Plays timepoints at a given frame rate.
+	 */
+	protected final TimelapsePlayer player;
+
+	/**
+	 * Prefetches cells for the viewport extrapolated from recent viewer
+	 * transform changes. Disabled by default.
+	 */
+	protected final PredictivePrefetcher predictivePrefetcher;
+
 	private final TransformEventHandler transformEventHandler;
 
 	/**
@@ -246,6 +269,8 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		multiBoxOverlayRenderer = new MultiBoxOverlayRenderer();
 		sourceInfoOverlayRenderer = new SourceInfoOverlayRenderer();
 		scaleBarOverlayRenderer = Prefs.showScaleBar() ? new ScaleBarOverlayRenderer() : null;
+		playbackOverlayRenderer = new PlaybackOverlayRenderer();
+		performanceOverlayRenderer = new PerformanceOverlayRenderer();
 
 		threadGroup = new ThreadGroup( this.toString() );
 		painterThread = new PainterThread( threadGroup, this );
@@ -270,6 +295,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 				options.isUseVolatileIfAvailable(),
 				options.getAccumulateProjectorFactory(),
 				cacheControl );
+		player = new TimelapsePlayer( this );
 
 		mouseCoordinates = new MouseCoordinateListener();
 		display.addHandler( mouseCoordinates );
@@ -291,6 +317,9 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		timePointListeners = new CopyOnWriteArrayList<>();
 		interpolationModeListeners = new CopyOnWriteArrayList<>();
 
+		predictivePrefetcher = new PredictivePrefetcher( this );
+		addTransformListener( predictivePrefetcher, 0 );
+
 		msgOverlay = options.getMsgOverlay();
 
 		overlayAnimators = new ArrayList<>();
@@ -534,6 +563,19 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 			scaleBarOverlayRenderer.paint( ( Graphics2D ) g );
 		}
 
+		final TimelapsePlayer.Status playbackStatus = player.getStatus();
+		if ( playbackStatus != null )
+		{
+			playbackOverlayRenderer.setStatus( playbackStatus );
+			playbackOverlayRenderer.paint( ( Graphics2D ) g );
+		}
+
+		if ( Prefs.showPerformanceOverlay() )
+		{
+			performanceOverlayRenderer.setStatistics( imageRenderer.getFrameStatistics() );
+			performanceOverlayRenderer.paint( ( Graphics2D ) g );
+		}
+
 		final long currentTimeMillis = System.currentTimeMillis();
 		final ArrayList< OverlayAnimator > overlayAnimatorsToRemove = new ArrayList<>();
 		for ( final OverlayAnimator animator : overlayAnimators )
@@ -620,7 +662,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 			final AffineTransform3D transform = state().getViewerTransform();
 			for ( final TransformListener< AffineTransform3D > l : transformListeners )
 				l.transformChanged( transform );
-			requestRepaint();
+			imageRenderer.requestTransformRepaint();
 		}
 	}
 
@@ -791,6 +833,66 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		}
 	}
 
+	/**
+	 * Play timepoints at the given frame rate, loading ahead of the current
+	 * timepoint. See {@link TimelapsePlayer}.
+	 *
+	 * @param framesPerSecond
+	 *            playback frame rate.
+	 */
+	public void startPlayback( final double framesPerSecond )
+	{
+		player.start( framesPerSecond );
+	}
+
+	/**
+	 * Stop time-lapse playback.
+	 */
+	public void stopPlayback()
+	{
+		player.stop();
+	}
+
+	/**
+	 * Start time-lapse playback at the last used frame rate, or stop it if it
+	 * is running.
+	 */
+	public void togglePlayback()
+	{
+		if ( player.isPlaying() )
+			player.stop();
+		else
+			player.start();
+	}
+
+	/**
+	 * Show or hide the render performance overlay.
+	 */
+	public void togglePerformanceOverlay()
+	{
+		Prefs.showPerformanceOverlay( !Prefs.showPerformanceOverlay() );
+		display.repaint();
+	}
+
+	public boolean isPlaying()
+	{
+		return player.isPlaying();
+	}
+
+	public TimelapsePlayer getTimelapsePlayer()
+	{
+		return player;
+	}
+
+	/**
+	 * Get the {@link PredictivePrefetcher}, e.g., to
+	 * {@link PredictivePrefetcher#setEnabled(boolean) enable} it.
+	 */
+	public PredictivePrefetcher getPredictivePrefetcher()
+	{
+		return predictivePrefetcher;
+	}
+
 	/**
 	 * Set the number of available timepoints. If {@code numTimepoints == 1}
 	 * this will hide the time slider, otherwise show it. If the currently
@@ -1136,6 +1238,8 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 	 */
 	public void stop()
 	{
+		player.stop();
+		predictivePrefetcher.stop();
 		painterThread.interrupt();
 		try
 		{
@@ -0,0 +1,192 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.overlay;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import bdv.metrics.Metrics;
+import bdv.viewer.render.FrameStatistics;
+import bdv.viewer.render.MultiResolutionRenderer;
+
+/**
+ * Render {@link FrameStatistics} of the {@link MultiResolutionRenderer} and
+ * cache {@link Metrics} into a {@link Graphics2D}: frame time, screen scale,
+ * number of passes, invalid pixels, blocking IO time against the IO budget,
+ * cell loads in flight (not requests waiting in the fetch queue), cache
+ * memory, and a sparkline of recent frame times.
+ * <p>
+ * A frame with many invalid pixels and little IO time is waiting for the
+ * fetcher threads (IO- or network-bound); long frames at a coarse screen scale
+ * are render-bound.
+ */
+public class PerformanceOverlayRenderer
+{
+	private static final int SPARKLINE_HEIGHT = 24;
+
+	private static final int SPARKLINE_BAR_WIDTH = 2;
+
+	/**
+	 * Frame time corresponding to the full height of the sparkline, unless a
+	 * recent frame took longer.
+	 */
+	private static final long SPARKLINE_MIN_SCALE_NANOS = 40_000_000;
+
+	/**
+	 * Frames that take longer than this are drawn in {@link #SLOW_COLOR}.
+	 */
+	private static final long SLOW_FRAME_NANOS = 30_000_000;
+
+	private static final Color BG_COLOR = new Color( 0, 0, 0, 136 );
+
+	private static final Color BAR_COLOR = new Color( 96, 192, 255, 192 );
+
+	private static final Color SLOW_COLOR = new Color( 255, 128, 96, 192 );
+
+	private final Font font = new Font( "Monospaced", Font.PLAIN, 12 );
+
+	private final Metrics metrics;
+
+	private FrameStatistics stats;
+
+	private final List< String > lines = new ArrayList<>();
+
+	public PerformanceOverlayRenderer()
+	{
+		this( Metrics.getDefault() );
+	}
+
+	/**
+	 * @param metrics
+	 *            the cache metrics ({@code cache*.activeLoads},
+	 *            {@code cache*.bytes}, and
+	 *            {@code *.remote.http.throughputBytesPerSecond}) are read from
+	 *            here.
+	 */
+	public PerformanceOverlayRenderer( final Metrics metrics )
+	{
+		this.metrics = metrics;
+	}
+
+	public synchronized void paint( final Graphics2D g )
+	{
+		if ( stats == null )
+			return;
+
+		g.setFont( font );
+		final FontMetrics fm = g.getFontMetrics();
+		final int lineHeight = fm.getHeight();
+		int textWidth = 0;
+		for ( final String line : lines )
+			textWidth = Math.max( textWidth, fm.stringWidth( line ) );
+
+		final long[] recent = stats.getRecentFrameNanos();
+		final int width = Math.max( textWidth, recent.length * SPARKLINE_BAR_WIDTH );
+		final int height = lines.size() * lineHeight + 5 + SPARKLINE_HEIGHT;
+		final int x = ( int ) g.getClipBounds().getWidth() - width - 15;
+		final int y = ( int ) g.getClipBounds().getHeight() - height - 15;
+
+		g.setColor( BG_COLOR );
+		g.fillRect( x - 5, y - 5, width + 10, height + 10 );
+
+		g.setColor( Color.white );
+		int ly = y + fm.getAscent();
+		for ( final String line : lines )
+		{
+			g.drawString( line, x, ly );
+			ly += lineHeight;
+		}
+
+		long scale = SPARKLINE_MIN_SCALE_NANOS;
+		for ( final long t : recent )
+			scale = Math.max( scale, t );
+		final int by = y + height;
+		for ( int i = 0; i < recent.length; ++i )
+		{
+			final int h = Math.max( 1, ( int ) ( recent[ i ] * SPARKLINE_HEIGHT / scale ) );
+			g.setColor( recent[ i ] > SLOW_FRAME_NANOS ? SLOW_COLOR : BAR_COLOR );
+			g.fillRect( x + i * SPARKLINE_BAR_WIDTH, by - h, SPARKLINE_BAR_WIDTH - 1, h );
+		}
+	}
+
+	/**
+	 * Update data to show in the overlay. The cache metrics are read at the
+	 * same time. Only the metrics shown are evaluated, not a full
+	 * {@link Metrics#snapshot()}.
+	 */
+	public synchronized void setStatistics( final FrameStatistics stats )
+	{
+		this.stats = stats;
+
+		final double activeLoads = sum( ".activeLoads" );
+		final double cacheBytes = sum( ".bytes" );
+		// the HTTP transport is shared, every remote loader reports the same
+		final double throughput = metrics.values( "cache", ".remote.http.throughputBytesPerSecond" )
+				.filter( v -> !Double.isNaN( v ) )
+				.findFirst()
+				.orElse( Double.NaN );
+		final Runtime runtime = Runtime.getRuntime();
+		final long heapBytes = runtime.totalMemory() - runtime.freeMemory();
+
+		lines.clear();
+		lines.add( String.format( "frame %6.1f ms  scale %d  pass %d",
+				stats.getLastFrameNanos() / 1e6, stats.getScreenScaleIndex(), stats.getNumPasses() ) );
+		lines.add( String.format( "invalid %s px  io %.1f/%.0f ms",
+				stats.getNumInvalidPixels() < 0 ? "?" : Long.toString( stats.getNumInvalidPixels() ),
+				stats.getIoNanos() / 1e6, stats.getIoBudgetNanos() / 1e6 ) );
+		lines.add( String.format( "loads in flight %d  cache %s  heap %s",
+				( long ) activeLoads, formatBytes( cacheBytes ), formatBytes( heapBytes ) ) );
+		if ( !Double.isNaN( throughput ) )
+			lines.add( String.format( "network %s/s", formatBytes( throughput ) ) );
+	}
+
+	/**
+	 * Sum the cache metrics with the given {@code suffix}, skipping those of
+	 * caches that were garbage-collected.
+	 */
+	private double sum( final String suffix )
+	{
+		return metrics.values( "cache", suffix ).filter( v -> !Double.isNaN( v ) ).sum();
+	}
+
+	private static String formatBytes( final double bytes )
+	{
+		if ( bytes < 1024 )
+			return String.format( "%.0f B", bytes );
+		if ( bytes < 1024 * 1024 )
+			return String.format( "%.1f KB", bytes / 1024 );
+		if ( bytes < 1024 * 1024 * 1024 )
+			return String.format( "%.1f MB", bytes / ( 1024 * 1024 ) );
+		return String.format( "%.1f GB", bytes / ( 1024 * 1024 * 1024 ) );
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.overlay;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+
+import bdv.viewer.TimelapsePlayer;
+
+/**
+ * Render the {@link TimelapsePlayer.Status} of time-lapse playback into a
+ * {@link Graphics2D}: frame rate, mipmap level bias, dropped frames, and the
+ * fill of the look-ahead buffer, one box per look-ahead timepoint.
+ */
+public class PlaybackOverlayRenderer
+{
+	private static final int BOX_WIDTH = 8;
+
+	private static final int BOX_HEIGHT = 12;
+
+	private static final int BOX_SPACING = 2;
+
+	private static final Color EMPTY_COLOR = new Color( 255, 255, 255, 64 );
+
+	private static final Color FILL_COLOR = new Color( 96, 192, 255, 192 );
+
+	protected TimelapsePlayer.Status status;
+
+	public synchronized void paint( final Graphics2D g )
+	{
+		if ( status == null )
+			return;
+
+		final int x = 10;
+		final int y = ( int ) g.getClipBounds().getHeight() - 10;
+
+		final double[] fill = status.getLookAheadFill();
+		for ( int i = 0; i < fill.length; ++i )
+		{
+			final int bx = x + i * ( BOX_WIDTH + BOX_SPACING );
+			final int filled = ( int ) Math.round( fill[ i ] * BOX_HEIGHT );
+			g.setColor( EMPTY_COLOR );
+			g.fillRect( bx, y - BOX_HEIGHT, BOX_WIDTH, BOX_HEIGHT - filled );
+			g.setColor( FILL_COLOR );
+			g.fillRect( bx, y - filled, BOX_WIDTH, filled );
+		}
+
+		final StringBuilder sb = new StringBuilder();
+		sb.append( String.format( "%.1f fps, buffer %3.0f%%", status.getFramesPerSecond(), 100 * status.getBufferFill() ) );
+		if ( status.getMipmapLevelBias() > 0 )
+			sb.append( String.format( ", level +%d", status.getMipmapLevelBias() ) );
+		if ( status.getFramesDropped() > 0 )
+			sb.append( String.format( ", dropped %d/%d", status.getFramesDropped(), status.getFramesShown() + status.getFramesDropped() ) );
+
+		g.setFont( new Font( "Monospaced", Font.PLAIN, 12 ) );
+		g.setColor( Color.white );
+		g.drawString( sb.toString(), x + fill.length * ( BOX_WIDTH + BOX_SPACING ) + 5, y );
+	}
+
+	/**
+	 * Update data to show in the overlay.
+	 */
+	public synchronized void setStatus( final TimelapsePlayer.Status status )
+	{
+		this.status = status;
+	}
+}
@@ -243,6 +243,24 @@ public class AccumulateProjectorARGB implements VolatileProjector
 		return valid;
 	}
 
+	/**
+	 * @return the sum of the invalid pixels of the source projectors, or -1 if
+	 *         unknown for any of them.
+	 */
+	@Override
+	public long getNumInvalidPixels()
+	{
+		long n = 0;
+		for ( final VolatileProjector p : sourceProjectors )
+		{
+			final long pn = p.getNumInvalidPixels();
+			if ( pn < 0 )
+				return -1;
+			n += pn;
+		}
+		return n;
+	}
+
 	/**
 	 * @return a {@code Callable} that runs {@code map(startOffset, endOffset)}
 	 */
@@ -0,0 +1,193 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.view.Views;
+
+import bdv.AbstractSpimSource;
+import bdv.tools.transformation.TransformedSource;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+
+/**
+ * Creates views of source images in screen coordinates, for transforms that
+ * map every screen pixel exactly onto a source voxel. That is, the screen X
+ * and Y axes are aligned with source axes, neighbouring screen pixels are a
+ * whole number of voxels apart, and (for {@link Interpolation#NLINEAR}) the
+ * screen origin lies on a voxel. This is the case for orthogonal XY, XZ, and
+ * YZ slices at integer zoom levels.
+ * <p>
+ * Such a view has the same values in the screen plane as the interpolated,
+ * affine-transformed source (see {@link ProjectorFactory}). But sampling it
+ * only moves a {@code RandomAccess} on the source image by whole voxels. On a
+ * {@code CellImg}, this strides through the data array of the current cell,
+ * instead of transforming and interpolating every pixel.
+ */
+class AxisAlignedViews
+{
+	/**
+	 * Maximum deviation from a whole number of voxels of the step between
+	 * neighbouring screen pixels.
+	 */
+	private static final double STEP_EPS = 1e-9;
+
+	/**
+	 * Maximum deviation from a voxel of the screen origin, for
+	 * {@link Interpolation#NLINEAR}.
+	 */
+	private static final double ORIGIN_EPS = 1e-6;
+
+	/**
+	 * Get an axis-aligned view of {@code img}, which is the image of
+	 * {@code source} at some timepoint and mipmap level.
+	 *
+	 * @param sourceToScreen
+	 *            transforms {@code img} coordinates to screen coordinates.
+	 *
+	 * @return the view, or {@code null} if {@code sourceToScreen} does not map
+	 *         screen pixels onto voxels, or if it is not known how
+	 *         {@code source} interpolates {@code img}.
+	 */
+	static < T > RandomAccessible< T > create(
+			final Source< T > source,
+			final RandomAccessibleInterval< T > img,
+			final AffineTransform3D sourceToScreen,
+			final Interpolation interpolation )
+	{
+		Source< ? > s = source;
+		while ( s instanceof TransformedSource )
+			s = ( ( TransformedSource< ? > ) s ).getWrappedSource();
+
+		// AbstractSpimSource interpolates the zero-extended image
+		if ( !( s instanceof AbstractSpimSource ) || img == null || img.numDimensions() != 3 )
+			return null;
+
+		final T type = source.getType();
+		if ( !( type instanceof NumericType ) )
+			return null;
+
+		return create( extendZero( img, type ), sourceToScreen, interpolation );
+	}
+
+	/**
+	 * Get an axis-aligned view of the {@code extended} source image.
+	 *
+	 * @param sourceToScreen
+	 *            transforms {@code extended} coordinates to screen
+	 *            coordinates.
+	 *
+	 * @return the view, or {@code null} if {@code sourceToScreen} does not map
+	 *         screen pixels onto voxels.
+	 */
+	static < T > RandomAccessible< T > create(
+			final RandomAccessible< T > extended,
+			final AffineTransform3D sourceToScreen,
+			final Interpolation interpolation )
+	{
+		final AffineTransform3D screenToSource = sourceToScreen.inverse();
+
+		// source axis and step along screen X and Y. Screen Z is mapped to the
+		// remaining source axis, because projectors only sample Z = 0.
+		final int[] axes = new int[ 3 ];
+		final long[] steps = new long[ 3 ];
+		for ( int d = 0; d < 2; ++d )
+		{
+			axes[ d ] = -1;
+			for ( int r = 0; r < 3; ++r )
+			{
+				final double v = screenToSource.get( r, d );
+				if ( Math.abs( v ) <= STEP_EPS )
+					continue;
+				final long step = Math.round( v );
+				if ( axes[ d ] >= 0 || step == 0 || Math.abs( v - step ) > STEP_EPS )
+					return null;
+				axes[ d ] = r;
+				steps[ d ] = step;
+			}
+			if ( axes[ d ] < 0 )
+				return null;
+		}
+		if ( axes[ 0 ] == axes[ 1 ] )
+			return null;
+		axes[ 2 ] = 3 - axes[ 0 ] - axes[ 1 ];
+		steps[ 2 ] = 1;
+
+		// source voxel at the screen origin
+		final long[] origin = new long[ 3 ];
+		for ( int r = 0; r < 3; ++r )
+		{
+			final double o = screenToSource.get( r, 3 );
+			origin[ r ] = ( long ) Math.floor( o + 0.5 );
+			if ( interpolation == Interpolation.NLINEAR && Math.abs( o - origin[ r ] ) > ORIGIN_EPS )
+				return null;
+		}
+
+		RandomAccessible< T > view = Views.offset( extended, origin );
+		final long[] subsampleSteps = new long[ 3 ];
+		boolean subsample = false;
+		for ( int d = 0; d < 3; ++d )
+		{
+			if ( steps[ d ] < 0 )
+				view = Views.invertAxis( view, axes[ d ] );
+			subsampleSteps[ axes[ d ] ] = Math.abs( steps[ d ] );
+			subsample |= subsampleSteps[ axes[ d ] ] != 1;
+		}
+		if ( subsample )
+			view = Views.subsample( view, subsampleSteps );
+
+		// permute, such that screen axis d is source axis axes[ d ]
+		final int[] current = { 0, 1, 2 };
+		for ( int d = 0; d < 3; ++d )
+		{
+			int k = d;
+			while ( current[ k ] != axes[ d ] )
+				++k;
+			if ( k != d )
+			{
+				view = Views.permute( view, d, k );
+				current[ k ] = current[ d ];
+				current[ d ] = axes[ d ];
+			}
+		}
+		return view;
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private static < T > RandomAccessible< T > extendZero( final RandomAccessibleInterval< T > img, final T type )
+	{
+		final NumericType zero = ( NumericType ) ( ( NumericType ) type ).createVariable();
+		zero.setZero();
+		return Views.extendValue( ( RandomAccessibleInterval ) img, ( Type ) zero );
+	}
+}
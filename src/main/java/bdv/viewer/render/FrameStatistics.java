@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+/**
+ * Statistics of the frames rendered by a {@link MultiResolutionRenderer},
+ * e.g., to show them in an overlay. All times are in nano-seconds.
+ */
+public class FrameStatistics
+{
+	private final long lastFrameNanos;
+
+	private final int screenScaleIndex;
+
+	private final int numPasses;
+
+	private final long numInvalidPixels;
+
+	private final long ioNanos;
+
+	private final long ioBudgetNanos;
+
+	private final long[] recentFrameNanos;
+
+	public FrameStatistics(
+			final long lastFrameNanos,
+			final int screenScaleIndex,
+			final int numPasses,
+			final long numInvalidPixels,
+			final long ioNanos,
+			final long ioBudgetNanos,
+			final long[] recentFrameNanos )
+	{
+		this.lastFrameNanos = lastFrameNanos;
+		this.screenScaleIndex = screenScaleIndex;
+		this.numPasses = numPasses;
+		this.numInvalidPixels = numInvalidPixels;
+		this.ioNanos = ioNanos;
+		this.ioBudgetNanos = ioBudgetNanos;
+		this.recentFrameNanos = recentFrameNanos;
+	}
+
+	/**
+	 * Render time of the last completed full frame pass.
+	 */
+	public long getLastFrameNanos()
+	{
+		return lastFrameNanos;
+	}
+
+	/**
+	 * Screen scale index of the last completed full frame pass (0 is full
+	 * resolution), or -1 if nothing was rendered yet.
+	 */
+	public int getScreenScaleIndex()
+	{
+		return screenScaleIndex;
+	}
+
+	/**
+	 * Number of passes (at any screen scale) rendered for the current viewer
+	 * state, including the first.
+	 */
+	public int getNumPasses()
+	{
+		return numPasses;
+	}
+
+	/**
+	 * Number of pixels of the last full frame pass that could not be rendered
+	 * from valid full resolution data, or -1 if unknown. See
+	 * {@link VolatileProjector#getNumInvalidPixels()}.
+	 */
+	public long getNumInvalidPixels()
+	{
+		return numInvalidPixels;
+	}
+
+	/**
+	 * Time spent in blocking IO in the last full frame pass.
+	 */
+	public long getIoNanos()
+	{
+		return ioNanos;
+	}
+
+	/**
+	 * IO time budget of the finest level for a pass.
+	 */
+	public long getIoBudgetNanos()
+	{
+		return ioBudgetNanos;
+	}
+
+	/**
+	 * Render times of recent full frame passes, oldest first.
+	 */
+	public long[] getRecentFrameNanos()
+	{
+		return recentFrameNanos;
+	}
+}
@@ -0,0 +1,181 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.function.Consumer;
+
+import net.imglib2.Dimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.util.MipmapTransforms;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerState;
+
+/**
+ * Enqueues the cells needed to render timepoints other than the current one,
+ * and counts how many of them are already loaded.
+ * <p>
+ * Cells are requested with {@link VolatileGlobalCellCache#BACKGROUND_PRIORITY},
+ * so they are loaded by background tasks of the cache after all cells requested
+ * for the current frame, and are not discarded when the next frame is
+ * rendered. The {@link CacheHints} are passed directly to the cell access, so
+ * this can run concurrently with rendering.
+ */
+public class LookAheadPrefetcher
+{
+	/**
+	 * Number of cells needed for a frame, and how many of them are loaded.
+	 */
+	public static class CellCount
+	{
+		private long valid;
+
+		private long total;
+
+		public long getValid()
+		{
+			return valid;
+		}
+
+		public long getTotal()
+		{
+			return total;
+		}
+
+		/**
+		 * @return fraction of cells that are loaded, or 1 if no cells are
+		 *         needed.
+		 */
+		public double getFill()
+		{
+			return total == 0 ? 1 : ( double ) valid / total;
+		}
+	}
+
+	/**
+	 * Enqueue (if {@code load == true}) the cells needed to render the visible
+	 * sources of {@code viewerState} at {@code timepoint}, and count them.
+	 * <p>
+	 * For each source, cells are requested from the mipmap level that
+	 * {@link ProjectorFactory} would choose with the given
+	 * {@code mipmapLevelBias}, and from the coarsest level (which is rendered
+	 * first when the timepoint changes). Only the cells of the former are
+	 * counted.
+	 *
+	 * @param viewerState
+	 *            provides visible sources and interpolation.
+	 * @param screenTransform
+	 *            transforms global coordinates to screen coordinates.
+	 * @param screenInterval
+	 *            the interval of the screen that will be rendered.
+	 * @param timepoint
+	 *            timepoint index to prefetch.
+	 * @param mipmapLevelBias
+	 *            see {@link MultiResolutionRenderer#setMipmapLevelBias(int)}.
+	 * @param load
+	 *            whether to enqueue missing cells for loading, or only count
+	 *            them.
+	 *
+	 * @return number of needed and loaded cells.
+	 */
+	public static CellCount prefetch(
+			final ViewerState viewerState,
+			final AffineTransform3D screenTransform,
+			final Dimensions screenInterval,
+			final int timepoint,
+			final int mipmapLevelBias,
+			final boolean load )
+	{
+		final CellCount count = new CellCount();
+		final Interpolation interpolation = viewerState.getInterpolation();
+		final AffineTransform3D levelTransform = ProjectorFactory.getLevelTransform( screenTransform, mipmapLevelBias );
+		for ( final SourceAndConverter< ? > source : viewerState.getVisibleSources() )
+		{
+			final Source< ? > spimSource = source.asVolatile() != null
+					? source.asVolatile().getSpimSource()
+					: source.getSpimSource();
+			if ( !spimSource.isPresent( timepoint ) )
+				continue;
+
+			final int level = MipmapTransforms.getBestMipMapLevel( levelTransform, spimSource, timepoint );
+			final int coarsestLevel = spimSource.getNumMipmapLevels() - 1;
+			if ( load && level != coarsestLevel )
+				visitCells( spimSource, timepoint, coarsestLevel, screenTransform, screenInterval, interpolation, true, null );
+			visitCells( spimSource, timepoint, level, screenTransform, screenInterval, interpolation, load, count );
+		}
+		return count;
+	}
+
+	private static void visitCells(
+			final Source< ? > source,
+			final int timepoint,
+			final int level,
+			final AffineTransform3D screenTransform,
+			final Dimensions screenInterval,
+			final Interpolation interpolation,
+			final boolean load,
+			final CellCount count )
+	{
+		final RandomAccessibleInterval< ? > img = source.getSource( timepoint, level );
+		if ( !( img instanceof VolatileCachedCellImg ) )
+			return;
+
+		final VolatileCachedCellImg< ?, ? > cellImg = ( VolatileCachedCellImg< ?, ? > ) img;
+		final CacheHints hints = new CacheHints(
+				load ? LoadingStrategy.VOLATILE : LoadingStrategy.DONTLOAD,
+				VolatileGlobalCellCache.BACKGROUND_PRIORITY,
+				false );
+
+		final int[] cellDimensions = new int[ 3 ];
+		cellImg.getCellGrid().cellDimensions( cellDimensions );
+		final long[] dimensions = new long[ 3 ];
+		cellImg.dimensions( dimensions );
+
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		source.getSourceTransform( timepoint, level, sourceToScreen );
+		sourceToScreen.preConcatenate( screenTransform );
+
+		final Consumer< Cell< ? > > visitor = count == null ? null : cell -> {
+			++count.total;
+			final Object data = cell.getData();
+			if ( !( data instanceof VolatileAccess ) || ( ( VolatileAccess ) data ).isValid() )
+				++count.valid;
+		};
+		Prefetcher.visitCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellImg.getCells( hints ).randomAccess(), visitor );
+	}
+}
@@ -28,19 +28,30 @@
  */
 package bdv.viewer.render;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
 import net.imglib2.cache.iotiming.CacheIoTiming;
+import net.imglib2.cache.iotiming.IoStatistics;
+import net.imglib2.realtransform.AffineTransform2D;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.util.Intervals;
 
 import bdv.cache.CacheControl;
+import bdv.metrics.Counter;
+import bdv.metrics.Histogram;
+import bdv.metrics.JfrEvent;
+import bdv.metrics.JfrEvents;
+import bdv.metrics.Metrics;
 import bdv.util.MovingAverage;
 import bdv.viewer.RequestRepaint;
 import bdv.viewer.SourceAndConverter;
@@ -134,6 +145,60 @@ public class MultiResolutionRenderer
 	 */
 	private final MovingAverage renderNanosPerPixelAndSource;
 
+	/**
+	 * Prefix under which render {@link Metrics} are registered in
+	 * {@link Metrics#getDefault()}.
+	 */
+	private final String metricsPrefix;
+
+	/**
+	 * Render time of every completed full frame {@link VolatileProjector#map()
+	 * pass}.
+	 */
+	private final Histogram frameNanos;
+
+	private final Counter shiftedFrames;
+
+	private final Counter previewFrames;
+
+	/**
+	 * Screen scale index and number of invalid pixels of the last completed
+	 * full frame pass. These are kept apart from the renderer, so that the
+	 * gauges reading them do not reference the renderer.
+	 */
+	private final AtomicInteger lastScreenScaleIndex = new AtomicInteger( -1 );
+
+	private final AtomicLong lastNumInvalidPixels = new AtomicLong();
+
+	/**
+	 * How many recent full frame render times are kept for
+	 * {@link #getFrameStatistics()}.
+	 */
+	private static final int NUM_RECENT_FRAMES = 64;
+
+	/**
+	 * Ring buffer of recent full frame render times.
+	 */
+	private final long[] recentFrameNanos = new long[ NUM_RECENT_FRAMES ];
+
+	/**
+	 * Total number of full frame render times recorded in
+	 * {@link #recentFrameNanos}.
+	 */
+	private long numRecordedFrames;
+
+	/**
+	 * Render time and blocking IO time of the last completed full frame pass.
+	 */
+	private long lastFrameNanos;
+
+	private long lastFrameIoNanos;
+
+	/**
+	 * Number of passes rendered since the last new frame request.
+	 */
+	private int numPasses;
+
 	/**
 	 * Currently active projector, used to re-paint the display. It maps the
 	 * source data to {@code ©screenImages}. {@code projector.cancel()} can be
@@ -241,6 +306,99 @@ public class MultiResolutionRenderer
 	 */
 	private IntervalRenderData intervalRenderData;
 
+	/**
+	 * Whether the last interval rendering pass painted all requested intervals
+	 * at {@link #currentScreenScaleIndex} from valid data.
+	 */
+	private boolean intervalRenderingComplete;
+
+	/*
+	 *
+	 * === SHIFTED FRAMES ===
+	 *
+	 */
+
+	/**
+	 * Maximum deviation (in pixels) from a whole-pixel translation, for which
+	 * the {@link #currentRenderResult} is shifted instead of rendering a new
+	 * full frame.
+	 */
+	private static final double SHIFT_EPSILON = 1e-3;
+
+	/**
+	 * Maximum deviation of the linear part of the viewer transform, for which
+	 * the {@link #currentRenderResult} is shifted instead of rendering a new
+	 * full frame.
+	 */
+	private static final double LINEAR_EPSILON = 1e-9;
+
+	/**
+	 * Whether all full frame repaints requested since the last new frame were
+	 * {@link #requestTransformRepaint() changes of the viewer transform}.
+	 */
+	private boolean onlyTransformChanged;
+
+	/**
+	 * Whether {@link #currentRenderResult} is a shifted copy of the previous
+	 * result that is not yet handed to the {@link #display}. It is handed over
+	 * after every one of its exposed intervals has been painted once.
+	 */
+	private boolean shiftedResultPending;
+
+	/**
+	 * Whether any of the exposed intervals of the pending shifted result was
+	 * painted at a coarser scale or from invalid data.
+	 */
+	private boolean shiftedResultIncomplete;
+
+	/**
+	 * Screen intervals exposed by shifting the {@link #currentRenderResult},
+	 * that remain to be painted. They are painted one after the other, because
+	 * {@link #screenScales} would merge them into their bounding box.
+	 */
+	private final ArrayDeque< Interval > exposedIntervals = new ArrayDeque<>();
+
+	/*
+	 *
+	 * === PREVIEW FRAMES ===
+	 *
+	 */
+
+	/**
+	 * Maximum distance (in pixels) of the corners of a previous
+	 * {@code RenderResult} from the new screen plane, for which it is warped
+	 * into a preview.
+	 */
+	static final double MAX_PREVIEW_DEPTH = 4;
+
+	/**
+	 * The last {@code RenderResult} that was completed at the finest screen
+	 * scale, kept to be warped into previews later. When the {@link #display}
+	 * offers it for reuse, it is copied to the {@link #fullResolutionCopy}
+	 * first.
+	 */
+	private RenderResult fullResolutionResult;
+
+	/**
+	 * {@code RenderResult} owned by the renderer (never handed to the
+	 * {@link #display}) that holds the {@link #fullResolutionResult} after the
+	 * display reused the original.
+	 */
+	private RenderResult fullResolutionCopy;
+
+	/**
+	 * Whether the last {@code paint()} only displayed a preview. The next
+	 * {@code paint()} then renders a full frame.
+	 */
+	private boolean previewDisplayed;
+
+	/**
+	 * Whether a preview was displayed and no actual frame has been completed
+	 * since. No further previews are displayed until then, such that
+	 * cancelling the passes after a preview cannot starve rendering.
+	 */
+	private boolean previewPassPending;
+
 	/**
 	 * @param display
 	 *            The canvas that will display the images we render.
@@ -293,6 +451,14 @@ public class MultiResolutionRenderer
 		renderNanosPerPixelAndSource = new MovingAverage( 3 );
 		renderNanosPerPixelAndSource.init( 500 );
 
+		final Metrics metrics = Metrics.getDefault();
+		metricsPrefix = metrics.uniquePrefix( "renderer" );
+		frameNanos = metrics.histogram( metricsPrefix + ".frameNanos" );
+		shiftedFrames = metrics.counter( metricsPrefix + ".shiftedFrames" );
+		previewFrames = metrics.counter( metricsPrefix + ".previewFrames" );
+		metrics.gauge( metricsPrefix + ".screenScale", lastScreenScaleIndex::get );
+		metrics.gauge( metricsPrefix + ".invalidPixels", lastNumInvalidPixels::get );
+
 		requestedScreenScaleIndex = screenScales.size() - 1;
 		renderingMayBeCancelled = false;
 		this.cacheControl = cacheControl;
@@ -317,6 +483,26 @@ public class MultiResolutionRenderer
 		if ( renderingMayBeCancelled && projector != null )
 			projector.cancel();
 		newFrameRequest = true;
+		onlyTransformChanged = false;
+		painterThread.requestRepaint();
+	}
+
+	/**
+	 * Request a repaint of the display after the viewer transform changed.
+	 * <p>
+	 * If nothing else changed since the last frame, and the viewer transform
+	 * was only translated in the screen plane by a whole number of pixels, the
+	 * last rendered image is shifted and only the newly exposed parts of the
+	 * screen are painted. Otherwise, this is equivalent to
+	 * {@link #requestRepaint()}.
+	 */
+	public synchronized void requestTransformRepaint()
+	{
+		if ( renderingMayBeCancelled && projector != null )
+			projector.cancel();
+		if ( !newFrameRequest )
+			onlyTransformChanged = true;
+		newFrameRequest = true;
 		painterThread.requestRepaint();
 	}
 
@@ -340,6 +526,7 @@ public class MultiResolutionRenderer
 			 * request a new full frame.
 			 */
 			newFrameRequest = true;
+			onlyTransformChanged = false;
 		}
 		else
 		{
@@ -351,6 +538,21 @@ public class MultiResolutionRenderer
 		painterThread.requestRepaint();
 	}
 
+	/**
+	 * Render mipmap levels as if the screen resolution was
+	 * {@code 2^mipmapLevelBias} times lower. The change takes effect with the
+	 * next requested repaint.
+	 */
+	public void setMipmapLevelBias( final int mipmapLevelBias )
+	{
+		projectorFactory.setMipmapLevelBias( mipmapLevelBias );
+	}
+
+	public int getMipmapLevelBias()
+	{
+		return projectorFactory.getMipmapLevelBias();
+	}
+
 	/**
 	 * DON'T USE THIS.
 	 * <p>
@@ -364,8 +566,11 @@ public class MultiResolutionRenderer
 		projector = null;
 		currentViewerState = null;
 		currentRenderResult = null;
+		fullResolutionResult = null;
+		fullResolutionCopy = null;
 		currentVisibleSourcesOnScreen.clear();
 		renderStorage.clear();
+		Metrics.getDefault().remove( metricsPrefix );
 	}
 
 	/**
@@ -380,6 +585,8 @@ public class MultiResolutionRenderer
 			return false;
 
 		final boolean newFrame;
+		final boolean preview;
+		final boolean shift;
 		final boolean newInterval;
 		final boolean prepareNextFrame;
 		final boolean createProjector;
@@ -388,16 +595,23 @@ public class MultiResolutionRenderer
 			final boolean resized = screenScales.checkResize( screenW, screenH );
 
 			newFrame = newFrameRequest || resized;
+			final boolean transformChanged = newFrame && onlyTransformChanged && !resized && !shiftedResultPending;
+			shift = transformChanged && !newIntervalRequest && ( !intervalMode || intervalRenderingComplete );
+			preview = transformChanged && !previewPassPending;
 			if ( newFrame )
 			{
 				intervalMode = false;
 				screenScales.clearRequestedIntervals();
+				numPasses = 0;
+				shiftedResultPending = false;
+				exposedIntervals.clear();
 			}
 
 			newInterval = newIntervalRequest && !newFrame;
 			if ( newInterval )
 			{
 				intervalMode = true;
+				intervalRenderingComplete = false;
 				final int numSources = currentVisibleSourcesOnScreen.size();
 				final double renderNanosPerPixel = renderNanosPerPixelAndSource.getAverage() * numSources;
 				requestedIntervalScaleIndex = screenScales.suggestIntervalScreenScale( renderNanosPerPixel, currentScreenScaleIndex );
@@ -413,10 +627,12 @@ public class MultiResolutionRenderer
 					intervalRenderData = screenScales.pullIntervalRenderData( requestedIntervalScaleIndex, currentScreenScaleIndex );
 			}
 			else
-				createProjector = newFrame || ( requestedScreenScaleIndex != currentScreenScaleIndex );
+				createProjector = newFrame || previewDisplayed || ( requestedScreenScaleIndex != currentScreenScaleIndex );
 
 			newFrameRequest = false;
 			newIntervalRequest = false;
+			onlyTransformChanged = false;
+			previewDisplayed = false;
 		}
 
 		if ( prepareNextFrame )
@@ -426,9 +642,14 @@ public class MultiResolutionRenderer
 		{
 			currentViewerState = viewerState.snapshot();
 			VisibilityUtils.computeVisibleSourcesOnScreen( currentViewerState, screenScales.get( 0 ), currentVisibleSourcesOnScreen );
-			final int numSources = currentVisibleSourcesOnScreen.size();
-			final double renderNanosPerPixel = renderNanosPerPixelAndSource.getAverage() * numSources;
-			requestedScreenScaleIndex = screenScales.suggestScreenScale( renderNanosPerPixel );
+			if ( !( shift && shiftRenderResult() ) )
+			{
+				final int numSources = currentVisibleSourcesOnScreen.size();
+				final double renderNanosPerPixel = renderNanosPerPixelAndSource.getAverage() * numSources;
+				requestedScreenScaleIndex = screenScales.suggestScreenScale( renderNanosPerPixel );
+				if ( preview && previewRenderResult() )
+					return true;
+			}
 		}
 
 		if ( !intervalMode && requestedScreenScaleIndex < 0 )
@@ -456,7 +677,7 @@ public class MultiResolutionRenderer
 			{
 				final ScreenScale screenScale = screenScales.get( requestedScreenScaleIndex );
 
-				renderResult = display.getReusableRenderResult();
+				renderResult = getReusableRenderResult();
 				renderResult.init( screenScale.width(), screenScale.height() );
 				renderResult.setScaleFactor( screenScale.scale() );
 				currentViewerState.getViewerTransform( renderResult.getViewerTransform() );
@@ -469,8 +690,13 @@ public class MultiResolutionRenderer
 		}
 
 		// try rendering
+		final IoStatistics iostat = CacheIoTiming.getIoStatistics();
+		final long startTimeIo = iostat.getIoNanoTime();
+		final JfrEvent event = JfrEvents.RENDER_PASS.begin();
 		final boolean success = p.map( createProjector );
 		final long rendertime = p.getLastFrameRenderNanoTime();
+		final long iotime = iostat.getIoNanoTime() - startTimeIo;
+		commitRenderPassEvent( event, false, success );
 
 		synchronized ( this )
 		{
@@ -478,8 +704,10 @@ public class MultiResolutionRenderer
 			if ( success )
 			{
 				currentScreenScaleIndex = requestedScreenScaleIndex;
+				recordFrameStatistics( p, rendertime, iotime );
 				if ( createProjector )
 				{
+					JfrEvents.frameRendered( currentScreenScaleIndex );
 					renderResult.setUpdated();
 					( ( RenderTarget ) display ).setRenderResult( renderResult );
 					currentRenderResult = renderResult;
@@ -487,6 +715,9 @@ public class MultiResolutionRenderer
 				}
 				else
 					currentRenderResult.setUpdated();
+				previewPassPending = false;
+				if ( currentScreenScaleIndex == 0 )
+					updateFullResolutionResult();
 
 				if ( !p.isValid() && requestNewFrameIfIncomplete )
 					requestRepaint();
@@ -518,8 +749,10 @@ public class MultiResolutionRenderer
 		}
 
 		// try rendering
+		final JfrEvent event = JfrEvents.RENDER_PASS.begin();
 		final boolean success = p.map( createProjector );
 		final long rendertime = p.getLastFrameRenderNanoTime();
+		commitRenderPassEvent( event, true, success );
 
 		synchronized ( this )
 		{
@@ -527,15 +760,20 @@ public class MultiResolutionRenderer
 			if ( success )
 			{
 				currentIntervalScaleIndex = requestedIntervalScaleIndex;
+				++numPasses;
 				currentRenderResult.patch( intervalResult, intervalRenderData.targetInterval(), intervalRenderData.tx(), intervalRenderData.ty() );
 
 				if ( createProjector )
 					recordRenderTime( intervalResult, rendertime );
 
-				if ( currentIntervalScaleIndex > currentScreenScaleIndex )
+				if ( shiftedResultPending )
+					exposedIntervalPainted( p.isValid() );
+				else if ( currentIntervalScaleIndex > currentScreenScaleIndex )
 					iterateRepaintInterval( currentIntervalScaleIndex - 1 );
 				else if ( p.isValid() )
 				{
+					intervalRenderingComplete = true;
+
 					// if full frame rendering was not yet complete
 					if ( requestedScreenScaleIndex >= 0 )
 					{
@@ -557,6 +795,313 @@ public class MultiResolutionRenderer
 		return success;
 	}
 
+	/**
+	 * If the viewer transform of the {@link #currentViewerState} differs from
+	 * the transform of the {@link #currentRenderResult} only by a translation
+	 * in the screen plane, by a whole number of pixels of the
+	 * {@link #currentRenderResult}, copy the shifted
+	 * {@link #currentRenderResult} to a new {@code RenderResult} and switch to
+	 * interval mode to paint the exposed parts of the screen.
+	 * <p>
+	 * The {@link #renderStorage} is not shifted along: the interval passes use
+	 * it as scratch space, and every new projector clears its masks. If the
+	 * shifted result is incomplete, refinement therefore continues with full
+	 * frames.
+	 *
+	 * @return whether the {@link #currentRenderResult} was shifted. Otherwise,
+	 *         a new full frame must be rendered.
+	 */
+	private synchronized boolean shiftRenderResult()
+	{
+		final RenderResult previous = currentRenderResult;
+		if ( previous == null )
+			return false;
+
+		int screenScaleIndex = -1;
+		for ( int i = 0; i < screenScales.size(); ++i )
+			if ( screenScales.get( i ).scale() == previous.getScaleFactor() )
+				screenScaleIndex = i;
+		if ( screenScaleIndex < 0 )
+			return false;
+
+		final ScreenScale screenScale = screenScales.get( screenScaleIndex );
+		final double scale = screenScale.scale();
+		final int w = screenScale.width();
+		final int h = screenScale.height();
+		final RandomAccessibleInterval< ARGBType > previousImage = previous.getTargetImage();
+		if ( previousImage.dimension( 0 ) != w || previousImage.dimension( 1 ) != h )
+			return false;
+
+		final AffineTransform3D previousTransform = previous.getViewerTransform();
+		final AffineTransform3D transform = currentViewerState.getViewerTransform();
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+				if ( Math.abs( transform.get( r, c ) - previousTransform.get( r, c ) ) > LINEAR_EPSILON )
+					return false;
+		final double sx = ( transform.get( 0, 3 ) - previousTransform.get( 0, 3 ) ) * scale;
+		final double sy = ( transform.get( 1, 3 ) - previousTransform.get( 1, 3 ) ) * scale;
+		final double sz = transform.get( 2, 3 ) - previousTransform.get( 2, 3 );
+		final int dx = ( int ) Math.round( sx );
+		final int dy = ( int ) Math.round( sy );
+		if ( Math.abs( sx - dx ) > SHIFT_EPSILON || Math.abs( sy - dy ) > SHIFT_EPSILON || Math.abs( sz ) > SHIFT_EPSILON )
+			return false;
+		if ( ( dx == 0 && dy == 0 ) || Math.abs( dx ) >= w || Math.abs( dy ) >= h )
+			return false;
+
+		final RenderResult result = getReusableRenderResult();
+		if ( result == previous )
+			return false;
+		result.init( w, h );
+		result.setScaleFactor( scale );
+		result.getViewerTransform().set( transform );
+		result.patch( previous, new FinalInterval( w, h ), dx, dy );
+		currentRenderResult = result;
+		currentScreenScaleIndex = screenScaleIndex;
+		shiftedResultPending = true;
+		shiftedResultIncomplete = false;
+		shiftedFrames.inc();
+
+		// columns exposed on the left or right, then rows exposed at the top or bottom
+		final int x0 = dx > 0 ? dx : 0;
+		final int x1 = dx < 0 ? w + dx - 1 : w - 1;
+		if ( dx > 0 )
+			exposedIntervals.add( exposedScreenInterval( 0, 0, dx - 1, h - 1, scale ) );
+		else if ( dx < 0 )
+			exposedIntervals.add( exposedScreenInterval( w + dx, 0, w - 1, h - 1, scale ) );
+		if ( dy > 0 )
+			exposedIntervals.add( exposedScreenInterval( x0, 0, x1, dy - 1, scale ) );
+		else if ( dy < 0 )
+			exposedIntervals.add( exposedScreenInterval( x0, h + dy, x1, h - 1, scale ) );
+
+		renderStorage.checkRenewData( screenScales.get( 0 ).width(), screenScales.get( 0 ).height(), currentVisibleSourcesOnScreen.size() );
+		screenScales.requestInterval( exposedIntervals.poll() );
+		intervalMode = true;
+		intervalRenderingComplete = false;
+		final int numSources = currentVisibleSourcesOnScreen.size();
+		final double renderNanosPerPixel = renderNanosPerPixelAndSource.getAverage() * numSources;
+		requestedIntervalScaleIndex = screenScales.suggestIntervalScreenScale( renderNanosPerPixel, currentScreenScaleIndex );
+		intervalRenderData = screenScales.pullIntervalRenderData( requestedIntervalScaleIndex, currentScreenScaleIndex );
+		return true;
+	}
+
+	/**
+	 * Get the screen interval covering the given pixel interval of a
+	 * {@code RenderResult} at the given {@code scale}.
+	 */
+	private Interval exposedScreenInterval( final int min0, final int min1, final int max0, final int max1, final double scale )
+	{
+		return screenScales.clipToScreen( Intervals.createMinMax(
+				( long ) Math.floor( min0 / scale ),
+				( long ) Math.floor( min1 / scale ),
+				( long ) Math.ceil( ( max0 + 1 ) / scale ) - 1,
+				( long ) Math.ceil( ( max1 + 1 ) / scale ) - 1 ) );
+	}
+
+	/**
+	 * Called after a pass over an exposed interval of the pending shifted
+	 * result. Requests the next exposed interval, or hands the shifted result
+	 * to the {@link #display} if all were painted. In the latter case, if
+	 * anything was not painted completely, full frame rendering continues.
+	 */
+	private void exposedIntervalPainted( final boolean valid )
+	{
+		if ( !valid || currentIntervalScaleIndex > currentScreenScaleIndex )
+			shiftedResultIncomplete = true;
+
+		final Interval next = exposedIntervals.poll();
+		if ( next != null )
+		{
+			screenScales.requestInterval( next );
+			newIntervalRequest = true;
+			painterThread.requestRepaint();
+			return;
+		}
+
+		shiftedResultPending = false;
+		JfrEvents.frameRendered( currentScreenScaleIndex );
+		currentRenderResult.setUpdated();
+		( ( RenderTarget ) display ).setRenderResult( currentRenderResult );
+		previewPassPending = false;
+		if ( currentScreenScaleIndex == 0 )
+			updateFullResolutionResult();
+
+		if ( shiftedResultIncomplete && requestedScreenScaleIndex < 0 )
+			requestedScreenScaleIndex = currentScreenScaleIndex;
+		if ( requestedScreenScaleIndex >= 0 )
+		{
+			// refine in full frame mode
+			intervalMode = false;
+			if ( requestedScreenScaleIndex == currentScreenScaleIndex )
+				++currentScreenScaleIndex;
+			painterThread.requestRepaint();
+		}
+		else
+			intervalRenderingComplete = true;
+	}
+
+	/**
+	 * Display a preview of the {@link #currentViewerState} at the
+	 * {@link #requestedScreenScaleIndex requested screen scale}, by warping the
+	 * {@link #currentRenderResult} and, on top of it, the
+	 * {@link #fullResolutionResult} to the new viewer transform. This does not
+	 * touch source data, so it takes the same time regardless of the number
+	 * of sources and whether their data is loaded. The next {@code paint()}
+	 * renders the first actual pass.
+	 *
+	 * @return whether a preview was displayed. Otherwise, the first pass must
+	 *         be rendered right away.
+	 */
+	private synchronized boolean previewRenderResult()
+	{
+		final RenderResult previous = currentRenderResult;
+		if ( previous == null )
+			return false;
+
+		final ScreenScale screenScale = screenScales.get( requestedScreenScaleIndex );
+		final AffineTransform3D transform = currentViewerState.getViewerTransform();
+		final AffineTransform2D warp = new AffineTransform2D();
+		if ( !getPreviewTransform( previous, transform, screenScale.scale(), warp ) )
+			return false;
+
+		final RenderResult result = getReusableRenderResult();
+		if ( result == previous )
+			return false;
+		result.init( screenScale.width(), screenScale.height() );
+		result.setScaleFactor( screenScale.scale() );
+		result.getViewerTransform().set( transform );
+		if ( !result.warp( previous, warp, true ) )
+			return false;
+
+		final RenderResult fullResolution = fullResolutionResult;
+		if ( fullResolution != null
+				&& fullResolution.getScaleFactor() > previous.getScaleFactor()
+				&& getPreviewTransform( fullResolution, transform, screenScale.scale(), warp ) )
+			result.warp( fullResolution, warp, false );
+
+		result.setUpdated();
+		( ( RenderTarget ) display ).setRenderResult( result );
+		JfrEvents.frameRendered( requestedScreenScaleIndex );
+		previewFrames.inc();
+		previewDisplayed = true;
+		previewPassPending = true;
+		painterThread.requestRepaint();
+		return true;
+	}
+
+	/**
+	 * Get the transform from pixel coordinates of {@code source} to pixel
+	 * coordinates of a {@code RenderResult} at the given {@code scale} of the
+	 * viewer {@code transform}. This ignores the depth of {@code source}
+	 * pixels with respect to the new screen plane.
+	 *
+	 * @return whether every corner of {@code source} is at most
+	 *         {@link #MAX_PREVIEW_DEPTH} from the new screen plane.
+	 */
+	static boolean getPreviewTransform(
+			final RenderResult source,
+			final AffineTransform3D transform,
+			final double scale,
+			final AffineTransform2D warp )
+	{
+		final AffineTransform3D t = source.getViewerTransform().inverse();
+		t.preConcatenate( transform );
+
+		final double sourceScale = source.getScaleFactor();
+		final double sourceOffset = 0.5 * sourceScale - 0.5;
+		final double maxX = ( source.getTargetImage().max( 0 ) - sourceOffset ) / sourceScale;
+		final double maxY = ( source.getTargetImage().max( 1 ) - sourceOffset ) / sourceScale;
+		final double minX = -sourceOffset / sourceScale;
+		final double minY = -sourceOffset / sourceScale;
+		for ( final double x : new double[] { minX, maxX } )
+			for ( final double y : new double[] { minY, maxY } )
+				if ( Math.abs( t.get( 2, 0 ) * x + t.get( 2, 1 ) * y + t.get( 2, 3 ) ) > MAX_PREVIEW_DEPTH )
+					return false;
+
+		final double r = scale / sourceScale;
+		final double offset = 0.5 * scale - 0.5;
+		warp.set(
+				r * t.get( 0, 0 ), r * t.get( 0, 1 ), scale * ( t.get( 0, 3 ) - ( t.get( 0, 0 ) + t.get( 0, 1 ) ) * sourceOffset / sourceScale ) + offset,
+				r * t.get( 1, 0 ), r * t.get( 1, 1 ), scale * ( t.get( 1, 3 ) - ( t.get( 1, 0 ) + t.get( 1, 1 ) ) * sourceOffset / sourceScale ) + offset );
+		return true;
+	}
+
+	/**
+	 * Keep the {@link #currentRenderResult}, which was completed at the finest
+	 * screen scale, as the {@link #fullResolutionResult}.
+	 */
+	private void updateFullResolutionResult()
+	{
+		fullResolutionResult = currentRenderResult;
+	}
+
+	/**
+	 * Get a {@code RenderResult} to render to from the {@link #display}. If the
+	 * {@link #display} offers the {@link #fullResolutionResult}, that is copied
+	 * to the {@link #fullResolutionCopy} before it is overwritten.
+	 */
+	private RenderResult getReusableRenderResult()
+	{
+		final RenderResult result = display.getReusableRenderResult();
+		if ( result == fullResolutionResult && result != currentRenderResult )
+		{
+			if ( fullResolutionCopy == null )
+				fullResolutionCopy = display.createRenderResult();
+			final RandomAccessibleInterval< ARGBType > image = result.getTargetImage();
+			final int w = ( int ) image.dimension( 0 );
+			final int h = ( int ) image.dimension( 1 );
+			fullResolutionCopy.init( w, h );
+			fullResolutionCopy.setScaleFactor( result.getScaleFactor() );
+			fullResolutionCopy.getViewerTransform().set( result.getViewerTransform() );
+			fullResolutionCopy.patch( result, new FinalInterval( w, h ), 0, 0 );
+			fullResolutionResult = fullResolutionCopy;
+		}
+		return result;
+	}
+
+	private synchronized void commitRenderPassEvent( final JfrEvent event, final boolean interval, final boolean success )
+	{
+		if ( event.isEnabled() )
+			event
+					.set( 0, interval ? requestedIntervalScaleIndex : requestedScreenScaleIndex )
+					.set( 1, currentVisibleSourcesOnScreen.size() )
+					.set( 2, interval )
+					.set( 3, !success )
+					.commit();
+	}
+
+	private void recordFrameStatistics( final VolatileProjector p, final long renderNanos, final long ioNanos )
+	{
+		++numPasses;
+		lastFrameNanos = renderNanos;
+		lastFrameIoNanos = ioNanos;
+		recentFrameNanos[ ( int ) ( numRecordedFrames++ % NUM_RECENT_FRAMES ) ] = renderNanos;
+		frameNanos.record( renderNanos );
+		lastScreenScaleIndex.set( currentScreenScaleIndex );
+		lastNumInvalidPixels.set( p.getNumInvalidPixels() );
+	}
+
+	/**
+	 * Get statistics of the recently rendered frames, e.g., to show them in an
+	 * overlay.
+	 *
+	 * @return statistics of recent frames
+	 */
+	public synchronized FrameStatistics getFrameStatistics()
+	{
+		final int n = ( int ) Math.min( numRecordedFrames, NUM_RECENT_FRAMES );
+		final long[] recent = new long[ n ];
+		for ( int i = 0; i < n; ++i )
+			recent[ i ] = recentFrameNanos[ ( int ) ( ( numRecordedFrames - n + i ) % NUM_RECENT_FRAMES ) ];
+		return new FrameStatistics(
+				lastFrameNanos,
+				lastScreenScaleIndex.get(),
+				numPasses,
+				lastNumInvalidPixels.get(),
+				lastFrameIoNanos,
+				iobudget[ 0 ],
+				recent );
+	}
+
 	private void recordRenderTime( final RenderResult result, final long renderNanos )
 	{
 		final int numSources = currentVisibleSourcesOnScreen.size();
@@ -0,0 +1,178 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A list of horizontal runs of pixels {@code [x0, x1)} in row {@code y}, in
+ * row-major order. Used by {@link VolatileHierarchyProjector} to remember
+ * which pixels still need to be rendered.
+ */
+final class PixelRuns
+{
+	/**
+	 * {@code (y, x0, x1)} triples.
+	 */
+	private int[] data;
+
+	private int size;
+
+	private long numPixels;
+
+	PixelRuns()
+	{
+		data = new int[ 3 * 16 ];
+	}
+
+	/**
+	 * Create runs covering every row of a {@code width} by {@code height}
+	 * image.
+	 */
+	static PixelRuns full( final int width, final int height )
+	{
+		final PixelRuns runs = new PixelRuns();
+		runs.data = new int[ 3 * Math.max( 1, height ) ];
+		if ( width > 0 )
+			for ( int y = 0; y < height; ++y )
+				runs.add( y, 0, width );
+		return runs;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	long numPixels()
+	{
+		return numPixels;
+	}
+
+	int y( final int i )
+	{
+		return data[ 3 * i ];
+	}
+
+	int x0( final int i )
+	{
+		return data[ 3 * i + 1 ];
+	}
+
+	int x1( final int i )
+	{
+		return data[ 3 * i + 2 ];
+	}
+
+	void clear()
+	{
+		size = 0;
+		numPixels = 0;
+	}
+
+	/**
+	 * Append the run {@code [x0, x1)} in row {@code y}. It must not start
+	 * before the end of the last run. If it starts where the last run ends,
+	 * the last run is extended.
+	 */
+	void add( final int y, final int x0, final int x1 )
+	{
+		if ( x1 <= x0 )
+			return;
+		numPixels += x1 - x0;
+		if ( size > 0 )
+		{
+			final int last = 3 * ( size - 1 );
+			if ( data[ last ] == y && data[ last + 2 ] == x0 )
+			{
+				data[ last + 2 ] = x1;
+				return;
+			}
+		}
+		if ( 3 * size == data.length )
+			data = Arrays.copyOf( data, 2 * data.length );
+		final int i = 3 * size++;
+		data[ i ] = y;
+		data[ i + 1 ] = x0;
+		data[ i + 2 ] = x1;
+	}
+
+	/**
+	 * Append all runs of {@code runs}, which must come after the runs of this
+	 * list.
+	 */
+	void addAll( final PixelRuns runs )
+	{
+		for ( int i = 0; i < runs.size; ++i )
+			add( runs.y( i ), runs.x0( i ), runs.x1( i ) );
+	}
+
+	/**
+	 * Split into at most {@code n} consecutive parts with about the same
+	 * number of pixels each. Runs are split between parts if necessary.
+	 *
+	 * @return list of non-empty parts, in order.
+	 */
+	List< PixelRuns > split( final int n )
+	{
+		final List< PixelRuns > parts = new ArrayList<>( n );
+		if ( numPixels == 0 )
+			return parts;
+		if ( n <= 1 )
+		{
+			parts.add( this );
+			return parts;
+		}
+
+		final long pixelsPerPart = ( numPixels + n - 1 ) / n;
+		PixelRuns part = new PixelRuns();
+		for ( int i = 0; i < size; ++i )
+		{
+			final int y = y( i );
+			int x0 = x0( i );
+			final int x1 = x1( i );
+			while ( x0 < x1 )
+			{
+				final int x = ( int ) Math.min( x1, x0 + pixelsPerPart - part.numPixels );
+				part.add( y, x0, x );
+				x0 = x;
+				if ( part.numPixels == pixelsPerPart )
+				{
+					parts.add( part );
+					part = new PixelRuns();
+				}
+			}
+		}
+		if ( part.numPixels > 0 )
+			parts.add( part );
+		return parts;
+	}
+}
@@ -28,6 +28,8 @@
  */
 package bdv.viewer.render;
 
+import java.util.function.Consumer;
+
 import net.imglib2.Dimensions;
 import net.imglib2.RandomAccess;
 import net.imglib2.RealPoint;
@@ -55,7 +57,31 @@ public class Prefetcher
 	 */
 	public static void fetchCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess )
 	{
-		new Prefetcher().scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+		new Prefetcher().scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, null );
+	}
+
+	/**
+	 * Access cells that will be needed for rendering to the screen, and pass
+	 * each of them to {@code visitor}.
+	 *
+	 * @param sourceToScreen
+	 *            source-to-screen transform
+	 * @param cellDimensions
+	 *            standard size of a source cell
+	 * @param dimensions
+	 *            dimensions of the source {@link CellImg}
+	 * @param screenInterval
+	 *            the interval of the screen that will be rendered
+	 * @param interpolation
+	 *            the interpolation method
+	 * @param cellsRandomAccess
+	 *            access to the source cells
+	 * @param visitor
+	 *            is called with every accessed cell
+	 */
+	public static < C > void visitCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval, final Interpolation interpolation, final RandomAccess< C > cellsRandomAccess, final Consumer< ? super C > visitor )
+	{
+		new Prefetcher().scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, visitor );
 	}
 
 	private Prefetcher()
@@ -96,8 +122,10 @@ public class Prefetcher
 	 *            the interpolation method
 	 * @param cellsRandomAccess
 	 *            access to the source cells
+	 * @param visitor
+	 *            is called with every accessed cell, may be {@code null}
 	 */
-	private void scan( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval, final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess )
+	private < C > void scan( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval, final Interpolation interpolation, final RandomAccess< C > cellsRandomAccess, final Consumer< ? super C > visitor )
 	{
 		final RealPoint pSource = new RealPoint( 3 );
 		final RealPoint pScreen = new RealPoint( 3 );
@@ -191,7 +219,9 @@ public class Prefetcher
 							( y + offsetPos[ 1 ] >= 0 ) &&
 							( y + offsetNeg[ 1 ] < h ) )
 					{
-						cellsRandomAccess.get();
+						final C cell = cellsRandomAccess.get();
+						if ( visitor != null )
+							visitor.accept( cell );
 					}
 					pSource.move( cellDimensions[ 0 ], 0 );
 				}
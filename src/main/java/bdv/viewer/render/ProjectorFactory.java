@@ -112,6 +112,12 @@ class ProjectorFactory
 	// TODO: should be settable
 	private final boolean prefetchCells = true;
 
+	/**
+	 * Mipmap levels are chosen as if the screen resolution was
+	 * {@code 2^mipmapLevelBias} times lower.
+	 */
+	private volatile int mipmapLevelBias = 0;
+
 	/**
 	 * @param numRenderingThreads
 	 *     How many threads to use for rendering.
@@ -136,6 +142,21 @@ class ProjectorFactory
 		this.accumulateProjectorFactory = accumulateProjectorFactory;
 	}
 
+	/**
+	 * Choose mipmap levels as if the screen resolution was
+	 * {@code 2^mipmapLevelBias} times lower. This is used to render coarser
+	 * levels during time-lapse playback.
+	 */
+	public void setMipmapLevelBias( final int mipmapLevelBias )
+	{
+		this.mipmapLevelBias = Math.max( 0, mipmapLevelBias );
+	}
+
+	public int getMipmapLevelBias()
+	{
+		return mipmapLevelBias;
+	}
+
 	/**
 	 * Create a projector for rendering the specified {@code ViewerState} to the
 	 * specified {@code screenImage}, with the current visible sources (visible
@@ -208,7 +229,7 @@ class ProjectorFactory
 			}
 		}
 
-		final int bestLevel = getBestMipMapLevel( viewerState, source, screenTransform );
+		final int bestLevel = getBestMipMapLevel( viewerState, source, getLevelTransform( screenTransform, mipmapLevelBias ) );
 		return new SimpleVolatileProjector<>(
 				getTransformedSource( viewerState, source.getSpimSource(), screenTransform, bestLevel, null ),
 				source.getConverter(), screenImage, numRenderingThreads, renderingExecutorService );
@@ -222,13 +243,14 @@ class ProjectorFactory
 			final byte[] maskArray )
 	{
 		final ArrayList< RandomAccessible< T > > renderList = new ArrayList<>();
+		final ArrayList< UniformCellRuns > uniformCellRuns = new ArrayList<>();
 		final Source< T > spimSource = source.getSpimSource();
 		final int t = viewerState.getCurrentTimepoint();
 
 		final MipmapOrdering ordering = spimSource instanceof MipmapOrdering ?
 				( MipmapOrdering ) spimSource : new DefaultMipmapOrdering( spimSource );
 
-		final MipmapOrdering.MipmapHints hints = ordering.getMipmapHints( screenTransform, t, previousTimepoint );
+		final MipmapOrdering.MipmapHints hints = ordering.getMipmapHints( getLevelTransform( screenTransform, mipmapLevelBias ), t, previousTimepoint );
 		final List< MipmapOrdering.Level > levels = hints.getLevels();
 
 		if ( prefetchCells )
@@ -244,12 +266,15 @@ class ProjectorFactory
 
 		levels.sort( MipmapOrdering.renderOrderComparator );
 		for ( final MipmapOrdering.Level l : levels )
+		{
 			renderList.add( getTransformedSource( viewerState, spimSource, screenTransform, l.getMipmapLevel(), l.getRenderCacheHints() ) );
+			uniformCellRuns.add( UniformCellRuns.create( spimSource, t, l.getMipmapLevel(), screenTransform, viewerState.getInterpolation() ) );
+		}
 
 		if ( hints.renewHintsAfterPaintingOnce() )
 			newFrameRequest = true;
 
-		return new VolatileHierarchyProjector<>( renderList, source.getConverter(), screenImage, maskArray, numRenderingThreads, renderingExecutorService );
+		return new VolatileHierarchyProjector<>( renderList, uniformCellRuns, source.getConverter(), screenImage, maskArray, numRenderingThreads, renderingExecutorService );
 	}
 
 	/**
@@ -269,6 +294,19 @@ class ProjectorFactory
 		return MipmapTransforms.getBestMipMapLevel( screenTransform, source.getSpimSource(), viewerState.getCurrentTimepoint() );
 	}
 
+	/**
+	 * Get the transform that should be used instead of {@code screenTransform}
+	 * to choose mipmap levels with the given {@code mipmapLevelBias}.
+	 */
+	static AffineTransform3D getLevelTransform( final AffineTransform3D screenTransform, final int mipmapLevelBias )
+	{
+		if ( mipmapLevelBias <= 0 )
+			return screenTransform;
+		final AffineTransform3D levelTransform = screenTransform.copy();
+		levelTransform.scale( Math.pow( 0.5, mipmapLevelBias ) );
+		return levelTransform;
+	}
+
 	private static < T > RandomAccessible< T > getTransformedSource(
 			final ViewerState viewerState,
 			final Source< T > source,
@@ -282,13 +320,16 @@ class ProjectorFactory
 		if ( img instanceof VolatileCachedCellImg )
 			( ( VolatileCachedCellImg< ?, ? > ) img ).setCacheHints( cacheHints );
 
-		final Interpolation interpolation = viewerState.getInterpolation();
-		final RealRandomAccessible< T > ipimg = source.getInterpolatedSource( timepoint, mipmapIndex, interpolation );
-
 		final AffineTransform3D sourceToScreen = new AffineTransform3D();
 		source.getSourceTransform( timepoint, mipmapIndex, sourceToScreen );
 		sourceToScreen.preConcatenate( screenTransform );
 
+		final Interpolation interpolation = viewerState.getInterpolation();
+		final RandomAccessible< T > axisAligned = AxisAlignedViews.create( source, img, sourceToScreen, interpolation );
+		if ( axisAligned != null )
+			return axisAligned;
+
+		final RealRandomAccessible< T > ipimg = source.getInterpolatedSource( timepoint, mipmapIndex, interpolation );
 		return RealViews.affine( ipimg, sourceToScreen );
 	}
 
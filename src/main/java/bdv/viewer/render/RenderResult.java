@@ -30,6 +30,7 @@ package bdv.viewer.render;
 
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.realtransform.AffineTransform2D;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
 
@@ -89,6 +90,24 @@ public interface RenderResult
 	 */
 	void patch( final RenderResult patch, final Interval interval, final double ox, final double oy );
 
+	/**
+	 * Draw {@code source}, transformed by {@code transform} from pixel
+	 * coordinates of {@code source} to pixel coordinates of this
+	 * {@code RenderResult}. If {@code clear}, all pixels are cleared first.
+	 * Otherwise, pixels that are not covered by the transformed
+	 * {@code source} are not modified.
+	 * <p>
+	 * (Called by the {@link MultiResolutionRenderer renderer} to show a preview
+	 * of a new viewer transform before the first pass is rendered.)
+	 *
+	 * @return {@code false} if warping is not supported, in which case nothing
+	 *         is modified.
+	 */
+	default boolean warp( final RenderResult source, final AffineTransform2D transform, final boolean clear )
+	{
+		return false;
+	}
+
 	/**
 	 * Notify that the {@link #getTargetImage() target image} data was changed.
 	 * <p>
@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.realtransform.AffineTransform3D;
+import bdv.img.cache.UniformAccess;
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+
+/**
+ * Finds runs of consecutive pixels on a line of the screen image, whose
+ * values all come from the same {@link UniformAccess uniform} cell of a
+ * {@link VolatileCachedCellImg} source. All pixels of such a run have the same
+ * value, so they can be filled with one converted value instead of
+ * interpolating every pixel (see {@link VolatileHierarchyProjector}).
+ * <p>
+ * Cells are only looked up if they are already loaded, i.e., finding runs
+ * never triggers loading.
+ */
+public class UniformCellRuns
+{
+	/**
+	 * Uniform runs are shrunk by this distance (in source voxels) at both
+	 * ends, to be safe from rounding errors.
+	 */
+	private static final double EPS = 1e-6;
+
+	private final RandomAccessibleInterval< ? extends Cell< ? > > cells;
+
+	private final long[] dimensions;
+
+	private final int[] cellDimensions;
+
+	private final AffineTransform3D screenToSource;
+
+	/**
+	 * Source voxel offset between neighbouring screen pixels along X.
+	 */
+	private final double[] step;
+
+	/**
+	 * How far source coordinates of a uniform run may reach beyond the min
+	 * (negative) and max (positive) voxel of the cell, such that the
+	 * interpolated value only depends on voxels of the cell.
+	 */
+	private final double uniformMarginMin;
+
+	private final double uniformMarginMax;
+
+	private UniformCellRuns(
+			final VolatileCachedCellImg< ?, ? > img,
+			final AffineTransform3D sourceToScreen,
+			final Interpolation interpolation )
+	{
+		cells = img.getCells( new CacheHints( LoadingStrategy.DONTLOAD, 0, false ) );
+		dimensions = new long[ 3 ];
+		img.dimensions( dimensions );
+		cellDimensions = new int[ 3 ];
+		img.getCellGrid().cellDimensions( cellDimensions );
+
+		screenToSource = sourceToScreen.inverse();
+		step = new double[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+			step[ d ] = screenToSource.get( d, 0 );
+
+		if ( interpolation == Interpolation.NEARESTNEIGHBOR )
+		{
+			uniformMarginMin = -0.5 + EPS;
+			uniformMarginMax = 0.5 - EPS;
+		}
+		else // Interpolation.NLINEAR
+		{
+			uniformMarginMin = EPS;
+			uniformMarginMax = -EPS;
+		}
+	}
+
+	/**
+	 * Create {@link UniformCellRuns} for the given source and mipmap level.
+	 *
+	 * @param screenTransform
+	 *            transforms global coordinates to screen coordinates.
+	 *
+	 * @return {@link UniformCellRuns}, or {@code null} if the source image at
+	 *         the given level is not a 3D {@link VolatileCachedCellImg}.
+	 */
+	public static UniformCellRuns create(
+			final Source< ? > source,
+			final int timepoint,
+			final int mipmapIndex,
+			final AffineTransform3D screenTransform,
+			final Interpolation interpolation )
+	{
+		final RandomAccessibleInterval< ? > img = source.getSource( timepoint, mipmapIndex );
+		if ( !( img instanceof VolatileCachedCellImg ) || img.numDimensions() != 3 )
+			return null;
+
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		source.getSourceTransform( timepoint, mipmapIndex, sourceToScreen );
+		sourceToScreen.preConcatenate( screenTransform );
+
+		return new UniformCellRuns( ( VolatileCachedCellImg< ?, ? > ) img, sourceToScreen, interpolation );
+	}
+
+	/**
+	 * Create a new {@link Finder}. Each rendering thread needs its own.
+	 */
+	public Finder finder()
+	{
+		return new Finder();
+	}
+
+	public class Finder
+	{
+		private final RandomAccess< ? extends Cell< ? > > access = cells.randomAccess();
+
+		private final double[] screen = new double[ 3 ];
+
+		private final double[] source = new double[ 3 ];
+
+		private final long[] cellPos = new long[ 3 ];
+
+		private final long[] cellMin = new long[ 3 ];
+
+		private final int[] cellDims = new int[ 3 ];
+
+		private boolean uniform;
+
+		/**
+		 * Find the run of screen pixels starting at ({@code x}, {@code y})
+		 * that map into the same source cell. After this call,
+		 * {@link #isUniform()} tells whether the run is uniform.
+		 *
+		 * @param maxLength
+		 *            maximum length of the run
+		 *
+		 * @return length of the run, at least 1 and at most {@code maxLength}.
+		 */
+		public int find( final long x, final long y, final int maxLength )
+		{
+			uniform = false;
+			screen[ 0 ] = x;
+			screen[ 1 ] = y;
+			screenToSource.apply( screen, source );
+
+			for ( int d = 0; d < 3; ++d )
+			{
+				final long v = ( long ) Math.floor( source[ d ] + 0.5 );
+				if ( v < 0 || v >= dimensions[ d ] )
+					return 1;
+				cellPos[ d ] = v / cellDimensions[ d ];
+			}
+			access.setPosition( cellPos );
+			final Cell< ? > cell = access.get();
+			cell.min( cellMin );
+			cell.dimensions( cellDims );
+			final boolean isUniformCell = cell.getData() instanceof UniformAccess;
+
+			// For uniform cells, the run is where interpolation only touches
+			// voxels of the cell. Otherwise, the run is where pixels fall into
+			// the cell, so that the next lookup will find the next cell.
+			final double marginMin = isUniformCell ? uniformMarginMin : -0.5;
+			final double marginMax = isUniformCell ? uniformMarginMax : 0.5;
+
+			double maxSteps = maxLength - 1;
+			for ( int d = 0; d < 3; ++d )
+			{
+				final double lo = cellMin[ d ] + marginMin;
+				final double hi = cellMin[ d ] + cellDims[ d ] - 1 + marginMax;
+				final double p = source[ d ];
+				if ( p < lo || p >= hi )
+					return 1;
+				final double s = step[ d ];
+				if ( s > 0 )
+					maxSteps = Math.min( maxSteps, Math.ceil( ( hi - p ) / s ) - 1 );
+				else if ( s < 0 )
+					maxSteps = Math.min( maxSteps, Math.floor( ( p - lo ) / -s ) );
+			}
+
+			uniform = isUniformCell;
+			return 1 + ( int ) Math.max( 0, maxSteps );
+		}
+
+		/**
+		 * Whether the run found by the last {@link #find(long, long, int)}
+		 * lies in a uniform cell.
+		 */
+		public boolean isUniform()
+		{
+			return uniform;
+		}
+	}
+}
@@ -49,6 +49,9 @@ import net.imglib2.util.Intervals;
 import net.imglib2.util.StopWatch;
 import net.imglib2.view.Views;
 
+import bdv.metrics.JfrEvent;
+import bdv.metrics.JfrEvents;
+
 /**
  * {@link VolatileProjector} for a hierarchy of {@link Volatile} inputs.  After each
  * {@link #map()} call, the projector has a {@link #isValid() state} that
@@ -77,6 +80,18 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 	 */
 	private final List< RandomAccessible< A > > sources;
 
+	/**
+	 * For every source resolution, {@link UniformCellRuns} to find runs of
+	 * target pixels that can be filled with a single value, or {@code null}.
+	 */
+	private final List< UniformCellRuns > uniformCellRuns;
+
+	/**
+	 * The target data, if target is an {@code ARGBType} {@code ArrayImg}, or
+	 * {@code null}. Uniform runs are only filled if this is available.
+	 */
+	private final int[] targetData;
+
 	/**
 	 * Records, for every target pixel, the best (smallest index) source
 	 * resolution level that has provided a valid value. Only better (lower
@@ -85,6 +100,20 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 	 */
 	private final byte[] mask;
 
+	/**
+	 * Runs of target pixels that have not been rendered with valid data from
+	 * the optimal resolution level ({@code mask > 0}). Only these pixels are
+	 * visited in the next {@link #map(boolean)} call, so that refinement
+	 * passes cost time proportional to the number of pixels that are still
+	 * invalid.
+	 */
+	private PixelRuns invalidRuns;
+
+	/**
+	 * Rendering work is split into tasks of at least this many pixels.
+	 */
+	private static final int MIN_PIXELS_PER_TASK = 1024;
+
 	/**
 	 * {@code true} iff all target pixels were rendered with valid data from the
 	 * optimal resolution level (level {@code 0}).
@@ -131,6 +160,12 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 	 */
 	private final AtomicInteger numInvalidPixels = new AtomicInteger();
 
+	/**
+	 * Number of pixels that could not be rendered at the full resolution in the
+	 * last {@link #map()} call.
+	 */
+	private long lastNumInvalidPixels;
+
 	/**
 	 * Flag to indicate that someone is trying to {@link #cancel()} rendering.
 	 */
@@ -153,10 +188,32 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 			final byte[] maskArray,
 			final int numThreads,
 			final ExecutorService executorService )
+	{
+		this( sources, null, converter, target, maskArray, numThreads, executorService );
+	}
+
+	/**
+	 * @param uniformCellRuns
+	 *            for every source resolution, {@link UniformCellRuns} to fill
+	 *            runs of target pixels that come from a uniform cell with a
+	 *            single converted value, or {@code null} to interpolate every
+	 *            pixel. The list, or elements of the list, may be
+	 *            {@code null}.
+	 */
+	public VolatileHierarchyProjector(
+			final List< ? extends RandomAccessible< A > > sources,
+			final List< UniformCellRuns > uniformCellRuns,
+			final Converter< ? super A, B > converter,
+			final RandomAccessibleInterval< B > target,
+			final byte[] maskArray,
+			final int numThreads,
+			final ExecutorService executorService )
 	{
 		this.converter = converter;
 		this.target = target;
 		this.sources = new ArrayList<>( sources );
+		this.uniformCellRuns = uniformCellRuns;
+		targetData = uniformCellRuns == null ? null : ProjectorUtils.getARGBArrayImgData( target );
 		numInvalidLevels = sources.size();
 		mask = maskArray;
 
@@ -199,6 +256,12 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 		return valid;
 	}
 
+	@Override
+	public long getNumInvalidPixels()
+	{
+		return lastNumInvalidPixels;
+	}
+
 	/**
 	 * Set all pixels in target to 100% transparent zero, and mask to all
 	 * Integer.MAX_VALUE.
@@ -208,6 +271,7 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 		final int size = ( int ) Intervals.numElements( target );
 		Arrays.fill( mask, 0, size, Byte.MAX_VALUE );
 		numInvalidLevels = sources.size();
+		invalidRuns = PixelRuns.full( ( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ) );
 	}
 
 	/**
@@ -218,10 +282,16 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 		final int[] data = ProjectorUtils.getARGBArrayImgData( target );
 		if ( data != null )
 		{
-			final int size = ( int ) Intervals.numElements( target );
-			for ( int i = 0; i < size; ++i )
-				if ( mask[ i ] == Byte.MAX_VALUE )
-					data[ i ] = 0;
+			// untouched pixels are invalid, so they are in invalidRuns
+			final int width = ( int ) target.dimension( 0 );
+			final PixelRuns runs = invalidRuns;
+			for ( int r = 0; r < runs.size(); ++r )
+			{
+				final int mi = runs.y( r ) * width;
+				for ( int x = runs.x0( r ); x < runs.x1( r ); ++x )
+					if ( mask[ mi + x ] == Byte.MAX_VALUE )
+						data[ mi + x ] = 0;
+			}
 		}
 		else
 		{
@@ -245,14 +315,9 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 		final long startTimeIo = iostat.getIoNanoTime();
 		final long startTimeIoCumulative = iostat.getCumulativeIoNanoTime();
 
-		final int targetHeight = ( int ) target.dimension( 1 );
-		final int numTasks = numThreads <= 1 ? 1 : Math.min( numThreads * 10, targetHeight );
-		final double taskHeight = ( double ) targetHeight / numTasks;
-		final int[] taskStartHeights = new int[ numTasks + 1 ];
-		for ( int i = 0; i < numTasks; ++i )
-			taskStartHeights[ i ] = ( int ) ( i * taskHeight );
-		taskStartHeights[ numTasks ] = targetHeight;
+		final int maxNumTasks = numThreads <= 1 ? 1 : numThreads * 10;
 
+		long numInvalidFullResolution = 0;
 		final boolean createExecutor = ( executorService == null );
 		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numThreads ) : executorService;
 		try
@@ -266,10 +331,25 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 			int resolutionLevel;
 			for ( resolutionLevel = 0; resolutionLevel < numInvalidLevels; ++resolutionLevel )
 			{
-				final List< Callable< Void > > tasks = new ArrayList<>( numTasks );
-				for ( int i = 0; i < numTasks; ++i )
-					tasks.add( createMapTask( ( byte ) resolutionLevel, taskStartHeights[ i ], taskStartHeights[ i + 1 ] ) );
+				/*
+				 * Only pixels in invalidRuns need to be rendered. Split them
+				 * into tasks with about the same number of pixels. The pass at
+				 * level 0 also collects the pixels that are still invalid
+				 * afterwards, which are then the only ones rendered at the
+				 * other levels, and in the next map() call.
+				 */
+				final int numTasks = ( int ) Math.max( 1, Math.min( maxNumTasks, invalidRuns.numPixels() / MIN_PIXELS_PER_TASK ) );
+				final List< PixelRuns > parts = invalidRuns.split( numTasks );
+				final List< PixelRuns > stillInvalid = new ArrayList<>( parts.size() );
+				final List< Callable< Void > > tasks = new ArrayList<>( parts.size() );
+				for ( final PixelRuns part : parts )
+				{
+					final PixelRuns partStillInvalid = resolutionLevel == 0 ? new PixelRuns() : null;
+					stillInvalid.add( partStillInvalid );
+					tasks.add( createMapTask( ( byte ) resolutionLevel, part, partStillInvalid ) );
+				}
 				numInvalidPixels.set( 0 );
+				final JfrEvent event = JfrEvents.PROJECTOR_LEVEL.begin();
 				try
 				{
 					ex.invokeAll( tasks );
@@ -278,8 +358,17 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 				{
 					Thread.currentThread().interrupt();
 				}
+				if ( event.isEnabled() )
+					event.set( 0, resolutionLevel ).set( 1, numInvalidPixels.get() ).commit();
 				if ( canceled.get() )
 					return false;
+				if ( resolutionLevel == 0 )
+				{
+					numInvalidFullResolution = numInvalidPixels.get();
+					final PixelRuns runs = new PixelRuns();
+					stillInvalid.forEach( runs::addAll );
+					invalidRuns = runs;
+				}
 				if ( numInvalidPixels.get() == 0 )
 					// if this pass was all valid
 					numInvalidLevels = resolutionLevel;
@@ -300,6 +389,7 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 //		System.out.println( "lastFrameTime = " + lastFrameTime / 1000000 );
 //		System.out.println( "lastFrameRenderNanoTime = " + lastFrameRenderNanoTime / 1000000 );
 
+		lastNumInvalidPixels = numInvalidFullResolution;
 		valid = numInvalidLevels == 0;
 
 		return !canceled.get();
@@ -307,17 +397,17 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 
 	/**
 	 * @return a {@code Callable} that runs
-	 * {@code map(resolutionIndex, startHeight, endHeight)}
+	 * {@code map(resolutionIndex, runs, stillInvalid)}
 	 */
-	private Callable< Void > createMapTask( final byte resolutionIndex, final int startHeight, final int endHeight )
+	private Callable< Void > createMapTask( final byte resolutionIndex, final PixelRuns runs, final PixelRuns stillInvalid )
 	{
-		return Executors.callable( () -> map( resolutionIndex, startHeight, endHeight ), null );
+		return Executors.callable( () -> map( resolutionIndex, runs, stillInvalid ), null );
 	}
 
 	/**
-	 * Copy lines from {@code y = startHeight} up to {@code endHeight}
-	 * (exclusive) from source {@code resolutionIndex} to target. Check after
-	 * each line whether rendering was {@link #cancel() canceled}.
+	 * Copy the pixels of {@code runs} from source {@code resolutionIndex} to
+	 * target. Check before each run whether rendering was
+	 * {@link #cancel() canceled}.
 	 * <p>
 	 * Only valid source pixels with a current mask value
 	 * {@code mask>resolutionIndex} are copied to target, and their mask value
@@ -325,55 +415,129 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 	 * ignored. Pixels with {@code mask<=resolutionIndex} are ignored, because
 	 * they have already been written to target during a previous pass.
 	 * <p>
+	 * If {@link UniformCellRuns} are available for source
+	 * {@code resolutionIndex}, runs of pixels that come from a uniform cell
+	 * are filled with a single converted value.
 	 *
 	 * @param resolutionIndex
 	 *     index of source resolution level
-	 * @param startHeight
-	 *     start of line range to copy (relative to target min coordinate)
-	 * @param endHeight
-	 *     end (exclusive) of line range to copy (relative to target min
-	 *     coordinate)
+	 * @param runs
+	 *     pixels to copy (relative to target min coordinate)
+	 * @param stillInvalid
+	 *     if not {@code null}, the pixels of {@code runs} that are not
+	 *     rendered from level 0 ({@code mask > 0}) afterwards are appended
+	 *     here.
 	 */
-	private void map( final byte resolutionIndex, final int startHeight, final int endHeight )
+	private void map( final byte resolutionIndex, final PixelRuns runs, final PixelRuns stillInvalid )
 	{
 		if ( canceled.get() )
 			return;
 
 		final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
 		final RandomAccess< A > sourceRandomAccess = sources.get( resolutionIndex ).randomAccess( sourceInterval );
+		final UniformCellRuns cellRuns = targetData == null ? null : uniformCellRuns.get( resolutionIndex );
+		final UniformCellRuns.Finder finder = cellRuns == null ? null : cellRuns.finder();
 		final int width = ( int ) target.dimension( 0 );
 		final long[] smin = Intervals.minAsLongArray( sourceInterval );
 		int myNumInvalidPixels = 0;
 
-		final int targetMin = ( int ) target.min( 1 );
-		for ( int y = startHeight; y < endHeight; ++y )
+		final int targetMinX = ( int ) target.min( 0 );
+		final int targetMinY = ( int ) target.min( 1 );
+		for ( int r = 0; r < runs.size(); ++r )
 		{
 			if ( canceled.get() )
 				return;
 
-			smin[ 1 ] = y + targetMin;
+			final int y = runs.y( r );
+			final int xStart = runs.x0( r );
+			final int xEnd = runs.x1( r );
+			smin[ 0 ] = xStart + targetMinX;
+			smin[ 1 ] = y + targetMinY;
 			sourceRandomAccess.setPosition( smin );
 			targetRandomAccess.setPosition( smin );
 			final int mi = y * width;
-			for ( int x = 0; x < width; ++x )
+			int x = xStart;
+			while ( x < xEnd )
 			{
-				if ( mask[ mi + x ] > resolutionIndex )
+				final int runEnd;
+				if ( finder == null )
+					runEnd = xEnd;
+				else
 				{
-					final A a = sourceRandomAccess.get();
-					final boolean v = a.isValid();
-					if ( v )
+					runEnd = x + finder.find( targetMinX + x, smin[ 1 ], xEnd - x );
+					if ( finder.isUniform() )
 					{
-						converter.convert( a, targetRandomAccess.get() );
-						mask[ mi + x ] = resolutionIndex;
+						// All pixels of the run have the same value. Convert
+						// it once and copy it to the other pixels of the run.
+						int converted = -1;
+						for ( ; x < runEnd; ++x )
+						{
+							if ( mask[ mi + x ] > resolutionIndex )
+							{
+								if ( converted < 0 )
+								{
+									converter.convert( sourceRandomAccess.get(), targetRandomAccess.get() );
+									converted = mi + x;
+								}
+								else
+									targetData[ mi + x ] = targetData[ converted ];
+								mask[ mi + x ] = resolutionIndex;
+							}
+							sourceRandomAccess.fwd( 0 );
+							targetRandomAccess.fwd( 0 );
+						}
+						continue;
 					}
-					else
-						++myNumInvalidPixels;
 				}
-				sourceRandomAccess.fwd( 0 );
-				targetRandomAccess.fwd( 0 );
+
+				for ( ; x < runEnd; ++x )
+				{
+					if ( mask[ mi + x ] > resolutionIndex )
+					{
+						final A a = sourceRandomAccess.get();
+						final boolean v = a.isValid();
+						if ( v )
+						{
+							converter.convert( a, targetRandomAccess.get() );
+							mask[ mi + x ] = resolutionIndex;
+						}
+						else
+							++myNumInvalidPixels;
+					}
+					sourceRandomAccess.fwd( 0 );
+					targetRandomAccess.fwd( 0 );
+				}
 			}
+
+			if ( stillInvalid != null )
+				addInvalid( y, xStart, xEnd, stillInvalid );
 		}
 
 		numInvalidPixels.addAndGet( myNumInvalidPixels );
 	}
+
+	/**
+	 * Append the pixels in {@code [xStart, xEnd)} of row {@code y} with
+	 * {@code mask > 0} to {@code runs}.
+	 */
+	private void addInvalid( final int y, final int xStart, final int xEnd, final PixelRuns runs )
+	{
+		final int mi = y * ( int ) target.dimension( 0 );
+		int start = -1;
+		for ( int x = xStart; x < xEnd; ++x )
+		{
+			if ( mask[ mi + x ] > 0 )
+			{
+				if ( start < 0 )
+					start = x;
+			}
+			else if ( start >= 0 )
+			{
+				runs.add( y, start, x );
+				start = -1;
+			}
+		}
+		if ( start >= 0 )
+			runs.add( y, start, xEnd );
+	}
 }
@@ -69,4 +69,15 @@ public interface VolatileProjector
 	 * @return true if all mapped pixels were valid.
 	 */
 	boolean isValid();
+
+	/**
+	 * How many target pixels could not be rendered from valid data at the
+	 * full resolution in the last {@link #map()}.
+	 *
+	 * @return number of invalid pixels, or -1 if unknown.
+	 */
+	default long getNumInvalidPixels()
+	{
+		return isValid() ? 0 : -1;
+	}
 }
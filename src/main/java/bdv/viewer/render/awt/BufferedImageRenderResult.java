@@ -30,12 +30,17 @@ package bdv.viewer.render.awt;
 
 import bdv.util.AWTUtils;
 import bdv.viewer.render.RenderResult;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.display.screenimage.awt.ARGBScreenImage;
+import net.imglib2.realtransform.AffineTransform2D;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
 
@@ -113,11 +118,66 @@ public class BufferedImageRenderResult implements RenderResult
 		final double s = scaleFactor / patch.getScaleFactor();
 		final double tx = ox - interval.min( 0 );
 		final double ty = oy - interval.min( 1 );
+		if ( s == 1 && tx == ( int ) tx && ty == ( int ) ty )
+		{
+			copy( biresult, interval, ( int ) ox, ( int ) oy );
+			return;
+		}
 		final AffineTransform transform = new AffineTransform( s, 0, 0, s, tx, ty );
 		final AffineTransformOp op = new AffineTransformOp( transform, AffineTransformOp.TYPE_NEAREST_NEIGHBOR );
 		op.filter( biresult.getBufferedImage(), subImage( interval ) );
 	}
 
+	@Override
+	public boolean warp( final RenderResult source, final AffineTransform2D transform, final boolean clear )
+	{
+		if ( !( source instanceof BufferedImageRenderResult ) )
+			return false;
+
+		if ( clear )
+			Arrays.fill( data, 0, width * height, 0 );
+
+		// Java2D places pixel centers at (x+0.5, y+0.5)
+		final AffineTransform t = AffineTransform.getTranslateInstance( 0.5, 0.5 );
+		t.concatenate( new AffineTransform(
+				transform.get( 0, 0 ), transform.get( 1, 0 ),
+				transform.get( 0, 1 ), transform.get( 1, 1 ),
+				transform.get( 0, 2 ), transform.get( 1, 2 ) ) );
+		t.translate( -0.5, -0.5 );
+
+		final Graphics2D g = bufferedImage.createGraphics();
+		try
+		{
+			g.setComposite( AlphaComposite.Src );
+			g.setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR );
+			g.drawImage( ( ( BufferedImageRenderResult ) source ).getBufferedImage(), t, null );
+		}
+		finally
+		{
+			g.dispose();
+		}
+		return true;
+	}
+
+	/**
+	 * Copy {@code patch} pixels placed at {@code (ox,oy)} into
+	 * {@code interval}, row by row. This is the fast path of
+	 * {@link #patch(RenderResult, Interval, double, double)} for patches of the
+	 * same scale at whole-pixel offsets, such as shifted frames.
+	 */
+	private void copy( final BufferedImageRenderResult patch, final Interval interval, final int ox, final int oy )
+	{
+		final int x0 = Math.max( ( int ) interval.min( 0 ), ox );
+		final int x1 = Math.min( ( int ) interval.max( 0 ), ox + patch.width - 1 );
+		final int y0 = Math.max( ( int ) interval.min( 1 ), oy );
+		final int y1 = Math.min( ( int ) interval.max( 1 ), oy + patch.height - 1 );
+		final int n = x1 - x0 + 1;
+		if ( n <= 0 )
+			return;
+		for ( int y = y0; y <= y1; ++y )
+			System.arraycopy( patch.data, ( y - oy ) * patch.width + x0 - ox, data, y * width + x0, n );
+	}
+
 	private BufferedImage subImage( final Interval interval )
 	{
 		final int x = ( int ) interval.min( 0 );
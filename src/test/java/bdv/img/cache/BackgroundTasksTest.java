@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BackgroundTasksTest
+{
+	@Test
+	public void testTasksWaitUntilNoCellsAreLoading() throws Exception
+	{
+		final AtomicInteger numActiveLoads = new AtomicInteger( 1 );
+		final BackgroundTasks tasks = new BackgroundTasks( numActiveLoads::get );
+		final CountDownLatch done = new CountDownLatch( 1 );
+		tasks.add( () -> {
+			done.countDown();
+			return null;
+		} );
+		assertFalse( done.await( 100, TimeUnit.MILLISECONDS ) );
+
+		numActiveLoads.set( 0 );
+		assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+	}
+
+	@Test
+	public void testTasksAreNotDiscardedByPrepareNextFrame() throws Exception
+	{
+		final VolatileGlobalCellCache cache = new VolatileGlobalCellCache( 1, 1 );
+		final int numTasks = 10;
+		final CountDownLatch done = new CountDownLatch( numTasks );
+		for ( int i = 0; i < numTasks; ++i )
+		{
+			cache.enqueueBackgroundTask( () -> {
+				done.countDown();
+				return null;
+			} );
+			cache.prepareNextFrame();
+		}
+		assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+		assertEquals( 0, cache.getNumPendingBackgroundTasks() );
+	}
+
+	@Test
+	public void testClearDiscardsTasks() throws Exception
+	{
+		final AtomicInteger numActiveLoads = new AtomicInteger( 1 );
+		final BackgroundTasks tasks = new BackgroundTasks( numActiveLoads::get );
+		final AtomicInteger numRun = new AtomicInteger();
+		for ( int i = 0; i < 3; ++i )
+			tasks.add( numRun::incrementAndGet );
+		tasks.clear();
+		numActiveLoads.set( 0 );
+		Thread.sleep( 100 );
+
+		// the first task may already have been taken by the thread
+		assertTrue( numRun.get() <= 1 );
+		assertEquals( 0, tasks.size() );
+	}
+
+	@Test
+	public void testAddAfterShutdownIsIgnored() throws Exception
+	{
+		final BackgroundTasks tasks = new BackgroundTasks( () -> 0 );
+		tasks.shutdown();
+		final AtomicInteger numRun = new AtomicInteger();
+		tasks.add( numRun::incrementAndGet );
+		Thread.sleep( 50 );
+		assertEquals( 0, numRun.get() );
+	}
+
+	@Test
+	public void testBackgroundPriorityCellsAreLoadedAcrossFrames() throws Exception
+	{
+		final VolatileGlobalCellCache cache = new VolatileGlobalCellCache( 1, 1 );
+		final AtomicInteger numLoads = new AtomicInteger();
+		final int numCells = 4;
+		final CountDownLatch loaded = new CountDownLatch( numCells );
+		final CacheArrayLoader< VolatileShortArray > loader = ( timepoint, setup, level, dimensions, min ) -> {
+			numLoads.incrementAndGet();
+			loaded.countDown();
+			return new VolatileShortArray( 4 * 4 * 4, true );
+		};
+		final VolatileCachedCellImg< VolatileUnsignedShortType, ? > img = cache.createImg(
+				new CellGrid( new long[] { 4 * numCells, 4, 4 }, new int[] { 4, 4, 4 } ),
+				0, 0, 0,
+				new CacheHints( LoadingStrategy.VOLATILE, 0, false ),
+				loader,
+				new VolatileUnsignedShortType() );
+
+		// request every cell twice, and start a new frame in between
+		final RandomAccess< ? > cells = img.getCells( new CacheHints( LoadingStrategy.VOLATILE, VolatileGlobalCellCache.BACKGROUND_PRIORITY, false ) ).randomAccess();
+		for ( int j = 0; j < 2; ++j )
+		{
+			for ( int i = 0; i < numCells; ++i )
+			{
+				cells.setPosition( i, 0 );
+				cells.get();
+				cache.prepareNextFrame();
+			}
+		}
+		assertTrue( loaded.await( 10, TimeUnit.SECONDS ) );
+		Thread.sleep( 50 );
+		assertEquals( numCells, numLoads.get() );
+	}
+}
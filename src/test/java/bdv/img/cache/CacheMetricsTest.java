@@ -0,0 +1,95 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import bdv.metrics.Metrics;
+import net.imglib2.cache.queue.BlockingFetchQueues;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CacheMetricsTest
+{
+	private static VolatileGlobalCellCache createCache()
+	{
+		return new VolatileGlobalCellCache( new BlockingFetchQueues< Callable< ? > >( 1, 1 ) );
+	}
+
+	private static boolean isRegistered( final String prefix )
+	{
+		final Set< String > names = Metrics.getDefault().snapshot().keySet();
+		return names.stream().anyMatch( name -> name.startsWith( prefix + "." ) );
+	}
+
+	@Test
+	public void testUnnamedCachesAreNotRegistered()
+	{
+		final int before = Metrics.getDefault().snapshot().size();
+		createCache();
+		createCache();
+		assertEquals( before, Metrics.getDefault().snapshot().size() );
+	}
+
+	@Test
+	public void testNamedCachesDoNotCollide()
+	{
+		final VolatileGlobalCellCache a = createCache();
+		final VolatileGlobalCellCache b = createCache();
+		a.setMetricsName( "CacheMetricsTest" );
+		b.setMetricsName( "CacheMetricsTest" );
+		assertNotEquals( a.getMetricsPrefix(), b.getMetricsPrefix() );
+		assertTrue( isRegistered( a.getMetricsPrefix() ) );
+		assertTrue( isRegistered( b.getMetricsPrefix() ) );
+
+		final String prefixA = a.getMetricsPrefix();
+		a.removeMetrics();
+		assertFalse( isRegistered( prefixA ) );
+		assertTrue( isRegistered( b.getMetricsPrefix() ) );
+
+		final String prefixB = b.getMetricsPrefix();
+		b.removeMetrics();
+		assertFalse( isRegistered( prefixB ) );
+	}
+
+	@Test
+	public void testSoftRefCacheReportsBytes()
+	{
+		final VolatileGlobalCellCache cache = createCache();
+		cache.setMetricsName( "CacheMetricsTest" );
+		final String bytes = cache.getMetricsPrefix() + ".bytes";
+		assertEquals( 0.0, Metrics.getDefault().snapshot().get( bytes ), 0 );
+		cache.removeMetrics();
+	}
+}
@@ -0,0 +1,212 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OffHeapLoaderCacheTest
+{
+	private static Cell< VolatileShortArray > shortCell( final int value )
+	{
+		final short[] data = new short[ 4 * 4 * 4 ];
+		for ( int i = 0; i < data.length; ++i )
+			data[ i ] = ( short ) ( value + i );
+		return new Cell<>( new int[] { 4, 4, 4 }, new long[] { 4, 0, 8 }, new VolatileShortArray( data, true ) );
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		final OffHeapLoaderCache< Integer > cache = new OffHeapLoaderCache<>( 1 << 20, OffHeapLoaderCache.EvictionPolicy.LRU );
+		final Cell< VolatileShortArray > expected = shortCell( 17 );
+		cache.get( 0, key -> expected );
+
+		final Cell< ? > cell = cache.getIfPresent( 0 );
+		assertNotNull( cell );
+		assertTrue( cell.getData() instanceof VolatileShortArray );
+		final VolatileShortArray data = ( VolatileShortArray ) cell.getData();
+		assertTrue( data.isValid() );
+		assertArrayEquals( expected.getData().getCurrentStorageArray(), data.getCurrentStorageArray() );
+
+		final long[] min = new long[ 3 ];
+		cell.min( min );
+		assertArrayEquals( new long[] { 4, 0, 8 }, min );
+
+		assertEquals( 2 * 64, cache.getCurrentBytes() );
+		assertEquals( 1, cache.getMisses() );
+		assertEquals( 1, cache.getHits() );
+	}
+
+	@Test
+	public void testFloat() throws Exception
+	{
+		final OffHeapLoaderCache< Integer > cache = new OffHeapLoaderCache<>( 1 << 20, OffHeapLoaderCache.EvictionPolicy.LFU );
+		final float[] expected = new float[] { 1.5f, -2f, 3.25f, Float.NaN };
+		cache.get( 0, key -> new Cell<>( new int[] { 2, 2, 1 }, new long[ 3 ], new VolatileFloatArray( expected.clone(), true ) ) );
+		final VolatileFloatArray data = ( VolatileFloatArray ) cache.getIfPresent( 0 ).getData();
+		assertArrayEquals( expected, data.getCurrentStorageArray(), 0 );
+	}
+
+	@Test
+	public void testReplaceIfPresent() throws Exception
+	{
+		final OffHeapLoaderCache< Integer > cache = new OffHeapLoaderCache<>( 1 << 20, OffHeapLoaderCache.EvictionPolicy.LRU );
+		cache.get( 0, key -> shortCell( 0 ) );
+		final Cell< VolatileShortArray > refined = shortCell( 100 );
+		cache.replaceIfPresent( 0, refined );
+		cache.replaceIfPresent( 1, refined );
+
+		final VolatileShortArray data = ( VolatileShortArray ) cache.getIfPresent( 0 ).getData();
+		assertArrayEquals( refined.getData().getCurrentStorageArray(), data.getCurrentStorageArray() );
+		assertNull( cache.getIfPresent( 1 ) );
+		assertEquals( 2 * 64, cache.getCurrentBytes() );
+	}
+
+	@Test
+	public void testEvictionLRU() throws Exception
+	{
+		// room for two cells
+		final OffHeapLoaderCache< Integer > cache = new OffHeapLoaderCache<>( 2 * 2 * 64, OffHeapLoaderCache.EvictionPolicy.LRU );
+		cache.get( 0, key -> shortCell( 0 ) );
+		cache.get( 1, key -> shortCell( 1 ) );
+		cache.getIfPresent( 0 );
+		cache.get( 2, key -> shortCell( 2 ) );
+
+		assertNotNull( cache.getIfPresent( 0 ) );
+		assertNull( cache.getIfPresent( 1 ) );
+		assertNotNull( cache.getIfPresent( 2 ) );
+		assertEquals( 1, cache.getEvictions() );
+		assertEquals( 2 * 2 * 64, cache.getCurrentBytes() );
+	}
+
+	@Test
+	public void testEvictionLFU() throws Exception
+	{
+		// room for two cells
+		final OffHeapLoaderCache< Integer > cache = new OffHeapLoaderCache<>( 2 * 2 * 64, OffHeapLoaderCache.EvictionPolicy.LFU );
+		cache.get( 0, key -> shortCell( 0 ) );
+		cache.get( 1, key -> shortCell( 1 ) );
+		cache.getIfPresent( 0 );
+		cache.getIfPresent( 0 );
+		cache.getIfPresent( 1 );
+		cache.get( 2, key -> shortCell( 2 ) );
+
+		assertNotNull( cache.getIfPresent( 0 ) );
+		assertNull( cache.getIfPresent( 1 ) );
+		assertEquals( 1, cache.getEvictions() );
+	}
+
+	@Test
+	public void testInvalidate() throws Exception
+	{
+		final OffHeapLoaderCache< Integer > cache = new OffHeapLoaderCache<>( 1 << 20, OffHeapLoaderCache.EvictionPolicy.LRU );
+		for ( int i = 0; i < 4; ++i )
+		{
+			final int value = i;
+			cache.get( i, key -> shortCell( value ) );
+		}
+		cache.invalidateIf( Long.MAX_VALUE, key -> key % 2 == 0 );
+		assertNull( cache.getIfPresent( 0 ) );
+		assertNotNull( cache.getIfPresent( 1 ) );
+		assertEquals( 2, cache.getNumCells() );
+		cache.invalidateAll( Long.MAX_VALUE );
+		assertEquals( 0, cache.getCurrentBytes() );
+	}
+
+	@Test
+	public void testConcurrentLoad() throws Exception
+	{
+		final OffHeapLoaderCache< Integer > cache = new OffHeapLoaderCache<>( 1 << 20, OffHeapLoaderCache.EvictionPolicy.LRU );
+		final AtomicInteger numLoads = new AtomicInteger();
+		final CountDownLatch loading = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+		try
+		{
+			final Future< Cell< ? > > first = executor.submit( () -> cache.get( 0, key -> {
+				numLoads.incrementAndGet();
+				loading.countDown();
+				release.await();
+				return shortCell( 5 );
+			} ) );
+			assertTrue( loading.await( 5, TimeUnit.SECONDS ) );
+			final Future< Cell< ? > > second = executor.submit( () -> cache.get( 0, key -> {
+				numLoads.incrementAndGet();
+				return shortCell( 5 );
+			} ) );
+			release.countDown();
+
+			final VolatileShortArray expected = shortCell( 5 ).getData();
+			assertArrayEquals( expected.getCurrentStorageArray(), ( ( VolatileShortArray ) first.get().getData() ).getCurrentStorageArray() );
+			assertArrayEquals( expected.getCurrentStorageArray(), ( ( VolatileShortArray ) second.get().getData() ).getCurrentStorageArray() );
+			assertEquals( 1, numLoads.get() );
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testLoadFailure() throws Exception
+	{
+		final OffHeapLoaderCache< Integer > cache = new OffHeapLoaderCache<>( 1 << 20, OffHeapLoaderCache.EvictionPolicy.LRU );
+		try
+		{
+			cache.get( 0, key -> {
+				throw new IllegalStateException( "load failed" );
+			} );
+			fail();
+		}
+		catch ( final ExecutionException e )
+		{
+			assertTrue( e.getCause() instanceof IllegalStateException );
+		}
+		assertNull( cache.getIfPresent( 0 ) );
+		assertNotNull( cache.get( 0, key -> shortCell( 1 ) ) );
+	}
+}
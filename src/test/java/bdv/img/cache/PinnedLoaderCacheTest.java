@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import bdv.img.cache.VolatileGlobalCellCache.Key;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PinnedLoaderCacheTest
+{
+	private static Cell< VolatileShortArray > shortCell( final boolean valid )
+	{
+		return new Cell<>( new int[] { 4, 4, 4 }, new long[ 3 ], new VolatileShortArray( 4 * 4 * 4, valid ) );
+	}
+
+	private static PinnedLoaderCache createCache( final long maxPinnedBytes )
+	{
+		// the off-heap delegate holds only one cell, so that other cells are evicted
+		return new PinnedLoaderCache( new OffHeapLoaderCache<>( 2 * 64, OffHeapLoaderCache.EvictionPolicy.LRU ), maxPinnedBytes );
+	}
+
+	@Test
+	public void testPinnedCellsAreNotEvicted() throws Exception
+	{
+		final PinnedLoaderCache cache = createCache( 1 << 20 );
+		cache.pinLevel( 0, 2 );
+
+		final Key pinnedKey = new Key( 0, 0, 2, 0 );
+		final Key otherKey = new Key( 0, 0, 1, 0 );
+		final Cell< ? > pinned = cache.get( pinnedKey, k -> shortCell( true ) );
+		cache.get( otherKey, k -> shortCell( true ) );
+		cache.get( new Key( 0, 0, 1, 1 ), k -> shortCell( true ) );
+
+		assertSame( pinned, cache.getIfPresent( pinnedKey ) );
+		assertNull( cache.getIfPresent( otherKey ) );
+		assertEquals( 1, cache.getNumCells() );
+		assertEquals( 2 * 64, cache.getCurrentBytes() );
+	}
+
+	@Test
+	public void testInvalidCellsAreNotPinned() throws Exception
+	{
+		final PinnedLoaderCache cache = createCache( 1 << 20 );
+		cache.pinLevel( 0, 2 );
+		cache.get( new Key( 0, 0, 2, 0 ), k -> shortCell( false ) );
+		assertEquals( 0, cache.getNumCells() );
+	}
+
+	@Test
+	public void testLimit() throws Exception
+	{
+		final PinnedLoaderCache cache = createCache( 2 * 2 * 64 );
+		cache.pinLevel( 0, 2 );
+		for ( int i = 0; i < 4; ++i )
+			cache.get( new Key( 0, 0, 2, i ), k -> shortCell( true ) );
+		assertEquals( 2, cache.getNumCells() );
+		assertTrue( cache.isFull() );
+
+		cache.invalidate( new Key( 0, 0, 2, 0 ) );
+		assertEquals( 1, cache.getNumCells() );
+		assertFalse( cache.isFull() );
+
+		cache.invalidateAll();
+		assertEquals( 0, cache.getNumCells() );
+		assertEquals( 0, cache.getCurrentBytes() );
+	}
+}
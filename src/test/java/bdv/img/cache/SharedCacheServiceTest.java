@@ -0,0 +1,291 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bdv.img.cache.VolatileGlobalCellCache.Key;
+import net.imglib2.RandomAccess;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SharedCacheServiceTest
+{
+	private static Cell< VolatileShortArray > shortCell()
+	{
+		return new Cell<>( new int[] { 4, 4, 4 }, new long[ 3 ], new VolatileShortArray( 4 * 4 * 4, true ) );
+	}
+
+	@Test
+	public void testClientsDoNotShareKeys() throws Exception
+	{
+		final SharedCacheService service = new SharedCacheService( 1 << 20, 2 );
+		final SharedCacheService.Client a = service.register( 2 );
+		final SharedCacheService.Client b = service.register( 2 );
+		final Key key = new Key( 0, 0, 0, 0 );
+
+		final Cell< ? > cellA = a.get( key, k -> shortCell() );
+		assertNotNull( a.getIfPresent( key ) );
+		assertNull( b.getIfPresent( key ) );
+		final Cell< ? > cellB = b.get( key, k -> shortCell() );
+		assertNotSame( cellA, cellB );
+		assertEquals( 2 * 64 * 2, service.getCache().getCurrentBytes() );
+
+		a.invalidateAll();
+		assertNull( a.getIfPresent( key ) );
+		assertNotNull( b.getIfPresent( key ) );
+
+		assertEquals( 2, service.getNumClients() );
+		b.close();
+		assertNull( b.getIfPresent( key ) );
+		assertEquals( 0, service.getCache().getCurrentBytes() );
+		assertEquals( 1, service.getNumClients() );
+		a.close();
+	}
+
+	@Test
+	public void testConcurrentLoadsAreLimited() throws Exception
+	{
+		final SharedCacheService service = new SharedCacheService( 1 << 20, 2 );
+		final SharedCacheService.Client a = service.register( 8 );
+		final SharedCacheService.Client b = service.register( 8 );
+		assertEquals( 2, a.getMaxConcurrentLoads() );
+
+		final int numTasks = 20;
+		final CountDownLatch done = new CountDownLatch( 2 * numTasks );
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		for ( int i = 0; i < numTasks; ++i )
+		{
+			for ( final SharedCacheService.Client client : new SharedCacheService.Client[] { a, b } )
+			{
+				client.getQueue().put( () -> {
+					maxRunning.accumulateAndGet( running.incrementAndGet(), Math::max );
+					Thread.sleep( 1 );
+					running.decrementAndGet();
+					done.countDown();
+					return null;
+				}, 0, false );
+			}
+		}
+		assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+		assertTrue( maxRunning.get() <= 2 );
+		a.close();
+		b.close();
+	}
+
+	@Test
+	public void testClientLimitDoesNotBlockOtherClients() throws Exception
+	{
+		final SharedCacheService service = new SharedCacheService( 1 << 20, 2 );
+		final SharedCacheService.Client a = service.register( 1 );
+		final SharedCacheService.Client b = service.register( 2 );
+
+		// a's first request blocks until released, its second one must wait
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final CountDownLatch aStarted = new CountDownLatch( 1 );
+		final AtomicInteger aRunning = new AtomicInteger();
+		final AtomicInteger aMaxRunning = new AtomicInteger();
+		final CountDownLatch aDone = new CountDownLatch( 2 );
+		for ( int i = 0; i < 2; ++i )
+		{
+			a.getQueue().put( () -> {
+				aMaxRunning.accumulateAndGet( aRunning.incrementAndGet(), Math::max );
+				aStarted.countDown();
+				release.await();
+				aRunning.decrementAndGet();
+				aDone.countDown();
+				return null;
+			}, 0, false );
+		}
+		assertTrue( aStarted.await( 10, TimeUnit.SECONDS ) );
+
+		// the deferred request of a does not occupy the second fetcher thread
+		final CountDownLatch bDone = new CountDownLatch( 4 );
+		for ( int i = 0; i < 4; ++i )
+		{
+			b.getQueue().put( () -> {
+				bDone.countDown();
+				return null;
+			}, 1, false );
+		}
+		assertTrue( bDone.await( 10, TimeUnit.SECONDS ) );
+
+		release.countDown();
+		assertTrue( aDone.await( 10, TimeUnit.SECONDS ) );
+		assertEquals( 1, aMaxRunning.get() );
+		a.close();
+		b.close();
+	}
+
+	@Test
+	public void testClearDiscardsOnlyOwnRequests() throws Exception
+	{
+		final SharedCacheService service = new SharedCacheService( 1 << 20, 1 );
+		final SharedCacheService.Client a = service.register( 1 );
+		final SharedCacheService.Client b = service.register( 1 );
+
+		// occupy the only fetcher thread and a's only load, so that the following requests stay queued
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final CountDownLatch started = new CountDownLatch( 1 );
+		a.getQueue().put( () -> {
+			started.countDown();
+			release.await();
+			return null;
+		}, 0, false );
+		assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+
+		final AtomicInteger aLoads = new AtomicInteger();
+		final CountDownLatch bDone = new CountDownLatch( 1 );
+		a.getQueue().put( () -> aLoads.incrementAndGet(), 0, false );
+		a.getQueue().put( () -> aLoads.incrementAndGet(), 0, false );
+		b.getQueue().put( () -> {
+			bDone.countDown();
+			return null;
+		}, 0, false );
+		a.getQueue().clear();
+		release.countDown();
+
+		assertTrue( bDone.await( 10, TimeUnit.SECONDS ) );
+		Thread.sleep( 50 );
+		assertEquals( 0, aLoads.get() );
+		a.close();
+		b.close();
+	}
+
+	@Test
+	public void testPrepareNextFrameKeepsOtherClientsRequests() throws Exception
+	{
+		final SharedCacheService service = new SharedCacheService( 1 << 20, 1 );
+		final SharedCacheService.Client a = service.register( 1 );
+		final SharedCacheService.Client b = service.register( 1 );
+
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final CountDownLatch started = new CountDownLatch( 1 );
+		b.getQueue().put( () -> {
+			started.countDown();
+			release.await();
+			return null;
+		}, 0, false );
+		assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+
+		final CountDownLatch bDone = new CountDownLatch( 3 );
+		for ( int i = 0; i < 3; ++i )
+		{
+			b.getQueue().put( () -> {
+				bDone.countDown();
+				return null;
+			}, 0, false );
+		}
+		for ( int i = 0; i < 3; ++i )
+			a.getQueue().clearToPrefetch();
+		release.countDown();
+
+		assertTrue( bDone.await( 10, TimeUnit.SECONDS ) );
+		assertEquals( 0, b.getQueue().getCurrentFrame() );
+		assertEquals( 3, a.getQueue().getCurrentFrame() );
+		a.close();
+		b.close();
+	}
+
+	@Test
+	public void testDroppedRequestIsReenqueuedOnNextFrame() throws Exception
+	{
+		final SharedCacheService service = new SharedCacheService( 1 << 20, 1 );
+		final SharedCacheService.Client a = service.register( 1, 1 );
+		final VolatileGlobalCellCache cache = new VolatileGlobalCellCache( a.getQueue(), a );
+
+		final Set< Long > loaded = ConcurrentHashMap.newKeySet();
+		final CacheArrayLoader< VolatileShortArray > loader = ( timepoint, setup, level, dimensions, min ) -> {
+			loaded.add( min[ 0 ] );
+			return new VolatileShortArray( 4 * 4 * 4, true );
+		};
+		final int numCells = 4;
+		final VolatileCachedCellImg< VolatileUnsignedShortType, ? > img = cache.createImg(
+				new CellGrid( new long[] { 4 * numCells, 4, 4 }, new int[] { 4, 4, 4 } ),
+				0, 0, 0,
+				new CacheHints( LoadingStrategy.VOLATILE, 0, false ),
+				loader,
+				new VolatileUnsignedShortType() );
+		final RandomAccess< VolatileUnsignedShortType > access = img.randomAccess();
+
+		// occupy a's only load, so that the cells stay queued until the next frame
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final CountDownLatch started = new CountDownLatch( 1 );
+		a.getQueue().put( () -> {
+			started.countDown();
+			release.await();
+			return null;
+		}, 0, false );
+		assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+
+		for ( int i = 0; i < numCells; ++i )
+		{
+			access.setPosition( 4 * i, 0 );
+			access.get();
+		}
+		cache.prepareNextFrame();
+		release.countDown();
+		Thread.sleep( 100 );
+		assertTrue( loaded.size() < numCells );
+
+		// requests dropped by prepareNextFrame() are queued again when the cells are accessed in the next frame
+		final long deadline = System.currentTimeMillis() + 10000;
+		boolean allValid = false;
+		while ( !allValid && System.currentTimeMillis() < deadline )
+		{
+			allValid = true;
+			for ( int i = 0; i < numCells; ++i )
+			{
+				access.setPosition( 4 * i, 0 );
+				allValid &= access.get().isValid();
+			}
+			Thread.sleep( 10 );
+			cache.prepareNextFrame();
+		}
+		assertTrue( allValid );
+		assertEquals( numCells, loaded.size() );
+		a.close();
+	}
+}
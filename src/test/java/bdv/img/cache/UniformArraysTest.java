@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.Arrays;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UniformArraysTest
+{
+	@Test
+	public void testSharedPerTypeLengthAndValue()
+	{
+		final VolatileShortArray a = UniformArrays.shorts( 64, ( short ) 0 );
+		assertSame( a, UniformArrays.shorts( 64, ( short ) 0 ) );
+		assertNotSame( a, UniformArrays.shorts( 64, ( short ) 1 ) );
+		assertNotSame( a, UniformArrays.shorts( 32, ( short ) 0 ) );
+		assertTrue( a.isValid() );
+		assertTrue( a instanceof UniformAccess );
+		assertEquals( 64, a.getCurrentStorageArray().length );
+	}
+
+	@Test
+	public void testIfUniform()
+	{
+		final short[] data = new short[ 64 ];
+		Arrays.fill( data, ( short ) 7 );
+		final VolatileArrayDataAccess< ? > uniform = UniformArrays.ifUniform( data );
+		assertSame( UniformArrays.shorts( 64, ( short ) 7 ), uniform );
+		assertEquals( 7, ( ( VolatileShortArray ) uniform ).getValue( 63 ) );
+
+		data[ 63 ] = 8;
+		assertNull( UniformArrays.ifUniform( data ) );
+		assertNull( UniformArrays.ifUniform( new short[ 0 ] ) );
+		assertNull( UniformArrays.ifUniform( new Object() ) );
+	}
+
+	@Test
+	public void testIfUniformFloatComparesBits()
+	{
+		assertNull( UniformArrays.ifUniform( new float[] { 0f, -0f } ) );
+		assertTrue( UniformArrays.ifUniform( new float[] { Float.NaN, Float.NaN } ) instanceof VolatileFloatArray );
+	}
+
+	@Test
+	public void testUniformCellsAreKeptOnHeap() throws Exception
+	{
+		final OffHeapLoaderCache< Integer > cache = new OffHeapLoaderCache<>( 1 << 20, OffHeapLoaderCache.EvictionPolicy.LRU );
+		final VolatileShortArray access = UniformArrays.shorts( 64, ( short ) 3 );
+		cache.get( 0, k -> new Cell<>( new int[] { 4, 4, 4 }, new long[ 3 ], access ) );
+		assertEquals( 0, cache.getCurrentBytes() );
+		assertSame( access, cache.getIfPresent( 0 ).getData() );
+	}
+}
@@ -0,0 +1,79 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.cache.queue.BlockingFetchQueues;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualThreadFetchersTest
+{
+	@Test( expected = UnsupportedOperationException.class )
+	public void testUnsupported()
+	{
+		Assume.assumeTrue( !VirtualThreadFetchers.isSupported() );
+		new VirtualThreadFetchers( new BlockingFetchQueues<>( 1, 1 ), 1 );
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws InterruptedException
+	{
+		Assume.assumeTrue( VirtualThreadFetchers.isSupported() );
+		final int maxConcurrentFetches = 16;
+		final BlockingFetchQueues< Callable< ? > > queue = new BlockingFetchQueues<>( 1, maxConcurrentFetches );
+		final VirtualThreadFetchers fetchers = new VirtualThreadFetchers( queue, maxConcurrentFetches );
+
+		final int numTasks = 100;
+		final CountDownLatch done = new CountDownLatch( numTasks );
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		for ( int i = 0; i < numTasks; ++i )
+			queue.put( () -> {
+				maxRunning.accumulateAndGet( running.incrementAndGet(), Math::max );
+				Thread.sleep( 10 );
+				running.decrementAndGet();
+				done.countDown();
+				return null;
+			}, 0, false );
+
+		assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+		assertTrue( maxRunning.get() <= maxConcurrentFetches );
+		assertTrue( maxRunning.get() > 1 );
+		fetchers.shutdown();
+		assertEquals( 0, fetchers.getNumInFlight() );
+	}
+}
@@ -0,0 +1,216 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Random;
+
+import bdv.export.ExportMipmapInfo;
+import bdv.export.ProgressWriterNull;
+import bdv.export.WriteSequenceToHdf5;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class Hdf5ChunkReaderTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Image size in X, Y, Z. Not a multiple of the block size, so that there
+	 * are partial chunks at the upper borders.
+	 */
+	private static final long[] DIMENSIONS = { 37, 21, 11 };
+
+	private static final ExportMipmapInfo MIPMAP_INFO = new ExportMipmapInfo(
+			new int[][] { { 1, 1, 1 }, { 2, 2, 2 } },
+			new int[][] { { 16, 16, 8 }, { 8, 8, 4 } } );
+
+	/**
+	 * Write a single view with two mipmap levels. The first block is
+	 * constant, the rest are random values spanning a few hundred gray
+	 * levels, so that the scale-offset filter uses different numbers of bits
+	 * per chunk.
+	 */
+	private File write( final boolean deflate ) throws Exception
+	{
+		final short[] data = new short[ ( int ) ( DIMENSIONS[ 0 ] * DIMENSIONS[ 1 ] * DIMENSIONS[ 2 ] ) ];
+		final Random random = new Random( 1 );
+		int i = 0;
+		for ( int z = 0; z < DIMENSIONS[ 2 ]; ++z )
+			for ( int y = 0; y < DIMENSIONS[ 1 ]; ++y )
+				for ( int x = 0; x < DIMENSIONS[ 0 ]; ++x )
+					data[ i++ ] = ( short ) ( x < 16 && y < 16 && z < 8 ? 500 : 1000 + random.nextInt( 300 ) );
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( data, DIMENSIONS );
+
+		final File file = new File( folder.getRoot(), deflate ? "deflate.h5" : "raw.h5" );
+		final Partition partition = new Partition( file.getAbsolutePath(), Collections.singletonMap( 0, 0 ), Collections.singletonMap( 0, 0 ) );
+		WriteSequenceToHdf5.writeViewToHdf5PartitionFile( img, partition, 0, 0, MIPMAP_INFO, true, deflate, null, null, 1, new ProgressWriterNull() );
+		return file;
+	}
+
+	private void check( final boolean deflate ) throws Exception
+	{
+		final File file = write( deflate );
+		final IHDF5Reader hdf5Reader = HDF5Factory.openForReading( file );
+		final HDF5AccessHack hack = new HDF5AccessHack( hdf5Reader );
+		final Hdf5ChunkReader chunkReader = new Hdf5ChunkReader( file );
+		try
+		{
+			for ( int level = 0; level < 2; ++level )
+			{
+				final Hdf5ChunkReader.Dataset dataset = chunkReader.getDataset( Util.getCellsPath( 0, 0, level ) );
+				assertNotNull( dataset );
+
+				final int[] blockSize = MIPMAP_INFO.getSubdivisions()[ level ];
+				final int[] imgSize = new int[ 3 ];
+				for ( int d = 0; d < 3; ++d )
+					imgSize[ d ] = ( int ) Math.max( DIMENSIONS[ d ] / MIPMAP_INFO.getExportResolutions()[ level ][ d ], 1 );
+
+				// every cell, including partial cells at the borders
+				for ( int z = 0; z < imgSize[ 2 ]; z += blockSize[ 2 ] )
+					for ( int y = 0; y < imgSize[ 1 ]; y += blockSize[ 1 ] )
+						for ( int x = 0; x < imgSize[ 0 ]; x += blockSize[ 0 ] )
+						{
+							final long[] min = { x, y, z };
+							final int[] size = new int[ 3 ];
+							for ( int d = 0; d < 3; ++d )
+								size[ d ] = ( int ) Math.min( blockSize[ d ], imgSize[ d ] - min[ d ] );
+							checkBlock( hack, chunkReader, dataset, level, min, size );
+						}
+
+				// the whole image, and a block that is not aligned to cells
+				checkBlock( hack, chunkReader, dataset, level, new long[ 3 ], imgSize );
+				checkBlock( hack, chunkReader, dataset, level, new long[] { 3, 5, 1 }, new int[] { imgSize[ 0 ] - 4, imgSize[ 1 ] - 6, imgSize[ 2 ] - 2 } );
+			}
+		}
+		finally
+		{
+			chunkReader.close();
+			hack.close();
+		}
+	}
+
+	private static void checkBlock( final HDF5AccessHack hack, final Hdf5ChunkReader chunkReader, final Hdf5ChunkReader.Dataset dataset, final int level, final long[] min, final int[] size ) throws Exception
+	{
+		final short[] expected = hack.readShortMDArrayBlockWithOffset( 0, 0, level, size, min );
+		final short[] actual = new short[ expected.length ];
+		chunkReader.readShorts( dataset, Util.reorder( min ), Util.reorder( size ), actual );
+		assertArrayEquals( expected, actual );
+	}
+
+	@Test
+	public void testRaw() throws Exception
+	{
+		check( false );
+	}
+
+	@Test
+	public void testDeflate() throws Exception
+	{
+		check( true );
+	}
+
+	@Test
+	public void testConcurrentAccessDoesNotFallBack() throws Exception
+	{
+		final File file = write( true );
+		final IHDF5Reader hdf5Reader = HDF5Factory.openForReading( file );
+		final HDF5AccessHack hack = new HDF5AccessHack( hdf5Reader );
+		final IHDF5Access access = ConcurrentHDF5Access.wrap( hack, hdf5Reader );
+		try
+		{
+			final int[] size = { 16, 16, 8 };
+			for ( final long[] min : new long[][] { { 0, 0, 0 }, { 16, 16, 8 } } )
+			{
+				final short[] expected = hack.readShortMDArrayBlockWithOffset( 0, 0, 0, size, min );
+				assertArrayEquals( expected, access.readShortMDArrayBlockWithOffset( 0, 0, 0, size, min ) );
+				assertArrayEquals( expected, access.readShortMDArrayBlockWithOffset( 0, 0, 0, size, min ) );
+			}
+			assertEquals( 0, ( ( ConcurrentHDF5Access ) access ).getNumFallbacks() );
+		}
+		finally
+		{
+			access.close();
+		}
+	}
+
+	private static byte[] scaleOffsetChunk( final int minbits, final short minval )
+	{
+		final ByteBuffer chunk = ByteBuffer.allocate( 21 ).order( ByteOrder.LITTLE_ENDIAN );
+		chunk.putInt( minbits );
+		chunk.put( ( byte ) 8 );
+		chunk.putLong( minval );
+		return chunk.array();
+	}
+
+	private static short[] decode( final byte[] chunk, final int numElements, final int[] clientData ) throws Exception
+	{
+		final byte[] bytes = Hdf5ChunkReader.decodeScaleOffset( chunk, numElements, clientData, ByteOrder.LITTLE_ENDIAN );
+		final short[] shorts = new short[ numElements ];
+		ByteBuffer.wrap( bytes ).order( ByteOrder.LITTLE_ENDIAN ).asShortBuffer().get( shorts );
+		return shorts;
+	}
+
+	@Test
+	public void testScaleOffsetZeroBits() throws Exception
+	{
+		final int[] noFillValue = { 2, 0, 4, 0, 2, 0, 0, 0, 0 };
+		assertArrayEquals( new short[] { 7, 7, 7, 7 }, decode( scaleOffsetChunk( 0, ( short ) 7 ), 4, noFillValue ) );
+
+		final int[] fillValue = { 2, 0, 4, 0, 2, 0, 0, 1, 42 };
+		assertArrayEquals( new short[] { 42, 42, 42, 42 }, decode( scaleOffsetChunk( 0, ( short ) 7 ), 4, fillValue ) );
+	}
+
+	@Test
+	public void testScaleOffsetFillValue() throws Exception
+	{
+		// 4 elements with 2 bits each: 0, 1, 3 (fill value marker), 2
+		final byte[] chunk = scaleOffsetChunk( 2, ( short ) 100 );
+		final byte[] packed = new byte[ chunk.length + 1 ];
+		System.arraycopy( chunk, 0, packed, 0, chunk.length );
+		packed[ chunk.length ] = ( byte ) 0b00_01_11_10;
+		final int[] fillValue = { 2, 0, 4, 0, 2, 0, 0, 1, 42 };
+		assertArrayEquals( new short[] { 100, 101, 42, 102 }, decode( packed, 4, fillValue ) );
+	}
+}
@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class HttpTransportTest
+{
+	private HttpServer server;
+
+	private String baseUrl;
+
+	private final AtomicInteger flakyRequests = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException
+	{
+		server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+		server.createContext( "/data", exchange -> {
+			final byte[] body = new byte[] { 1, 2, 3 };
+			exchange.sendResponseHeaders( 200, body.length );
+			try (OutputStream os = exchange.getResponseBody())
+			{
+				os.write( body );
+			}
+		} );
+		server.createContext( "/flaky", exchange -> {
+			if ( flakyRequests.incrementAndGet() < 3 )
+				exchange.sendResponseHeaders( 503, -1 );
+			else
+			{
+				exchange.sendResponseHeaders( 200, 1 );
+				exchange.getResponseBody().write( 42 );
+			}
+			exchange.close();
+		} );
+		server.createContext( "/missing", exchange -> {
+			exchange.sendResponseHeaders( 404, -1 );
+			exchange.close();
+		} );
+		server.start();
+		baseUrl = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer()
+	{
+		server.stop( 0 );
+	}
+
+	@Test
+	public void testGet() throws IOException
+	{
+		final HttpTransport transport = new HttpTransport( 1000, 1000, 4, 3, 1 );
+		for ( int i = 0; i < 5; ++i )
+			assertArrayEquals( new byte[] { 1, 2, 3 }, transport.get( baseUrl + "/data" ) );
+		assertEquals( 5, transport.getNumRequests() );
+		assertEquals( 15, transport.getBytesReceived() );
+	}
+
+	@Test
+	public void testRetry() throws IOException
+	{
+		final HttpTransport transport = new HttpTransport( 1000, 1000, 4, 3, 1 );
+		assertArrayEquals( new byte[] { 42 }, transport.get( baseUrl + "/flaky" ) );
+		assertEquals( 2, transport.getNumRetries() );
+		assertEquals( 0, transport.getNumFailures() );
+	}
+
+	@Test
+	public void testNotFound() throws IOException
+	{
+		final HttpTransport transport = new HttpTransport( 1000, 1000, 4, 3, 1 );
+		try
+		{
+			transport.get( baseUrl + "/missing" );
+			fail();
+		}
+		catch ( final HttpTransport.HttpStatusException e )
+		{
+			assertEquals( 404, e.getStatusCode() );
+		}
+		assertEquals( 0, transport.getNumRetries() );
+		assertEquals( 1, transport.getNumFailures() );
+	}
+}
@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import bdv.img.http.HttpTransport;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.ShortArrayDataBlock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class N5ReadersTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final int[] BLOCK_SIZE = { 16, 16, 8 };
+
+	private File root;
+
+	private short[] data;
+
+	private HttpServer server;
+
+	private String baseUrl;
+
+	@Before
+	public void setup() throws IOException
+	{
+		root = folder.newFolder( "test.n5" );
+		data = new short[ BLOCK_SIZE[ 0 ] * BLOCK_SIZE[ 1 ] * BLOCK_SIZE[ 2 ] ];
+		final Random random = new Random( 1 );
+		for ( int i = 0; i < data.length; ++i )
+			data[ i ] = ( short ) random.nextInt();
+
+		final N5FSWriter writer = new N5FSWriter( root.getAbsolutePath() );
+		write( writer, "raw", new RawCompression() );
+		write( writer, "gzip", new GzipCompression() );
+
+		// a static file server that supports range requests
+		server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+		server.createContext( "/", exchange -> {
+			final File file = new File( root, exchange.getRequestURI().getPath() );
+			if ( !file.isFile() )
+			{
+				exchange.sendResponseHeaders( 404, -1 );
+				exchange.close();
+				return;
+			}
+			final byte[] bytes = Files.readAllBytes( file.toPath() );
+			final String range = exchange.getRequestHeaders().getFirst( "Range" );
+			byte[] body = bytes;
+			int status = 200;
+			if ( range != null )
+			{
+				final String[] fromTo = range.substring( "bytes=".length() ).split( "-" );
+				final int from = Integer.parseInt( fromTo[ 0 ] );
+				final int to = Math.min( Integer.parseInt( fromTo[ 1 ] ), bytes.length - 1 );
+				body = Arrays.copyOfRange( bytes, from, to + 1 );
+				status = 206;
+				exchange.getResponseHeaders().add( "Content-Range", "bytes " + from + "-" + to + "/" + bytes.length );
+			}
+			exchange.sendResponseHeaders( status, body.length );
+			try (OutputStream os = exchange.getResponseBody())
+			{
+				os.write( body );
+			}
+		} );
+		server.start();
+		baseUrl = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer()
+	{
+		server.stop( 0 );
+	}
+
+	private void write( final N5FSWriter writer, final String dataset, final Compression compression ) throws IOException
+	{
+		writer.createDataset( dataset, new long[] { 32, 32, 8 }, BLOCK_SIZE, DataType.INT16, compression );
+		writer.setAttribute( dataset, "answer", 42 );
+		final DatasetAttributes attributes = writer.getDatasetAttributes( dataset );
+		writer.writeBlock( dataset, attributes, new ShortArrayDataBlock( BLOCK_SIZE, new long[] { 1, 0, 0 }, data ) );
+	}
+
+	private void check( final N5Reader reader ) throws IOException
+	{
+		for ( final String dataset : new String[] { "raw", "gzip" } )
+		{
+			assertTrue( reader.exists( dataset ) );
+			assertEquals( 42, reader.getAttribute( dataset, "answer", Integer.class ).intValue() );
+			final DatasetAttributes attributes = reader.getDatasetAttributes( dataset );
+			final DataBlock< ? > block = reader.readBlock( dataset, attributes, 1, 0, 0 );
+			assertArrayEquals( BLOCK_SIZE, block.getSize() );
+			assertArrayEquals( data, ( short[] ) block.getData() );
+			assertNull( reader.readBlock( dataset, attributes, 0, 1, 0 ) );
+		}
+	}
+
+	@Test
+	public void testMapped() throws IOException
+	{
+		check( N5Readers.open( URI.create( "mmap:" + root.getAbsolutePath() ) ) );
+	}
+
+	@Test
+	public void testHttp() throws IOException
+	{
+		check( N5Readers.open( URI.create( baseUrl ) ) );
+	}
+
+	@Test
+	public void testHttpParallelRanges() throws IOException
+	{
+		final HttpTransport transport = new HttpTransport( 1000, 1000, 4, 0, 1 );
+		check( new N5HttpReader( baseUrl, transport, 100 ) );
+		// blocks are larger than 100 bytes, so they must have been fetched in several ranges
+		assertTrue( transport.getNumRequests() > data.length * 2 / 100 );
+	}
+}
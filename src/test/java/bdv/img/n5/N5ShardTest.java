@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import bdv.export.n5.N5ShardWriter;
+import java.io.File;
+import java.io.IOException;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.ShortArrayDataBlock;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class N5ShardTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static short[] blockData( final long[] gridPosition, final int n )
+	{
+		final short[] data = new short[ n ];
+		for ( int i = 0; i < n; ++i )
+			data[ i ] = ( short ) ( i + 100 * gridPosition[ 0 ] + 10 * gridPosition[ 1 ] + gridPosition[ 2 ] );
+		return data;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final File root = folder.newFolder();
+		final int[] blockSize = { 4, 4, 4 };
+		final int[] shardSize = { 2, 2, 2 };
+		// 3 x 3 x 2 blocks, so some shards are only partially filled
+		final DatasetAttributes attributes = new DatasetAttributes( new long[] { 12, 12, 5 }, blockSize, DataType.INT16, new GzipCompression() );
+		final N5ShardWriter writer = new N5ShardWriter( root, "s0", attributes, shardSize );
+
+		final long[] skipped = { 1, 1, 1 };
+		for ( long z = 0; z < 2; ++z )
+			for ( long y = 0; y < 3; ++y )
+				for ( long x = 0; x < 3; ++x )
+				{
+					final long[] pos = { x, y, z };
+					if ( x == skipped[ 0 ] && y == skipped[ 1 ] && z == skipped[ 2 ] )
+						continue;
+					writer.writeBlock( new ShortArrayDataBlock( blockSize, pos, blockData( pos, 64 ) ) );
+				}
+
+		// all shards except the one with the skipped block are complete already
+		assertTrue( new File( root, "s0/shards/1/1/0" ).isFile() );
+		writer.close();
+
+		final N5ShardReader reader = new N5ShardReader( N5ShardAccess.local( root ), "s0", attributes, shardSize );
+		for ( long z = 0; z < 2; ++z )
+			for ( long y = 0; y < 3; ++y )
+				for ( long x = 0; x < 3; ++x )
+				{
+					final long[] pos = { x, y, z };
+					final DataBlock< ? > block = reader.readBlock( pos );
+					if ( x == skipped[ 0 ] && y == skipped[ 1 ] && z == skipped[ 2 ] )
+						assertNull( block );
+					else
+					{
+						assertArrayEquals( pos, block.getGridPosition() );
+						assertArrayEquals( blockData( pos, 64 ), ( short[] ) block.getData() );
+					}
+				}
+
+		// 2 x 2 x 1 shards
+		assertEquals( 2, new File( root, "s0/shards" ).list().length );
+		assertNull( reader.readBlock( 0, 0, 4 ) );
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.remote;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveCompressionPolicyTest {
+    private static final int NUM_VOXELS = 32 * 32 * 32;
+
+    /**
+     * Simulate requests over a link with the given latency and transfer time
+     * per byte, with compressed cells of 0.25 bytes per voxel that take 20ns
+     * per voxel to decode.
+     */
+    private static void simulate(final AdaptiveCompressionPolicy policy,
+                                 final int level,
+                                 final long latencyNanos,
+                                 final double nanosPerByte) {
+        for (int i = 0; i < 10 * AdaptiveCompressionPolicy.PROBE_INTERVAL; i++) {
+            if (policy.useCompression(level)) {
+                final int bytes = NUM_VOXELS / 4;
+                policy.recordFetch(level, true, NUM_VOXELS, bytes, latencyNanos + (long) (bytes * nanosPerByte));
+                policy.recordDecode(level, NUM_VOXELS, 20L * NUM_VOXELS);
+            } else {
+                final int bytes = NUM_VOXELS * 2;
+                policy.recordFetch(level, false, NUM_VOXELS, bytes, latencyNanos + (long) (bytes * nanosPerByte));
+            }
+        }
+    }
+
+    @Test
+    public void testFastLinkSwitchesToRaw() {
+        final AdaptiveCompressionPolicy policy = new AdaptiveCompressionPolicy(3, 1);
+        assertTrue(policy.isCompressed(1));
+        simulate(policy, 1, 1_000_000, 1);
+        assertFalse(policy.isCompressed(1));
+        assertEquals(1, policy.getNanosPerByte(), 0.1);
+    }
+
+    @Test
+    public void testSlowLinkStaysCompressed() {
+        final AdaptiveCompressionPolicy policy = new AdaptiveCompressionPolicy(3, 1);
+        simulate(policy, 1, 1_000_000, 100);
+        assertTrue(policy.isCompressed(1));
+    }
+
+    @Test
+    public void testLevelsBelowCompressFromAreRaw() {
+        final AdaptiveCompressionPolicy policy = new AdaptiveCompressionPolicy(3, 1);
+        assertFalse(policy.useCompression(0));
+        assertFalse(policy.isCompressed(0));
+    }
+}
@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.remote;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CellRequestBatcherTest {
+    @Test
+    public void testBatching() throws Exception {
+        final AtomicInteger numRequests = new AtomicInteger();
+        final CellRequestBatcher batcher = new CellRequestBatcher((baseParam, timepoint, setup, level, cells) -> {
+            numRequests.incrementAndGet();
+            final Map<Integer, byte[]> result = new HashMap<>();
+            for (final CellRequestBatcher.CellRequest cell : cells)
+                result.put(cell.getIndex(), new byte[]{(byte) cell.getIndex()});
+            return result;
+        }, 4, 10000);
+
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        final Future<?>[] futures = new Future[4];
+        for (int i = 0; i < 4; i++) {
+            final int index = i;
+            futures[i] = es.submit(() -> batcher.fetch("cell", 0, 0, 0, index, new int[]{1, 1, 1}, new long[3]));
+        }
+        for (int i = 0; i < 4; i++)
+            assertArrayEquals(new byte[]{(byte) i}, (byte[]) futures[i].get());
+        es.shutdown();
+
+        // the batch was sent as soon as it was full, not after the 10 seconds wait time
+        assertEquals(1, numRequests.get());
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        final CellRequestBatcher batcher = new CellRequestBatcher(
+                (String baseParam, int timepoint, int setup, int level, List<CellRequestBatcher.CellRequest> cells) -> null, 4, 1);
+        assertNull(batcher.fetch("cell", 0, 0, 0, 0, new int[]{1, 1, 1}, new long[3]));
+        assertFalse(batcher.isSupported());
+    }
+
+    @Test
+    public void testFailedBatchFallsBackToSingleRequests() throws Exception {
+        final AtomicInteger numRequests = new AtomicInteger();
+        final CellRequestBatcher batcher = new CellRequestBatcher((baseParam, timepoint, setup, level, cells) -> {
+            if (numRequests.incrementAndGet() == 1)
+                throw new IOException("HTTP 503");
+            final Map<Integer, byte[]> result = new HashMap<>();
+            result.put(cells.get(0).getIndex(), new byte[]{1});
+            return result;
+        }, 4, 1);
+
+        assertNull(batcher.fetch("cell", 0, 0, 0, 0, new int[]{1, 1, 1}, new long[3]));
+        assertTrue(batcher.isSupported());
+        assertArrayEquals(new byte[]{1}, batcher.fetch("cell", 0, 0, 0, 1, new int[]{1, 1, 1}, new long[3]));
+        assertEquals(2, numRequests.get());
+    }
+}
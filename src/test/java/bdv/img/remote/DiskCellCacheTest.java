@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.remote;
+
+import bdv.img.cache.VolatileGlobalCellCache.Key;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DiskCellCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String URL = "http://localhost:8080/dataset";
+
+    @Test
+    public void testPersistence() throws IOException {
+        final File root = folder.newFolder();
+        final byte[] data = new byte[]{1, 2, 3, 4, 5};
+
+        final DiskCellCache cache = new DiskCellCache(root, URL, 1 << 20);
+        assertNull(cache.get(new Key(0, 1, 2, 3), "cell"));
+        cache.put(new Key(0, 1, 2, 3), "cell", data);
+        assertEquals(data.length, cache.getCurrentBytes());
+
+        // re-open, as in a new session
+        final DiskCellCache reopened = new DiskCellCache(root, URL, 1 << 20);
+        assertEquals(data.length, reopened.getCurrentBytes());
+        assertArrayEquals(data, reopened.get(new Key(0, 1, 2, 3), "cell"));
+
+        // payload types and datasets are separate
+        assertNull(reopened.get(new Key(0, 1, 2, 3), "cell_qcmp8"));
+        assertNull(new DiskCellCache(root, URL + "2", 1 << 20).get(new Key(0, 1, 2, 3), "cell"));
+    }
+
+    @Test
+    public void testConcurrentPutsOfSameCell() throws Exception {
+        final File root = folder.newFolder();
+        final DiskCellCache cache = new DiskCellCache(root, URL, 1 << 20);
+        final Key key = new Key(0, 0, 0, 0);
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int length = 100 * (t + 1);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50; i++)
+                    cache.put(key, "cell", new byte[length]);
+            }));
+        }
+        for (final Thread thread : threads)
+            thread.start();
+        for (final Thread thread : threads)
+            thread.join();
+
+        assertEquals(new File(cache.getDirectory(), "0_0_0_0.cell").length(), cache.getCurrentBytes());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        final File root = folder.newFolder();
+        final DiskCellCache cache = new DiskCellCache(root, URL, 250);
+        for (int i = 0; i < 3; i++) {
+            cache.put(new Key(0, 0, 0, i), "cell", new byte[100]);
+            // make sure modification times differ
+            new File(cache.getDirectory(), String.format("0_0_0_%d.cell", i)).setLastModified(1000L * (i + 1));
+        }
+
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(new Key(0, 0, 0, 0), "cell"));
+        assertNotNull(cache.get(new Key(0, 0, 0, 1), "cell"));
+        assertNotNull(cache.get(new Key(0, 0, 0, 2), "cell"));
+        assertEquals(200, cache.getCurrentBytes());
+    }
+}
@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.metrics;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class JfrEventTypeTest
+{
+	@Test
+	public void testNotRecording()
+	{
+		// no recording is running, so events are not created
+		final JfrEventType type = JfrEventType.create(
+				"bdv.test.NotRecording", "Not Recording", "Test event.",
+				new String[] { "BigDataViewer", "Test" },
+				JfrEventType.field( int.class, "value", "Value" ),
+				JfrEventType.bytesField( "bytes", "Bytes" ) );
+		assertFalse( type.isEnabled() );
+
+		final JfrEvent event = type.begin();
+		assertSame( JfrEvent.DISABLED, event );
+		assertFalse( event.isEnabled() );
+		event.set( 0, 1 ).set( 1, 2L );
+		event.end();
+		event.commit();
+	}
+
+	@Test
+	public void testInputLatencyWithoutRecording()
+	{
+		JfrEvents.inputReceived();
+		JfrEvents.frameRendered( 0 );
+	}
+}
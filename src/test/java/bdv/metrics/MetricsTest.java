@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.SortedMap;
+
+import org.junit.Test;
+
+public class MetricsTest
+{
+	@Test
+	public void testCounter()
+	{
+		final Metrics metrics = new Metrics();
+		metrics.counter( "a.count" ).inc();
+		metrics.counter( "a.count" ).add( 41 );
+		assertEquals( 42, metrics.counter( "a.count" ).get() );
+	}
+
+	@Test
+	public void testHistogram()
+	{
+		final Histogram h = new Histogram();
+		for ( int i = 1; i <= 100; ++i )
+			h.record( i );
+		assertEquals( 100, h.getCount() );
+		assertEquals( 50.5, h.getMean(), 1e-9 );
+		assertEquals( 100, h.getMax() );
+
+		// percentiles are upper bounds of power-of-two buckets
+		final long p50 = h.getPercentile( 0.5 );
+		assertTrue( p50 >= 50 && p50 <= 2 * 50 );
+		assertEquals( 100, h.getPercentile( 0.99 ) );
+		assertEquals( 0, new Histogram().getPercentile( 0.5 ) );
+	}
+
+	@Test
+	public void testSnapshot()
+	{
+		final Metrics metrics = new Metrics();
+		metrics.counter( "c" ).add( 3 );
+		metrics.histogram( "h" ).record( 8 );
+		metrics.gauge( "g", () -> 1.5 );
+
+		final SortedMap< String, Double > snapshot = metrics.snapshot();
+		assertEquals( 3.0, snapshot.get( "c" ), 0 );
+		assertEquals( 1.5, snapshot.get( "g" ), 0 );
+		assertEquals( 1.0, snapshot.get( "h.count" ), 0 );
+		assertEquals( 8.0, snapshot.get( "h.mean" ), 0 );
+		assertEquals( 8.0, snapshot.get( "h.max" ), 0 );
+		assertTrue( snapshot.containsKey( "h.p50" ) );
+		assertTrue( snapshot.containsKey( "h.p99" ) );
+	}
+
+	@Test
+	public void testValues()
+	{
+		final Metrics metrics = new Metrics();
+		metrics.counter( "cache.a.activeLoads" ).add( 2 );
+		metrics.gauge( "cache.b.activeLoads", () -> 3 );
+		metrics.gauge( "cache.b.evictions", () -> {
+			throw new AssertionError( "metric with other suffix was evaluated" );
+		} );
+		metrics.gauge( "other.activeLoads", () -> {
+			throw new AssertionError( "metric with other prefix was evaluated" );
+		} );
+
+		assertEquals( 5.0, metrics.values( "cache", ".activeLoads" ).sum(), 0 );
+		assertEquals( 0, metrics.values( "cache", ".bytes" ).count() );
+	}
+
+	@Test
+	public void testRemove()
+	{
+		final Metrics metrics = new Metrics();
+		metrics.counter( "cache.hits" ).inc();
+		metrics.counter( "cache.misses" ).inc();
+		metrics.counter( "cache-2.hits" ).inc();
+		metrics.counter( "cacheX" ).inc();
+
+		metrics.remove( "cache" );
+
+		final SortedMap< String, Double > snapshot = metrics.snapshot();
+		assertFalse( snapshot.containsKey( "cache.hits" ) );
+		assertFalse( snapshot.containsKey( "cache.misses" ) );
+		assertTrue( snapshot.containsKey( "cache-2.hits" ) );
+		assertTrue( snapshot.containsKey( "cacheX" ) );
+	}
+
+	@Test
+	public void testUniquePrefix()
+	{
+		final Metrics metrics = new Metrics();
+		final String a = metrics.uniquePrefix( "cache.file:/data/x.n5" );
+		assertEquals( "cache.file__data_x.n5", a );
+		final String b = metrics.uniquePrefix( "cache.file:/data/x.n5" );
+		assertNotEquals( a, b );
+		assertEquals( a + "-2", b );
+
+		metrics.remove( a );
+		assertEquals( a, metrics.uniquePrefix( "cache.file:/data/x.n5" ) );
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PlaybackLevelControllerTest
+{
+	private static final long SECOND = 1_000_000_000L;
+
+	@Test
+	public void coarsensWhenThroughputIsTooLow()
+	{
+		final PlaybackLevelController controller = new PlaybackLevelController( 3, SECOND, 0 );
+		// 100 cells per second loaded, 10 fps needs 500 cells per second
+		controller.update( 0, -1, 0.5, 0.2, 50, 0, 10 );
+		assertEquals( 0, controller.update( SECOND / 2, 50, 0.5, 0.2, 50, 0, 10 ) );
+		assertEquals( 100, controller.getCellsPerSecond(), 1e-6 );
+		assertEquals( 1, controller.update( SECOND, 50, 0.5, 0.2, 50, 0, 10 ) );
+
+		// hold after switching
+		assertEquals( 1, controller.update( 3 * SECOND / 2, 50, 0.5, 0.2, 50, 0, 10 ) );
+		assertEquals( 2, controller.update( 2 * SECOND, 50, 0.5, 0.2, 50, 0, 10 ) );
+	}
+
+	@Test
+	public void keepsLevelWhenFrameIsComplete()
+	{
+		final PlaybackLevelController controller = new PlaybackLevelController( 3, SECOND, 0 );
+		controller.update( 0, -1, 1, 0.2, 50, 0, 10 );
+		assertEquals( 0, controller.update( 2 * SECOND, 100, 1, 0.2, 50, 0, 10 ) );
+	}
+
+	@Test
+	public void refinesWhenBufferIsFullAndThroughputSuffices()
+	{
+		final PlaybackLevelController controller = new PlaybackLevelController( 3, SECOND, 0 );
+		controller.update( 0, -1, 0.5, 0.2, 500, 0, 10 );
+		assertEquals( 1, controller.update( SECOND, 1000, 0.5, 0.2, 500, 0, 10 ) );
+
+		// buffer full, but the finer level needs 5000 cells per second
+		assertEquals( 1, controller.update( 2 * SECOND, 0, 1, 1, 60, 500, 10 ) );
+
+		// throughput measured while the buffer is not full is not affected
+		// by the full buffer
+		assertEquals( 1000, controller.getCellsPerSecond(), 1e-6 );
+
+		// finer level needs 700 cells per second, within headroom
+		assertEquals( 0, controller.update( 3 * SECOND, 0, 1, 1, 60, 70, 10 ) );
+	}
+
+	@Test
+	public void staysWithinBounds()
+	{
+		final PlaybackLevelController controller = new PlaybackLevelController( 0, 0, 0 );
+		controller.update( 0, -1, 0, 0, 1000, 0, 10 );
+		assertEquals( 0, controller.update( SECOND, 1, 0, 0, 1000, 0, 10 ) );
+		assertEquals( 0, controller.update( 2 * SECOND, 0, 1, 1, 1000, 0, 10 ) );
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+public class TransformPredictorTest
+{
+	private static final long MILLIS = 1_000_000L;
+
+	private static AffineTransform3D translation( final double x )
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.translate( x, 0, 0 );
+		return t;
+	}
+
+	@Test
+	public void extrapolatesPanning()
+	{
+		final TransformPredictor predictor = new TransformPredictor();
+		predictor.setHorizonNanos( 300 * MILLIS );
+		predictor.addSample( 0, translation( 0 ) );
+		predictor.addSample( 100 * MILLIS, translation( 10 ) );
+		final AffineTransform3D predicted = predictor.predict( 100 * MILLIS );
+		assertEquals( 40, predicted.get( 0, 3 ), 1e-9 );
+		assertEquals( 1, predicted.get( 0, 0 ), 1e-9 );
+	}
+
+	@Test
+	public void noPredictionWhenNotMoving()
+	{
+		final TransformPredictor predictor = new TransformPredictor();
+		predictor.addSample( 0, translation( 5 ) );
+		assertNull( predictor.predict( 0 ) );
+		predictor.addSample( 50 * MILLIS, translation( 5 ) );
+		assertNull( predictor.predict( 50 * MILLIS ) );
+
+		predictor.addSample( 100 * MILLIS, translation( 10 ) );
+		assertNull( predictor.predict( 100 * MILLIS + TransformPredictor.WINDOW_NANOS + 1 ) );
+	}
+
+	@Test
+	public void overlap()
+	{
+		final AffineTransform3D actual = translation( 3 );
+		assertEquals( 1, TransformPredictor.overlap( actual, actual, 100, 50 ), 1e-9 );
+		assertEquals( 0.5, TransformPredictor.overlap( translation( 53 ), actual, 100, 50 ), 1e-9 );
+		assertEquals( 0, TransformPredictor.overlap( translation( 300 ), actual, 100, 50 ), 1e-9 );
+	}
+
+	@Test
+	public void tunesHorizon()
+	{
+		final TransformPredictor predictor = new TransformPredictor();
+		predictor.setHorizonNanos( 300 * MILLIS );
+
+		// missed prediction: shorter horizon
+		predictor.evaluate( 0.2, 1 );
+		assertEquals( 240 * MILLIS, predictor.getHorizonNanos() );
+
+		// accurate prediction, but cells missing: longer horizon
+		predictor.evaluate( 1, 0.5 );
+		assertEquals( 288 * MILLIS, predictor.getHorizonNanos() );
+
+		// accurate prediction, all cells loaded: keep horizon
+		predictor.evaluate( 1, 1 );
+		assertEquals( 288 * MILLIS, predictor.getHorizonNanos() );
+		assertEquals( 3, predictor.getNumEvaluated() );
+	}
+}
@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.interpolation.InterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.ClampingNLinearInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+import bdv.viewer.Interpolation;
+
+public class AxisAlignedViewsTest
+{
+	private final ArrayImg< IntType, IntArray > img = createImg();
+
+	private static ArrayImg< IntType, IntArray > createImg()
+	{
+		final ArrayImg< IntType, IntArray > img = ArrayImgs.ints( 20, 16, 12 );
+		final Random random = new Random( 1 );
+		img.forEach( t -> t.set( random.nextInt( 1000 ) + 1 ) );
+		return img;
+	}
+
+	private RandomAccessible< IntType > create( final AffineTransform3D sourceToScreen, final Interpolation interpolation )
+	{
+		return AxisAlignedViews.create( Views.extendZero( img ), sourceToScreen, interpolation );
+	}
+
+	private void assertSameAsInterpolated( final AffineTransform3D sourceToScreen, final Interpolation interpolation )
+	{
+		final InterpolatorFactory< IntType, RandomAccessible< IntType > > factory = interpolation == Interpolation.NLINEAR
+				? new ClampingNLinearInterpolatorFactory<>()
+				: new NearestNeighborInterpolatorFactory<>();
+		final RealRandomAccessible< IntType > ipimg = Views.interpolate( Views.extendZero( img ), factory );
+		final RandomAccess< IntType > expected = RealViews.affine( ipimg, sourceToScreen ).randomAccess();
+
+		final RandomAccessible< IntType > view = create( sourceToScreen, interpolation );
+		assertNotNull( view );
+		final RandomAccess< IntType > actual = view.randomAccess();
+
+		for ( int y = -5; y < 30; ++y )
+		{
+			for ( int x = -5; x < 30; ++x )
+			{
+				expected.setPosition( new long[] { x, y, 0 } );
+				actual.setPosition( new long[] { x, y, 0 } );
+				assertEquals( "at (" + x + ", " + y + ")", expected.get().get(), actual.get().get() );
+			}
+		}
+	}
+
+	private static AffineTransform3D sourceToScreen( final double... screenToSource )
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.set( screenToSource );
+		return t.inverse();
+	}
+
+	@Test
+	public void testXYSlice()
+	{
+		final AffineTransform3D t = sourceToScreen(
+				1, 0, 0, 3,
+				0, 1, 0, -2,
+				0, 0, 1, 5 );
+		assertSameAsInterpolated( t, Interpolation.NEARESTNEIGHBOR );
+		assertSameAsInterpolated( t, Interpolation.NLINEAR );
+	}
+
+	@Test
+	public void testFlippedZoomedOutSlices()
+	{
+		// XZ slice, screen X along source -Z, two voxels per pixel
+		final AffineTransform3D xz = sourceToScreen(
+				0, 1, 0, 5,
+				0, 0, 1, 3,
+				-2, 0, 0, 7 );
+		assertSameAsInterpolated( xz, Interpolation.NEARESTNEIGHBOR );
+		assertSameAsInterpolated( xz, Interpolation.NLINEAR );
+
+		// YZ slice, screen X along source Z, screen Y along source -Y
+		final AffineTransform3D yz = sourceToScreen(
+				0, 0, 1, 9,
+				0, -3, 0, 14,
+				1, 0, 0, 0 );
+		assertSameAsInterpolated( yz, Interpolation.NEARESTNEIGHBOR );
+		assertSameAsInterpolated( yz, Interpolation.NLINEAR );
+	}
+
+	@Test
+	public void testFractionalOrigin()
+	{
+		final AffineTransform3D t = sourceToScreen(
+				1, 0, 0, 3.25,
+				0, 1, 0, 0,
+				0, 0, 1, 5 );
+		assertSameAsInterpolated( t, Interpolation.NEARESTNEIGHBOR );
+		assertNull( create( t, Interpolation.NLINEAR ) );
+	}
+
+	@Test
+	public void testNotAxisAligned()
+	{
+		final AffineTransform3D rotated = new AffineTransform3D();
+		rotated.rotate( 2, 0.1 );
+		assertNull( create( rotated, Interpolation.NEARESTNEIGHBOR ) );
+
+		final AffineTransform3D zoomed = sourceToScreen(
+				1.5, 0, 0, 0,
+				0, 1.5, 0, 0,
+				0, 0, 1, 0 );
+		assertNull( create( zoomed, Interpolation.NEARESTNEIGHBOR ) );
+
+		final AffineTransform3D zoomedIn = new AffineTransform3D();
+		zoomedIn.scale( 2 );
+		assertNull( create( zoomedIn, Interpolation.NEARESTNEIGHBOR ) );
+	}
+}
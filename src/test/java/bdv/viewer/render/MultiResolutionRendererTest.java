@@ -0,0 +1,453 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform2D;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.cache.CacheControl;
+import bdv.util.RealRandomAccessibleSource;
+import bdv.util.TripleBuffer;
+import bdv.viewer.BasicViewerState;
+import bdv.viewer.DisplayMode;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.render.ScreenScales.ScreenScale;
+import bdv.viewer.render.awt.BufferedImageRenderResult;
+
+public class MultiResolutionRendererTest
+{
+	private static final int WIDTH = 64;
+
+	private static final int HEIGHT = 48;
+
+	/**
+	 * Source image, larger than the screen, so that translated views are
+	 * still covered by it. Every voxel has a different value.
+	 */
+	private final ArrayImg< IntType, IntArray > img = createImg();
+
+	/**
+	 * Number of pixels that were sampled from the source.
+	 */
+	private final AtomicLong numRendered = new AtomicLong();
+
+	private final TestTarget target = new TestTarget();
+
+	private final BasicViewerState state = new BasicViewerState();
+
+	private boolean repaintRequested;
+
+	private MultiResolutionRenderer renderer;
+
+	private static ArrayImg< IntType, IntArray > createImg()
+	{
+		final ArrayImg< IntType, IntArray > img = ArrayImgs.ints( 2 * WIDTH, 2 * HEIGHT, 1 );
+		final RandomAccess< IntType > a = img.randomAccess();
+		for ( int y = 0; y < 2 * HEIGHT; ++y )
+		{
+			for ( int x = 0; x < 2 * WIDTH; ++x )
+			{
+				a.setPosition( new long[] { x, y, 0 } );
+				a.get().set( 0xff000000 | ( y << 8 ) | x );
+			}
+		}
+		return img;
+	}
+
+	/**
+	 * A display that hands out and receives {@code RenderResult}s through a
+	 * {@code TripleBuffer}, like {@code BufferedImageOverlayRenderer}.
+	 */
+	private static class TestTarget implements RenderTarget< BufferedImageRenderResult >
+	{
+		private final TripleBuffer< BufferedImageRenderResult > tripleBuffer = new TripleBuffer<>( BufferedImageRenderResult::new );
+
+		@Override
+		public BufferedImageRenderResult getReusableRenderResult()
+		{
+			return tripleBuffer.getWritableBuffer();
+		}
+
+		@Override
+		public BufferedImageRenderResult createRenderResult()
+		{
+			return new BufferedImageRenderResult();
+		}
+
+		@Override
+		public void setRenderResult( final BufferedImageRenderResult renderResult )
+		{
+			tripleBuffer.doneWriting( renderResult );
+		}
+
+		@Override
+		public int getWidth()
+		{
+			return WIDTH;
+		}
+
+		@Override
+		public int getHeight()
+		{
+			return HEIGHT;
+		}
+
+		/**
+		 * Get the {@code RenderResult} that would be drawn now.
+		 */
+		BufferedImageRenderResult displayed()
+		{
+			return tripleBuffer.getReadableBuffer().getBuffer();
+		}
+	}
+
+	@Before
+	public void setUp()
+	{
+		final RealRandomAccessibleSource< IntType > source = new RealRandomAccessibleSource< IntType >(
+				Views.interpolate( Views.extendZero( img ), new NearestNeighborInterpolatorFactory<>() ),
+				new IntType(), "test" )
+		{
+			@Override
+			public Interval getInterval( final int t, final int level )
+			{
+				return img;
+			}
+		};
+		final Converter< IntType, ARGBType > converter = ( a, b ) -> {
+			numRendered.incrementAndGet();
+			b.set( a.get() );
+		};
+		final SourceAndConverter< IntType > soc = new SourceAndConverter<>( source, converter );
+		state.addSource( soc );
+		state.setSourceActive( soc, true );
+		state.setDisplayMode( DisplayMode.FUSED );
+		state.setViewerTransform( translation( -WIDTH / 2, -HEIGHT / 2 ) );
+
+		renderer = new MultiResolutionRenderer(
+				target,
+				() -> repaintRequested = true,
+				new double[] { 1 },
+				30 * 1000000l,
+				1,
+				null,
+				false,
+				AccumulateProjectorARGB.factory,
+				new CacheControl.Dummy() );
+	}
+
+	@After
+	public void tearDown()
+	{
+		renderer.kill();
+	}
+
+	private static AffineTransform3D translation( final double tx, final double ty )
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.translate( tx, ty, 0 );
+		return t;
+	}
+
+	/**
+	 * Paint until the renderer stops requesting repaints.
+	 */
+	private void paintUntilDone()
+	{
+		for ( int i = 0; i < 100 && repaintRequested; ++i )
+		{
+			repaintRequested = false;
+			renderer.paint( state );
+		}
+		assertFalse( "rendering did not finish", repaintRequested );
+	}
+
+	private void renderFirstFrame()
+	{
+		renderer.requestRepaint();
+		paintUntilDone();
+		assertEquals( WIDTH * HEIGHT, numRendered.get() );
+		assertDisplaysCurrentTransform();
+		numRendered.set( 0 );
+	}
+
+	/**
+	 * Get the value of the source image at screen pixel {@code (x,y)} for a
+	 * viewer transform that translates by {@code (tx,ty)}.
+	 */
+	private int sourceValue( final int x, final int y, final int tx, final int ty )
+	{
+		final RandomAccess< IntType > a = img.randomAccess();
+		a.setPosition( new long[] { x - tx, y - ty, 0 } );
+		return a.get().get();
+	}
+
+	/**
+	 * Check that the displayed image is the source image seen through the
+	 * current viewer transform, which must be a whole-pixel translation.
+	 */
+	private void assertDisplaysCurrentTransform()
+	{
+		final AffineTransform3D t = state.getViewerTransform();
+		final int tx = ( int ) t.get( 0, 3 );
+		final int ty = ( int ) t.get( 1, 3 );
+
+		final BufferedImageRenderResult result = target.displayed();
+		assertArrayEquals( t.getRowPackedCopy(), result.getViewerTransform().getRowPackedCopy(), 0 );
+		final RandomAccess< ARGBType > actual = result.getTargetImage().randomAccess();
+		for ( int y = 0; y < HEIGHT; ++y )
+		{
+			for ( int x = 0; x < WIDTH; ++x )
+			{
+				actual.setPosition( new long[] { x, y } );
+				assertEquals( "at (" + x + ", " + y + ")", sourceValue( x, y, tx, ty ), actual.get().get() );
+			}
+		}
+	}
+
+	@Test
+	public void testTranslationRendersOnlyExposedStrips()
+	{
+		renderFirstFrame();
+
+		final int dx = 5;
+		final int dy = -3;
+		final AffineTransform3D t = state.getViewerTransform();
+		t.translate( dx, dy, 0 );
+		state.setViewerTransform( t );
+		renderer.requestTransformRepaint();
+		paintUntilDone();
+
+		// shifted pixels are reused, exposed columns and rows are rendered once
+		final int numExposed = WIDTH * HEIGHT - ( WIDTH - Math.abs( dx ) ) * ( HEIGHT - Math.abs( dy ) );
+		assertEquals( numExposed, numRendered.get() );
+		assertDisplaysCurrentTransform();
+	}
+
+	@Test
+	public void testSubPixelTranslationRendersFullFrame()
+	{
+		renderFirstFrame();
+
+		final AffineTransform3D t = state.getViewerTransform();
+		t.translate( 2.5, 0, 0 );
+		state.setViewerTransform( t );
+		renderer.requestTransformRepaint();
+		paintUntilDone();
+
+		assertEquals( WIDTH * HEIGHT, numRendered.get() );
+	}
+
+	@Test
+	public void testOtherChangesRenderFullFrame()
+	{
+		renderFirstFrame();
+
+		final AffineTransform3D t = state.getViewerTransform();
+		t.translate( 4, 0, 0 );
+		state.setViewerTransform( t );
+		renderer.requestRepaint();
+		paintUntilDone();
+
+		assertEquals( WIDTH * HEIGHT, numRendered.get() );
+		assertDisplaysCurrentTransform();
+	}
+
+	/**
+	 * Get a transform that applies {@code t} around screen pixel {@code (cx,cy)}.
+	 */
+	private static AffineTransform3D around( final AffineTransform3D t, final double cx, final double cy )
+	{
+		final AffineTransform3D a = new AffineTransform3D();
+		a.translate( -cx, -cy, 0 );
+		a.preConcatenate( t );
+		a.translate( cx, cy, 0 );
+		return a;
+	}
+
+	private static AffineTransform3D zoom( final double s )
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.scale( s );
+		return t;
+	}
+
+	private static AffineTransform3D rotation( final int axis, final double angle )
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.rotate( axis, angle );
+		return t;
+	}
+
+	private static ScreenScale screenScale( final double scale )
+	{
+		final ScreenScales screenScales = new ScreenScales( new double[] { scale }, 0 );
+		screenScales.checkResize( WIDTH, HEIGHT );
+		return screenScales.get( 0 );
+	}
+
+	private static BufferedImageRenderResult renderResult( final ScreenScale screenScale, final AffineTransform3D viewerTransform )
+	{
+		final BufferedImageRenderResult result = new BufferedImageRenderResult();
+		result.init( screenScale.width(), screenScale.height() );
+		result.setScaleFactor( screenScale.scale() );
+		result.getViewerTransform().set( viewerTransform );
+		return result;
+	}
+
+	/**
+	 * Check that the preview transform maps pixels of a {@code RenderResult}
+	 * at screen scale {@code from} with viewer transform {@code t} to the
+	 * pixels they are drawn at, at screen scale {@code to}, after the viewer
+	 * transform was changed by {@code change} in the screen plane.
+	 */
+	private static void assertPreviewTransform( final ScreenScale from, final ScreenScale to, final AffineTransform3D change )
+	{
+		final AffineTransform3D t = translation( -WIDTH / 2, -HEIGHT / 2 );
+		final AffineTransform3D changed = t.copy().preConcatenate( change );
+		final BufferedImageRenderResult source = renderResult( from, t );
+		final AffineTransform2D warp = new AffineTransform2D();
+		assertTrue( MultiResolutionRenderer.getPreviewTransform( source, changed, to.scale(), warp ) );
+
+		// source pixel to viewer, to global, to changed viewer, to target pixel
+		final AffineTransform3D expected = from.scaleTransform().inverse();
+		expected.preConcatenate( t.inverse() );
+		expected.preConcatenate( changed );
+		expected.preConcatenate( to.scaleTransform() );
+
+		final double[] p = new double[ 3 ];
+		final double[] q = new double[ 3 ];
+		final double[] p2 = new double[ 2 ];
+		final double[] q2 = new double[ 2 ];
+		final int w = from.width();
+		final int h = from.height();
+		for ( final int[] pixel : new int[][] { { 0, 0 }, { w - 1, 0 }, { 0, h - 1 }, { w - 1, h - 1 }, { 7, 5 } } )
+		{
+			p[ 0 ] = p2[ 0 ] = pixel[ 0 ];
+			p[ 1 ] = p2[ 1 ] = pixel[ 1 ];
+			expected.apply( p, q );
+			warp.apply( p2, q2 );
+			assertEquals( q[ 0 ], q2[ 0 ], 1e-9 );
+			assertEquals( q[ 1 ], q2[ 1 ], 1e-9 );
+		}
+	}
+
+	@Test
+	public void testPreviewTransformZoomAndRotate()
+	{
+		final ScreenScale full = screenScale( 1 );
+		final ScreenScale half = screenScale( 0.5 );
+		final AffineTransform3D zoomIn = around( zoom( 2 ), 20, 30 );
+		final AffineTransform3D zoomOut = around( zoom( 0.75 ), 40, 10 );
+		final AffineTransform3D rotate = around( rotation( 2, 0.3 ), 32, 24 );
+		for ( final AffineTransform3D change : new AffineTransform3D[] { zoomIn, zoomOut, rotate, rotate.copy().preConcatenate( zoomIn ) } )
+		{
+			assertPreviewTransform( full, full, change );
+			assertPreviewTransform( half, full, change );
+			assertPreviewTransform( full, half, change );
+		}
+	}
+
+	@Test
+	public void testPreviewDepthCutoff()
+	{
+		final ScreenScale full = screenScale( 1 );
+		final AffineTransform3D t = translation( -WIDTH / 2, -HEIGHT / 2 );
+		final BufferedImageRenderResult source = renderResult( full, t );
+		final AffineTransform2D warp = new AffineTransform2D();
+
+		final double maxDepth = MultiResolutionRenderer.MAX_PREVIEW_DEPTH;
+		final AffineTransform3D nearDepth = t.copy();
+		nearDepth.translate( 0, 0, maxDepth - 0.5 );
+		assertTrue( MultiResolutionRenderer.getPreviewTransform( source, nearDepth, 1, warp ) );
+		final AffineTransform3D farDepth = t.copy();
+		farDepth.translate( 0, 0, -maxDepth - 0.5 );
+		assertFalse( MultiResolutionRenderer.getPreviewTransform( source, farDepth, 1, warp ) );
+
+		// tilting about the horizontal center line moves the top and bottom
+		// rows by up to HEIGHT / 2 out of the screen plane
+		final double halfHeight = HEIGHT / 2;
+		final AffineTransform3D smallTilt = t.copy().preConcatenate( around( rotation( 0, Math.asin( ( maxDepth - 0.5 ) / halfHeight ) ), WIDTH / 2, HEIGHT / 2 ) );
+		assertTrue( MultiResolutionRenderer.getPreviewTransform( source, smallTilt, 1, warp ) );
+		final AffineTransform3D largeTilt = t.copy().preConcatenate( around( rotation( 0, Math.asin( ( maxDepth + 0.5 ) / halfHeight ) ), WIDTH / 2, HEIGHT / 2 ) );
+		assertFalse( MultiResolutionRenderer.getPreviewTransform( source, largeTilt, 1, warp ) );
+	}
+
+	@Test
+	public void testZoomDisplaysPreviewBeforeRendering()
+	{
+		renderFirstFrame();
+
+		final int cx = WIDTH / 2;
+		final int cy = HEIGHT / 2;
+		state.setViewerTransform( state.getViewerTransform().preConcatenate( around( zoom( 2 ), cx, cy ) ) );
+		renderer.requestTransformRepaint();
+		repaintRequested = false;
+		renderer.paint( state );
+
+		// the preview is warped from the previous frame, without sampling the source
+		assertEquals( 0, numRendered.get() );
+		assertTrue( repaintRequested );
+		final BufferedImageRenderResult preview = target.displayed();
+		assertArrayEquals( state.getViewerTransform().getRowPackedCopy(), preview.getViewerTransform().getRowPackedCopy(), 0 );
+		final RandomAccess< ARGBType > actual = preview.getTargetImage().randomAccess();
+		for ( int k = -2; k <= 2; ++k )
+		{
+			// zooming by 2 around (cx,cy) moves pixel (cx+k,cy+k) to (cx+2k,cy+2k)
+			actual.setPosition( new long[] { cx + 2 * k, cy + 2 * k } );
+			assertEquals( sourceValue( cx + k, cy + k, -WIDTH / 2, -HEIGHT / 2 ), actual.get().get() );
+		}
+
+		paintUntilDone();
+		assertEquals( WIDTH * HEIGHT, numRendered.get() );
+		final BufferedImageRenderResult rendered = target.displayed();
+		assertArrayEquals( state.getViewerTransform().getRowPackedCopy(), rendered.getViewerTransform().getRowPackedCopy(), 0 );
+	}
+}
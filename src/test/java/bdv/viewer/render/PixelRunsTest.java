@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class PixelRunsTest
+{
+	@Test
+	public void testAddMergesAdjacentRuns()
+	{
+		final PixelRuns runs = new PixelRuns();
+		runs.add( 0, 2, 5 );
+		runs.add( 0, 5, 7 );
+		runs.add( 0, 8, 9 );
+		runs.add( 1, 9, 10 );
+		runs.add( 1, 10, 10 ); // empty, ignored
+		assertEquals( 3, runs.size() );
+		assertEquals( 7, runs.numPixels() );
+		assertEquals( 2, runs.x0( 0 ) );
+		assertEquals( 7, runs.x1( 0 ) );
+		assertEquals( 1, runs.y( 2 ) );
+	}
+
+	@Test
+	public void testFull()
+	{
+		final PixelRuns runs = PixelRuns.full( 10, 4 );
+		assertEquals( 4, runs.size() );
+		assertEquals( 40, runs.numPixels() );
+		assertEquals( 0, PixelRuns.full( 0, 4 ).numPixels() );
+	}
+
+	@Test
+	public void testSplit()
+	{
+		final PixelRuns runs = new PixelRuns();
+		runs.add( 0, 0, 10 );
+		runs.add( 3, 4, 5 );
+		runs.add( 7, 0, 20 );
+
+		final List< PixelRuns > parts = runs.split( 4 );
+		assertEquals( 4, parts.size() );
+		long total = 0;
+		for ( final PixelRuns part : parts )
+		{
+			assertEquals( 8, part.numPixels(), 1 );
+			total += part.numPixels();
+		}
+		assertEquals( runs.numPixels(), total );
+
+		// concatenating the parts gives the original runs
+		final PixelRuns joined = new PixelRuns();
+		parts.forEach( joined::addAll );
+		assertEquals( runs.size(), joined.size() );
+		for ( int i = 0; i < runs.size(); ++i )
+		{
+			assertEquals( runs.y( i ), joined.y( i ) );
+			assertEquals( runs.x0( i ), joined.x0( i ) );
+			assertEquals( runs.x1( i ), joined.x1( i ) );
+		}
+
+		assertEquals( 0, new PixelRuns().split( 4 ).size() );
+		assertEquals( 1, runs.split( 1 ).size() );
+	}
+}